@@ -0,0 +1,158 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import com.adobe.marketing.mobile.Event;
+import com.adobe.marketing.mobile.EventType;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Builds the tracker request events which the public tracker dispatches to the extension. */
+final class BenchmarkEvents {
+    static final String SESSION_ID = "benchmarkSession";
+
+    private BenchmarkEvents() {}
+
+    static MediaInfo createMediaInfo() {
+        return MediaInfo.create("id", "name", "vod", MediaType.Video, 3600, false, 0, false);
+    }
+
+    static Map<String, String> createMetadata() {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("a.media.show", "show");
+        metadata.put("a.media.season", "1");
+        metadata.put("a.media.episode", "2");
+        metadata.put("customKey", "customValue");
+        return metadata;
+    }
+
+    static Event sessionStart(final long ts) {
+        return sessionStart(createMediaInfo(), ts);
+    }
+
+    static Event sessionStart(final MediaInfo mediaInfo, final long ts) {
+        return create(
+                MediaInternalConstants.EventDataKeys.MediaEventName.SESSION_START,
+                MediaRuleName.MediaStart.ordinal(),
+                mediaInfo.toObjectMap(),
+                createMetadata(),
+                ts);
+    }
+
+    static Event sessionEnd(final long ts) {
+        return create(
+                MediaInternalConstants.EventDataKeys.MediaEventName.SESSION_END,
+                MediaRuleName.MediaSkip.ordinal(),
+                null,
+                null,
+                ts);
+    }
+
+    static Event play(final long ts) {
+        return create(
+                MediaInternalConstants.EventDataKeys.MediaEventName.PLAY,
+                MediaRuleName.Play.ordinal(),
+                null,
+                null,
+                ts);
+    }
+
+    static Event playheadUpdate(final double playhead, final long ts) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(MediaInternalConstants.EventDataKeys.Tracker.PLAYHEAD, playhead);
+
+        return create(
+                MediaInternalConstants.EventDataKeys.MediaEventName.PLAYHEAD_UPDATE,
+                MediaRuleName.PlayheadUpdate.ordinal(),
+                params,
+                null,
+                ts);
+    }
+
+    static Event adBreakStart(final long ts) {
+        return adBreakStart(1, 0.0, ts);
+    }
+
+    static Event adBreakStart(final long position, final double startTime, final long ts) {
+        return create(
+                MediaInternalConstants.EventDataKeys.MediaEventName.ADBREAK_START,
+                MediaRuleName.AdBreakStart.ordinal(),
+                AdBreakInfo.create("adbreak" + position, position, startTime).toObjectMap(),
+                null,
+                ts);
+    }
+
+    static Event adStart(final String adId, final long ts) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("a.media.ad.advertiser", "advertiser");
+
+        return create(
+                MediaInternalConstants.EventDataKeys.MediaEventName.AD_START,
+                MediaRuleName.AdStart.ordinal(),
+                AdInfo.create(adId, "adname", 1, 15.0).toObjectMap(),
+                metadata,
+                ts);
+    }
+
+    static Event chapterStart(final long position, final double startTime, final long ts) {
+        return create(
+                MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_START,
+                MediaRuleName.ChapterStart.ordinal(),
+                ChapterInfo.create("chapter" + position, position, startTime, 0).toObjectMap(),
+                null,
+                ts);
+    }
+
+    static Event qoeUpdate(final double bitrate, final double droppedFrames, final long ts) {
+        return create(
+                MediaInternalConstants.EventDataKeys.MediaEventName.QOE_UPDATE,
+                MediaRuleName.QoEUpdate.ordinal(),
+                QoEInfo.create(bitrate, droppedFrames, 30, 1).toObjectMap(),
+                null,
+                ts);
+    }
+
+    /** Creates an event which only carries its name, like play, buffer or ad complete. */
+    static Event create(final String eventName, final int eventCode, final long ts) {
+        return create(eventName, eventCode, null, null, ts);
+    }
+
+    static Event create(
+            final String eventName,
+            final int eventCode,
+            final Map<String, Object> params,
+            final Map<String, String> metadata,
+            final long ts) {
+        Map<String, Object> eventData = new HashMap<>();
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.ID, "tracker0");
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.SESSION_ID, SESSION_ID);
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_NAME, eventName);
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_CODE, eventCode);
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_TIMESTAMP, ts);
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_INTERNAL, false);
+
+        if (params != null) {
+            eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_PARAM, params);
+        }
+
+        if (metadata != null) {
+            eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_METADATA, metadata);
+        }
+
+        return new Event.Builder(
+                        "Media::TrackMedia",
+                        EventType.MEDIA,
+                        MediaInternalConstants.Media.EVENT_SOURCE_TRACK_MEDIA)
+                .setEventData(eventData)
+                .build();
+    }
+}
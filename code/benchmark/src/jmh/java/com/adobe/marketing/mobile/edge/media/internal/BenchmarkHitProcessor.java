@@ -0,0 +1,56 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link MediaHitProcessor} sink for benchmarks. Unlike FakeMediaHitProcessor it does not keep
+ * the hits, so long runs measure the tracker and not a growing list.
+ */
+class BenchmarkHitProcessor implements MediaHitProcessor {
+    private int sessionCounter;
+    private long hitCount;
+    private MediaHit lastHit;
+
+    @Override
+    public @NonNull String startSession() {
+        return Integer.toString(++sessionCounter);
+    }
+
+    @Override
+    public void processHit(String sessionID, MediaHit hit) {
+        hitCount++;
+        lastHit = hit;
+    }
+
+    @Override
+    public void endSession(String sessionID) {}
+
+    @Override
+    public String getBackendSessionID(String sessionID) {
+        return sessionID;
+    }
+
+    @Override
+    public String resumeSession(String backendSessionID) {
+        return backendSessionID;
+    }
+
+    long getHitCount() {
+        return hitCount;
+    }
+
+    MediaHit getLastHit() {
+        return lastHit;
+    }
+}
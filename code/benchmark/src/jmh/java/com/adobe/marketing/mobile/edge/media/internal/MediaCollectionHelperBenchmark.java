@@ -0,0 +1,90 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Measures the {@link MediaCollectionHelper} extract methods used for every generated hit. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class MediaCollectionHelperBenchmark {
+    MediaContext mediaContext;
+
+    @Setup
+    public void setUp() {
+        mediaContext =
+                new MediaContext(
+                        BenchmarkEvents.createMediaInfo(), BenchmarkEvents.createMetadata());
+
+        Map<String, String> adMetadata = new HashMap<>();
+        adMetadata.put("a.media.ad.advertiser", "advertiser");
+        adMetadata.put("customAdKey", "customAdValue");
+
+        Map<String, String> chapterMetadata = new HashMap<>();
+        chapterMetadata.put("customChapterKey", "customChapterValue");
+
+        mediaContext.setAdBreakInfo(AdBreakInfo.create("adbreak", 1, 0.0));
+        mediaContext.setAdInfo(AdInfo.create("ad1", "adname", 1, 15.0), adMetadata);
+        mediaContext.setChapterInfo(ChapterInfo.create("chapter", 1, 0.0, 30.0), chapterMetadata);
+        mediaContext.setQoEInfo(QoEInfo.create(1000000, 0, 24, 2));
+    }
+
+    @Benchmark
+    public Map<String, Object> extractMediaParams() {
+        return MediaCollectionHelper.extractMediaParams(mediaContext);
+    }
+
+    @Benchmark
+    public Map<String, String> extractMediaMetadata() {
+        return MediaCollectionHelper.extractMediaMetadata(mediaContext);
+    }
+
+    @Benchmark
+    public Map<String, Object> extractAdBreakParams() {
+        return MediaCollectionHelper.extractAdBreakParams(mediaContext);
+    }
+
+    @Benchmark
+    public Map<String, Object> extractAdParams() {
+        return MediaCollectionHelper.extractAdParams(mediaContext);
+    }
+
+    @Benchmark
+    public Map<String, String> extractAdMetadata() {
+        return MediaCollectionHelper.extractAdMetadata(mediaContext);
+    }
+
+    @Benchmark
+    public Map<String, Object> extractChapterParams() {
+        return MediaCollectionHelper.extractChapterParams(mediaContext);
+    }
+
+    @Benchmark
+    public Map<String, String> extractChapterMetadata() {
+        return MediaCollectionHelper.extractChapterMetadata(mediaContext);
+    }
+
+    @Benchmark
+    public Map<String, Object> extractQoEData() {
+        return MediaCollectionHelper.extractQoEData(mediaContext);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link MediaCollectionHitGenerator#processPlayback(boolean)} while playing. The
+ * reference timestamp moves by one second per operation, like playhead updates do, so every tenth
+ * operation generates a ping.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class MediaCollectionHitGeneratorBenchmark {
+    static final long TICK = 1000;
+
+    BenchmarkHitProcessor hitProcessor;
+    MediaCollectionHitGenerator hitGenerator;
+    long refTS;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Map<String, Object> config = new HashMap<>();
+        MediaContext mediaContext =
+                new MediaContext(
+                        BenchmarkEvents.createMediaInfo(), BenchmarkEvents.createMetadata());
+
+        hitProcessor = new BenchmarkHitProcessor();
+        hitGenerator =
+                new MediaCollectionHitGenerator(
+                        mediaContext, hitProcessor, config, 0, BenchmarkEvents.SESSION_ID);
+        hitGenerator.processMediaStart();
+
+        mediaContext.enterState(MediaPlayBackState.Play);
+        hitGenerator.processPlayback(false);
+        refTS = 0;
+    }
+
+    @Benchmark
+    public long processPlayback() {
+        refTS += TICK;
+        hitGenerator.setRefTS(refTS);
+        hitGenerator.processPlayback(false);
+        return hitProcessor.getHitCount();
+    }
+
+    @Benchmark
+    public long processPlaybackFlush() {
+        hitGenerator.processPlayback(true);
+        return hitProcessor.getHitCount();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import com.adobe.marketing.mobile.Event;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link MediaCollectionTracker#track(Event)} for the most frequent tracker events and the
+ * creation of a tracker.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MediaCollectionTrackerBenchmark {
+
+    /** Tracker with a session in progress and the content playing. */
+    @State(Scope.Thread)
+    public static class PlayingState {
+        MediaCollectionTracker tracker;
+        double playhead;
+        long ts;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            tracker = new MediaCollectionTracker(new BenchmarkHitProcessor(), new HashMap<>());
+            tracker.track(BenchmarkEvents.sessionStart(0));
+            tracker.track(BenchmarkEvents.play(0));
+
+            playhead = 0;
+            ts = 0;
+        }
+
+        /**
+         * Advances the playhead and the event timestamp by one second so the tracker crosses the
+         * ping interval and generates hits as it would during real playback.
+         */
+        Event nextPlayheadUpdate() {
+            playhead += 1;
+            ts += 1000;
+            return BenchmarkEvents.playheadUpdate(playhead, ts);
+        }
+    }
+
+    /** Tracker inside an ad break, alternating between two ads on every start. */
+    @State(Scope.Thread)
+    public static class AdBreakState {
+        MediaCollectionTracker tracker;
+        Event[] adStarts;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            tracker = new MediaCollectionTracker(new BenchmarkHitProcessor(), new HashMap<>());
+            tracker.track(BenchmarkEvents.sessionStart(0));
+            tracker.track(BenchmarkEvents.play(0));
+            tracker.track(BenchmarkEvents.adBreakStart(0));
+
+            adStarts = new Event[2];
+            adStarts[0] = BenchmarkEvents.adStart("ad1", 0);
+            adStarts[1] = BenchmarkEvents.adStart("ad2", 0);
+            next = 0;
+        }
+
+        Event nextAdStart() {
+            next ^= 1;
+            return adStarts[next];
+        }
+    }
+
+    /** Tracker without a session, each operation starts and ends one. */
+    @State(Scope.Thread)
+    public static class IdleState {
+        MediaCollectionTracker tracker;
+        Event sessionStart;
+        Event sessionEnd;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            tracker = new MediaCollectionTracker(new BenchmarkHitProcessor(), new HashMap<>());
+            sessionStart = BenchmarkEvents.sessionStart(0);
+            sessionEnd = BenchmarkEvents.sessionEnd(0);
+        }
+    }
+
+    @Benchmark
+    public boolean trackPlayheadUpdate(final PlayingState state) {
+        return state.tracker.track(state.nextPlayheadUpdate());
+    }
+
+    @Benchmark
+    public boolean trackAdStart(final AdBreakState state) {
+        return state.tracker.track(state.nextAdStart());
+    }
+
+    @Benchmark
+    public boolean trackSessionStartAndEnd(final IdleState state) {
+        return state.tracker.track(state.sessionStart) & state.tracker.track(state.sessionEnd);
+    }
+
+    /** Cost of creating a tracker, the rule table is shared and only built once per process. */
+    @Benchmark
+    public MediaCollectionTracker createTracker() {
+        return new MediaCollectionTracker(new BenchmarkHitProcessor(), new HashMap<>());
+    }
+}
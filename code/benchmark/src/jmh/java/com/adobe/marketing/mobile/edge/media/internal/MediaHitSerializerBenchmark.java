@@ -0,0 +1,127 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares {@link MediaHitSerializer#write(String, MediaHit)} with building the XDM payload as a
+ * tree of maps first, as Edge event data would be, and then writing that tree with the same JSON
+ * writer. The difference is the cost of the intermediate maps.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class MediaHitSerializerBenchmark {
+    MediaHit sessionStartHit;
+    MediaHit pingHit;
+    MediaHitSerializer serializer;
+
+    @Setup
+    public void setUp() {
+        MediaContext mediaContext =
+                new MediaContext(
+                        BenchmarkEvents.createMediaInfo(), BenchmarkEvents.createMetadata());
+        mediaContext.setQoEInfo(QoEInfo.create(1000000, 0, 24, 2));
+
+        sessionStartHit =
+                new MediaHit(
+                        MediaCollectionConstants.EventType.SESSION_START,
+                        MediaCollectionHelper.extractMediaParams(mediaContext),
+                        MediaCollectionHelper.extractMediaMetadata(mediaContext),
+                        MediaCollectionHelper.extractQoEData(mediaContext),
+                        0,
+                        System.currentTimeMillis());
+        pingHit =
+                new MediaHit(
+                        MediaCollectionConstants.EventType.PING,
+                        null,
+                        null,
+                        null,
+                        120,
+                        System.currentTimeMillis());
+        serializer = new MediaHitSerializer();
+    }
+
+    @Benchmark
+    public int streamingSessionStart() {
+        serializer.write(BenchmarkEvents.SESSION_ID, sessionStartHit);
+        return serializer.size();
+    }
+
+    @Benchmark
+    public int mapTreeSessionStart() {
+        serializer.reset();
+        serializer.writeValue(toXdm(BenchmarkEvents.SESSION_ID, sessionStartHit));
+        return serializer.size();
+    }
+
+    @Benchmark
+    public int streamingPing() {
+        serializer.write(BenchmarkEvents.SESSION_ID, pingHit);
+        return serializer.size();
+    }
+
+    @Benchmark
+    public int mapTreePing() {
+        serializer.reset();
+        serializer.writeValue(toXdm(BenchmarkEvents.SESSION_ID, pingHit));
+        return serializer.size();
+    }
+
+    /** Map based equivalent of {@link MediaHitSerializer#write(String, MediaHit)}. */
+    static Map<String, Object> toXdm(final String sessionID, final MediaHit hit) {
+        Map<String, Object> playerTime = new HashMap<>();
+        playerTime.put(MediaCollectionConstants.PlayerTime.PLAYHEAD.key, hit.getPlayhead());
+        playerTime.put(MediaCollectionConstants.PlayerTime.TS.key, hit.getTimeStamp());
+
+        Map<String, Object> mediaCollection = new HashMap<>();
+        mediaCollection.put(MediaCollectionConstants.Xdm.SESSION_ID.key, sessionID);
+        mediaCollection.put(MediaCollectionConstants.Report.EVENT_TYPE.key, hit.getEventType());
+        mediaCollection.put(MediaCollectionConstants.Report.PLAYER_TIME.key, playerTime);
+
+        if (!hit.getParams().isEmpty()) {
+            mediaCollection.put(
+                    MediaCollectionConstants.Report.PARAMS.key, new HashMap<>(hit.getParams()));
+        }
+
+        if (!hit.getCustomMetadata().isEmpty()) {
+            mediaCollection.put(
+                    MediaCollectionConstants.Report.CUSTOM_METADATA.key,
+                    new HashMap<>(hit.getCustomMetadata()));
+        }
+
+        if (!hit.getQoEData().isEmpty()) {
+            mediaCollection.put(
+                    MediaCollectionConstants.Report.QoE.key, new HashMap<>(hit.getQoEData()));
+        }
+
+        Map<String, Object> xdm = new HashMap<>();
+        xdm.put(
+                MediaCollectionConstants.Xdm.EVENT_TYPE.key,
+                MediaCollectionConstants.Xdm.EVENT_TYPE_PREFIX + hit.getEventType());
+        xdm.put(MediaCollectionConstants.Xdm.MEDIA_COLLECTION.key, mediaCollection);
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put(MediaCollectionConstants.Xdm.XDM.key, xdm);
+        return payload;
+    }
+}
@@ -0,0 +1,535 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import com.adobe.marketing.mobile.Event;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Drives many {@link MediaCollectionTracker} instances in one JVM with synthetic viewers, to find
+ * out how far the tracker scales.
+ *
+ * <p>Each viewer plays a video with a preroll ad, a mid-roll pod of two ads and random buffering,
+ * seeks and QoE changes, sending one playhead update per virtual second like the public tracker.
+ * Viewers are split across threads, each tracker is only used by its own thread. The generator
+ * reports throughput, retained heap per active session and the GC pauses seen during the run.
+ *
+ * <p>Usage: {@code MediaLoadGenerator [viewers=1000] [threads=1] [content=1800] [seed=1]}, where
+ * content is the content length in seconds.
+ */
+public final class MediaLoadGenerator {
+    private static final long TICK = 1000;
+    private static final int AD_LENGTH = 15;
+    private static final int HEAP_SAMPLE_TICK = 60;
+    private static final int CLOCK_SPREAD_TICKS = 60;
+    private static final long PREROLL_WAIT_TIME = 250;
+    private static final int GC_SETTLE_ROUNDS = 3;
+    private static final double BYTES_PER_KB = 1024.0;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final int viewerCount;
+    private final int threadCount;
+    private final int contentLength;
+    private final long seed;
+
+    MediaLoadGenerator(
+            final int viewerCount,
+            final int threadCount,
+            final int contentLength,
+            final long seed) {
+        this.viewerCount = viewerCount;
+        this.threadCount = threadCount;
+        this.contentLength = contentLength;
+        this.seed = seed;
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        int viewers = 1000;
+        int threads = 1;
+        int content = 1800;
+        long seed = 1;
+
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                continue;
+            }
+
+            switch (pair[0]) {
+                case "viewers":
+                    viewers = Integer.parseInt(pair[1]);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(pair[1]);
+                    break;
+                case "content":
+                    content = Integer.parseInt(pair[1]);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(pair[1]);
+                    break;
+                default:
+                    System.err.println("Ignoring unknown argument " + arg);
+            }
+        }
+
+        System.out.println(new MediaLoadGenerator(viewers, threads, content, seed).run());
+    }
+
+    Report run() throws InterruptedException {
+        GcPauseRecorder gcPauses = new GcPauseRecorder();
+        long heapBefore = usedHeapAfterGc();
+
+        List<List<SyntheticViewer>> partitions = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            partitions.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < viewerCount; i++) {
+            partitions
+                    .get(i % threadCount)
+                    .add(new SyntheticViewer(i, contentLength, new Random(seed + i)));
+        }
+
+        gcPauses.start();
+        long elapsed = runTicks(partitions, 0, HEAP_SAMPLE_TICK);
+        gcPauses.stop();
+
+        long heapDuring = usedHeapAfterGc();
+
+        gcPauses.start();
+        elapsed += runTicks(partitions, HEAP_SAMPLE_TICK, Integer.MAX_VALUE);
+        gcPauses.stop();
+
+        long events = 0;
+        long rejected = 0;
+        long hits = 0;
+
+        for (List<SyntheticViewer> partition : partitions) {
+            for (SyntheticViewer viewer : partition) {
+                events += viewer.eventCount;
+                rejected += viewer.rejectedCount;
+                hits += viewer.hitProcessor.getHitCount();
+            }
+        }
+
+        return new Report(
+                viewerCount,
+                threadCount,
+                events,
+                rejected,
+                hits,
+                elapsed,
+                (heapDuring - heapBefore) / Math.max(1, viewerCount),
+                gcPauses.getPauses());
+    }
+
+    /** Runs the viewers of each partition on its own thread and returns the wall time in ns. */
+    private long runTicks(
+            final List<List<SyntheticViewer>> partitions, final int fromTick, final int toTick)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+
+        for (final List<SyntheticViewer> partition : partitions) {
+            threads.add(
+                    new Thread(
+                            () -> {
+                                for (int tick = fromTick; tick < toTick; tick++) {
+                                    boolean active = false;
+
+                                    for (SyntheticViewer viewer : partition) {
+                                        active |= viewer.step();
+                                    }
+
+                                    if (!active) {
+                                        return;
+                                    }
+                                }
+                            }));
+        }
+
+        long start = System.nanoTime();
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        for (int i = 0; i < GC_SETTLE_ROUNDS; i++) {
+            System.gc();
+        }
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /** One virtual viewer, advanced one second of virtual time per {@link #step()}. */
+    static final class SyntheticViewer {
+        private static final double BUFFER_PROBABILITY = 0.01;
+        private static final double SEEK_PROBABILITY = 0.005;
+        private static final double QOE_PROBABILITY = 0.05;
+        private static final int MAX_BUFFER_SECONDS = 3;
+        private static final int MAX_DROPPED_FRAMES = 10;
+        private static final int SEEK_SECONDS = 30;
+        private static final double[] BITRATES = {800000, 1500000, 3000000, 6000000};
+        private static final int MIDROLL_ADS = 2;
+
+        final BenchmarkHitProcessor hitProcessor;
+        private final MediaCollectionTracker tracker;
+        private final Random random;
+        private final int contentLength;
+        private final int midrollStart;
+        private long ts;
+        private double playhead;
+        private int adsLeftInPod;
+        private int adSecondsLeft;
+        private int bufferSecondsLeft;
+        private int adCounter;
+        private boolean started;
+        private boolean midrollDone;
+        private boolean done;
+        long eventCount;
+        long rejectedCount;
+
+        SyntheticViewer(final int index, final int contentLength, final Random random) {
+            this.hitProcessor = new BenchmarkHitProcessor();
+            this.tracker = new MediaCollectionTracker(hitProcessor, new HashMap<>());
+            this.random = random;
+            this.contentLength = contentLength;
+            this.midrollStart = contentLength / 2;
+            // offset the viewer clocks so pings of different sessions are not aligned
+            this.ts = index % CLOCK_SPREAD_TICKS * TICK;
+        }
+
+        /**
+         * Sends the events for the next second of playback.
+         *
+         * @return false once the session is complete
+         */
+        boolean step() {
+            if (done) {
+                return false;
+            }
+
+            ts += TICK;
+
+            if (!started) {
+                start();
+            } else if (adSecondsLeft > 0) {
+                playAd();
+            } else if (bufferSecondsLeft > 0) {
+                buffer();
+            } else {
+                playContent();
+            }
+
+            return !done;
+        }
+
+        private void start() {
+            started = true;
+            MediaInfo mediaInfo =
+                    MediaInfo.create(
+                            "id",
+                            "name",
+                            "vod",
+                            MediaType.Video,
+                            contentLength,
+                            false,
+                            PREROLL_WAIT_TIME,
+                            false);
+
+            track(BenchmarkEvents.sessionStart(mediaInfo, ts));
+            track(BenchmarkEvents.adBreakStart(1, 0, ts));
+            startPod(1);
+        }
+
+        private void startPod(final int ads) {
+            adsLeftInPod = ads;
+            startAd();
+        }
+
+        private void startAd() {
+            adsLeftInPod--;
+            adSecondsLeft = AD_LENGTH;
+            track(BenchmarkEvents.adStart("ad" + adCounter++, ts));
+            track(BenchmarkEvents.play(ts));
+        }
+
+        private void playAd() {
+            track(BenchmarkEvents.playheadUpdate(playhead, ts));
+
+            if (--adSecondsLeft > 0) {
+                return;
+            }
+
+            track(
+                    BenchmarkEvents.create(
+                            MediaInternalConstants.EventDataKeys.MediaEventName.AD_COMPLETE,
+                            MediaRuleName.AdComplete.ordinal(),
+                            ts));
+
+            if (adsLeftInPod > 0) {
+                startAd();
+                return;
+            }
+
+            track(
+                    BenchmarkEvents.create(
+                            MediaInternalConstants.EventDataKeys.MediaEventName.ADBREAK_COMPLETE,
+                            MediaRuleName.AdBreakComplete.ordinal(),
+                            ts));
+            track(BenchmarkEvents.chapterStart(midrollDone ? 2 : 1, playhead, ts));
+        }
+
+        private void buffer() {
+            track(BenchmarkEvents.playheadUpdate(playhead, ts));
+
+            if (--bufferSecondsLeft == 0) {
+                track(
+                        BenchmarkEvents.create(
+                                MediaInternalConstants.EventDataKeys.MediaEventName.BUFFER_COMPLETE,
+                                MediaRuleName.BufferComplete.ordinal(),
+                                ts));
+            }
+        }
+
+        private void playContent() {
+            playhead++;
+            track(BenchmarkEvents.playheadUpdate(playhead, ts));
+
+            if (playhead >= contentLength) {
+                completeChapter();
+                track(
+                        BenchmarkEvents.create(
+                                MediaInternalConstants.EventDataKeys.MediaEventName.COMPLETE,
+                                MediaRuleName.MediaComplete.ordinal(),
+                                ts));
+                done = true;
+                return;
+            }
+
+            if (!midrollDone && playhead >= midrollStart) {
+                midrollDone = true;
+                completeChapter();
+                track(BenchmarkEvents.adBreakStart(2, playhead, ts));
+                startPod(MIDROLL_ADS);
+                return;
+            }
+
+            double roll = random.nextDouble();
+
+            if (roll < BUFFER_PROBABILITY) {
+                bufferSecondsLeft = 1 + random.nextInt(MAX_BUFFER_SECONDS);
+                track(
+                        BenchmarkEvents.create(
+                                MediaInternalConstants.EventDataKeys.MediaEventName.BUFFER_START,
+                                MediaRuleName.BufferStart.ordinal(),
+                                ts));
+            } else if (roll < BUFFER_PROBABILITY + SEEK_PROBABILITY) {
+                track(
+                        BenchmarkEvents.create(
+                                MediaInternalConstants.EventDataKeys.MediaEventName.SEEK_START,
+                                MediaRuleName.SeekStart.ordinal(),
+                                ts));
+                playhead = Math.min(contentLength - 1, playhead + SEEK_SECONDS);
+                track(BenchmarkEvents.playheadUpdate(playhead, ts));
+                track(
+                        BenchmarkEvents.create(
+                                MediaInternalConstants.EventDataKeys.MediaEventName.SEEK_COMPLETE,
+                                MediaRuleName.SeekComplete.ordinal(),
+                                ts));
+            } else if (roll < BUFFER_PROBABILITY + SEEK_PROBABILITY + QOE_PROBABILITY) {
+                double bitrate = BITRATES[random.nextInt(BITRATES.length)];
+                track(BenchmarkEvents.qoeUpdate(bitrate, random.nextInt(MAX_DROPPED_FRAMES), ts));
+                track(
+                        BenchmarkEvents.create(
+                                MediaInternalConstants.EventDataKeys.MediaEventName.BITRATE_CHANGE,
+                                MediaRuleName.BitrateChange.ordinal(),
+                                ts));
+            }
+        }
+
+        private void completeChapter() {
+            track(
+                    BenchmarkEvents.create(
+                            MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_COMPLETE,
+                            MediaRuleName.ChapterComplete.ordinal(),
+                            ts));
+        }
+
+        private void track(final Event event) {
+            eventCount++;
+
+            if (!tracker.track(event)) {
+                rejectedCount++;
+            }
+        }
+    }
+
+    /** Collects the duration of every GC reported by the platform collectors while started. */
+    static final class GcPauseRecorder implements NotificationListener {
+        private final List<Long> pauses = new ArrayList<>();
+        private volatile boolean recording;
+
+        GcPauseRecorder() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc instanceof NotificationEmitter) {
+                    ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+                }
+            }
+        }
+
+        void start() {
+            recording = true;
+        }
+
+        void stop() {
+            recording = false;
+        }
+
+        @Override
+        public void handleNotification(final Notification notification, final Object handback) {
+            if (!recording
+                    || !GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(
+                            notification.getType())) {
+                return;
+            }
+
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from(
+                            (CompositeData) notification.getUserData());
+
+            // concurrent cycles run next to the application and are not pauses
+            if (info.getGcAction().contains("concurrent")) {
+                return;
+            }
+
+            synchronized (pauses) {
+                pauses.add(info.getGcInfo().getDuration());
+            }
+        }
+
+        long[] getPauses() {
+            synchronized (pauses) {
+                long[] result = new long[pauses.size()];
+
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = pauses.get(i);
+                }
+
+                Arrays.sort(result);
+                return result;
+            }
+        }
+    }
+
+    /** Result of a load run. */
+    static final class Report {
+        private static final double P50 = 50;
+        private static final double P90 = 90;
+        private static final double P99 = 99;
+        private static final double MAX_PERCENTILE = 100;
+
+        final int viewers;
+        final int threads;
+        final long events;
+        final long rejected;
+        final long hits;
+        final long elapsedNanos;
+        final long heapBytesPerSession;
+        final long[] sortedGcPausesMillis;
+
+        Report(
+                final int viewers,
+                final int threads,
+                final long events,
+                final long rejected,
+                final long hits,
+                final long elapsedNanos,
+                final long heapBytesPerSession,
+                final long[] sortedGcPausesMillis) {
+            this.viewers = viewers;
+            this.threads = threads;
+            this.events = events;
+            this.rejected = rejected;
+            this.hits = hits;
+            this.elapsedNanos = elapsedNanos;
+            this.heapBytesPerSession = heapBytesPerSession;
+            this.sortedGcPausesMillis = sortedGcPausesMillis;
+        }
+
+        long gcPausePercentile(final double percentile) {
+            if (sortedGcPausesMillis.length == 0) {
+                return 0;
+            }
+
+            int rank = (int) Math.ceil(percentile / MAX_PERCENTILE * sortedGcPausesMillis.length);
+            return sortedGcPausesMillis[Math.max(0, rank - 1)];
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / NANOS_PER_SECOND;
+            long totalPause = 0;
+
+            for (long pause : sortedGcPausesMillis) {
+                totalPause += pause;
+            }
+
+            return String.format(
+                    Locale.US,
+                    "viewers=%d threads=%d elapsedMs=%d%n"
+                            + "events=%d rejected=%d eventsPerSec=%.0f%n"
+                            + "hits=%d hitsPerSec=%.0f%n"
+                            + "heapPerSessionKb=%.1f%n"
+                            + "gcPauses=%d totalPauseMs=%d p50Ms=%d p90Ms=%d p99Ms=%d maxMs=%d",
+                    viewers,
+                    threads,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    events,
+                    rejected,
+                    events / seconds,
+                    hits,
+                    hits / seconds,
+                    heapBytesPerSession / BYTES_PER_KB,
+                    sortedGcPausesMillis.length,
+                    totalPause,
+                    gcPausePercentile(P50),
+                    gcPausePercentile(P90),
+                    gcPausePercentile(P99),
+                    gcPausePercentile(MAX_PERCENTILE));
+        }
+    }
+}
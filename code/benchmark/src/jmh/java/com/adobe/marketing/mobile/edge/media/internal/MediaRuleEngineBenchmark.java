@@ -0,0 +1,82 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link MediaRuleEngine#processRule(Object, int, Map)} with a rule table shaped like the
+ * one built by {@link MediaCollectionTracker}: one rule per event, a few predicates and actions
+ * each.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class MediaRuleEngineBenchmark {
+    static final int RULE_COUNT = 24;
+    static final int PREDICATE_COUNT = 4;
+    static final int ACTION_COUNT = 3;
+
+    MediaRuleEngine<Object> ruleEngine;
+    Object target;
+    Map<String, Object> context;
+    int next;
+
+    @Setup
+    public void setUp() {
+        ruleEngine = new MediaRuleEngine<>();
+        target = new Object();
+        context = new HashMap<>();
+        context.put("key", "value");
+
+        IMediaRuleCallback<Object> predicate = (t, ctx) -> ctx.containsKey("key");
+        IMediaRuleCallback<Object> action = (t, ctx) -> ctx.get("key") != null;
+        IMediaRuleHook<Object> hook = (t, rule, ctx) -> ctx.get("key") != null;
+
+        for (int i = 0; i < RULE_COUNT; i++) {
+            MediaRule<Object> rule = new MediaRule<>(i, "rule" + i);
+
+            for (int p = 0; p < PREDICATE_COUNT; p++) {
+                rule.addPredicate(predicate, true, "predicate failed");
+            }
+
+            for (int a = 0; a < ACTION_COUNT; a++) {
+                rule.addAction(action);
+            }
+
+            ruleEngine.addRule(rule);
+        }
+
+        ruleEngine.onEnterRule(hook);
+        ruleEngine.onExitRule(hook);
+    }
+
+    @Benchmark
+    public MediaRuleResponse processRule() {
+        next = (next + 1) % RULE_COUNT;
+        return ruleEngine.processRule(target, next, context);
+    }
+
+    @Benchmark
+    public MediaRuleResponse processRuleNotFound() {
+        return ruleEngine.processRule(target, RULE_COUNT, context);
+    }
+}
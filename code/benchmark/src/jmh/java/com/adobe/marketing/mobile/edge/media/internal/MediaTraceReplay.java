@@ -0,0 +1,46 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Command line entry point for {@link MediaTraceReplayer}.
+ *
+ * <p>Usage: {@code MediaTraceReplay <trace file> [hit output file]}. Prints the replay summary and,
+ * if an output file is given, writes the generated hits to it for diffing.
+ */
+public final class MediaTraceReplay {
+    private MediaTraceReplay() {}
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: MediaTraceReplay <trace file> [hit output file]");
+            System.exit(1);
+        }
+
+        try (MediaTraceReader reader = new MediaTraceReader(new FileInputStream(args[0]));
+                Writer hitWriter =
+                        args.length > 1
+                                ? new OutputStreamWriter(
+                                        new FileOutputStream(args[1]), StandardCharsets.UTF_8)
+                                : null) {
+            MediaTraceReplayer.Result result = new MediaTraceReplayer(reader, hitWriter).replay();
+            System.out.println(result);
+        }
+    }
+}
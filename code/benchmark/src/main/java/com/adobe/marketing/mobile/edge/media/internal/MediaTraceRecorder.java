@@ -0,0 +1,173 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import com.adobe.marketing.mobile.Event;
+import com.adobe.marketing.mobile.EventType;
+import com.adobe.marketing.mobile.services.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Writes tracker events to a binary trace which {@link MediaTraceReplayer} can replay offline.
+ *
+ * <p>A trace starts with {@link #MAGIC} and {@link #VERSION}, followed by one record per event: the
+ * record type, the event timestamp and the event data written with {@link
+ * MediaEventTrace#writeValue}.
+ *
+ * <p>To record real traffic, set the recorder with {@link
+ * MediaExtension#setEventObserver(MediaEventObserver)} before the extension is registered. The
+ * first write error stops the recording.
+ */
+class MediaTraceRecorder implements MediaEventObserver, Closeable {
+    private static final String LOG_TAG = "MediaTraceRecorder";
+
+    static final int MAGIC = 0x4D545243; // "MTRC"
+    static final int VERSION = 1;
+
+    static final byte RECORD_TRACKER_REQUEST = 1;
+    static final byte RECORD_TRACK_EVENT = 2;
+
+    private final DataOutputStream out;
+    private boolean failed;
+
+    MediaTraceRecorder(final OutputStream outputStream) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    synchronized void record(final byte recordType, final Event event) throws IOException {
+        out.writeByte(recordType);
+        out.writeLong(event.getTimestamp());
+        MediaEventTrace.writeValue(out, event.getEventData());
+    }
+
+    @Override
+    public void onTrackerRequest(final Event event) {
+        recordEvent(RECORD_TRACKER_REQUEST, event);
+    }
+
+    @Override
+    public void onTrackEvent(final Event event) {
+        recordEvent(RECORD_TRACK_EVENT, event);
+    }
+
+    private synchronized void recordEvent(final byte recordType, final Event event) {
+        if (failed) {
+            return;
+        }
+
+        try {
+            record(recordType, event);
+        } catch (IOException e) {
+            failed = true;
+            Log.warning(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "recordEvent - Unable to record event, stopping trace recording: %s",
+                    e.getMessage());
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
+
+/** Reads back the records written by a {@link MediaTraceRecorder}. */
+class MediaTraceReader implements Closeable {
+    private final DataInputStream in;
+
+    MediaTraceReader(final InputStream inputStream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(inputStream));
+
+        if (in.readInt() != MediaTraceRecorder.MAGIC) {
+            throw new IOException("Not a media event trace");
+        }
+
+        int version = in.readInt();
+        if (version != MediaTraceRecorder.VERSION) {
+            throw new IOException("Unsupported media event trace version " + version);
+        }
+    }
+
+    /**
+     * Reads the next record of the trace.
+     *
+     * @return the next {@link Record}, or null at the end of the trace
+     * @throws IOException if the trace is truncated or corrupt
+     */
+    Record next() throws IOException {
+        int recordType = in.read();
+
+        if (recordType < 0) {
+            return null;
+        }
+
+        long timestamp = in.readLong();
+        Object eventData = MediaEventTrace.readValue(in);
+
+        if (!(eventData instanceof Map)) {
+            throw new IOException("Media event trace record without event data");
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> data = (Map<String, Object>) eventData;
+
+        return new Record((byte) recordType, timestamp, data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    static final class Record {
+        final byte type;
+        final long timestamp;
+        final Map<String, Object> eventData;
+
+        Record(final byte type, final long timestamp, final Map<String, Object> eventData) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.eventData = eventData;
+        }
+
+        boolean isTrackerRequest() {
+            return type == MediaTraceRecorder.RECORD_TRACKER_REQUEST;
+        }
+
+        Event toEvent() {
+            String source =
+                    isTrackerRequest()
+                            ? MediaInternalConstants.Media.EVENT_SOURCE_TRACKER_REQUEST
+                            : MediaInternalConstants.Media.EVENT_SOURCE_TRACK_MEDIA;
+
+            return new Event.Builder("Media::Replay", EventType.MEDIA, source)
+                    .setEventData(eventData)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import androidx.annotation.NonNull;
+import com.adobe.marketing.mobile.util.DataReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a trace written by {@link MediaTraceRecorder} through {@link MediaCollectionTracker} as
+ * fast as possible.
+ *
+ * <p>The tracker only reads time from the event data, so the recorded event timestamps act as a
+ * virtual clock and the hits generated by a replay are identical to the ones generated on the
+ * device. Hits can be written as one line each to compare two implementations with a plain diff,
+ * and the {@link Result} reports throughput and the latency of each {@code track} call.
+ */
+class MediaTraceReplayer {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final int INITIAL_LATENCY_CAPACITY = 1024;
+    private static final double MAX_PERCENTILE = 100;
+    private static final double P50 = 50;
+    private static final double P90 = 90;
+    private static final double P99 = 99;
+
+    private final MediaTraceReader reader;
+    private final Writer hitWriter;
+
+    /**
+     * @param reader trace to replay
+     * @param hitWriter destination of the generated hits, one per line, or null to drop them
+     */
+    MediaTraceReplayer(final MediaTraceReader reader, final Writer hitWriter) {
+        this.reader = reader;
+        this.hitWriter = hitWriter;
+    }
+
+    Result replay() throws IOException {
+        Map<String, MediaCollectionTracker> trackers = new HashMap<>();
+        ReplayHitProcessor hitProcessor = new ReplayHitProcessor(hitWriter);
+        long[] latencies = new long[INITIAL_LATENCY_CAPACITY];
+        int trackCount = 0;
+        long firstTS = -1;
+        long virtualTS = 0;
+        long replayStart = System.nanoTime();
+
+        MediaTraceReader.Record record;
+        while ((record = reader.next()) != null) {
+            long eventTS =
+                    DataReader.optLong(
+                            record.eventData,
+                            MediaInternalConstants.EventDataKeys.Tracker.EVENT_TIMESTAMP,
+                            record.timestamp);
+            if (firstTS < 0) {
+                firstTS = eventTS;
+            }
+            virtualTS = Math.max(virtualTS, eventTS);
+
+            String trackerId =
+                    DataReader.optString(
+                            record.eventData,
+                            MediaInternalConstants.EventDataKeys.Tracker.ID,
+                            null);
+            if (trackerId == null) {
+                continue;
+            }
+
+            if (record.isTrackerRequest()) {
+                trackers.put(
+                        trackerId,
+                        new MediaCollectionTracker(hitProcessor, getTrackerConfig(record)));
+                continue;
+            }
+
+            MediaCollectionTracker tracker = trackers.get(trackerId);
+            if (tracker == null) {
+                // trace started after the tracker was created
+                tracker = new MediaCollectionTracker(hitProcessor, new HashMap<>());
+                trackers.put(trackerId, tracker);
+            }
+
+            if (trackCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, trackCount * 2);
+            }
+
+            long start = System.nanoTime();
+            tracker.track(record.toEvent());
+            latencies[trackCount++] = System.nanoTime() - start;
+        }
+
+        if (hitWriter != null) {
+            hitWriter.flush();
+        }
+
+        long[] sortedLatencies = Arrays.copyOf(latencies, trackCount);
+        Arrays.sort(sortedLatencies);
+
+        return new Result(
+                trackCount,
+                hitProcessor.getHitCount(),
+                System.nanoTime() - replayStart,
+                firstTS < 0 ? 0 : virtualTS - firstTS,
+                sortedLatencies);
+    }
+
+    private static Map<String, Object> getTrackerConfig(final MediaTraceReader.Record record) {
+        Map<String, Object> config =
+                DataReader.optTypedMap(
+                        Object.class,
+                        record.eventData,
+                        MediaInternalConstants.EventDataKeys.Tracker.EVENT_PARAM,
+                        null);
+
+        return config != null ? config : new HashMap<>();
+    }
+
+    /** Summary of a replay. */
+    static final class Result {
+        private final int trackCount;
+        private final long hitCount;
+        private final long elapsedNanos;
+        private final long traceDurationMillis;
+        private final long[] sortedLatencies;
+
+        Result(
+                final int trackCount,
+                final long hitCount,
+                final long elapsedNanos,
+                final long traceDurationMillis,
+                final long[] sortedLatencies) {
+            this.trackCount = trackCount;
+            this.hitCount = hitCount;
+            this.elapsedNanos = elapsedNanos;
+            this.traceDurationMillis = traceDurationMillis;
+            this.sortedLatencies = sortedLatencies;
+        }
+
+        int getTrackCount() {
+            return trackCount;
+        }
+
+        long getHitCount() {
+            return hitCount;
+        }
+
+        long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /** Time between the first and the last recorded event, in ms. */
+        long getTraceDurationMillis() {
+            return traceDurationMillis;
+        }
+
+        double getHitsPerSecond() {
+            return elapsedNanos > 0 ? hitCount * NANOS_PER_SECOND / elapsedNanos : 0;
+        }
+
+        /**
+         * Returns the latency of a {@code track} call at the given percentile, nearest rank.
+         *
+         * @param percentile value between 0 and 100
+         * @return the latency in ns, or 0 if no event was tracked
+         */
+        long getLatencyPercentile(final double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+
+            double clamped = Math.max(0, Math.min(MAX_PERCENTILE, percentile));
+            int rank = (int) Math.ceil(clamped / MAX_PERCENTILE * sortedLatencies.length);
+            return sortedLatencies[Math.max(0, rank - 1)];
+        }
+
+        @NonNull @Override
+        public String toString() {
+            return String.format(
+                    Locale.US,
+                    "events=%d hits=%d elapsedMs=%d traceMs=%d hitsPerSec=%.1f"
+                            + " p50Ns=%d p90Ns=%d p99Ns=%d maxNs=%d",
+                    trackCount,
+                    hitCount,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    traceDurationMillis,
+                    getHitsPerSecond(),
+                    getLatencyPercentile(P50),
+                    getLatencyPercentile(P90),
+                    getLatencyPercentile(P99),
+                    getLatencyPercentile(MAX_PERCENTILE));
+        }
+    }
+
+    /** Hit sink which numbers sessions in start order so replays are comparable line by line. */
+    private static class ReplayHitProcessor implements MediaHitProcessor {
+        private final Writer hitWriter;
+        private int sessionCounter;
+        private long hitCount;
+
+        ReplayHitProcessor(final Writer hitWriter) {
+            this.hitWriter = hitWriter;
+        }
+
+        @Override
+        public String startSession() {
+            return Integer.toString(sessionCounter++);
+        }
+
+        @Override
+        public void processHit(final String sessionID, final MediaHit hit) {
+            hitCount++;
+
+            if (hitWriter == null) {
+                return;
+            }
+
+            try {
+                hitWriter.write(format(sessionID, hit));
+                hitWriter.write('\n');
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to write replayed hit", e);
+            }
+        }
+
+        @Override
+        public void endSession(final String sessionID) {}
+
+        @Override
+        public String getBackendSessionID(final String sessionID) {
+            return sessionID;
+        }
+
+        @Override
+        public String resumeSession(final String backendSessionID) {
+            return backendSessionID;
+        }
+
+        long getHitCount() {
+            return hitCount;
+        }
+    }
+
+    static String format(final String sessionID, final MediaHit hit) {
+        return sessionID
+                + '\t'
+                + hit.getEventType()
+                + '\t'
+                + hit.getPlayhead()
+                + '\t'
+                + hit.getTimeStamp()
+                + '\t'
+                + sorted(hit.getParams())
+                + '\t'
+                + sorted(hit.getCustomMetadata())
+                + '\t'
+                + sorted(hit.getQoEData());
+    }
+
+    private static <V> Map<String, V> sorted(final Map<String, V> map) {
+        return map != null ? new TreeMap<>(map) : Collections.<String, V>emptyMap();
+    }
+}
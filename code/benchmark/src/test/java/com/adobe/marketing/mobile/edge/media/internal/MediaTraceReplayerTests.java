@@ -0,0 +1,296 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import com.adobe.marketing.mobile.Event;
+import com.adobe.marketing.mobile.EventType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class MediaTraceReplayerTests {
+    ByteArrayOutputStream trace;
+    MediaTraceRecorder recorder;
+    StringBuilder liveHits;
+    MediaCollectionTracker tracker;
+
+    public MediaTraceReplayerTests() throws IOException {
+        trace = new ByteArrayOutputStream();
+        recorder = new MediaTraceRecorder(trace);
+        liveHits = new StringBuilder();
+        tracker = new MediaCollectionTracker(new LiveHitProcessor(liveHits), new HashMap<>());
+    }
+
+    static Event createTrackEvent(
+            final String eventName,
+            final MediaRuleName rule,
+            final Map<String, Object> params,
+            final Map<String, String> metadata,
+            final long ts) {
+        Map<String, Object> eventData = new HashMap<>();
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.ID, "tracker0");
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.SESSION_ID, "session0");
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_NAME, eventName);
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_CODE, rule.ordinal());
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_TIMESTAMP, ts);
+        eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_INTERNAL, false);
+
+        if (params != null) {
+            eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_PARAM, params);
+        }
+
+        if (metadata != null) {
+            eventData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_METADATA, metadata);
+        }
+
+        return new Event.Builder(
+                        "Media::TrackMedia",
+                        EventType.MEDIA,
+                        MediaInternalConstants.Media.EVENT_SOURCE_TRACK_MEDIA)
+                .setEventData(eventData)
+                .build();
+    }
+
+    void trackAndRecord(final Event event) throws IOException {
+        recorder.record(MediaTraceRecorder.RECORD_TRACK_EVENT, event);
+        tracker.track(event);
+    }
+
+    void recordSession() throws IOException {
+        MediaInfo mediaInfo = MediaInfo.create("id", "name", "vod", MediaType.Video, 60);
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("k1", "v1");
+
+        trackAndRecord(
+                createTrackEvent(
+                        MediaInternalConstants.EventDataKeys.MediaEventName.SESSION_START,
+                        MediaRuleName.MediaStart,
+                        mediaInfo.toObjectMap(),
+                        metadata,
+                        0));
+        trackAndRecord(
+                createTrackEvent(
+                        MediaInternalConstants.EventDataKeys.MediaEventName.PLAY,
+                        MediaRuleName.Play,
+                        null,
+                        null,
+                        0));
+
+        for (int i = 1; i <= 30; i++) {
+            Map<String, Object> params = new HashMap<>();
+            params.put(MediaInternalConstants.EventDataKeys.Tracker.PLAYHEAD, (double) i);
+            trackAndRecord(
+                    createTrackEvent(
+                            MediaInternalConstants.EventDataKeys.MediaEventName.PLAYHEAD_UPDATE,
+                            MediaRuleName.PlayheadUpdate,
+                            params,
+                            null,
+                            i * 1000L));
+        }
+
+        trackAndRecord(
+                createTrackEvent(
+                        MediaInternalConstants.EventDataKeys.MediaEventName.COMPLETE,
+                        MediaRuleName.MediaComplete,
+                        null,
+                        null,
+                        30000));
+        recorder.close();
+    }
+
+    MediaTraceReader openTrace() throws IOException {
+        return new MediaTraceReader(new ByteArrayInputStream(trace.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_reader_rejectsInvalidTrace() throws IOException {
+        new MediaTraceReader(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 0, 0, 0, 1}));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_reader_truncatedRecord() throws IOException {
+        recordSession();
+        byte[] bytes = trace.toByteArray();
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        MediaTraceReader reader = new MediaTraceReader(new ByteArrayInputStream(truncated));
+        while (reader.next() != null) {}
+    }
+
+    @Test
+    public void test_reader_returnsRecordedEvents() throws IOException {
+        recordSession();
+
+        MediaTraceReader reader = openTrace();
+        int count = 0;
+        MediaTraceReader.Record record;
+
+        while ((record = reader.next()) != null) {
+            assertFalse(record.isTrackerRequest());
+
+            Event event = record.toEvent();
+            assertEquals(EventType.MEDIA, event.getType());
+            assertEquals(MediaInternalConstants.Media.EVENT_SOURCE_TRACK_MEDIA, event.getSource());
+            count++;
+        }
+
+        assertEquals(33, count);
+    }
+
+    @Test
+    public void test_extensionEvents_areRecorded() throws IOException {
+        Event trackEvent =
+                createTrackEvent(
+                        MediaInternalConstants.EventDataKeys.MediaEventName.PLAY,
+                        MediaRuleName.Play,
+                        null,
+                        null,
+                        1000);
+        MediaExtension extension = new MediaExtension(null);
+
+        MediaExtension.setEventObserver(recorder);
+        try {
+            extension.handleMediaTrackEvent(trackEvent);
+        } finally {
+            MediaExtension.setEventObserver(null);
+        }
+        extension.handleMediaTrackEvent(trackEvent);
+        recorder.close();
+
+        MediaTraceReader reader = openTrace();
+        MediaTraceReader.Record record = reader.next();
+
+        assertEquals(MediaTraceRecorder.RECORD_TRACK_EVENT, record.type);
+        assertEquals(trackEvent.getTimestamp(), record.timestamp);
+        assertEquals(trackEvent.getEventData(), record.eventData);
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void test_replay_generatesSameHitsAsLiveTracking() throws IOException {
+        recordSession();
+
+        StringWriter replayedHits = new StringWriter();
+        MediaTraceReplayer.Result result =
+                new MediaTraceReplayer(openTrace(), replayedHits).replay();
+
+        assertEquals(liveHits.toString(), replayedHits.toString());
+        assertEquals(33, result.getTrackCount());
+        assertEquals(liveHits.toString().split("\n").length, result.getHitCount());
+        assertEquals(30000, result.getTraceDurationMillis());
+    }
+
+    @Test
+    public void test_replay_isDeterministic() throws IOException {
+        recordSession();
+
+        StringWriter first = new StringWriter();
+        StringWriter second = new StringWriter();
+        new MediaTraceReplayer(openTrace(), first).replay();
+        new MediaTraceReplayer(openTrace(), second).replay();
+
+        assertEquals(first.toString(), second.toString());
+    }
+
+    @Test
+    public void test_replay_usesRecordedTrackerConfig() throws IOException {
+        Map<String, Object> trackerConfig = new HashMap<>();
+        trackerConfig.put(MediaInternalConstants.EventDataKeys.Config.DOWNLOADED_CONTENT, true);
+
+        Map<String, Object> requestData = new HashMap<>();
+        requestData.put(MediaInternalConstants.EventDataKeys.Tracker.ID, "tracker0");
+        requestData.put(MediaInternalConstants.EventDataKeys.Tracker.EVENT_PARAM, trackerConfig);
+
+        recorder.record(
+                MediaTraceRecorder.RECORD_TRACKER_REQUEST,
+                new Event.Builder(
+                                "Media::CreateTrackerRequest",
+                                EventType.MEDIA,
+                                MediaInternalConstants.Media.EVENT_SOURCE_TRACKER_REQUEST)
+                        .setEventData(requestData)
+                        .build());
+        recordSession();
+
+        StringWriter replayedHits = new StringWriter();
+        new MediaTraceReplayer(openTrace(), replayedHits).replay();
+
+        String sessionStart = replayedHits.toString().split("\n")[0];
+        String downloaded = MediaCollectionConstants.Media.DOWNLOADED.key + "=true";
+        assertTrue(sessionStart.contains(downloaded));
+    }
+
+    @Test
+    public void test_result_latencyPercentiles() {
+        long[] latencies = new long[100];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = (i + 1) * 10L;
+        }
+
+        MediaTraceReplayer.Result result =
+                new MediaTraceReplayer.Result(100, 50, 2000000000L, 60000, latencies);
+
+        assertEquals(10, result.getLatencyPercentile(0));
+        assertEquals(500, result.getLatencyPercentile(50));
+        assertEquals(900, result.getLatencyPercentile(90));
+        assertEquals(990, result.getLatencyPercentile(99));
+        assertEquals(1000, result.getLatencyPercentile(100));
+        assertEquals(25.0, result.getHitsPerSecond(), 0.001);
+    }
+
+    @Test
+    public void test_result_noEvents() {
+        MediaTraceReplayer.Result result = new MediaTraceReplayer.Result(0, 0, 0, 0, new long[0]);
+
+        assertEquals(0, result.getLatencyPercentile(50));
+        assertEquals(0.0, result.getHitsPerSecond(), 0.001);
+    }
+
+    /** Formats the hits of the live tracker the same way as the replayer. */
+    static class LiveHitProcessor implements MediaHitProcessor {
+        private final StringBuilder hits;
+        private int sessionCounter;
+
+        LiveHitProcessor(final StringBuilder hits) {
+            this.hits = hits;
+        }
+
+        @Override
+        public String startSession() {
+            return Integer.toString(sessionCounter++);
+        }
+
+        @Override
+        public void processHit(final String sessionID, final MediaHit hit) {
+            hits.append(MediaTraceReplayer.format(sessionID, hit)).append('\n');
+        }
+
+        @Override
+        public void endSession(final String sessionID) {}
+
+        @Override
+        public String getBackendSessionID(final String sessionID) {
+            return sessionID;
+        }
+
+        @Override
+        public String resumeSession(final String backendSessionID) {
+            return backendSessionID;
+        }
+    }
+}
@@ -0,0 +1,974 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import androidx.annotation.VisibleForTesting;
+import com.adobe.marketing.mobile.services.HttpConnecting;
+import com.adobe.marketing.mobile.services.HttpMethod;
+import com.adobe.marketing.mobile.services.Log;
+import com.adobe.marketing.mobile.services.NetworkRequest;
+import com.adobe.marketing.mobile.services.Networking;
+import com.adobe.marketing.mobile.util.StringUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * {@link MediaHitProcessor} which sends the hits of a session to Edge in batches instead of one
+ * request per hit.
+ *
+ * <p>Hits are serialized with {@link MediaHitSerializer} into an {@code {"events":[...]}} body. A
+ * batch is closed once it holds {@code maxBatchBytes}, before a hit which is {@code
+ * maxBatchAgeMillis} or more newer than its first hit, and when the session ends. Bodies of at
+ * least {@code gzipThreshold} bytes are sent gzip encoded. A session has at most one request in
+ * flight, so its batches reach the server in hit order, while different sessions are sent
+ * independently.
+ *
+ * <p>Hits travel in two lanes. Lifecycle hits, see {@link #isPriorityHit(MediaHit)}, close the
+ * open batch and are sent right away, while pings and playback state hits form the bulk lane which
+ * is only closed by size or age. A priority batch is merged with the batches queued ahead of it, so
+ * it goes out with the next request of the session instead of waiting behind separate bulk
+ * requests, and the hit order of the session is kept.
+ *
+ * <p>When created with a {@link MediaSessionIdCache}, hits carry the backend session ID. The
+ * sessionStart hit is sent on its own and the following hits are held until the backend ID is
+ * read from the {@link #HANDLE_NEW_SESSION} handle of the sessionStart response, or supplied with
+ * {@link #resolveSession(String, String)}, then sent in batches. Up to {@link
+ * #MAX_HELD_HITS} hits are held per session, the oldest ping is dropped first beyond that. The
+ * backend ID is kept with the session once known, the cache is only a lookup for IDs resolved
+ * elsewhere, so evicting it does not stall the session. A session whose sessionStart request
+ * failed, or whose response carried no backend ID, is abandoned with its held hits, and at most
+ * {@link #MAX_UNRESOLVED_SESSIONS} ended sessions wait for their backend ID, the oldest one is
+ * abandoned beyond that. A session started elsewhere is continued with {@link
+ * #resumeSession(String)} and its backend ID.
+ *
+ * <p>Without a {@link MediaSessionIdCache}, hits after sessionStart carry the client session ID
+ * from {@link #startSession()}, which the backend does not know. This mode is for tests only, it
+ * exercises batching without a backend round trip.
+ *
+ * <p>When created with a {@link MediaRetryScheduler}, a request which fails because of the network,
+ * a timeout, throttling or a server error is sent again after a jittered backoff. The session keeps
+ * its request in flight until the retry completes, so no later batch overtakes it, and the
+ * batches queued behind it are bounded by dropping the oldest bulk batch first.
+ *
+ * <p>Hits with a sequence number are deduplicated by their {@link
+ * MediaHit#getIdempotencyKey(String)} for the client session ID. A hit whose key is waiting to be
+ * sent, or was among the last {@link #DEDUP_WINDOW} keys acknowledged by the server, such as a hit
+ * replayed after a snapshot restore, is dropped instead of sent. Keys of hits which are dropped
+ * before the server acknowledged them are forgotten, so a replay sends them again.
+ *
+ * <p>Hits replayed after a crash are not caught here: the window is kept in memory only, and the
+ * new process continues the session under a client session ID of its own, see {@link
+ * #resumeSession(String)}. For that case the XDM event ID is the safeguard. It is the idempotency
+ * key for the session ID the hit is sent with, the backend session ID once known, so a replayed
+ * hit carries the {@code _id} the server already received and is dropped there.
+ *
+ * <p>Hits are processed on the tracker thread and responses arrive on a network thread, so all
+ * state is guarded by this instance.
+ */
+class MediaBatchDispatcher implements MediaHitProcessor {
+    private static final String LOG_TAG = "MediaBatchDispatcher";
+
+    static final int DEFAULT_MAX_BATCH_BYTES = 32768; // 32 KB
+    static final long DEFAULT_MAX_BATCH_AGE_MILLIS = 60000; // 1 min
+    static final int DEFAULT_GZIP_THRESHOLD = 512;
+    static final int TIMEOUT_SECONDS = 5;
+    static final int MAX_HELD_HITS = 256;
+    static final int MAX_UNRESOLVED_SESSIONS = 8;
+    static final int DEDUP_WINDOW = 1024;
+
+    static final String HEADER_CONTENT_TYPE = "Content-Type";
+    static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    static final String CONTENT_TYPE_JSON = "application/json";
+    static final String CONTENT_ENCODING_GZIP = "gzip";
+
+    // Edge response handle carrying the backend session ID in response to sessionStart
+    static final String HANDLE_NEW_SESSION = "media-analytics:new-session";
+    static final String HANDLE_KEY = "handle";
+    static final String HANDLE_TYPE = "type";
+    static final String HANDLE_PAYLOAD = "payload";
+    static final String HANDLE_SESSION_ID = "sessionId";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] BATCH_START = "{\"events\":[".getBytes(UTF_8);
+    private static final byte[] BATCH_END = "]}".getBytes(UTF_8);
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_MULTIPLE_CHOICES = 300;
+    private static final int HTTP_REQUEST_TIMEOUT = 408;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    private final Networking networkService;
+    private final String url;
+    private final int maxBatchBytes;
+    private final long maxBatchAgeMillis;
+    private final int gzipThreshold;
+    private final MediaHitSerializer serializer;
+    private final Map<String, SessionBatches> sessions;
+    private final MediaSessionIdCache sessionIdCache;
+    private final MediaRetryScheduler retryScheduler;
+    private final Set<String> recentKeys;
+    private final Set<String> pendingKeys;
+    private final List<String> unresolvedSessions;
+
+    private long hitCount;
+    private long requestCount;
+    private long priorityRequestCount;
+    private long retryCount;
+    private long droppedBatchCount;
+    private long duplicateCount;
+    private long failedRequestCount;
+    private long abandonedSessionCount;
+    private long uncompressedBytes;
+    private long sentBytes;
+
+    @VisibleForTesting
+    MediaBatchDispatcher(final Networking networkService, final String url) {
+        this(
+                networkService,
+                url,
+                DEFAULT_MAX_BATCH_BYTES,
+                DEFAULT_MAX_BATCH_AGE_MILLIS,
+                DEFAULT_GZIP_THRESHOLD);
+    }
+
+    @VisibleForTesting
+    MediaBatchDispatcher(
+            final Networking networkService,
+            final String url,
+            final int maxBatchBytes,
+            final long maxBatchAgeMillis,
+            final int gzipThreshold) {
+        this(networkService, url, maxBatchBytes, maxBatchAgeMillis, gzipThreshold, null);
+    }
+
+    MediaBatchDispatcher(
+            final Networking networkService,
+            final String url,
+            final int maxBatchBytes,
+            final long maxBatchAgeMillis,
+            final int gzipThreshold,
+            final MediaSessionIdCache sessionIdCache) {
+        this(
+                networkService,
+                url,
+                maxBatchBytes,
+                maxBatchAgeMillis,
+                gzipThreshold,
+                sessionIdCache,
+                null);
+    }
+
+    MediaBatchDispatcher(
+            final Networking networkService,
+            final String url,
+            final int maxBatchBytes,
+            final long maxBatchAgeMillis,
+            final int gzipThreshold,
+            final MediaSessionIdCache sessionIdCache,
+            final MediaRetryScheduler retryScheduler) {
+        this.networkService = networkService;
+        this.url = url;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchAgeMillis = maxBatchAgeMillis;
+        this.gzipThreshold = gzipThreshold;
+        this.serializer = new MediaHitSerializer();
+        this.sessions = new HashMap<>();
+        this.sessionIdCache = sessionIdCache;
+        this.retryScheduler = retryScheduler;
+        this.unresolvedSessions = new ArrayList<>();
+        this.pendingKeys = new HashSet<>();
+        this.recentKeys =
+                Collections.newSetFromMap(
+                        new LinkedHashMap<String, Boolean>() {
+                            @Override
+                            protected boolean removeEldestEntry(
+                                    final Map.Entry<String, Boolean> eldest) {
+                                return size() > DEDUP_WINDOW;
+                            }
+                        });
+    }
+
+    @Override
+    public synchronized String startSession() {
+        String sessionID = UUID.randomUUID().toString();
+        sessions.put(sessionID, new SessionBatches());
+        return sessionID;
+    }
+
+    @Override
+    public synchronized String getBackendSessionID(final String sessionID) {
+        SessionBatches session = sessions.get(sessionID);
+
+        if (session == null) {
+            return null;
+        }
+
+        if (sessionIdCache == null && session.backendSessionID == null) {
+            // hits of the session carry its client session ID
+            return sessionID;
+        }
+
+        return session.backendSessionID;
+    }
+
+    /**
+     * Starts a session which continues a session the backend already knows, such as one started
+     * by another process. The session counts as started, so no sessionStart is expected and its
+     * hits are batched with {@code backendSessionID} right away.
+     *
+     * @param backendSessionID the session ID assigned by the backend
+     * @return the session ID to process the hits of the resumed session with
+     */
+    @Override
+    public synchronized String resumeSession(final String backendSessionID) {
+        if (StringUtils.isNullOrEmpty(backendSessionID)) {
+            return null;
+        }
+
+        String sessionID = UUID.randomUUID().toString();
+        SessionBatches session = new SessionBatches();
+        session.startSent = true;
+        session.backendSessionID = backendSessionID;
+        sessions.put(sessionID, session);
+
+        if (sessionIdCache != null) {
+            sessionIdCache.put(sessionID, backendSessionID);
+        }
+
+        return sessionID;
+    }
+
+    @Override
+    public synchronized void processHit(final String sessionID, final MediaHit hit) {
+        SessionBatches session = sessions.get(sessionID);
+
+        if (session == null || session.ended || session.abandoned) {
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "processHit - Session (%s) is not active, dropping hit (%s).",
+                    sessionID,
+                    hit.getEventType());
+            return;
+        }
+
+        String key = hit.getIdempotencyKey(sessionID);
+
+        if (key != null && (pendingKeys.contains(key) || recentKeys.contains(key))) {
+            duplicateCount++;
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "processHit - Hit (%s) of session (%s) was already sent, dropping it.",
+                    hit.getEventType(),
+                    sessionID);
+            return;
+        }
+
+        if (key != null) {
+            pendingKeys.add(key);
+        }
+
+        boolean sessionStart =
+                MediaCollectionConstants.EventType.SESSION_START.equals(hit.getEventType());
+
+        if (sessionIdCache == null) {
+            // sessionStart asks the backend for a session, it never carries one
+            String hitSessionID =
+                    session.backendSessionID != null ? session.backendSessionID : sessionID;
+            appendHit(sessionID, sessionStart ? null : hitSessionID, session, hit);
+            return;
+        }
+
+        if (session.backendSessionID == null) {
+            session.backendSessionID = sessionIdCache.get(sessionID);
+        }
+
+        if (session.backendSessionID != null) {
+            appendHit(sessionID, session.backendSessionID, session, hit);
+        } else if (!session.startSent && sessionStart) {
+            // the backend assigns the session ID in response to sessionStart, which as a priority
+            // hit is sent right away
+            session.startSent = true;
+            appendHit(sessionID, null, session, hit);
+        } else {
+            holdHit(sessionID, session, hit);
+        }
+    }
+
+    /**
+     * Records the backend session ID of a session and sends the hits held until now.
+     *
+     * @param sessionID the session ID from {@link #startSession()}
+     * @param backendSessionID the session ID assigned by the backend
+     */
+    synchronized void resolveSession(final String sessionID, final String backendSessionID) {
+        if (sessionIdCache == null || backendSessionID == null) {
+            return;
+        }
+
+        sessionIdCache.put(sessionID, backendSessionID);
+        SessionBatches session = sessions.get(sessionID);
+
+        if (session == null) {
+            return;
+        }
+
+        session.backendSessionID = backendSessionID;
+        session.abandoned = false;
+        unresolvedSessions.remove(sessionID);
+
+        for (MediaHit held : session.held) {
+            appendHit(sessionID, backendSessionID, session, held);
+        }
+        session.held.clear();
+
+        if (session.ended) {
+            session.closeBatch();
+        }
+        sendNext(sessionID, session);
+    }
+
+    /** Records the keys of hits acknowledged by the server, so a replay of them is dropped. */
+    private void acknowledgeKeys(final List<String> keys) {
+        for (String key : keys) {
+            pendingKeys.remove(key);
+            recentKeys.add(key);
+        }
+    }
+
+    /** Forgets the keys of hits which were dropped before reaching the server. */
+    private void releaseKeys(final List<String> keys) {
+        pendingKeys.removeAll(keys);
+    }
+
+    private void releaseHeldKeys(final String sessionID, final SessionBatches session) {
+        for (MediaHit held : session.held) {
+            pendingKeys.remove(held.getIdempotencyKey(sessionID));
+        }
+    }
+
+    private void appendHit(
+            final String sessionID,
+            final String xdmSessionID,
+            final SessionBatches session,
+            final MediaHit hit) {
+        // a hit which would stretch the open batch past its age starts a new one
+        if (session.getOpenBatchAge(hit.getTimeStamp()) >= maxBatchAgeMillis) {
+            session.closeBatch();
+            sendNext(sessionID, session);
+        }
+
+        // the event ID is built from the session ID the server sees, so it is the same for a hit
+        // sent again by another process which resumed the session
+        String key = hit.getIdempotencyKey(sessionID);
+        serializer.write(
+                xdmSessionID,
+                hit,
+                hit.getIdempotencyKey(xdmSessionID != null ? xdmSessionID : sessionID));
+        session.append(serializer, hit.getTimeStamp(), key);
+        hitCount++;
+
+        if (isPriorityHit(hit)) {
+            session.closeBatch(true);
+            sendNext(sessionID, session);
+        } else if (session.getOpenBatchSize() >= maxBatchBytes) {
+            session.closeBatch();
+            sendNext(sessionID, session);
+        }
+    }
+
+    /**
+     * Returns true if the hit belongs to the priority lane: the session start and end, ad start
+     * and end, and errors.
+     */
+    static boolean isPriorityHit(final MediaHit hit) {
+        String eventType = hit.getEventType();
+
+        return MediaCollectionConstants.EventType.SESSION_START.equals(eventType)
+                || MediaCollectionConstants.EventType.SESSION_COMPLETE.equals(eventType)
+                || MediaCollectionConstants.EventType.SESSION_END.equals(eventType)
+                || MediaCollectionConstants.EventType.AD_START.equals(eventType)
+                || MediaCollectionConstants.EventType.AD_COMPLETE.equals(eventType)
+                || MediaCollectionConstants.EventType.AD_SKIP.equals(eventType)
+                || MediaCollectionConstants.EventType.ERROR.equals(eventType);
+    }
+
+    private void holdHit(final String sessionID, final SessionBatches session, final MediaHit hit) {
+        if (session.held.size() >= MAX_HELD_HITS) {
+            int dropped = 0;
+
+            for (int i = 0; i < session.held.size(); i++) {
+                if (MediaCollectionConstants.EventType.PING.equals(
+                        session.held.get(i).getEventType())) {
+                    dropped = i;
+                    break;
+                }
+            }
+
+            pendingKeys.remove(session.held.remove(dropped).getIdempotencyKey(sessionID));
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "holdHit - Too many hits waiting for the backend session ID, dropping the"
+                            + " oldest one.");
+        }
+
+        session.held.add(hit);
+    }
+
+    @Override
+    public synchronized void endSession(final String sessionID) {
+        SessionBatches session = sessions.get(sessionID);
+
+        if (session == null) {
+            return;
+        }
+
+        session.ended = true;
+
+        if (sessionIdCache != null && session.backendSessionID == null && !session.abandoned) {
+            if (!session.startSent) {
+                // no sessionStart was sent, so the backend will never assign an ID
+                abandonSession(sessionID, session, "it never started");
+            } else {
+                unresolvedSessions.add(sessionID);
+
+                if (unresolvedSessions.size() > MAX_UNRESOLVED_SESSIONS) {
+                    String oldest = unresolvedSessions.get(0);
+                    abandonSession(
+                            oldest, sessions.get(oldest), "its backend session ID never arrived");
+                }
+            }
+        }
+
+        // held hits go out with the open batch once the backend session ID is known
+        if (session.held.isEmpty()) {
+            session.closeBatch();
+            sendNext(sessionID, session);
+        }
+    }
+
+    /**
+     * Drops the held hits of a session which will not get a backend session ID. Hits which follow
+     * are dropped, and the session is removed once it ended and its request completed.
+     */
+    private void abandonSession(
+            final String sessionID, final SessionBatches session, final String reason) {
+        unresolvedSessions.remove(sessionID);
+
+        if (session == null) {
+            return;
+        }
+
+        abandonedSessionCount++;
+        Log.warning(
+                MediaInternalConstants.LOG_TAG,
+                LOG_TAG,
+                "abandonSession - Dropping session (%s) and its %d held hits, as %s.",
+                sessionID,
+                session.held.size(),
+                reason);
+
+        session.abandoned = true;
+        releaseHeldKeys(sessionID, session);
+        session.held.clear();
+
+        if (session.ended) {
+            session.closeBatch();
+            sendNext(sessionID, session);
+        }
+    }
+
+    /** Closes and sends the open batch of every session, without ending the sessions. */
+    synchronized void flush() {
+        // sending may remove ended sessions, iterate over a copy
+        for (Map.Entry<String, SessionBatches> entry : new ArrayList<>(sessions.entrySet())) {
+            entry.getValue().closeBatch();
+            sendNext(entry.getKey(), entry.getValue());
+        }
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /** Returns the number of requests which carried a priority hit. */
+    synchronized long getPriorityRequestCount() {
+        return priorityRequestCount;
+    }
+
+    synchronized long getFailedRequestCount() {
+        return failedRequestCount;
+    }
+
+    /** Returns the number of sessions dropped because they could not get a backend session ID. */
+    synchronized long getAbandonedSessionCount() {
+        return abandonedSessionCount;
+    }
+
+    synchronized long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    synchronized long getRetryCount() {
+        return retryCount;
+    }
+
+    /** Returns the number of batches dropped to bound the batches waiting behind a retry. */
+    synchronized long getDroppedBatchCount() {
+        return droppedBatchCount;
+    }
+
+    /** Returns the size of all request bodies before compression. */
+    synchronized long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /** Returns the size of all request bodies as sent. */
+    synchronized long getSentBytes() {
+        return sentBytes;
+    }
+
+    synchronized int getActiveSessionCount() {
+        return sessions.size();
+    }
+
+    private void sendNext(final String sessionID, final SessionBatches session) {
+        if (session.inFlight) {
+            if (retryScheduler != null) {
+                trimQueue(sessionID, session);
+            }
+            return;
+        }
+
+        ReadyBatch batch = session.pollRequest();
+
+        if (batch == null) {
+            if (session.ended && session.held.isEmpty()) {
+                sessions.remove(sessionID);
+                unresolvedSessions.remove(sessionID);
+
+                if (sessionIdCache != null) {
+                    sessionIdCache.remove(sessionID);
+                }
+            }
+            return;
+        }
+
+        if (networkService == null) {
+            Log.warning(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "sendNext - Network service is not available, dropping batch for session"
+                            + " (%s).",
+                    sessionID);
+            releaseKeys(batch.keys);
+            sendNext(sessionID, session);
+            return;
+        }
+
+        byte[] body = batch.body;
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HEADER_CONTENT_TYPE, CONTENT_TYPE_JSON);
+
+        byte[] encoded = body;
+        if (body.length >= gzipThreshold) {
+            byte[] compressed = gzip(body);
+
+            if (compressed != null) {
+                encoded = compressed;
+                headers.put(HEADER_CONTENT_ENCODING, CONTENT_ENCODING_GZIP);
+            }
+        }
+
+        if (batch.priority) {
+            priorityRequestCount++;
+        }
+        uncompressedBytes += body.length;
+        session.inFlight = true;
+        session.inFlightKeys = batch.keys;
+        session.inFlightRequest =
+                new NetworkRequest(
+                        url, HttpMethod.POST, encoded, headers, TIMEOUT_SECONDS, TIMEOUT_SECONDS);
+        session.attempts = 0;
+        send(sessionID, session);
+    }
+
+    private void send(final String sessionID, final SessionBatches session) {
+        requestCount++;
+        sentBytes += session.inFlightRequest.getBody().length;
+        networkService.connectAsync(
+                session.inFlightRequest, connection -> onResponse(sessionID, connection));
+    }
+
+    private synchronized void onResponse(final String sessionID, final HttpConnecting connection) {
+        int responseCode = connection != null ? connection.getResponseCode() : -1;
+        boolean succeeded = responseCode >= HTTP_OK && responseCode < HTTP_MULTIPLE_CHOICES;
+        boolean awaitsBackendID = isAwaitingBackendSessionID(sessions.get(sessionID));
+        String backendSessionID =
+                succeeded && awaitsBackendID ? readBackendSessionID(connection) : null;
+
+        if (!succeeded) {
+            failedRequestCount++;
+            Log.warning(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "onResponse - Batch request for session (%s) failed with response code (%d).",
+                    sessionID,
+                    responseCode);
+        }
+
+        if (connection != null) {
+            connection.close();
+        }
+
+        if (succeeded && retryScheduler != null) {
+            retryScheduler.onSuccess();
+        }
+
+        SessionBatches session = sessions.get(sessionID);
+
+        if (session == null) {
+            return;
+        }
+
+        if (!succeeded
+                && retryScheduler != null
+                && isRetryable(responseCode)
+                && retryScheduler.tryAcquire(session.attempts)) {
+            long delay = retryScheduler.getDelay(session.attempts);
+            session.attempts++;
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "onResponse - Retrying batch request for session (%s) in %d ms.",
+                    sessionID,
+                    delay);
+            // the request stays in flight, so later batches wait for the retry
+            retryScheduler.schedule(() -> retry(sessionID), delay);
+            return;
+        }
+
+        if (succeeded) {
+            acknowledgeKeys(session.inFlightKeys);
+        } else {
+            releaseKeys(session.inFlightKeys);
+        }
+
+        session.inFlight = false;
+        session.inFlightRequest = null;
+        session.inFlightKeys = Collections.emptyList();
+
+        if (backendSessionID != null) {
+            // resolving sends the held hits and the next batch
+            resolveSession(sessionID, backendSessionID);
+            return;
+        }
+
+        if (awaitsBackendID && !session.abandoned) {
+            abandonSession(
+                    sessionID,
+                    session,
+                    succeeded
+                            ? "its sessionStart response carried no session ID"
+                            : "its sessionStart request failed");
+        }
+
+        sendNext(sessionID, session);
+    }
+
+    /** Returns whether the request in flight for a session is its unresolved sessionStart. */
+    private boolean isAwaitingBackendSessionID(final SessionBatches session) {
+        // only the sessionStart request is sent before the backend session ID is known, a session
+        // abandoned meanwhile stays abandoned
+        return sessionIdCache != null
+                && session != null
+                && session.startSent
+                && !session.abandoned
+                && session.backendSessionID == null;
+    }
+
+    /**
+     * Reads the backend session ID from the {@link #HANDLE_NEW_SESSION} handle of an Edge response,
+     * which looks like {@code {"handle":[{"type":"media-analytics:new-session",
+     * "payload":[{"sessionId":"..."}]}]}}.
+     *
+     * @param connection the response to the sessionStart request
+     * @return the backend session ID, or null if the response carries none
+     */
+    static String readBackendSessionID(final HttpConnecting connection) {
+        InputStream in = connection != null ? connection.getInputStream() : null;
+
+        if (in == null) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+
+            JSONArray handles =
+                    new JSONObject(new String(body.toByteArray(), UTF_8)).optJSONArray(HANDLE_KEY);
+
+            for (int i = 0; handles != null && i < handles.length(); i++) {
+                JSONObject handle = handles.optJSONObject(i);
+
+                if (handle == null || !HANDLE_NEW_SESSION.equals(handle.optString(HANDLE_TYPE))) {
+                    continue;
+                }
+
+                JSONArray payload = handle.optJSONArray(HANDLE_PAYLOAD);
+                JSONObject item = payload != null ? payload.optJSONObject(0) : null;
+                String backendSessionID =
+                        item != null ? item.optString(HANDLE_SESSION_ID, null) : null;
+
+                if (!StringUtils.isNullOrEmpty(backendSessionID)) {
+                    return backendSessionID;
+                }
+            }
+        } catch (IOException | JSONException e) {
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "readBackendSessionID - Unable to read the sessionStart response: %s",
+                    e.getMessage());
+        }
+
+        return null;
+    }
+
+    private synchronized void retry(final String sessionID) {
+        SessionBatches session = sessions.get(sessionID);
+
+        if (session == null || session.inFlightRequest == null) {
+            return;
+        }
+
+        retryCount++;
+        send(sessionID, session);
+    }
+
+    /** Returns true for failures which may go away: no response, timeouts, throttling. */
+    static boolean isRetryable(final int responseCode) {
+        return responseCode < 0
+                || responseCode == HTTP_REQUEST_TIMEOUT
+                || responseCode == HTTP_TOO_MANY_REQUESTS
+                || responseCode >= HTTP_SERVER_ERROR;
+    }
+
+    private void trimQueue(final String sessionID, final SessionBatches session) {
+        ReadyBatch dropped;
+
+        while (session.readyBytes > retryScheduler.getMaxQueuedBytes()
+                && (dropped = session.dropOldestBulkBatch()) != null) {
+            droppedBatchCount++;
+            releaseKeys(dropped.keys);
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "trimQueue - Too many batches waiting for the retry of session (%s), dropping"
+                            + " the oldest one.",
+                    sessionID);
+        }
+    }
+
+    static byte[] gzip(final byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+
+        try {
+            GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+            gzipOut.write(body);
+            gzipOut.close();
+        } catch (IOException e) {
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "gzip - Unable to compress request body, sending it uncompressed: %s",
+                    e.getLocalizedMessage());
+            return null;
+        }
+
+        return out.toByteArray();
+    }
+
+    /** A closed batch waiting to be sent, with the idempotency keys of its hits. */
+    private static class ReadyBatch {
+        final byte[] body;
+        final boolean priority;
+        final List<String> keys;
+
+        ReadyBatch(final byte[] body, final boolean priority, final List<String> keys) {
+            this.body = body;
+            this.priority = priority;
+            this.keys = keys;
+        }
+    }
+
+    /** Open batch and the closed batches waiting to be sent for one session. */
+    private static class SessionBatches {
+        final List<ReadyBatch> ready = new ArrayList<>();
+        final List<MediaHit> held = new ArrayList<>();
+        final ByteArrayOutputStream open = new ByteArrayOutputStream();
+        List<String> openKeys = new ArrayList<>();
+        int readyBytes;
+        int openHitCount;
+        long openFirstTS;
+        boolean inFlight;
+        NetworkRequest inFlightRequest;
+        List<String> inFlightKeys = Collections.emptyList();
+        int attempts;
+        boolean ended;
+        boolean startSent;
+        boolean abandoned;
+        String backendSessionID;
+
+        void append(final MediaHitSerializer serializer, final long ts, final String key) {
+            if (openHitCount == 0) {
+                open.write(BATCH_START, 0, BATCH_START.length);
+                openFirstTS = ts;
+            } else {
+                open.write(',');
+            }
+
+            try {
+                serializer.writeTo(open);
+            } catch (IOException e) {
+                // ByteArrayOutputStream does not throw
+            }
+
+            openHitCount++;
+            if (key != null) {
+                openKeys.add(key);
+            }
+        }
+
+        int getOpenBatchSize() {
+            return open.size();
+        }
+
+        long getOpenBatchAge(final long ts) {
+            return openHitCount > 0 ? ts - openFirstTS : 0;
+        }
+
+        void closeBatch() {
+            closeBatch(false);
+        }
+
+        void closeBatch(final boolean priority) {
+            if (openHitCount == 0) {
+                return;
+            }
+
+            open.write(BATCH_END, 0, BATCH_END.length);
+            ReadyBatch batch = new ReadyBatch(open.toByteArray(), priority, openKeys);
+            ready.add(batch);
+            readyBytes += batch.body.length;
+            open.reset();
+            openHitCount = 0;
+            openKeys = new ArrayList<>();
+        }
+
+        private int getLastPriorityIndex() {
+            for (int i = ready.size() - 1; i >= 0; i--) {
+                if (ready.get(i).priority) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Returns the batch of the next request, or null if no batch is ready. The batches queued
+         * up to the last priority batch are merged into one.
+         */
+        ReadyBatch pollRequest() {
+            if (ready.isEmpty()) {
+                return null;
+            }
+
+            int count = Math.max(1, getLastPriorityIndex() + 1);
+
+            if (count == 1) {
+                return remove(0);
+            }
+
+            ByteArrayOutputStream merged = new ByteArrayOutputStream(readyBytes);
+            merged.write(BATCH_START, 0, BATCH_START.length);
+            List<String> keys = new ArrayList<>();
+
+            for (int i = 0; i < count; i++) {
+                ReadyBatch next = remove(0);
+                byte[] batch = next.body;
+                keys.addAll(next.keys);
+
+                if (i > 0) {
+                    merged.write(',');
+                }
+
+                merged.write(
+                        batch,
+                        BATCH_START.length,
+                        batch.length - BATCH_START.length - BATCH_END.length);
+            }
+
+            merged.write(BATCH_END, 0, BATCH_END.length);
+            return new ReadyBatch(merged.toByteArray(), true, keys);
+        }
+
+        /**
+         * Drops the oldest batch which was not closed by a priority hit.
+         *
+         * @return the dropped batch, or null if every batch is a priority batch
+         */
+        ReadyBatch dropOldestBulkBatch() {
+            for (int i = 0; i < ready.size(); i++) {
+                if (!ready.get(i).priority) {
+                    return remove(i);
+                }
+            }
+
+            return null;
+        }
+
+        private ReadyBatch remove(final int index) {
+            ReadyBatch batch = ready.remove(index);
+            readyBytes -= batch.body.length;
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Turns the wall clock timestamps of tracker events into a monotonic timeline, so a clock change
+ * on the device does not look like elapsed playback time to the idle, content start and session
+ * timeout rules of {@link MediaCollectionTracker}.
+ *
+ * <p>While a session is tracked, events arrive at least every second, so the time between two
+ * events is normally short. A timestamp before the previous one is treated as the clock going
+ * back and no time elapses. A timestamp more than {@code maxJumpMillis} after the previous one is
+ * treated as the clock going forward and only {@code maxJumpMillis} elapse. Either way the offset
+ * is kept for the following events, and the correction is counted. The offset is dropped when the
+ * timeline is re-anchored for a new session, see {@link #reanchor(long)}.
+ */
+class MediaClockNormalizer {
+    private final long maxJumpMillis;
+    private boolean started;
+    private long lastEventTS;
+    private long lastTS;
+    private long correctionCount;
+
+    MediaClockNormalizer(final long maxJumpMillis) {
+        this.maxJumpMillis = maxJumpMillis;
+    }
+
+    /**
+     * Returns the normalized timestamp for an event.
+     *
+     * @param eventTS the wall clock timestamp of the event
+     * @return the timestamp on the monotonic timeline, never before the previous one
+     */
+    long normalize(final long eventTS) {
+        if (!started) {
+            started = true;
+            lastEventTS = eventTS;
+            lastTS = eventTS;
+            return eventTS;
+        }
+
+        long elapsed = eventTS - lastEventTS;
+        lastEventTS = eventTS;
+
+        if (elapsed < 0) {
+            elapsed = 0;
+            correctionCount++;
+        } else if (elapsed > maxJumpMillis) {
+            elapsed = maxJumpMillis;
+            correctionCount++;
+        }
+
+        lastTS += elapsed;
+        return lastTS;
+    }
+
+    /**
+     * Restarts the timeline at the wall clock timestamp of an event, so the offset of earlier
+     * corrections does not carry over into a new session.
+     *
+     * @param eventTS the wall clock timestamp of the event starting the session
+     */
+    void reanchor(final long eventTS) {
+        started = true;
+        lastEventTS = eventTS;
+        lastTS = eventTS;
+    }
+
+    /** Returns how many timestamps were corrected for a clock change. */
+    long getCorrectionCount() {
+        return correctionCount;
+    }
+
+    /**
+     * Writes the timeline state to a tracker snapshot, see {@link
+     * MediaCollectionTracker#snapshot()}.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    void writeTo(final DataOutputStream out) throws IOException {
+        out.writeBoolean(started);
+        out.writeLong(lastEventTS);
+        out.writeLong(lastTS);
+        out.writeLong(correctionCount);
+    }
+
+    /**
+     * Reads the timeline state written by {@link #writeTo(DataOutputStream)}.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the stream is truncated
+     */
+    void readFrom(final DataInputStream in) throws IOException {
+        started = in.readBoolean();
+        lastEventTS = in.readLong();
+        lastTS = in.readLong();
+        correctionCount = in.readLong();
+    }
+}
@@ -16,98 +16,112 @@ import java.util.Map;
 
 class MediaCollectionHelper {
 
-    static final Map<String, ParamTypeMapping> standardMediaMetadataMapping = new HashMap<>();
-    static final Map<String, ParamTypeMapping> standardAdMetadataMapping = new HashMap<>();
+    /**
+     * Holds the standard metadata mappings, so they are only built once a session hit needs them
+     * and not when the extension registers.
+     */
+    private static final class StandardMetadataMapping {
+        static final Map<String, ParamTypeMapping> MEDIA = createMediaMapping();
+        static final Map<String, ParamTypeMapping> AD = createAdMapping();
+    }
 
-    static {
-        standardMediaMetadataMapping.put(
+    private static Map<String, ParamTypeMapping> createMediaMapping() {
+        Map<String, ParamTypeMapping> mapping = new HashMap<>();
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.SHOW,
                 MediaCollectionConstants.StandardMediaMetadata.SHOW);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.SEASON,
                 MediaCollectionConstants.StandardMediaMetadata.SEASON);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.EPISODE,
                 MediaCollectionConstants.StandardMediaMetadata.EPISODE);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.ASSET_ID,
                 MediaCollectionConstants.StandardMediaMetadata.ASSET_ID);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.GENRE,
                 MediaCollectionConstants.StandardMediaMetadata.GENRE);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.FIRST_AIR_DATE,
                 MediaCollectionConstants.StandardMediaMetadata.FIRST_AIR_DATE);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.FIRST_DIGITAL_DATE,
                 MediaCollectionConstants.StandardMediaMetadata.FIRST_DIGITAL_DATE);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.RATING,
                 MediaCollectionConstants.StandardMediaMetadata.RATING);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.ORIGINATOR,
                 MediaCollectionConstants.StandardMediaMetadata.ORIGINATOR);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.NETWORK,
                 MediaCollectionConstants.StandardMediaMetadata.NETWORK);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.SHOW_TYPE,
                 MediaCollectionConstants.StandardMediaMetadata.SHOW_TYPE);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.AD_LOAD,
                 MediaCollectionConstants.StandardMediaMetadata.AD_LOAD);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.MVPD,
                 MediaCollectionConstants.StandardMediaMetadata.MVPD);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.AUTH,
                 MediaCollectionConstants.StandardMediaMetadata.AUTH);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.DAY_PART,
                 MediaCollectionConstants.StandardMediaMetadata.DAY_PART);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.FEED,
                 MediaCollectionConstants.StandardMediaMetadata.FEED);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.STREAM_FORMAT,
                 MediaCollectionConstants.StandardMediaMetadata.STREAM_FORMAT);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.ARTIST,
                 MediaCollectionConstants.StandardMediaMetadata.ARTIST);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.ALBUM,
                 MediaCollectionConstants.StandardMediaMetadata.ALBUM);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.LABEL,
                 MediaCollectionConstants.StandardMediaMetadata.LABEL);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.AUTHOR,
                 MediaCollectionConstants.StandardMediaMetadata.AUTHOR);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.STATION,
                 MediaCollectionConstants.StandardMediaMetadata.STATION);
-        standardMediaMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardMediaMetadata.PUBLISHER,
                 MediaCollectionConstants.StandardMediaMetadata.PUBLISHER);
 
-        standardAdMetadataMapping.put(
+        return mapping;
+    }
+
+    private static Map<String, ParamTypeMapping> createAdMapping() {
+        Map<String, ParamTypeMapping> mapping = new HashMap<>();
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardAdMetadata.ADVERTISER,
                 MediaCollectionConstants.StandardAdMetadata.ADVERTISER);
-        standardAdMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardAdMetadata.CAMPAIGN_ID,
                 MediaCollectionConstants.StandardAdMetadata.CAMPAIGN_ID);
-        standardAdMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardAdMetadata.CREATIVE_ID,
                 MediaCollectionConstants.StandardAdMetadata.CREATIVE_ID);
-        standardAdMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardAdMetadata.PLACEMENT_ID,
                 MediaCollectionConstants.StandardAdMetadata.PLACEMENT_ID);
-        standardAdMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardAdMetadata.SITE_ID,
                 MediaCollectionConstants.StandardAdMetadata.SITE_ID);
-        standardAdMetadataMapping.put(
+        mapping.put(
                 MediaInternalConstants.EventDataKeys.StandardAdMetadata.CREATIVE_URL,
                 MediaCollectionConstants.StandardAdMetadata.CREATIVE_URL);
+
+        return mapping;
     }
 
     static boolean isStandardMetadata(final Map<String, ParamTypeMapping> dict, final String key) {
@@ -141,8 +155,9 @@ class MediaCollectionHelper {
         Map<String, String> metadata = mediaContext.getMediaMetadata();
 
         for (Map.Entry<String, String> entry : metadata.entrySet()) {
-            if (isStandardMetadata(standardMediaMetadataMapping, entry.getKey())) {
-                String newKey = getMediaCollectionKey(standardMediaMetadataMapping, entry.getKey());
+            if (isStandardMetadata(StandardMetadataMapping.MEDIA, entry.getKey())) {
+                String newKey =
+                        getMediaCollectionKey(StandardMetadataMapping.MEDIA, entry.getKey());
                 // Add string values for standard metadata
                 retMap.put(newKey, entry.getValue());
             }
@@ -157,7 +172,7 @@ class MediaCollectionHelper {
         Map<String, String> metadata = mediaContext.getMediaMetadata();
 
         for (Map.Entry<String, String> entry : metadata.entrySet()) {
-            if (!isStandardMetadata(standardMediaMetadataMapping, entry.getKey())) {
+            if (!isStandardMetadata(StandardMetadataMapping.MEDIA, entry.getKey())) {
                 retMap.put(entry.getKey(), entry.getValue());
             }
         }
@@ -195,8 +210,8 @@ class MediaCollectionHelper {
         Map<String, String> metadata = mediaContext.getAdMetadata();
 
         for (Map.Entry<String, String> entry : metadata.entrySet()) {
-            if (isStandardMetadata(standardAdMetadataMapping, entry.getKey())) {
-                String newKey = getMediaCollectionKey(standardAdMetadataMapping, entry.getKey());
+            if (isStandardMetadata(StandardMetadataMapping.AD, entry.getKey())) {
+                String newKey = getMediaCollectionKey(StandardMetadataMapping.AD, entry.getKey());
                 retMap.put(newKey, entry.getValue());
             }
         }
@@ -210,7 +225,7 @@ class MediaCollectionHelper {
         Map<String, String> metadata = mediaContext.getAdMetadata();
 
         for (Map.Entry<String, String> entry : metadata.entrySet()) {
-            if (!isStandardMetadata(standardAdMetadataMapping, entry.getKey())) {
+            if (!isStandardMetadata(StandardMetadataMapping.AD, entry.getKey())) {
                 retMap.put(entry.getKey(), entry.getValue());
             }
         }
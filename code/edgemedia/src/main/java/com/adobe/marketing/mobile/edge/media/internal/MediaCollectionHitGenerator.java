@@ -13,6 +13,9 @@ package com.adobe.marketing.mobile.edge.media.internal;
 
 import com.adobe.marketing.mobile.services.Log;
 import com.adobe.marketing.mobile.util.DataReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,13 +29,19 @@ class MediaCollectionHitGenerator {
     private final MediaHitProcessor mediaHitProcessor;
     private final Map<String, Object> mediaConfig;
     private final boolean downloadedContent;
+    private final MediaPingPolicy pingPolicy;
+    private final MediaMetrics metrics;
+    // what was last sent per section, only set in delta mode
+    private final MediaHitSection mediaSection, adSection, chapterSection, qoeSection;
     private Map<String, Object> lastQOEData;
     private String sessionID;
     private boolean isTracking;
     private long interval;
+    private boolean granularAdTracking;
     private long refTS;
     private MediaPlayBackState previousState;
     private long previousStateTS;
+    private long hitSequence;
     private final String refSessionId;
 
     MediaCollectionHitGenerator(
@@ -41,9 +50,32 @@ class MediaCollectionHitGenerator {
             final Map<String, Object> config,
             final long refTS,
             final String refSessionId) {
+        this(context, hitProcessor, config, refTS, refSessionId, MediaPingPolicy.DEFAULT);
+    }
+
+    MediaCollectionHitGenerator(
+            final MediaContext context,
+            final MediaHitProcessor hitProcessor,
+            final Map<String, Object> config,
+            final long refTS,
+            final String refSessionId,
+            final MediaPingPolicy pingPolicy) {
+        this(context, hitProcessor, config, refTS, refSessionId, pingPolicy, true);
+    }
+
+    private MediaCollectionHitGenerator(
+            final MediaContext context,
+            final MediaHitProcessor hitProcessor,
+            final Map<String, Object> config,
+            final long refTS,
+            final String refSessionId,
+            final MediaPingPolicy pingPolicy,
+            final boolean startSession) {
         mediaContext = context;
         mediaHitProcessor = hitProcessor;
         mediaConfig = config;
+        this.pingPolicy = pingPolicy;
+        metrics = MediaMetrics.getInstance();
 
         this.refTS = refTS;
         this.refSessionId = refSessionId;
@@ -58,7 +90,120 @@ class MediaCollectionHitGenerator {
 
         interval = downloadedContent ? DEFAULT_OFFLINE_PING_INTERVAL : DEFAULT_ONLINE_PING_INTERVAL;
 
-        startTrackingSession();
+        boolean deltaHits =
+                DataReader.optBoolean(
+                        mediaConfig, MediaInternalConstants.EventDataKeys.Config.DELTA_HITS, false);
+        if (deltaHits) {
+            // the session ID links restarted sessions, so the backend needs it on every start
+            mediaSection =
+                    new MediaHitSection(
+                            MediaCollectionConstants.Delta.MEDIA.key,
+                            true,
+                            MediaInternalConstants.EventDataKeys.Tracker.SESSION_ID);
+            adSection = new MediaHitSection(MediaCollectionConstants.Delta.AD.key, true);
+            chapterSection = new MediaHitSection(MediaCollectionConstants.Delta.CHAPTER.key, true);
+            // error details only apply to the error hit
+            qoeSection =
+                    new MediaHitSection(
+                            MediaCollectionConstants.Delta.QOE.key,
+                            false,
+                            MediaCollectionConstants.QoE.ERROR_ID.key,
+                            MediaCollectionConstants.QoE.ERROR_SOURCE.key);
+        } else {
+            mediaSection = null;
+            adSection = null;
+            chapterSection = null;
+            qoeSection = null;
+        }
+
+        if (startSession) {
+            startTrackingSession();
+        }
+    }
+
+    /**
+     * Reads a generator written with {@link #writeTo(DataOutputStream)}. The restored generator
+     * continues the session it was tracking, no session is started on {@code hitProcessor}. A
+     * session {@code hitProcessor} does not know is resumed with the backend session ID in the
+     * snapshot, see {@link MediaHitProcessor#resumeSession(String)}. Without a backend session ID,
+     * only the processor which started the session can continue it.
+     *
+     * @param context the restored {@link MediaContext} of the session
+     * @param hitProcessor the {@link MediaHitProcessor} to send the hits of the session to
+     * @param config the tracker config
+     * @param pingPolicy the {@link MediaPingPolicy} of the tracker
+     * @param in the stream to read from
+     * @return the restored generator
+     * @throws IOException if the stream cannot be read or does not hold a valid generator
+     */
+    static MediaCollectionHitGenerator readFrom(
+            final MediaContext context,
+            final MediaHitProcessor hitProcessor,
+            final Map<String, Object> config,
+            final MediaPingPolicy pingPolicy,
+            final DataInputStream in)
+            throws IOException {
+        String refSessionId = MediaEventTrace.readString(in);
+        long refTS = in.readLong();
+
+        MediaCollectionHitGenerator generator =
+                new MediaCollectionHitGenerator(
+                        context, hitProcessor, config, refTS, refSessionId, pingPolicy, false);
+
+        String sessionID = MediaEventTrace.readString(in);
+        String backendSessionID = MediaEventTrace.readString(in);
+
+        if (sessionID != null
+                && backendSessionID != null
+                && !backendSessionID.equals(hitProcessor.getBackendSessionID(sessionID))) {
+            // the session was started by another hit processor, continue it under an ID this one
+            // issued
+            sessionID = hitProcessor.resumeSession(backendSessionID);
+        }
+
+        generator.sessionID = sessionID;
+        generator.isTracking = in.readBoolean() && generator.sessionID != null;
+        generator.interval = in.readLong();
+        generator.granularAdTracking = in.readBoolean();
+
+        int previousState = in.readByte();
+        MediaPlayBackState[] playStates = MediaPlayBackState.values();
+        if (previousState < 0 || previousState >= playStates.length) {
+            throw new IOException("Invalid previous state " + previousState + " in hit generator");
+        }
+
+        generator.previousState = playStates[previousState];
+        generator.previousStateTS = in.readLong();
+        generator.hitSequence = in.readLong();
+
+        Map<String, Object> lastQoEData = MediaEventTrace.readMap(in);
+        if (lastQoEData != null) {
+            generator.lastQOEData = lastQoEData;
+        }
+
+        return generator;
+    }
+
+    /**
+     * Writes the session state of this generator to a tracker snapshot, see {@link
+     * MediaCollectionTracker#snapshot()}.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    void writeTo(final DataOutputStream out) throws IOException {
+        MediaEventTrace.writeValue(out, refSessionId);
+        out.writeLong(refTS);
+        MediaEventTrace.writeValue(out, sessionID);
+        MediaEventTrace.writeValue(
+                out, sessionID != null ? mediaHitProcessor.getBackendSessionID(sessionID) : null);
+        out.writeBoolean(isTracking);
+        out.writeLong(interval);
+        out.writeBoolean(granularAdTracking);
+        out.writeByte(previousState.ordinal());
+        out.writeLong(previousStateTS);
+        out.writeLong(hitSequence);
+        MediaEventTrace.writeValue(out, lastQOEData);
     }
 
     void processMediaStart() {
@@ -87,6 +232,8 @@ class MediaCollectionHitGenerator {
         Map<String, String> customMetadata =
                 MediaCollectionHelper.extractMediaMetadata(mediaContext);
 
+        flagTrimmedMetadata(params);
+        reduceToDelta(mediaSection, params, customMetadata);
         generateHit(MediaCollectionConstants.EventType.SESSION_START, params, customMetadata);
     }
 
@@ -116,10 +263,12 @@ class MediaCollectionHitGenerator {
     }
 
     void processAdStart() {
+        granularAdTracking =
+                !downloadedContent && mediaContext.getMediaInfo().isGranularAdTrackingEnabled();
 
         if (downloadedContent) {
             interval = DEFAULT_OFFLINE_PING_INTERVAL;
-        } else if (mediaContext.getMediaInfo().isGranularAdTrackingEnabled()) {
+        } else if (granularAdTracking) {
             interval = GRANULAR_AD_PING_INTERVAL;
         } else {
             interval = DEFAULT_ONLINE_PING_INTERVAL;
@@ -128,16 +277,20 @@ class MediaCollectionHitGenerator {
         Map<String, Object> params = MediaCollectionHelper.extractAdParams(mediaContext);
         Map<String, String> metadata = MediaCollectionHelper.extractAdMetadata(mediaContext);
 
+        flagTrimmedMetadata(params);
+        reduceToDelta(adSection, params, metadata);
         generateHit(MediaCollectionConstants.EventType.AD_START, params, metadata);
     }
 
     void processAdComplete() {
         interval = downloadedContent ? DEFAULT_OFFLINE_PING_INTERVAL : DEFAULT_ONLINE_PING_INTERVAL;
+        granularAdTracking = false;
         generateHit(MediaCollectionConstants.EventType.AD_COMPLETE);
     }
 
     void processAdSkip() {
         interval = downloadedContent ? DEFAULT_OFFLINE_PING_INTERVAL : DEFAULT_ONLINE_PING_INTERVAL;
+        granularAdTracking = false;
         generateHit(MediaCollectionConstants.EventType.AD_SKIP);
     }
 
@@ -145,6 +298,8 @@ class MediaCollectionHitGenerator {
         Map<String, Object> params = MediaCollectionHelper.extractChapterParams(mediaContext);
         Map<String, String> metadata = MediaCollectionHelper.extractChapterMetadata(mediaContext);
 
+        flagTrimmedMetadata(params);
+        reduceToDelta(chapterSection, params, metadata);
         generateHit(MediaCollectionConstants.EventType.CHAPTER_START, params, metadata);
     }
 
@@ -170,6 +325,8 @@ class MediaCollectionHitGenerator {
 
         sessionID = mediaHitProcessor.startSession();
         isTracking = true;
+        hitSequence = 0;
+        resetSections();
 
         processMediaStart(true);
 
@@ -185,8 +342,10 @@ class MediaCollectionHitGenerator {
             processAdStart();
         }
 
-        for (StateInfo state : mediaContext.getActiveTrackedStates()) {
-            processStateStart(state);
+        for (int i = 0; i < mediaContext.getTrackedStateCount(); i++) {
+            if (mediaContext.isTrackedStateActive(i)) {
+                processStateStart(mediaContext.getTrackedState(i));
+            }
         }
 
         processPlayback(true);
@@ -226,7 +385,8 @@ class MediaCollectionHitGenerator {
 
             previousState = currentState;
             previousStateTS = refTS;
-        } else if (previousState == currentState && (refTS - previousStateTS) >= interval) {
+        } else if (previousState == currentState
+                && (refTS - previousStateTS) >= getPingInterval()) {
 
             // if the ts difference is more than interval we need to send it as multiple pings
             generateHit(MediaCollectionConstants.EventType.PING);
@@ -234,10 +394,27 @@ class MediaCollectionHitGenerator {
         }
     }
 
+    long getPingInterval() {
+        return pingPolicy.getPingInterval(interval, granularAdTracking);
+    }
+
+    Map<String, Object> getLastQoEData() {
+        return lastQOEData;
+    }
+
+    /** Returns the id of the session being tracked, or null if no session is being tracked. */
+    String getSessionID() {
+        return isTracking ? sessionID : null;
+    }
+
     void setRefTS(final long ts) {
         refTS = ts;
     }
 
+    long getRefTS() {
+        return refTS;
+    }
+
     void generateHit(final String eventType) {
         generateHit(eventType, new HashMap<>(), new HashMap<>());
     }
@@ -275,13 +452,46 @@ class MediaCollectionHitGenerator {
             return;
         }
 
+        Map<String, Object> hitQoEData = qoeData;
+        if (qoeSection != null && !qoeData.isEmpty()) {
+            // lastQOEData keeps the full data, only the hit carries the delta
+            hitQoEData = new HashMap<>(qoeData);
+            qoeSection.reduce(params, hitQoEData, null);
+        }
+
         double playhead = mediaContext.getPlayhead();
         long ts = refTS;
 
-        MediaHit hit = new MediaHit(eventType, params, metadata, qoeData, playhead, ts);
+        MediaHit hit =
+                new MediaHit(eventType, params, metadata, hitQoEData, playhead, ts, hitSequence++);
+        metrics.recordHit(eventType);
         mediaHitProcessor.processHit(sessionID, hit);
     }
 
+    /**
+     * Marks a section start hit when metadata of this session was trimmed or dropped to stay within
+     * the memory caps, so the change is visible in the data sent.
+     */
+    private void flagTrimmedMetadata(final Map<String, Object> params) {
+        if (mediaContext.isMetadataTrimmed()) {
+            params.put(MediaCollectionConstants.Memory.METADATA_TRIMMED.key, true);
+        }
+    }
+
+    /**
+     * Reduces the params and metadata of a section start hit to what changed since the previous
+     * start of the section. Does nothing unless delta mode is enabled, and while no session is
+     * tracked, as the hit is dropped.
+     */
+    private void reduceToDelta(
+            final MediaHitSection section,
+            final Map<String, Object> params,
+            final Map<String, String> metadata) {
+        if (section != null && isTracking) {
+            section.reduce(params, params, metadata);
+        }
+    }
+
     void processStateStart(final StateInfo stateInfo) {
         Map<String, Object> params = new HashMap<>();
 
@@ -307,6 +517,8 @@ class MediaCollectionHitGenerator {
     void startTrackingSession() {
         sessionID = mediaHitProcessor.startSession();
         isTracking = sessionID != null;
+        hitSequence = 0;
+        resetSections();
         if (sessionID == null) {
             Log.debug(
                     MediaInternalConstants.LOG_TAG,
@@ -321,6 +533,16 @@ class MediaCollectionHitGenerator {
         }
     }
 
+    /** Forgets the section values sent so far, the first hits of a new session carry them all. */
+    private void resetSections() {
+        if (mediaSection != null) {
+            mediaSection.reset();
+            adSection.reset();
+            chapterSection.reset();
+            qoeSection.reset();
+        }
+    }
+
     void endTrackingSession() {
         if (isTracking) {
             Log.debug(
@@ -370,3 +592,120 @@ class MediaCollectionHitGenerator {
         }
     }
 }
+
+/**
+ * What the delta mode of {@link MediaCollectionHitGenerator} last sent for one section of a
+ * session: media, ad, chapter or QoE.
+ *
+ * <p>The first hit of a section carries its values and metadata in full. Following hits only carry
+ * the entries which changed since, entries which were removed are sent with a null value, and the
+ * hit params get the revision the delta applies to under {@code referenceKey}. The revision is
+ * incremented with every hit sent for the section, so the backend can resolve a delta against the
+ * hits it received for the session. Pass through keys are sent as is and not tracked.
+ */
+class MediaHitSection {
+    private final String referenceKey;
+    private final boolean referenceUnchanged;
+    private final String[] passThroughKeys;
+    private final Map<String, Object> sentValues;
+    private final Map<String, String> sentMetadata;
+    private int revision;
+
+    /**
+     * @param referenceKey the hit param holding the revision a delta applies to
+     * @param referenceUnchanged true to reference the revision even when nothing changed, false
+     *     to leave such hits without the section
+     * @param passThroughKeys keys which are sent with every hit carrying them
+     */
+    MediaHitSection(
+            final String referenceKey,
+            final boolean referenceUnchanged,
+            final String... passThroughKeys) {
+        this.referenceKey = referenceKey;
+        this.referenceUnchanged = referenceUnchanged;
+        this.passThroughKeys = passThroughKeys;
+        sentValues = new HashMap<>();
+        sentMetadata = new HashMap<>();
+    }
+
+    /** Forgets the values sent so far, so the next hit of the section is sent in full. */
+    void reset() {
+        sentValues.clear();
+        sentMetadata.clear();
+        revision = 0;
+    }
+
+    /**
+     * Records the section values and metadata of a hit as sent and reduces them in place to the
+     * entries which changed since the previous hit of the section.
+     *
+     * @param params the params of the hit, which get the section reference
+     * @param values the section values of the hit, may be {@code params}
+     * @param metadata the section metadata of the hit, or null if the section has none
+     */
+    void reduce(
+            final Map<String, Object> params,
+            final Map<String, Object> values,
+            final Map<String, String> metadata) {
+        Map<String, Object> passThrough = new HashMap<>();
+        for (String key : passThroughKeys) {
+            if (values.containsKey(key)) {
+                passThrough.put(key, values.remove(key));
+            }
+        }
+
+        boolean sent;
+        if (revision == 0) {
+            sentValues.putAll(values);
+            if (metadata != null) {
+                sentMetadata.putAll(metadata);
+            }
+
+            sent = true;
+        } else {
+            boolean changed = reduce(sentValues, values);
+            if (metadata != null) {
+                changed |= reduce(sentMetadata, metadata);
+            }
+
+            sent = changed || referenceUnchanged;
+            if (sent) {
+                params.put(referenceKey, revision);
+            }
+        }
+
+        if (sent) {
+            revision++;
+        }
+
+        values.putAll(passThrough);
+    }
+
+    /**
+     * Replaces {@code sent} with {@code current} and removes the entries which did not change from
+     * {@code current}. Entries missing from {@code current} are added with a null value.
+     *
+     * @return true if any entry changed
+     */
+    private static <V> boolean reduce(final Map<String, V> sent, final Map<String, V> current) {
+        Map<String, V> previous = new HashMap<>(sent);
+        sent.clear();
+        sent.putAll(current);
+
+        for (Map.Entry<String, V> entry : previous.entrySet()) {
+            String key = entry.getKey();
+
+            if (!current.containsKey(key)) {
+                current.put(key, null);
+            } else if (isEqual(entry.getValue(), current.get(key))) {
+                current.remove(key);
+            }
+        }
+
+        return !current.isEmpty();
+    }
+
+    private static boolean isEqual(final Object first, final Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -11,13 +11,17 @@
 
 package com.adobe.marketing.mobile.edge.media.internal;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.adobe.marketing.mobile.Event;
 import com.adobe.marketing.mobile.services.Log;
 import com.adobe.marketing.mobile.util.DataReader;
-import java.util.ArrayList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -28,13 +32,24 @@ class MediaCollectionTracker implements MediaTrackerInterface {
     private static final String KEY_INFO = "key_info";
     private static final String KEY_METADATA = "key_metadata";
     private static final String KEY_EVENT_TS = "key_eventts";
+    private static final String KEY_WALL_CLOCK_TS = "key_wallclockts";
     private static final String KEY_SESSIONID = "key_sessionid";
+
+    // Snapshot
+    static final int SNAPSHOT_MAGIC = 0x4D545353; // "MTSS"
+    static final int SNAPSHOT_VERSION = 5;
+    private static final int SNAPSHOT_INITIAL_BYTES = 1024;
     private static final int INVALID_NUMERIC_VALUE = -1;
     private MediaCollectionHitGenerator mediaHitGenerator;
     private MediaContext mediaContext;
-    private final MediaRuleEngine ruleEngine;
     private MediaHitProcessor hitProcessor;
     private Map<String, Object> trackerConfig;
+    private MediaPingPolicy pingPolicy;
+    private MediaSessionMemory sessionMemory;
+    private MediaSessionLog sessionLog;
+
+    // Memory accounting
+    private static final int TRIMMED_METADATA_LENGTH = 64;
 
     // Idle Detection
     private static final long IDLE_TIMEOUT = 1800000; // 30mins
@@ -43,6 +58,18 @@ class MediaCollectionTracker implements MediaTrackerInterface {
     private long mediaIdleStartTS = 0;
 
     private static final int INVALID_TIMESTAMP = -1; // Indicates uninitialize value of timestamp.
+    // Hibernation of idle sessions, see hibernate()
+    private boolean hibernateIdle;
+    private byte[] hibernatedState;
+    private double hibernatedPlayhead;
+    private boolean idleHibernated; // the current idle period was hibernated once
+
+    // Shared QoE samples, see MediaQoESource
+    private MediaQoESource qoeSource;
+
+    // Clock normalization, disabled unless a maximum clock jump is configured
+    private long maxClockJump;
+    private MediaClockNormalizer clockNormalizer;
     // Session Timeout
     private static final long SESSION_TIMEOUT_IN_MILLIS =
             TimeUnit.DAYS.toMillis(1); // Restart session after 24 hrs.
@@ -51,20 +78,47 @@ class MediaCollectionTracker implements MediaTrackerInterface {
     // Preroll
     private boolean inPrerollInterval;
     private long prerollRefTS;
-    private List<PrerollQueuedRule> prerollRulesQueue;
+    private MediaPrerollBuffer prerollBuffer;
     private boolean contentStarted;
     private long contentStartRefTs;
 
     MediaCollectionTracker(final MediaHitProcessor hitProcessor, final Map<String, Object> config) {
+        this(hitProcessor, config, MediaPingPolicy.DEFAULT);
+    }
+
+    MediaCollectionTracker(
+            final MediaHitProcessor hitProcessor,
+            final Map<String, Object> config,
+            final MediaPingPolicy pingPolicy) {
         reset();
 
-        this.hitProcessor = hitProcessor;
         trackerConfig = config;
-
-        ruleEngine = new MediaRuleEngine();
-        prerollRulesQueue = new ArrayList<>();
-
-        setUpMediaRules();
+        this.pingPolicy = pingPolicy;
+        sessionMemory = MediaSessionMemory.fromConfig(config);
+        maxClockJump =
+                DataReader.optLong(
+                        config, MediaInternalConstants.EventDataKeys.Config.MAX_CLOCK_JUMP, 0);
+        clockNormalizer = maxClockJump > 0 ? new MediaClockNormalizer(maxClockJump) : null;
+        hibernateIdle =
+                DataReader.optBoolean(
+                        config, MediaInternalConstants.EventDataKeys.Config.HIBERNATE_IDLE, false);
+        qoeSource =
+                MediaQoESource.get(
+                        DataReader.optString(
+                                config,
+                                MediaInternalConstants.EventDataKeys.Config.QOE_SOURCE,
+                                null));
+
+        boolean aggregatePings =
+                DataReader.optBoolean(
+                        config, MediaInternalConstants.EventDataKeys.Config.AGGREGATE_PINGS, false);
+        this.hitProcessor =
+                aggregatePings
+                        ? new MediaPingAggregator(
+                                hitProcessor,
+                                MediaPingAggregator.DEFAULT_MAX_AGGREGATION_MILLIS,
+                                pingPolicy)
+                        : hitProcessor;
     }
 
     void reset() {
@@ -75,7 +129,7 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         isMediaIdle = false;
 
         inPrerollInterval = false;
-        prerollRulesQueue = null;
+        prerollBuffer = null;
 
         contentStarted = false;
         contentStartRefTs = INVALID_TIMESTAMP;
@@ -103,7 +157,13 @@ class MediaCollectionTracker implements MediaTrackerInterface {
             return false;
         }
 
-        MediaRuleName rule = MediaRuleName.eventNameToRule(eventName);
+        int eventCode =
+                DataReader.optInt(
+                        eventData,
+                        MediaInternalConstants.EventDataKeys.Tracker.EVENT_CODE,
+                        MediaInternalConstants.EventDataKeys.MediaEventCode.INVALID);
+
+        MediaRuleName rule = MediaRuleName.resolve(eventCode, eventName);
         if (rule == MediaRuleName.Invalid) {
             Log.debug(
                     MediaInternalConstants.LOG_TAG,
@@ -117,6 +177,10 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         Object eventTS =
                 eventData.get(MediaInternalConstants.EventDataKeys.Tracker.EVENT_TIMESTAMP);
         if (eventTS != null) {
+            if (clockNormalizer != null && eventTS instanceof Number) {
+                context.put(KEY_WALL_CLOCK_TS, eventTS);
+                eventTS = normalizeTimestamp(((Number) eventTS).longValue());
+            }
             context.put(KEY_EVENT_TS, eventTS);
         } else {
             Log.debug(
@@ -149,6 +213,19 @@ class MediaCollectionTracker implements MediaTrackerInterface {
             context.put(KEY_METADATA, cleanedMetadata);
         }
 
+        if (hibernatedState != null) {
+            if (rule == MediaRuleName.PlayheadUpdate) {
+                // the rules of an idle session only record the playhead
+                double playhead = getPlayhead(context);
+                if (playhead >= 0) {
+                    hibernatedPlayhead = playhead;
+                }
+                return true;
+            }
+
+            wakeUp();
+        }
+
         if (rule != MediaRuleName.PlayheadUpdate) {
             Log.trace(
                     MediaInternalConstants.LOG_TAG,
@@ -157,15 +234,391 @@ class MediaCollectionTracker implements MediaTrackerInterface {
                     eventName);
         }
 
-        if (prerollDeferRule(rule.ordinal(), context)) {
-            return true;
+        boolean handled =
+                prerollDeferRule(rule.ordinal(), context) || processRule(rule.ordinal(), context);
+
+        // playhead updates do not change the context, skip the accounting on the hot path
+        if (rule != MediaRuleName.PlayheadUpdate) {
+            updateSessionMemory();
+        }
+
+        if (sessionLog != null) {
+            logSession(rule, getRefTS(context));
+        }
+
+        if (!isTrackerIdle) {
+            idleHibernated = false;
+        } else if (hibernateIdle && !idleHibernated && mediaContext != null) {
+            hibernate();
+        }
+
+        return handled;
+    }
+
+    /**
+     * Compacts the state of a session which was aborted for being idle. The state is written as a
+     * {@link #snapshot()} into a byte array and the {@link MediaContext} and hit generator are
+     * released, so the idle session keeps one array instead of their object graph. Until the next
+     * event other than a playhead update, which restores the state, events only update the
+     * playhead. A session is hibernated once per idle period: once restored, it stays restored
+     * until the tracker leaves the idle state.
+     */
+    private void hibernate() {
+        byte[] state = snapshot();
+        if (state == null) {
+            return;
+        }
+
+        idleHibernated = true;
+        hibernatedPlayhead = mediaContext.getPlayhead();
+        hibernatedState = state;
+        mediaContext = null;
+        mediaHitGenerator = null;
+        prerollBuffer = null;
+        updateSessionMemory();
+
+        Log.debug(
+                MediaInternalConstants.LOG_TAG,
+                LOG_TAG,
+                "hibernate - Idle session hibernated in %d bytes.",
+                state.length);
+    }
+
+    private void wakeUp() {
+        byte[] state = hibernatedState;
+        hibernatedState = null;
+
+        // the timeline kept advancing while the session was hibernated
+        MediaClockNormalizer clock = clockNormalizer;
+
+        if (!restore(state)) {
+            Log.warning(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "wakeUp - Unable to restore the hibernated session, tracking is reset.");
+            reset();
+            return;
+        }
+
+        clockNormalizer = clock;
+        if (mediaContext != null) {
+            mediaContext.setPlayhead(hibernatedPlayhead);
+        }
+    }
+
+    /**
+     * Returns whether the state of an idle session is hibernated, see {@link
+     * MediaInternalConstants.EventDataKeys.Config#HIBERNATE_IDLE}.
+     */
+    boolean isHibernated() {
+        return hibernatedState != null;
+    }
+
+    private long normalizeTimestamp(final long eventTS) {
+        long corrections = clockNormalizer.getCorrectionCount();
+        long ts = clockNormalizer.normalize(eventTS);
+
+        if (clockNormalizer.getCorrectionCount() != corrections) {
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "track - Clock change detected, event timestamp (%d) rebased to (%d).",
+                    eventTS,
+                    ts);
+        }
+
+        return ts;
+    }
+
+    /**
+     * Re-anchors the clock normalizer at the wall clock timestamp of the event starting a new
+     * session, so the hits of the new session are not offset by corrections made before it.
+     *
+     * @param context the context of the event
+     * @return the timestamp of the event on the re-anchored timeline
+     */
+    private long reanchorClock(final Map<String, Object> context) {
+        Object wallClockTS = context.get(KEY_WALL_CLOCK_TS);
+
+        if (clockNormalizer == null || !(wallClockTS instanceof Number)) {
+            return getRefTS(context);
+        }
+
+        long ts = ((Number) wallClockTS).longValue();
+        clockNormalizer.reanchor(ts);
+        // the remaining actions of the event run on the new timeline
+        context.put(KEY_EVENT_TS, ts);
+        return ts;
+    }
+
+    /**
+     * Returns how many event timestamps were corrected for a clock change, see {@link
+     * MediaInternalConstants.EventDataKeys.Config#MAX_CLOCK_JUMP}.
+     *
+     * @return the number of corrections, 0 if clock normalization is disabled
+     */
+    long getClockCorrectionCount() {
+        return clockNormalizer != null ? clockNormalizer.getCorrectionCount() : 0;
+    }
+
+    /**
+     * Sets the {@link MediaSessionLog} the tracking state of this tracker is written to, so the
+     * session can be closed on the next launch if the process dies while it is active.
+     *
+     * @param sessionLog the {@link MediaSessionLog} to write to, or null to stop logging
+     */
+    void setSessionLog(@Nullable final MediaSessionLog sessionLog) {
+        this.sessionLog = sessionLog;
+    }
+
+    /**
+     * Returns a snapshot of the complete tracking state, so another tracker, possibly in another
+     * process, can continue the session with {@link #restore(byte[])} without restarting it.
+     *
+     * <p>The snapshot holds the {@link MediaContext}, the state of the hit generator including its
+     * last reported playback state and QoE data, the idle, session timeout, preroll and content
+     * start state, the rules queued during the preroll wait and the normalized clock timeline.
+     * Pings held back by ping aggregation are sent first, as they are not part of the snapshot.
+     *
+     * @return the snapshot, or null if it could not be written
+     */
+    @Nullable
+    byte[] snapshot() {
+        if (hibernatedState != null) {
+            wakeUp();
+        }
+
+        String sessionID = mediaHitGenerator != null ? mediaHitGenerator.getSessionID() : null;
+        if (sessionID != null && hitProcessor instanceof MediaPingAggregator) {
+            ((MediaPingAggregator) hitProcessor).flush(sessionID);
         }
 
-        return processRule(rule.ordinal(), context);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(SNAPSHOT_INITIAL_BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+
+            out.writeBoolean(mediaContext != null);
+            if (mediaContext != null) {
+                mediaContext.writeTo(out);
+                mediaHitGenerator.writeTo(out);
+            }
+
+            out.writeBoolean(isTrackerIdle);
+            out.writeBoolean(isMediaIdle);
+            out.writeLong(mediaIdleStartTS);
+            out.writeLong(sessionRefTs);
+
+            out.writeBoolean(inPrerollInterval);
+            out.writeLong(prerollRefTS);
+            out.writeInt(prerollBuffer != null ? prerollBuffer.size() : -1);
+            if (prerollBuffer != null) {
+                for (int i = 0; i < prerollBuffer.size(); i++) {
+                    PrerollQueuedRule queuedRule = prerollBuffer.get(i);
+                    out.writeInt(queuedRule.ruleName);
+                    MediaEventTrace.writeValue(out, queuedRule.ruleContext);
+                }
+            }
+
+            out.writeBoolean(contentStarted);
+            out.writeLong(contentStartRefTs);
+
+            out.writeBoolean(clockNormalizer != null);
+            if (clockNormalizer != null) {
+                clockNormalizer.writeTo(out);
+            }
+            out.flush();
+        } catch (IOException ex) {
+            Log.warning(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "snapshot - Unable to write the tracker snapshot: %s",
+                    ex.getMessage());
+            return null;
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the tracking state of this tracker with a snapshot returned by {@link #snapshot()}.
+     * No hits are sent. The restored session keeps its session ID if the hit processor of this
+     * tracker started it, otherwise the processor resumes it with the backend session ID held in
+     * the snapshot, so a snapshot of a session whose backend ID was not known yet can only be
+     * restored on the processor which started it.
+     *
+     * @param snapshot the snapshot to restore
+     * @return true if the state was restored, false if the snapshot is invalid or of an
+     *     unsupported version, in which case the state of this tracker is unchanged
+     */
+    boolean restore(@Nullable final byte[] snapshot) {
+        if (snapshot == null) {
+            return false;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+
+        try {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a tracker snapshot");
+            }
+
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+
+            MediaContext context = null;
+            MediaCollectionHitGenerator hitGenerator = null;
+            if (in.readBoolean()) {
+                context = MediaContext.readFrom(in);
+                context.setQoESource(qoeSource);
+                hitGenerator =
+                        MediaCollectionHitGenerator.readFrom(
+                                context, hitProcessor, trackerConfig, pingPolicy, in);
+            }
+
+            boolean trackerIdle = in.readBoolean();
+            boolean mediaIdle = in.readBoolean();
+            long idleStartTS = in.readLong();
+            long sessionStartTS = in.readLong();
+
+            boolean prerollInterval = in.readBoolean();
+            long prerollStartTS = in.readLong();
+            int prerollRuleCount = in.readInt();
+            MediaPrerollBuffer buffer = null;
+            if (prerollRuleCount >= 0) {
+                buffer = new MediaPrerollBuffer();
+                for (int i = 0; i < prerollRuleCount; i++) {
+                    buffer.add(in.readInt(), MediaEventTrace.readMap(in));
+                }
+            }
+
+            boolean started = in.readBoolean();
+            long contentStartTS = in.readLong();
+
+            // the clock state is only kept if this tracker normalizes timestamps as well
+            MediaClockNormalizer clock =
+                    maxClockJump > 0 ? new MediaClockNormalizer(maxClockJump) : null;
+            if (in.readBoolean()) {
+                (clock != null ? clock : new MediaClockNormalizer(0)).readFrom(in);
+            }
+
+            mediaContext = context;
+            mediaHitGenerator = hitGenerator;
+            isTrackerIdle = trackerIdle;
+            isMediaIdle = mediaIdle;
+            mediaIdleStartTS = idleStartTS;
+            sessionRefTs = sessionStartTS;
+            inPrerollInterval = prerollInterval;
+            prerollRefTS = prerollStartTS;
+            prerollBuffer = buffer;
+            contentStarted = started;
+            contentStartRefTs = contentStartTS;
+            clockNormalizer = clock;
+            hibernatedState = null;
+        } catch (IOException ex) {
+            Log.warning(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "restore - Unable to restore the tracker snapshot: %s",
+                    ex.getMessage());
+            return false;
+        }
+
+        sessionMemory.reset();
+        updateSessionMemory();
+
+        if (sessionLog != null) {
+            if (mediaHitGenerator != null) {
+                sessionLog.sync(
+                        mediaHitGenerator.getSessionID(),
+                        mediaContext,
+                        mediaHitGenerator.getRefTS());
+                logBackendSessionID(mediaHitGenerator.getSessionID(), mediaHitGenerator.getRefTS());
+            } else {
+                sessionLog.sync(null, null, INVALID_TIMESTAMP);
+            }
+        }
+
+        return true;
+    }
+
+    private void logSession(final MediaRuleName rule, final long refTS) {
+        String sessionID = mediaHitGenerator != null ? mediaHitGenerator.getSessionID() : null;
+
+        if (rule == MediaRuleName.PlayheadUpdate) {
+            if (mediaContext != null) {
+                sessionLog.checkpoint(mediaContext.getPlayhead(), refTS);
+            }
+        } else {
+            sessionLog.sync(sessionID, mediaContext, refTS);
+        }
+
+        logBackendSessionID(sessionID, refTS);
+    }
+
+    private void logBackendSessionID(@Nullable final String sessionID, final long refTS) {
+        // the backend assigns the ID asynchronously, ask the hit processor until it is logged
+        if (sessionID != null && sessionLog.needsBackendSessionID()) {
+            sessionLog.logBackendSessionID(hitProcessor.getBackendSessionID(sessionID), refTS);
+        }
+    }
+
+    private void updateSessionMemory() {
+        if (!sessionMemory.isEnabled()) {
+            return;
+        }
+
+        if (mediaContext == null) {
+            sessionMemory.setContextBytes(0);
+            sessionMemory.setQoEBytes(0);
+            return;
+        }
+
+        long contextBytes = mediaContext.estimateBytes();
+        sessionMemory.setContextBytes(contextBytes);
+        sessionMemory.setQoEBytes(MediaSessionMemory.estimate(mediaHitGenerator.getLastQoEData()));
+
+        if (sessionMemory.isAboveSoftCap()) {
+            int trimmed = mediaContext.trimMetadata(TRIMMED_METADATA_LENGTH);
+
+            if (trimmed > 0) {
+                sessionMemory.onMetadataTrimmed();
+                contextBytes = mediaContext.estimateBytes();
+                sessionMemory.setContextBytes(contextBytes);
+                Log.warning(
+                        MediaInternalConstants.LOG_TAG,
+                        LOG_TAG,
+                        "updateSessionMemory - Session is above its soft memory cap, trimmed %d"
+                                + " metadata values.",
+                        trimmed);
+            }
+        }
+
+        // The hard cap sheds what is counted, largest metadata values first, until the session
+        // fits again. Hits are never dropped, they are not held by the tracker.
+        if (sessionMemory.isAboveHardCap()) {
+            MediaContext.MetadataDrop drop =
+                    mediaContext.dropLargestMetadata(sessionMemory.getBytesAboveHardCap());
+
+            if (drop.count > 0) {
+                sessionMemory.setContextBytes(contextBytes - drop.bytes);
+                sessionMemory.onMetadataDropped(drop.count);
+                Log.warning(
+                        MediaInternalConstants.LOG_TAG,
+                        LOG_TAG,
+                        "updateSessionMemory - Session is above its hard memory cap, dropped %d"
+                                + " metadata values.",
+                        drop.count);
+            }
+        }
     }
 
     boolean processRule(final int rule, final Map<String, Object> context) {
-        MediaRuleResponse response = this.ruleEngine.processRule(rule, context);
+        MediaRuleResponse response = SharedRules.RULE_ENGINE.processRule(this, rule, context);
 
         if (!response.isValid) {
             Log.warning(MediaInternalConstants.LOG_TAG, LOG_TAG, response.message);
@@ -213,519 +666,580 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         return DataReader.optString(info, MediaInternalConstants.EventDataKeys.ErrorInfo.ID, null);
     }
 
+    String getStateName(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        if (info == null) {
+            return null;
+        }
+
+        return DataReader.optString(
+                info, MediaInternalConstants.EventDataKeys.StateInfo.STATE_NAME_KEY, null);
+    }
+
     // Predicates
-    IMediaRuleCallback isInMedia = (rule, context) -> mediaContext != null;
-
-    IMediaRuleCallback isInAdBreak = (rule, context) -> mediaContext.isInAdBreak();
-
-    IMediaRuleCallback isInAd = (rule, context) -> mediaContext.isInAd();
-
-    IMediaRuleCallback isInChapter = (rule, context) -> mediaContext.isInChapter();
-
-    IMediaRuleCallback isInBuffering =
-            (rule, context) -> mediaContext.isInState(MediaPlayBackState.Buffer);
-
-    IMediaRuleCallback isInSeeking =
-            (rule, context) -> mediaContext.isInState(MediaPlayBackState.Seek);
-
-    IMediaRuleCallback isValidMediaInfo =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                return info != null && MediaInfo.fromObjectMap(info) != null;
-            };
-
-    IMediaRuleCallback isValidAdBreakInfo =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                return info != null && AdBreakInfo.fromObjectMap(info) != null;
-            };
-
-    IMediaRuleCallback isValidAdInfo =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                return info != null && AdInfo.fromObjectMap(info) != null;
-            };
-
-    IMediaRuleCallback isValidChapterInfo =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                return info != null && ChapterInfo.fromObjectMap(info) != null;
-            };
-
-    IMediaRuleCallback isValidQoEInfo =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                return info != null && QoEInfo.fromObjectMap(info) != null;
-            };
-
-    IMediaRuleCallback isValidStateInfo =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                return info != null && StateInfo.fromObjectMap(info) != null;
-            };
-
-    IMediaRuleCallback isValidErrorInfo =
-            (rule, context) -> {
-                String errorId = getError(context);
-                return errorId != null && !errorId.isEmpty();
-            };
-
-    IMediaRuleCallback isDifferentAdBreakInfo =
-            (rule, context) -> {
-                if (!mediaContext.isInAdBreak()) {
-                    return true;
-                }
+    boolean isInMedia(final Map<String, Object> context) {
+        return mediaContext != null;
+    }
 
-                AdBreakInfo currentAdBreakInfo = mediaContext.getAdBreakInfo();
+    boolean isInAdBreak(final Map<String, Object> context) {
+        return mediaContext.isInAdBreak();
+    }
 
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                AdBreakInfo newAdBreakInfo = AdBreakInfo.fromObjectMap(info);
+    boolean isInAd(final Map<String, Object> context) {
+        return mediaContext.isInAd();
+    }
 
-                return !(currentAdBreakInfo.equals(newAdBreakInfo));
-            };
+    boolean isInChapter(final Map<String, Object> context) {
+        return mediaContext.isInChapter();
+    }
 
-    IMediaRuleCallback isDifferentAdInfo =
-            (rule, context) -> {
-                if (!mediaContext.isInAd()) {
-                    return true;
-                }
+    boolean isInBuffering(final Map<String, Object> context) {
+        return mediaContext.isInState(MediaPlayBackState.Buffer);
+    }
 
-                AdInfo currentAdInfo = mediaContext.getAdInfo();
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                AdInfo newAdInfo = AdInfo.fromObjectMap(info);
+    boolean isInSeeking(final Map<String, Object> context) {
+        return mediaContext.isInState(MediaPlayBackState.Seek);
+    }
 
-                return !(currentAdInfo.equals(newAdInfo));
-            };
+    boolean isValidMediaInfo(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        return info != null && MediaInfo.fromObjectMap(info) != null;
+    }
 
-    IMediaRuleCallback isDifferentChapterInfo =
-            (rule, context) -> {
-                if (!mediaContext.isInChapter()) {
-                    return true;
-                }
+    boolean isValidAdBreakInfo(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        return info != null && AdBreakInfo.fromObjectMap(info) != null;
+    }
+
+    boolean isValidAdInfo(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        return info != null && AdInfo.fromObjectMap(info) != null;
+    }
+
+    boolean isValidChapterInfo(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        return info != null && ChapterInfo.fromObjectMap(info) != null;
+    }
+
+    boolean isValidQoEInfo(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        return info != null && QoEInfo.fromObjectMap(info) != null;
+    }
+
+    boolean isValidStateInfo(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        return info != null && StateInfo.fromObjectMap(info) != null;
+    }
+
+    boolean isValidErrorInfo(final Map<String, Object> context) {
+        String errorId = getError(context);
+        return errorId != null && !errorId.isEmpty();
+    }
+
+    boolean isDifferentAdBreakInfo(final Map<String, Object> context) {
+        if (!mediaContext.isInAdBreak()) {
+            return true;
+        }
+
+        AdBreakInfo currentAdBreakInfo = mediaContext.getAdBreakInfo();
+
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        AdBreakInfo newAdBreakInfo = AdBreakInfo.fromObjectMap(info);
+
+        return !(currentAdBreakInfo.equals(newAdBreakInfo));
+    }
+
+    boolean isDifferentAdInfo(final Map<String, Object> context) {
+        if (!mediaContext.isInAd()) {
+            return true;
+        }
+
+        AdInfo currentAdInfo = mediaContext.getAdInfo();
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        AdInfo newAdInfo = AdInfo.fromObjectMap(info);
+
+        return !(currentAdInfo.equals(newAdInfo));
+    }
+
+    boolean isDifferentChapterInfo(final Map<String, Object> context) {
+        if (!mediaContext.isInChapter()) {
+            return true;
+        }
+
+        ChapterInfo currentChapterInfo = mediaContext.getChapterInfo();
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        ChapterInfo newChapterInfo = ChapterInfo.fromObjectMap(info);
 
-                ChapterInfo currentChapterInfo = mediaContext.getChapterInfo();
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                ChapterInfo newChapterInfo = ChapterInfo.fromObjectMap(info);
-
-                return !(currentChapterInfo.equals(newChapterInfo));
-            };
-
-    IMediaRuleCallback allowPlaybackStateChange =
-            (rule, context) -> {
-                // Allow player state change only if we are in main content or if we are inside an
-                // ad.
-                return !mediaContext.isInAdBreak() || mediaContext.isInAd();
-            };
-
-    IMediaRuleCallback isInTrackedState =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                StateInfo stateInfo = StateInfo.fromObjectMap(info);
-                return mediaContext.isInState(stateInfo);
-            };
-
-    IMediaRuleCallback allowStateTrack =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                StateInfo stateInfo = StateInfo.fromObjectMap(info);
-                return mediaContext.hasTrackedState(stateInfo)
-                        || !mediaContext.hasReachedStateLimit();
-            };
+        return !(currentChapterInfo.equals(newChapterInfo));
+    }
+
+    boolean allowPlaybackStateChange(final Map<String, Object> context) {
+        // Allow player state change only if we are in main content or if we are inside an
+        // ad.
+        return !mediaContext.isInAdBreak() || mediaContext.isInAd();
+    }
+
+    // State predicates run after isValidStateInfo, so the raw state name is already validated.
+    boolean isInTrackedState(final Map<String, Object> context) {
+        return mediaContext.isInTrackedState(getStateName(context));
+    }
+
+    boolean allowStateTrack(final Map<String, Object> context) {
+        return !mediaContext.hasReachedStateLimit()
+                || mediaContext.hasTrackedState(getStateName(context));
+    }
 
     // Actions
-    IMediaRuleCallback cmdIdleDetection =
-            (rule, context) -> {
-                if (mediaContext.isIdle()) {
-
-                    long refTS = getRefTS(context);
-
-                    // Media was already idle during previous call.
-                    if (isMediaIdle
-                            && (!isTrackerIdle && (refTS - mediaIdleStartTS) >= IDLE_TIMEOUT)) {
-                        // We stop tracking if media has been idle for 30 mins.
-                        mediaHitGenerator.processSessionAbort();
-                        isTrackerIdle = true;
-                    } else if (!isMediaIdle) {
-                        // Set the media in Idle state and store the TS
-                        isMediaIdle = true;
-                        mediaIdleStartTS = refTS;
-                    }
-                } else {
-                    // Media is not currently idle
-                    if (isTrackerIdle) {
-                        // We resume tracking if we have stopped tracking.
-                        mediaHitGenerator.processSessionRestart();
-                        isTrackerIdle = false;
-
-                        sessionRefTs = getRefTS(context);
-                        // if media is idle, reset content started flag
-                        contentStarted = false;
-                        contentStartRefTs = INVALID_TIMESTAMP;
-                    }
-
-                    isMediaIdle = false;
-                }
+    boolean cmdIdleDetection(final Map<String, Object> context) {
+        if (mediaContext.isIdle()) {
 
-                return true;
-            };
+            long refTS = getRefTS(context);
 
-    IMediaRuleCallback cmdContentStartDetection =
-            (rule, context) -> {
-                if (mediaContext.isIdle() || contentStarted) {
-                    return true;
-                }
+            // Media was already idle during previous call.
+            if (isMediaIdle && (!isTrackerIdle && (refTS - mediaIdleStartTS) >= IDLE_TIMEOUT)) {
+                // We stop tracking if media has been idle for 30 mins.
+                mediaHitGenerator.processSessionAbort();
+                isTrackerIdle = true;
+            } else if (!isMediaIdle) {
+                // Set the media in Idle state and store the TS
+                isMediaIdle = true;
+                mediaIdleStartTS = refTS;
+            }
+        } else {
+            // Media is not currently idle
+            if (isTrackerIdle) {
+                // We resume tracking if we have stopped tracking.
+                long refTS = reanchorClock(context);
+                mediaHitGenerator.setRefTS(refTS);
+                mediaHitGenerator.processSessionRestart();
+                isTrackerIdle = false;
 
-                // We send content start ping after main content plays for one second.
-                if (mediaContext.isInAdBreak()) {
-                    contentStartRefTs = INVALID_TIMESTAMP;
-                    return true;
-                }
+                sessionRefTs = refTS;
+                // if media is idle, reset content started flag
+                contentStarted = false;
+                contentStartRefTs = INVALID_TIMESTAMP;
+            }
 
-                if (contentStartRefTs == INVALID_TIMESTAMP) {
-                    // update content_start_ref_ts_ when main content is playing
-                    contentStartRefTs = getRefTS(context);
-                }
+            isMediaIdle = false;
+        }
 
-                long refTS = getRefTS(context);
+        return true;
+    }
 
-                if ((refTS - contentStartRefTs) >= CONTENT_START_DURATION) {
-                    mediaHitGenerator.processPlayback(true);
-                    contentStarted = true;
-                }
+    boolean cmdContentStartDetection(final Map<String, Object> context) {
+        if (mediaContext.isIdle() || contentStarted) {
+            return true;
+        }
 
-                return true;
-            };
+        // We send content start ping after main content plays for one second.
+        if (mediaContext.isInAdBreak()) {
+            contentStartRefTs = INVALID_TIMESTAMP;
+            return true;
+        }
+
+        if (contentStartRefTs == INVALID_TIMESTAMP) {
+            // update content_start_ref_ts_ when main content is playing
+            contentStartRefTs = getRefTS(context);
+        }
+
+        long refTS = getRefTS(context);
+
+        if ((refTS - contentStartRefTs) >= CONTENT_START_DURATION) {
+            mediaHitGenerator.processPlayback(true);
+            contentStarted = true;
+        }
+
+        return true;
+    }
 
     /**
      * Callback for determining If session has been running for {@link #SESSION_TIMEOUT_IN_MILLIS}.
      * If yes, restart the session.
      */
-    IMediaRuleCallback cmdSessionTimeoutDetection =
-            (rule, context) -> {
-                final long refTs = getRefTS(context);
-
-                if (!isTrackerIdle
-                        && refTs - sessionRefTs
-                                >= SESSION_TIMEOUT_IN_MILLIS) { // Session is playing for more than
-                    // 24hrs. Restart session.
-                    mediaHitGenerator.processSessionAbort();
-                    mediaHitGenerator.processSessionRestart();
-                    sessionRefTs = refTs;
-                    contentStarted = false;
-                    contentStartRefTs = INVALID_TIMESTAMP;
-                }
-                return true;
-            };
+    boolean cmdSessionTimeoutDetection(final Map<String, Object> context) {
+        final long refTs = getRefTS(context);
+
+        if (!isTrackerIdle
+                && refTs - sessionRefTs
+                        >= SESSION_TIMEOUT_IN_MILLIS) { // Session is playing for more than
+            // 24hrs. Restart session.
+            mediaHitGenerator.processSessionAbort();
+
+            long restartTS = reanchorClock(context);
+            mediaHitGenerator.setRefTS(restartTS);
+            mediaHitGenerator.processSessionRestart();
+            sessionRefTs = restartTS;
+            contentStarted = false;
+            contentStartRefTs = INVALID_TIMESTAMP;
+        }
+        return true;
+    }
 
-    IMediaRuleCallback cmdEnterAction =
-            (rule, context) -> {
-                long refTS = getRefTS(context);
+    boolean cmdEnterAction(
+            final MediaRule<MediaCollectionTracker> rule, final Map<String, Object> context) {
+        long refTS = getRefTS(context);
 
-                if (mediaHitGenerator != null && getRefTS(context) != -1) {
-                    mediaHitGenerator.setRefTS(refTS);
-                }
+        if (mediaHitGenerator != null && getRefTS(context) != -1) {
+            mediaHitGenerator.setRefTS(refTS);
+        }
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdExitAction =
-            (rule, context) -> {
-                if (mediaContext == null) {
-                    return false;
-                }
+    boolean cmdExitAction(
+            final MediaRule<MediaCollectionTracker> rule, final Map<String, Object> context) {
+        if (mediaContext == null) {
+            return false;
+        }
 
-                // Additional hacks based on how the api processing backend works.
+        // Additional hacks based on how the api processing backend works.
 
-                // Force the state to play when we receive adstart before any play/pause.
-                // Happens usually for preroll ad. We manually switch our state to play as the
-                // backend
-                // automatically swithces state to play after adstart.
-                int ruleName = rule.getName();
+        // Force the state to play when we receive adstart before any play/pause.
+        // Happens usually for preroll ad. We manually switch our state to play as the
+        // backend
+        // automatically swithces state to play after adstart.
+        int ruleName = rule.getName();
 
-                if (ruleName == MediaRuleName.AdStart.ordinal()) {
-                    if (mediaContext.isInState(MediaPlayBackState.Init)
-                            && !mediaContext.isInState(MediaPlayBackState.Buffer)
-                            && !mediaContext.isInState(MediaPlayBackState.Seek)) {
-                        mediaContext.enterState(MediaPlayBackState.Play);
-                    }
-                }
+        if (ruleName == MediaRuleName.AdStart.ordinal()) {
+            if (mediaContext.isInState(MediaPlayBackState.Init)
+                    && !mediaContext.isInState(MediaPlayBackState.Buffer)
+                    && !mediaContext.isInState(MediaPlayBackState.Seek)) {
+                mediaContext.enterState(MediaPlayBackState.Play);
+            }
+        }
 
-                // If we receive BufferComplete / SeekComplete before first play / pause,
-                // we manually switch to pause as there is not way to go back to init state.
-                if (ruleName == MediaRuleName.BufferComplete.ordinal()
-                        || ruleName == MediaRuleName.SeekComplete.ordinal()) {
-                    if (mediaContext.isInState(MediaPlayBackState.Init)) {
-                        mediaContext.enterState(MediaPlayBackState.Pause);
-                    }
-                }
+        // If we receive BufferComplete / SeekComplete before first play / pause,
+        // we manually switch to pause as there is not way to go back to init state.
+        if (ruleName == MediaRuleName.BufferComplete.ordinal()
+                || ruleName == MediaRuleName.SeekComplete.ordinal()) {
+            if (mediaContext.isInState(MediaPlayBackState.Init)) {
+                mediaContext.enterState(MediaPlayBackState.Pause);
+            }
+        }
 
-                cmdIdleDetection.call(rule, context);
-                cmdSessionTimeoutDetection.call(rule, context);
-                cmdContentStartDetection.call(rule, context);
+        cmdIdleDetection(context);
+        cmdSessionTimeoutDetection(context);
+        cmdContentStartDetection(context);
 
-                // Flush playback state after AdStart and AdBreakComplete
-                boolean flushState =
-                        (rule.getName() == MediaRuleName.AdStart.ordinal())
-                                || (rule.getName() == MediaRuleName.AdBreakComplete.ordinal());
-                mediaHitGenerator.processPlayback(flushState);
+        // Flush playback state after AdStart and AdBreakComplete
+        boolean flushState =
+                (rule.getName() == MediaRuleName.AdStart.ordinal())
+                        || (rule.getName() == MediaRuleName.AdBreakComplete.ordinal());
+        mediaHitGenerator.processPlayback(flushState);
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdMediaStart =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                MediaInfo mediaInfo = MediaInfo.fromObjectMap(info);
+    boolean cmdMediaStart(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        MediaInfo mediaInfo = MediaInfo.fromObjectMap(info);
 
-                long refTS = getRefTS(context);
-                Map<String, String> metadata = getMetadata(context);
+        long refTS = reanchorClock(context);
+        Map<String, String> metadata = getMetadata(context);
 
-                String refSessionId = getSessionId(context);
+        String refSessionId = getSessionId(context);
 
-                mediaContext = new MediaContext(mediaInfo, metadata);
+        mediaContext = new MediaContext(mediaInfo, metadata);
+        mediaContext.setQoESource(qoeSource);
 
-                mediaHitGenerator =
-                        new MediaCollectionHitGenerator(
-                                mediaContext, hitProcessor, trackerConfig, refTS, refSessionId);
+        mediaHitGenerator =
+                new MediaCollectionHitGenerator(
+                        mediaContext, hitProcessor, trackerConfig, refTS, refSessionId, pingPolicy);
 
-                mediaHitGenerator.processMediaStart();
-                sessionRefTs = refTS;
+        sessionMemory.reset();
 
-                inPrerollInterval = mediaInfo.getPrerollWaitTime() > 0;
-                prerollRefTS = refTS;
+        mediaHitGenerator.processMediaStart();
+        sessionRefTs = refTS;
 
-                return true;
-            };
+        inPrerollInterval = mediaInfo.getPrerollWaitTime() > 0;
+        prerollRefTS = refTS;
 
-    IMediaRuleCallback cmdMediaComplete =
-            (rule, context) -> {
-                mediaHitGenerator.processMediaComplete();
+        // most sessions have no preroll wait, only those pay for the queue
+        if (inPrerollInterval) {
+            prerollBuffer = new MediaPrerollBuffer();
+        }
 
-                mediaHitGenerator = null;
-                mediaContext = null;
+        return true;
+    }
 
-                return true;
-            };
+    boolean cmdMediaComplete(final Map<String, Object> context) {
+        mediaHitGenerator.processMediaComplete();
 
-    IMediaRuleCallback cmdMediaSkip =
-            (rule, context) -> {
-                mediaHitGenerator.processMediaSkip();
+        mediaHitGenerator = null;
+        mediaContext = null;
 
-                mediaHitGenerator = null;
-                mediaContext = null;
+        return true;
+    }
 
-                return true;
-            };
+    boolean cmdMediaSkip(final Map<String, Object> context) {
+        mediaHitGenerator.processMediaSkip();
 
-    IMediaRuleCallback cmdAdBreakStart =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                AdBreakInfo adBreakInfo = AdBreakInfo.fromObjectMap(info);
-                mediaContext.setAdBreakInfo(adBreakInfo);
-                mediaHitGenerator.processAdBreakStart();
+        mediaHitGenerator = null;
+        mediaContext = null;
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdAdBreakComplete =
-            (rule, context) -> {
-                mediaHitGenerator.processAdBreakComplete();
-                mediaContext.clearAdBreakInfo();
+    boolean cmdAdBreakStart(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        AdBreakInfo adBreakInfo = AdBreakInfo.fromObjectMap(info);
+        mediaContext.setAdBreakInfo(adBreakInfo);
+        mediaHitGenerator.processAdBreakStart();
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdAdBreakSkip =
-            (rule, context) -> {
-                if (mediaContext.isInAdBreak()) {
-                    mediaHitGenerator.processAdBreakSkip();
-                    mediaContext.clearAdBreakInfo();
-                }
+    boolean cmdAdBreakComplete(final Map<String, Object> context) {
+        mediaHitGenerator.processAdBreakComplete();
+        mediaContext.clearAdBreakInfo();
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdAdStart =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                AdInfo adInfo = AdInfo.fromObjectMap(info);
-                Map<String, String> metadata = getMetadata(context);
-                mediaContext.setAdInfo(adInfo, metadata);
-                mediaHitGenerator.processAdStart();
+    boolean cmdAdBreakSkip(final Map<String, Object> context) {
+        if (mediaContext.isInAdBreak()) {
+            mediaHitGenerator.processAdBreakSkip();
+            mediaContext.clearAdBreakInfo();
+        }
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdAdComplete =
-            (rule, context) -> {
-                mediaHitGenerator.processAdComplete();
-                mediaContext.clearAdInfo();
+    boolean cmdAdStart(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        AdInfo adInfo = AdInfo.fromObjectMap(info);
+        Map<String, String> metadata = getMetadata(context);
+        mediaContext.setAdInfo(adInfo, metadata);
+        mediaHitGenerator.processAdStart();
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdAdSkip =
-            (rule, context) -> {
-                if (mediaContext.isInAd()) {
-                    mediaHitGenerator.processAdSkip();
-                    mediaContext.clearAdInfo();
-                }
+    boolean cmdAdComplete(final Map<String, Object> context) {
+        mediaHitGenerator.processAdComplete();
+        mediaContext.clearAdInfo();
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdChapterStart =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                ChapterInfo chapterInfo = ChapterInfo.fromObjectMap(info);
-                Map<String, String> metadata = getMetadata(context);
-                mediaContext.setChapterInfo(chapterInfo, metadata);
-                mediaHitGenerator.processChapterStart();
+    boolean cmdAdSkip(final Map<String, Object> context) {
+        if (mediaContext.isInAd()) {
+            mediaHitGenerator.processAdSkip();
+            mediaContext.clearAdInfo();
+        }
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdChapterComplete =
-            (rule, context) -> {
-                mediaHitGenerator.processChapterComplete();
-                mediaContext.clearChapterInfo();
+    boolean cmdChapterStart(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        ChapterInfo chapterInfo = ChapterInfo.fromObjectMap(info);
+        Map<String, String> metadata = getMetadata(context);
+        mediaContext.setChapterInfo(chapterInfo, metadata);
+        mediaHitGenerator.processChapterStart();
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdChapterSkip =
-            (rule, context) -> {
-                if (mediaContext.isInChapter()) {
-                    mediaHitGenerator.processChapterSkip();
-                    mediaContext.clearChapterInfo();
-                }
+    boolean cmdChapterComplete(final Map<String, Object> context) {
+        mediaHitGenerator.processChapterComplete();
+        mediaContext.clearChapterInfo();
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdPlay =
-            (rule, context) -> {
-                mediaContext.enterState(MediaPlayBackState.Play);
-                return true;
-            };
+    boolean cmdChapterSkip(final Map<String, Object> context) {
+        if (mediaContext.isInChapter()) {
+            mediaHitGenerator.processChapterSkip();
+            mediaContext.clearChapterInfo();
+        }
 
-    IMediaRuleCallback cmdPause =
-            (rule, context) -> {
-                mediaContext.enterState(MediaPlayBackState.Pause);
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdBufferStart =
-            (rule, context) -> {
-                mediaContext.enterState(MediaPlayBackState.Buffer);
-                return true;
-            };
+    boolean cmdPlay(final Map<String, Object> context) {
+        mediaContext.enterState(MediaPlayBackState.Play);
+        return true;
+    }
 
-    IMediaRuleCallback cmdBufferComplete =
-            (rule, context) -> {
-                if (mediaContext.isInState(MediaPlayBackState.Buffer)) {
-                    mediaContext.exitState(MediaPlayBackState.Buffer);
-                }
+    boolean cmdPause(final Map<String, Object> context) {
+        mediaContext.enterState(MediaPlayBackState.Pause);
+        return true;
+    }
 
-                return true;
-            };
+    boolean cmdBufferStart(final Map<String, Object> context) {
+        mediaContext.enterState(MediaPlayBackState.Buffer);
+        return true;
+    }
 
-    IMediaRuleCallback cmdSeekStart =
-            (rule, context) -> {
-                mediaContext.enterState(MediaPlayBackState.Seek);
-                return true;
-            };
+    boolean cmdBufferComplete(final Map<String, Object> context) {
+        if (mediaContext.isInState(MediaPlayBackState.Buffer)) {
+            mediaContext.exitState(MediaPlayBackState.Buffer);
+        }
 
-    IMediaRuleCallback cmdSeekComplete =
-            (rule, context) -> {
-                if (mediaContext.isInState(MediaPlayBackState.Seek)) {
-                    mediaContext.exitState(MediaPlayBackState.Seek);
-                }
+        return true;
+    }
 
-                return true;
-            };
+    boolean cmdSeekStart(final Map<String, Object> context) {
+        mediaContext.enterState(MediaPlayBackState.Seek);
+        return true;
+    }
 
-    IMediaRuleCallback cmdError =
-            (rule, context) -> {
-                String errorId = getError(context);
+    boolean cmdSeekComplete(final Map<String, Object> context) {
+        if (mediaContext.isInState(MediaPlayBackState.Seek)) {
+            mediaContext.exitState(MediaPlayBackState.Seek);
+        }
 
-                if (errorId != null) {
-                    mediaHitGenerator.processError(errorId);
-                }
+        return true;
+    }
 
-                return true;
-            };
+    boolean cmdError(final Map<String, Object> context) {
+        String errorId = getError(context);
 
-    IMediaRuleCallback cmdBitrateChange =
-            (rule, context) -> {
-                mediaHitGenerator.processBitrateChange();
+        if (errorId != null) {
+            mediaHitGenerator.processError(errorId);
+        }
 
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdQoEUpdate =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                QoEInfo qoeInfo = QoEInfo.fromObjectMap(info);
-                mediaContext.setQoEInfo(qoeInfo);
+    boolean cmdBitrateChange(final Map<String, Object> context) {
+        mediaHitGenerator.processBitrateChange();
 
-                return true;
-            };
-
-    IMediaRuleCallback cmdStateStart =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                StateInfo stateInfo = StateInfo.fromObjectMap(info);
-                mediaContext.startState(stateInfo);
-                mediaHitGenerator.processStateStart(stateInfo);
-                return true;
-            };
-
-    IMediaRuleCallback cmdStateEnd =
-            (rule, context) -> {
-                Map<String, Object> info =
-                        DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
-                StateInfo stateInfo = StateInfo.fromObjectMap(info);
-                mediaContext.endState(stateInfo);
-                mediaHitGenerator.processStateEnd(stateInfo);
-                return true;
-            };
+        return true;
+    }
 
-    IMediaRuleCallback cmdPlayheadUpdate =
-            (rule, context) -> {
-                double playhead = getPlayhead(context);
+    boolean cmdQoEUpdate(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        QoEInfo qoeInfo = QoEInfo.fromObjectMap(info);
+        mediaContext.setQoEInfo(qoeInfo);
 
-                if (playhead >= 0) {
-                    mediaContext.setPlayhead(playhead);
-                }
+        return true;
+    }
 
-                return true;
-            };
+    boolean cmdStateStart(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        StateInfo stateInfo = StateInfo.fromObjectMap(info);
+        mediaContext.startState(stateInfo);
+        mediaHitGenerator.processStateStart(stateInfo);
+        return true;
+    }
 
-    void setUpMediaRules() {
-        ruleEngine.onEnterRule(cmdEnterAction);
-        ruleEngine.onExitRule(cmdExitAction);
+    boolean cmdStateEnd(final Map<String, Object> context) {
+        Map<String, Object> info = DataReader.optTypedMap(Object.class, context, KEY_INFO, null);
+        StateInfo stateInfo = StateInfo.fromObjectMap(info);
+        mediaContext.endState(stateInfo);
+        mediaHitGenerator.processStateEnd(stateInfo);
+        return true;
+    }
+
+    boolean cmdPlayheadUpdate(final Map<String, Object> context) {
+        double playhead = getPlayhead(context);
+
+        if (playhead >= 0) {
+            mediaContext.setPlayhead(playhead);
+        }
+
+        return true;
+    }
+
+    /**
+     * Holds the rule table shared by all trackers. Rules get the tracker they act on passed in, so
+     * the table is built once per process, the first time a tracker processes a rule, and sealed
+     * so no tracker can change it.
+     */
+    private static final class SharedRules {
+        static final MediaRuleEngine<MediaCollectionTracker> RULE_ENGINE = createRuleEngine();
+    }
+
+    private static MediaRuleEngine<MediaCollectionTracker> createRuleEngine() {
+        MediaRuleEngine<MediaCollectionTracker> ruleEngine = new MediaRuleEngine<>();
+        ruleEngine.onEnterRule(MediaCollectionTracker::cmdEnterAction);
+        ruleEngine.onExitRule(MediaCollectionTracker::cmdExitAction);
+
+        IMediaRuleCallback<MediaCollectionTracker> isInMedia = MediaCollectionTracker::isInMedia;
+        IMediaRuleCallback<MediaCollectionTracker> isValidMediaInfo =
+                MediaCollectionTracker::isValidMediaInfo;
+        IMediaRuleCallback<MediaCollectionTracker> isValidErrorInfo =
+                MediaCollectionTracker::isValidErrorInfo;
+        IMediaRuleCallback<MediaCollectionTracker> allowPlaybackStateChange =
+                MediaCollectionTracker::allowPlaybackStateChange;
+        IMediaRuleCallback<MediaCollectionTracker> isInBuffering =
+                MediaCollectionTracker::isInBuffering;
+        IMediaRuleCallback<MediaCollectionTracker> isInSeeking =
+                MediaCollectionTracker::isInSeeking;
+        IMediaRuleCallback<MediaCollectionTracker> isValidAdBreakInfo =
+                MediaCollectionTracker::isValidAdBreakInfo;
+        IMediaRuleCallback<MediaCollectionTracker> isDifferentAdBreakInfo =
+                MediaCollectionTracker::isDifferentAdBreakInfo;
+        IMediaRuleCallback<MediaCollectionTracker> isInAdBreak =
+                MediaCollectionTracker::isInAdBreak;
+        IMediaRuleCallback<MediaCollectionTracker> isValidAdInfo =
+                MediaCollectionTracker::isValidAdInfo;
+        IMediaRuleCallback<MediaCollectionTracker> isDifferentAdInfo =
+                MediaCollectionTracker::isDifferentAdInfo;
+        IMediaRuleCallback<MediaCollectionTracker> isInAd = MediaCollectionTracker::isInAd;
+        IMediaRuleCallback<MediaCollectionTracker> isValidChapterInfo =
+                MediaCollectionTracker::isValidChapterInfo;
+        IMediaRuleCallback<MediaCollectionTracker> isDifferentChapterInfo =
+                MediaCollectionTracker::isDifferentChapterInfo;
+        IMediaRuleCallback<MediaCollectionTracker> isInChapter =
+                MediaCollectionTracker::isInChapter;
+        IMediaRuleCallback<MediaCollectionTracker> isValidQoEInfo =
+                MediaCollectionTracker::isValidQoEInfo;
+        IMediaRuleCallback<MediaCollectionTracker> isValidStateInfo =
+                MediaCollectionTracker::isValidStateInfo;
+        IMediaRuleCallback<MediaCollectionTracker> isInTrackedState =
+                MediaCollectionTracker::isInTrackedState;
+        IMediaRuleCallback<MediaCollectionTracker> allowStateTrack =
+                MediaCollectionTracker::allowStateTrack;
+        IMediaRuleCallback<MediaCollectionTracker> cmdMediaStart =
+                MediaCollectionTracker::cmdMediaStart;
+        IMediaRuleCallback<MediaCollectionTracker> cmdAdSkip = MediaCollectionTracker::cmdAdSkip;
+        IMediaRuleCallback<MediaCollectionTracker> cmdAdBreakSkip =
+                MediaCollectionTracker::cmdAdBreakSkip;
+        IMediaRuleCallback<MediaCollectionTracker> cmdChapterSkip =
+                MediaCollectionTracker::cmdChapterSkip;
+        IMediaRuleCallback<MediaCollectionTracker> cmdMediaComplete =
+                MediaCollectionTracker::cmdMediaComplete;
+        IMediaRuleCallback<MediaCollectionTracker> cmdMediaSkip =
+                MediaCollectionTracker::cmdMediaSkip;
+        IMediaRuleCallback<MediaCollectionTracker> cmdError = MediaCollectionTracker::cmdError;
+        IMediaRuleCallback<MediaCollectionTracker> cmdSeekComplete =
+                MediaCollectionTracker::cmdSeekComplete;
+        IMediaRuleCallback<MediaCollectionTracker> cmdBufferComplete =
+                MediaCollectionTracker::cmdBufferComplete;
+        IMediaRuleCallback<MediaCollectionTracker> cmdPlay = MediaCollectionTracker::cmdPlay;
+        IMediaRuleCallback<MediaCollectionTracker> cmdPause = MediaCollectionTracker::cmdPause;
+        IMediaRuleCallback<MediaCollectionTracker> cmdBufferStart =
+                MediaCollectionTracker::cmdBufferStart;
+        IMediaRuleCallback<MediaCollectionTracker> cmdSeekStart =
+                MediaCollectionTracker::cmdSeekStart;
+        IMediaRuleCallback<MediaCollectionTracker> cmdAdBreakStart =
+                MediaCollectionTracker::cmdAdBreakStart;
+        IMediaRuleCallback<MediaCollectionTracker> cmdAdBreakComplete =
+                MediaCollectionTracker::cmdAdBreakComplete;
+        IMediaRuleCallback<MediaCollectionTracker> cmdAdStart = MediaCollectionTracker::cmdAdStart;
+        IMediaRuleCallback<MediaCollectionTracker> cmdAdComplete =
+                MediaCollectionTracker::cmdAdComplete;
+        IMediaRuleCallback<MediaCollectionTracker> cmdChapterStart =
+                MediaCollectionTracker::cmdChapterStart;
+        IMediaRuleCallback<MediaCollectionTracker> cmdChapterComplete =
+                MediaCollectionTracker::cmdChapterComplete;
+        IMediaRuleCallback<MediaCollectionTracker> cmdBitrateChange =
+                MediaCollectionTracker::cmdBitrateChange;
+        IMediaRuleCallback<MediaCollectionTracker> cmdQoEUpdate =
+                MediaCollectionTracker::cmdQoEUpdate;
+        IMediaRuleCallback<MediaCollectionTracker> cmdPlayheadUpdate =
+                MediaCollectionTracker::cmdPlayheadUpdate;
+        IMediaRuleCallback<MediaCollectionTracker> cmdStateStart =
+                MediaCollectionTracker::cmdStateStart;
+        IMediaRuleCallback<MediaCollectionTracker> cmdStateEnd =
+                MediaCollectionTracker::cmdStateEnd;
 
         // MediaRule::trackSessionStart
-        MediaRule mediaStart =
-                new MediaRule(MediaRuleName.MediaStart.ordinal(), "API::trackSessionStart");
+        MediaRule<MediaCollectionTracker> mediaStart =
+                new MediaRule<>(MediaRuleName.MediaStart.ordinal(), "API::trackSessionStart");
         mediaStart
                 .addPredicate(isInMedia, false, ErrorMessage.ErrInMedia)
                 .addPredicate(isValidMediaInfo, true, ErrorMessage.ErrInvalidMediaInfo)
@@ -734,8 +1248,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(mediaStart);
 
         // MediaRule::trackSessionComplete
-        MediaRule mediaComplete =
-                new MediaRule(MediaRuleName.MediaComplete.ordinal(), "API::trackSessionComplete");
+        MediaRule<MediaCollectionTracker> mediaComplete =
+                new MediaRule<>(MediaRuleName.MediaComplete.ordinal(), "API::trackSessionComplete");
         mediaComplete
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addAction(cmdAdSkip)
@@ -746,8 +1260,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(mediaComplete);
 
         // MediaRule::trackSessionEnd
-        MediaRule mediaSkip =
-                new MediaRule(MediaRuleName.MediaSkip.ordinal(), "API::trackSessionEnd");
+        MediaRule<MediaCollectionTracker> mediaSkip =
+                new MediaRule<>(MediaRuleName.MediaSkip.ordinal(), "API::trackSessionEnd");
         mediaSkip
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addAction(cmdAdSkip)
@@ -758,7 +1272,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(mediaSkip);
 
         // MediaRule::trackError
-        MediaRule error = new MediaRule(MediaRuleName.Error.ordinal(), "API::trackError");
+        MediaRule<MediaCollectionTracker> error =
+                new MediaRule<>(MediaRuleName.Error.ordinal(), "API::trackError");
         error.addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(isValidErrorInfo, true, ErrorMessage.ErrInvalidErrorId)
                 .addAction(cmdError);
@@ -766,7 +1281,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(error);
 
         // MediaRule::trackPlay
-        MediaRule play = new MediaRule(MediaRuleName.Play.ordinal(), "API::trackPlay");
+        MediaRule<MediaCollectionTracker> play =
+                new MediaRule<>(MediaRuleName.Play.ordinal(), "API::trackPlay");
         play.addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(allowPlaybackStateChange, true, ErrorMessage.ErrInvalidPlaybackState)
                 .addAction(cmdSeekComplete)
@@ -776,7 +1292,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(play);
 
         // MediaRule::trackPause
-        MediaRule pause = new MediaRule(MediaRuleName.Pause.ordinal(), "API::trackPause");
+        MediaRule<MediaCollectionTracker> pause =
+                new MediaRule<>(MediaRuleName.Pause.ordinal(), "API::trackPause");
         pause.addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(allowPlaybackStateChange, true, ErrorMessage.ErrInvalidPlaybackState)
                 .addPredicate(isInBuffering, false, ErrorMessage.ErrInBuffer)
@@ -788,8 +1305,9 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(pause);
 
         // MediaRule::trackEvent(BufferStart)
-        MediaRule bufferStart =
-                new MediaRule(MediaRuleName.BufferStart.ordinal(), "API::trackEvent(BufferStart)");
+        MediaRule<MediaCollectionTracker> bufferStart =
+                new MediaRule<>(
+                        MediaRuleName.BufferStart.ordinal(), "API::trackEvent(BufferStart)");
         bufferStart
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(allowPlaybackStateChange, true, ErrorMessage.ErrInvalidPlaybackState)
@@ -800,8 +1318,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(bufferStart);
 
         // MediaRule::trackEvent(BufferComplete)
-        MediaRule bufferComplete =
-                new MediaRule(
+        MediaRule<MediaCollectionTracker> bufferComplete =
+                new MediaRule<>(
                         MediaRuleName.BufferComplete.ordinal(), "API::trackEvent(BufferComplete)");
         bufferComplete
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
@@ -812,8 +1330,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(bufferComplete);
 
         // MediaRule::trackEvent(SeekStart)
-        MediaRule seekStart =
-                new MediaRule(MediaRuleName.SeekStart.ordinal(), "API::trackEvent(SeekStart)");
+        MediaRule<MediaCollectionTracker> seekStart =
+                new MediaRule<>(MediaRuleName.SeekStart.ordinal(), "API::trackEvent(SeekStart)");
         seekStart
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(allowPlaybackStateChange, true, ErrorMessage.ErrInvalidPlaybackState)
@@ -824,8 +1342,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(seekStart);
 
         // MediaRule::trackEvent(SeekComplete)
-        MediaRule seekComplete =
-                new MediaRule(
+        MediaRule<MediaCollectionTracker> seekComplete =
+                new MediaRule<>(
                         MediaRuleName.SeekComplete.ordinal(), "API::trackEvent(SeekComplete)");
         seekComplete
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
@@ -836,8 +1354,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(seekComplete);
 
         // MediaRule::trackEvent(AdBreakStart)
-        MediaRule adBreakStart =
-                new MediaRule(
+        MediaRule<MediaCollectionTracker> adBreakStart =
+                new MediaRule<>(
                         MediaRuleName.AdBreakStart.ordinal(), "API::trackEvent(AdBreakStart)");
         adBreakStart
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
@@ -850,8 +1368,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(adBreakStart);
 
         // MediaRule::trackEvent(AdBreakComplete)
-        MediaRule adBreakComplete =
-                new MediaRule(
+        MediaRule<MediaCollectionTracker> adBreakComplete =
+                new MediaRule<>(
                         MediaRuleName.AdBreakComplete.ordinal(),
                         "API::trackEvent(AdBreakComplete)");
         adBreakComplete
@@ -863,8 +1381,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(adBreakComplete);
 
         // MediaRule::trackEvent(AdStart)
-        MediaRule adStart =
-                new MediaRule(MediaRuleName.AdStart.ordinal(), "API::trackEvent(AdStart)");
+        MediaRule<MediaCollectionTracker> adStart =
+                new MediaRule<>(MediaRuleName.AdStart.ordinal(), "API::trackEvent(AdStart)");
         adStart.addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(isInAdBreak, true, ErrorMessage.ErrNotInAdBreak)
                 .addPredicate(isValidAdInfo, true, ErrorMessage.ErrInvalidAdInfo)
@@ -875,8 +1393,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(adStart);
 
         // MediaRule::trackEvent(AdComplete)
-        MediaRule adComplete =
-                new MediaRule(MediaRuleName.AdComplete.ordinal(), "API::trackEvent(AdComplete)");
+        MediaRule<MediaCollectionTracker> adComplete =
+                new MediaRule<>(MediaRuleName.AdComplete.ordinal(), "API::trackEvent(AdComplete)");
         adComplete
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(isInAdBreak, true, ErrorMessage.ErrNotInAdBreak)
@@ -886,7 +1404,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(adComplete);
 
         // MediaRule::trackEvent(AdSkip)
-        MediaRule adSkip = new MediaRule(MediaRuleName.AdSkip.ordinal(), "API::trackEvent(AdSkip)");
+        MediaRule<MediaCollectionTracker> adSkip =
+                new MediaRule<>(MediaRuleName.AdSkip.ordinal(), "API::trackEvent(AdSkip)");
         adSkip.addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(isInAdBreak, true, ErrorMessage.ErrNotInAdBreak)
                 .addPredicate(isInAd, true, ErrorMessage.ErrNotInAd)
@@ -895,8 +1414,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(adSkip);
 
         // MediaRule::trackEvent(ChapterStart)
-        MediaRule chapterStart =
-                new MediaRule(
+        MediaRule<MediaCollectionTracker> chapterStart =
+                new MediaRule<>(
                         MediaRuleName.ChapterStart.ordinal(), "API::trackEvent(ChapterStart)");
         chapterStart
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
@@ -908,8 +1427,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(chapterStart);
 
         // MediaRule::trackEvent(ChapterComplete)
-        MediaRule chapterComplete =
-                new MediaRule(
+        MediaRule<MediaCollectionTracker> chapterComplete =
+                new MediaRule<>(
                         MediaRuleName.ChapterComplete.ordinal(),
                         "API::trackEvent(ChapterComplete)");
         chapterComplete
@@ -920,8 +1439,9 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(chapterComplete);
 
         // MediaRule::trackEvent(ChapterSkip)
-        MediaRule chapterSkip =
-                new MediaRule(MediaRuleName.ChapterSkip.ordinal(), "API::trackEvent(ChapterSkip)");
+        MediaRule<MediaCollectionTracker> chapterSkip =
+                new MediaRule<>(
+                        MediaRuleName.ChapterSkip.ordinal(), "API::trackEvent(ChapterSkip)");
         chapterSkip
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(isInChapter, true, ErrorMessage.ErrNotInChapter)
@@ -930,8 +1450,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(chapterSkip);
 
         // MediaRule::trackEvent(BitrateChange)
-        MediaRule bitrateChange =
-                new MediaRule(
+        MediaRule<MediaCollectionTracker> bitrateChange =
+                new MediaRule<>(
                         MediaRuleName.BitrateChange.ordinal(), "API::trackEvent(BitrateChange)");
         bitrateChange
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
@@ -940,8 +1460,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(bitrateChange);
 
         // MediaRule::updateQoEInfo
-        MediaRule qoeUpdate =
-                new MediaRule(MediaRuleName.QoEUpdate.ordinal(), "API::updateQoEInfo");
+        MediaRule<MediaCollectionTracker> qoeUpdate =
+                new MediaRule<>(MediaRuleName.QoEUpdate.ordinal(), "API::updateQoEInfo");
         qoeUpdate
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(isValidQoEInfo, true, ErrorMessage.ErrInvalidQoEInfo)
@@ -950,8 +1470,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(qoeUpdate);
 
         // MediaRule::updatePlayhead
-        MediaRule playheadUpdate =
-                new MediaRule(MediaRuleName.PlayheadUpdate.ordinal(), "API::updatePlayhead");
+        MediaRule<MediaCollectionTracker> playheadUpdate =
+                new MediaRule<>(MediaRuleName.PlayheadUpdate.ordinal(), "API::updatePlayhead");
         playheadUpdate
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addAction(cmdPlayheadUpdate);
@@ -959,7 +1479,8 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(playheadUpdate);
 
         // MediaRule::stateStart
-        MediaRule stateStart = new MediaRule(MediaRuleName.StateStart.ordinal(), "API::stateStart");
+        MediaRule<MediaCollectionTracker> stateStart =
+                new MediaRule<>(MediaRuleName.StateStart.ordinal(), "API::stateStart");
         stateStart
                 .addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(isValidStateInfo, true, ErrorMessage.ErrInvalidStateInfo)
@@ -970,13 +1491,17 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         ruleEngine.addRule(stateStart);
 
         // MediaRule::stateEnd
-        MediaRule stateEnd = new MediaRule(MediaRuleName.StateEnd.ordinal(), "API::stateEnd");
+        MediaRule<MediaCollectionTracker> stateEnd =
+                new MediaRule<>(MediaRuleName.StateEnd.ordinal(), "API::stateEnd");
         stateEnd.addPredicate(isInMedia, true, ErrorMessage.ErrNotInMedia)
                 .addPredicate(isValidStateInfo, true, ErrorMessage.ErrInvalidStateInfo)
                 .addPredicate(isInTrackedState, true, ErrorMessage.ErrNotInTrackedState)
                 .addAction(cmdStateEnd);
 
         ruleEngine.addRule(stateEnd);
+
+        ruleEngine.seal();
+        return ruleEngine;
     }
 
     Map<String, String> cleanMetadata(final Map<String, String> metadata) {
@@ -1026,24 +1551,44 @@ class MediaCollectionTracker implements MediaTrackerInterface {
 
             // We are going to queue the events and stop further downstream
             // processing for prerollWaitTime ms.
-            prerollRulesQueue.add(new PrerollQueuedRule(rule, context));
+            if (prerollBuffer.add(rule, context) && sessionMemory.isEnabled()) {
+                sessionMemory.addPrerollQueueBytes(MediaSessionMemory.estimate(context));
+            }
 
             long refTS = getRefTS(context);
 
             if (((refTS - prerollRefTS) >= prerollWaitTime)
                     || (rule == MediaRuleName.AdBreakStart.ordinal())
                     || (rule == MediaRuleName.MediaComplete.ordinal())
-                    || (rule == MediaRuleName.MediaSkip.ordinal())) {
+                    || (rule == MediaRuleName.MediaSkip.ordinal())
+                    || prerollBuffer.isFull()
+                    || sessionMemory.isAboveHardCap()) {
 
-                // If prerollWaitTime has elapsed or we get any of these rules
-                // We start processing all the queued rules.
-                List<PrerollQueuedRule> reorderedRules = reorderPrerollRules(prerollRulesQueue);
+                // If prerollWaitTime has elapsed, we get any of these rules, the queue is full or
+                // the session is above its hard memory cap, we start processing all the queued
+                // rules.
+                prerollBuffer.reorder();
 
-                for (PrerollQueuedRule prerollQueuedRule : reorderedRules) {
+                for (int i = 0; i < prerollBuffer.size(); i++) {
+                    PrerollQueuedRule prerollQueuedRule = prerollBuffer.get(i);
                     processRule(prerollQueuedRule.ruleName, prerollQueuedRule.ruleContext);
                 }
 
-                prerollRulesQueue.clear();
+                int compacted = prerollBuffer.getCollapsedCount() + prerollBuffer.getDroppedCount();
+                if (compacted > 0) {
+                    MediaMetrics.getInstance().recordPrerollCompaction(compacted);
+                    Log.trace(
+                            MediaInternalConstants.LOG_TAG,
+                            LOG_TAG,
+                            "prerollDeferRule - Replayed %d queued rules, collapsed %d updates and"
+                                    + " dropped %d play rules.",
+                            prerollBuffer.size(),
+                            prerollBuffer.getCollapsedCount(),
+                            prerollBuffer.getDroppedCount());
+                }
+
+                prerollBuffer = null;
+                sessionMemory.clearPrerollQueueBytes();
                 inPrerollInterval = false;
             }
 
@@ -1053,133 +1598,170 @@ class MediaCollectionTracker implements MediaTrackerInterface {
         return false;
     }
 
-    List<PrerollQueuedRule> reorderPrerollRules(final List<PrerollQueuedRule> rules) {
-        List<PrerollQueuedRule> reorderedRules = new ArrayList<>();
-        int adBreakStartPosition = -1;
+    @VisibleForTesting
+    MediaHitProcessor getHitProcessor() {
+        return hitProcessor;
+    }
 
-        for (int i = 0; i < rules.size(); i++) {
-            if (rules.get(i).ruleName == MediaRuleName.AdBreakStart.ordinal()) {
-                adBreakStartPosition = i;
-                break;
-            }
-        }
+    @VisibleForTesting
+    MediaSessionMemory getSessionMemory() {
+        return sessionMemory;
+    }
 
-        // We drop any play rule before adbreak start.
-        boolean dropPlay = adBreakStartPosition > -1;
+    @VisibleForTesting
+    static MediaRuleEngine<MediaCollectionTracker> getRuleEngine() {
+        return SharedRules.RULE_ENGINE;
+    }
+}
 
-        for (PrerollQueuedRule eventRule : rules) {
-            if (eventRule.ruleName == MediaRuleName.Play.ordinal() && dropPlay) {
-                continue;
-            }
+/**
+ * Rules handled by {@link MediaCollectionTracker}. The ordinal of each rule is also its compact
+ * event code, the public tracker sets the same codes for its events.
+ */
+enum MediaRuleName {
+    Invalid(null),
+    MediaStart(MediaInternalConstants.EventDataKeys.MediaEventName.SESSION_START),
+    MediaComplete(MediaInternalConstants.EventDataKeys.MediaEventName.COMPLETE),
+    MediaSkip(MediaInternalConstants.EventDataKeys.MediaEventName.SESSION_END),
+    AdBreakStart(MediaInternalConstants.EventDataKeys.MediaEventName.ADBREAK_START),
+    AdBreakComplete(MediaInternalConstants.EventDataKeys.MediaEventName.ADBREAK_COMPLETE),
+    AdStart(MediaInternalConstants.EventDataKeys.MediaEventName.AD_START),
+    AdComplete(MediaInternalConstants.EventDataKeys.MediaEventName.AD_COMPLETE),
+    AdSkip(MediaInternalConstants.EventDataKeys.MediaEventName.AD_SKIP),
+    ChapterStart(MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_START),
+    ChapterComplete(MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_COMPLETE),
+    ChapterSkip(MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_SKIP),
+    Play(MediaInternalConstants.EventDataKeys.MediaEventName.PLAY),
+    Pause(MediaInternalConstants.EventDataKeys.MediaEventName.PAUSE),
+    SeekStart(MediaInternalConstants.EventDataKeys.MediaEventName.SEEK_START),
+    SeekComplete(MediaInternalConstants.EventDataKeys.MediaEventName.SEEK_COMPLETE),
+    BufferStart(MediaInternalConstants.EventDataKeys.MediaEventName.BUFFER_START),
+    BufferComplete(MediaInternalConstants.EventDataKeys.MediaEventName.BUFFER_COMPLETE),
+    BitrateChange(MediaInternalConstants.EventDataKeys.MediaEventName.BITRATE_CHANGE),
+    Error(MediaInternalConstants.EventDataKeys.MediaEventName.ERROR),
+    QoEUpdate(MediaInternalConstants.EventDataKeys.MediaEventName.QOE_UPDATE),
+    PlayheadUpdate(MediaInternalConstants.EventDataKeys.MediaEventName.PLAYHEAD_UPDATE),
+    StateStart(MediaInternalConstants.EventDataKeys.MediaEventName.STATE_START),
+    StateEnd(MediaInternalConstants.EventDataKeys.MediaEventName.STATE_END);
+
+    private static final MediaRuleName[] RULES = values();
+
+    private final String eventName;
+
+    MediaRuleName(final String eventName) {
+        this.eventName = eventName;
+    }
 
-            if (eventRule.ruleName == MediaRuleName.AdBreakStart.ordinal()) {
-                dropPlay = false;
-            }
+    String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * Resolves the rule for a track event. The compact event code set by the public tracker is
+     * preferred, and it is trusted only when the event name agrees with it. Events coming from
+     * other sources fall back to resolving the event name.
+     *
+     * @param eventCode the compact event code, or {@link
+     *     MediaInternalConstants.EventDataKeys.MediaEventCode#INVALID} if absent
+     * @param eventName the event name
+     * @return the matching {@link MediaRuleName} or {@link #Invalid}
+     */
+    static MediaRuleName resolve(final int eventCode, final String eventName) {
+        MediaRuleName rule = eventCodeToRule(eventCode);
 
-            reorderedRules.add(eventRule);
+        if (rule != Invalid && rule.eventName.equals(eventName)) {
+            return rule;
         }
 
-        return reorderedRules;
+        return eventNameToRule(eventName);
     }
 
-    @VisibleForTesting
-    MediaHitProcessor getHitProcessor() {
-        return hitProcessor;
-    }
-}
+    static MediaRuleName eventCodeToRule(final int eventCode) {
+        if (eventCode <= 0 || eventCode >= RULES.length) {
+            return Invalid;
+        }
 
-enum MediaRuleName {
-    Invalid,
-    MediaStart,
-    MediaComplete,
-    MediaSkip,
-    AdBreakStart,
-    AdBreakComplete,
-    AdStart,
-    AdComplete,
-    AdSkip,
-    ChapterStart,
-    ChapterComplete,
-    ChapterSkip,
-    Play,
-    Pause,
-    SeekStart,
-    SeekComplete,
-    BufferStart,
-    BufferComplete,
-    BitrateChange,
-    Error,
-    QoEUpdate,
-    PlayheadUpdate,
-    StateStart,
-    StateEnd;
-
-    static final Map<String, MediaRuleName> eventToRuleMapping;
-
-    static {
-        eventToRuleMapping = new HashMap<>();
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.SESSION_START, MediaStart);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.COMPLETE, MediaComplete);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.SESSION_END, MediaSkip);
-
-        eventToRuleMapping.put(MediaInternalConstants.EventDataKeys.MediaEventName.PLAY, Play);
-        eventToRuleMapping.put(MediaInternalConstants.EventDataKeys.MediaEventName.PAUSE, Pause);
-
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.ADBREAK_START, AdBreakStart);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.ADBREAK_COMPLETE,
-                AdBreakComplete);
-
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.AD_START, AdStart);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.AD_COMPLETE, AdComplete);
-        eventToRuleMapping.put(MediaInternalConstants.EventDataKeys.MediaEventName.AD_SKIP, AdSkip);
-
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_START, ChapterStart);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_COMPLETE,
-                ChapterComplete);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_SKIP, ChapterSkip);
-
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.SEEK_START, SeekStart);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.SEEK_COMPLETE, SeekComplete);
-
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.BUFFER_START, BufferStart);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.BUFFER_COMPLETE,
-                BufferComplete);
-
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.BITRATE_CHANGE, BitrateChange);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.QOE_UPDATE, QoEUpdate);
-        eventToRuleMapping.put(MediaInternalConstants.EventDataKeys.MediaEventName.ERROR, Error);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.PLAYHEAD_UPDATE,
-                PlayheadUpdate);
-
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.STATE_START, StateStart);
-        eventToRuleMapping.put(
-                MediaInternalConstants.EventDataKeys.MediaEventName.STATE_END, StateEnd);
+        return RULES[eventCode];
     }
 
     static MediaRuleName eventNameToRule(final String eventName) {
-        if (eventToRuleMapping.containsKey(eventName)) {
-            return eventToRuleMapping.get(eventName);
+        if (eventName == null) {
+            return Invalid;
         }
 
-        return Invalid;
+        switch (eventName) {
+            case MediaInternalConstants.EventDataKeys.MediaEventName.SESSION_START:
+                return MediaStart;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.COMPLETE:
+                return MediaComplete;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.SESSION_END:
+                return MediaSkip;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.ADBREAK_START:
+                return AdBreakStart;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.ADBREAK_COMPLETE:
+                return AdBreakComplete;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.AD_START:
+                return AdStart;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.AD_COMPLETE:
+                return AdComplete;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.AD_SKIP:
+                return AdSkip;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_START:
+                return ChapterStart;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_COMPLETE:
+                return ChapterComplete;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.CHAPTER_SKIP:
+                return ChapterSkip;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.PLAY:
+                return Play;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.PAUSE:
+                return Pause;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.SEEK_START:
+                return SeekStart;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.SEEK_COMPLETE:
+                return SeekComplete;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.BUFFER_START:
+                return BufferStart;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.BUFFER_COMPLETE:
+                return BufferComplete;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.BITRATE_CHANGE:
+                return BitrateChange;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.ERROR:
+                return Error;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.QOE_UPDATE:
+                return QoEUpdate;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.PLAYHEAD_UPDATE:
+                return PlayheadUpdate;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.STATE_START:
+                return StateStart;
+
+            case MediaInternalConstants.EventDataKeys.MediaEventName.STATE_END:
+                return StateEnd;
+
+            default:
+                return Invalid;
+        }
     }
 }
 
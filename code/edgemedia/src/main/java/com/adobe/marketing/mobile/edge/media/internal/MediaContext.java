@@ -12,8 +12,14 @@
 package com.adobe.marketing.mobile.edge.media.internal;
 
 import com.adobe.marketing.mobile.services.Log;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 enum MediaPlayBackState {
@@ -51,24 +57,112 @@ enum MediaPlayBackState {
     }
 }
 
+/**
+ * Compact registry of the custom states tracked during a session. State names are interned in
+ * first-seen order into a fixed array sized to {@link
+ * MediaInternalConstants.EventDataKeys.StateInfo#STATE_LIMIT}, so a slot index identifies a state
+ * for the rest of the session. A slot is tracked once it is occupied, and its active flag is kept
+ * in a bitset.
+ */
+class TrackedStates {
+    private final StateInfo[] states;
+    private int count;
+    private int activeMask;
+
+    TrackedStates(final int capacity) {
+        states = new StateInfo[capacity];
+    }
+
+    int indexOf(final String stateName) {
+        for (int i = 0; i < count; i++) {
+            if (states[i].getStateName().equals(stateName)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Interns a state which is not tracked yet into the next free slot.
+     *
+     * @return the slot index, or -1 if the registry is full.
+     */
+    int add(final StateInfo stateInfo) {
+        if (isFull()) {
+            return -1;
+        }
+
+        states[count] = stateInfo;
+        return count++;
+    }
+
+    boolean isTracked(final String stateName) {
+        return indexOf(stateName) != -1;
+    }
+
+    boolean isActive(final String stateName) {
+        int index = indexOf(stateName);
+        return index != -1 && isActiveAt(index);
+    }
+
+    boolean isActiveAt(final int index) {
+        return (activeMask & (1 << index)) != 0;
+    }
+
+    void setActiveAt(final int index, final boolean active) {
+        if (active) {
+            activeMask |= (1 << index);
+        } else {
+            activeMask &= ~(1 << index);
+        }
+    }
+
+    StateInfo get(final int index) {
+        return states[index];
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count >= states.length;
+    }
+
+    void clear() {
+        for (int i = 0; i < count; i++) {
+            states[i] = null;
+        }
+
+        count = 0;
+        activeMask = 0;
+    }
+}
+
 class MediaContext {
     private static final String LOG_TAG = "MediaContext";
+    // estimated size of this object and its info objects, metadata maps excluded
+    static final int FIXED_BYTES = 512;
+    static final int STATE_BYTES = 64;
     private final MediaInfo mediaInfo;
     private AdInfo adInfo;
     private AdBreakInfo adBreakInfo;
     private ChapterInfo chapterInfo;
     private QoEInfo qoeInfo;
+    private MediaQoESource qoeSource;
     private Map<String, String> mediaMetadata, adMetadata, chapterMetadata;
     private boolean buffering, seeking;
+    private boolean metadataTrimmed;
     private MediaPlayBackState playState;
     private double playhead;
-    private final Map<String, Boolean> states;
+    private final TrackedStates states;
 
     MediaContext(final MediaInfo mediaInfo, final Map<String, String> metadata) {
         mediaMetadata = new HashMap<>();
         adMetadata = new HashMap<>();
         chapterMetadata = new HashMap<>();
-        states = new HashMap<>();
+        states = new TrackedStates(MediaInternalConstants.EventDataKeys.StateInfo.STATE_LIMIT);
 
         if (mediaInfo != null) {
             this.mediaInfo =
@@ -164,6 +258,17 @@ class MediaContext {
         }
     }
 
+    /**
+     * Subscribes this context to a shared {@link MediaQoESource}. Its latest sample takes
+     * precedence over the QoE info set with {@link #setQoEInfo(QoEInfo)}, which is still used
+     * until a valid sample is published.
+     *
+     * @param qoeSource the source to read, or null to unsubscribe
+     */
+    void setQoESource(final MediaQoESource qoeSource) {
+        this.qoeSource = qoeSource;
+    }
+
     void setPlayhead(final double playhead) {
         this.playhead = playhead;
     }
@@ -197,6 +302,14 @@ class MediaContext {
     }
 
     QoEInfo getQoEInfo() {
+        if (qoeSource != null) {
+            QoEInfo sample = qoeSource.getQoEInfo();
+
+            if (sample != null) {
+                return sample;
+            }
+        }
+
         return qoeInfo;
     }
 
@@ -300,7 +413,9 @@ class MediaContext {
     }
 
     boolean startState(final StateInfo stateInfo) {
-        if (!hasTrackedState(stateInfo) && hasReachedStateLimit()) {
+        int index = states.indexOf(stateInfo.getStateName());
+
+        if (index == -1 && hasReachedStateLimit()) {
             Log.debug(
                     MediaInternalConstants.LOG_TAG,
                     LOG_TAG,
@@ -310,7 +425,7 @@ class MediaContext {
             return false;
         }
 
-        if (isInState(stateInfo)) {
+        if (index != -1 && states.isActiveAt(index)) {
             Log.debug(
                     MediaInternalConstants.LOG_TAG,
                     LOG_TAG,
@@ -319,12 +434,18 @@ class MediaContext {
             return false;
         }
 
-        states.put(stateInfo.getStateName(), true);
+        if (index == -1) {
+            index = states.add(stateInfo);
+        }
+
+        states.setActiveAt(index, true);
         return true;
     }
 
     boolean endState(final StateInfo stateInfo) {
-        if (!isInState(stateInfo)) {
+        int index = states.indexOf(stateInfo.getStateName());
+
+        if (index == -1 || !states.isActiveAt(index)) {
             Log.debug(
                     MediaInternalConstants.LOG_TAG,
                     LOG_TAG,
@@ -333,37 +454,305 @@ class MediaContext {
             return false;
         }
 
-        states.put(stateInfo.getStateName(), false);
+        states.setActiveAt(index, false);
         return true;
     }
 
     boolean isInState(final StateInfo stateInfo) {
-        String stateName = stateInfo.getStateName();
-        return states.containsKey(stateName) && states.get(stateName);
+        return isInTrackedState(stateInfo.getStateName());
+    }
+
+    boolean isInTrackedState(final String stateName) {
+        return states.isActive(stateName);
     }
 
     boolean hasTrackedState(final StateInfo stateInfo) {
-        String stateName = stateInfo.getStateName();
-        return states.containsKey(stateName);
+        return hasTrackedState(stateInfo.getStateName());
+    }
+
+    boolean hasTrackedState(final String stateName) {
+        return states.isTracked(stateName);
     }
 
     ArrayList<StateInfo> getActiveTrackedStates() {
         ArrayList<StateInfo> activeStates = new ArrayList<>();
 
-        for (Map.Entry<String, Boolean> entry : states.entrySet()) {
-            if (entry.getValue()) {
-                activeStates.add(StateInfo.create(entry.getKey()));
+        for (int i = 0; i < states.size(); i++) {
+            if (states.isActiveAt(i)) {
+                activeStates.add(states.get(i));
             }
         }
 
         return activeStates;
     }
 
+    /**
+     * Returns the number of states tracked so far in this session. Together with {@link
+     * #isTrackedStateActive(int)} and {@link #getTrackedState(int)} this allows walking the active
+     * states without allocating a list.
+     */
+    int getTrackedStateCount() {
+        return states.size();
+    }
+
+    boolean isTrackedStateActive(final int index) {
+        return states.isActiveAt(index);
+    }
+
+    StateInfo getTrackedState(final int index) {
+        return states.get(index);
+    }
+
     boolean hasReachedStateLimit() {
-        return states.size() >= MediaInternalConstants.EventDataKeys.StateInfo.STATE_LIMIT;
+        return states.isFull();
     }
 
     void clearState() {
         states.clear();
     }
+
+    /**
+     * Writes this context to a tracker snapshot, see {@link MediaCollectionTracker#snapshot()}.
+     * Info objects are written as their object maps and tracked states in slot order, so {@link
+     * #readFrom(DataInputStream)} restores the same slot indexes.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    void writeTo(final DataOutputStream out) throws IOException {
+        // toObjectMap leaves out the granular ad tracking flag
+        Map<String, Object> info = mediaInfo.toObjectMap();
+        info.put(
+                MediaInternalConstants.EventDataKeys.MediaInfo.GRANULAR_AD_TRACKING,
+                mediaInfo.isGranularAdTrackingEnabled());
+
+        MediaEventTrace.writeValue(out, info);
+        MediaEventTrace.writeValue(out, mediaMetadata);
+        MediaEventTrace.writeValue(out, adBreakInfo != null ? adBreakInfo.toObjectMap() : null);
+        MediaEventTrace.writeValue(out, adInfo != null ? adInfo.toObjectMap() : null);
+        MediaEventTrace.writeValue(out, adMetadata);
+        MediaEventTrace.writeValue(out, chapterInfo != null ? chapterInfo.toObjectMap() : null);
+        MediaEventTrace.writeValue(out, chapterMetadata);
+        MediaEventTrace.writeValue(out, qoeInfo != null ? qoeInfo.toObjectMap() : null);
+
+        out.writeByte(playState.ordinal());
+        out.writeBoolean(buffering);
+        out.writeBoolean(seeking);
+        out.writeDouble(playhead);
+        out.writeBoolean(metadataTrimmed);
+
+        out.writeByte(states.size());
+        for (int i = 0; i < states.size(); i++) {
+            out.writeUTF(states.get(i).getStateName());
+            out.writeBoolean(states.isActiveAt(i));
+        }
+    }
+
+    /**
+     * Reads a context written with {@link #writeTo(DataOutputStream)}.
+     *
+     * @param in the stream to read from
+     * @return the restored context
+     * @throws IOException if the stream cannot be read or does not hold a valid context
+     */
+    static MediaContext readFrom(final DataInputStream in) throws IOException {
+        MediaInfo mediaInfo = MediaInfo.fromObjectMap(MediaEventTrace.readMap(in));
+        if (mediaInfo == null) {
+            throw new IOException("Invalid media info in media context");
+        }
+
+        MediaContext context = new MediaContext(mediaInfo, MediaEventTrace.readStringMap(in));
+        context.adBreakInfo = AdBreakInfo.fromObjectMap(MediaEventTrace.readMap(in));
+        context.adInfo = AdInfo.fromObjectMap(MediaEventTrace.readMap(in));
+        context.adMetadata = MediaEventTrace.readStringMap(in);
+        context.chapterInfo = ChapterInfo.fromObjectMap(MediaEventTrace.readMap(in));
+        context.chapterMetadata = MediaEventTrace.readStringMap(in);
+        context.qoeInfo = QoEInfo.fromObjectMap(MediaEventTrace.readMap(in));
+
+        int playState = in.readByte();
+        MediaPlayBackState[] playStates = MediaPlayBackState.values();
+        if (playState < 0 || playState >= playStates.length) {
+            throw new IOException("Invalid play state " + playState + " in media context");
+        }
+
+        context.playState = playStates[playState];
+        context.buffering = in.readBoolean();
+        context.seeking = in.readBoolean();
+        context.playhead = in.readDouble();
+        context.metadataTrimmed = in.readBoolean();
+
+        int stateCount = in.readByte();
+        for (int i = 0; i < stateCount; i++) {
+            StateInfo stateInfo = StateInfo.create(in.readUTF());
+            int index = stateInfo != null ? context.states.add(stateInfo) : -1;
+            if (index == -1) {
+                throw new IOException("Invalid tracked state in media context");
+            }
+
+            context.states.setActiveAt(index, in.readBoolean());
+        }
+
+        return context;
+    }
+
+    /**
+     * Returns the estimated heap held by this context. Info objects and the state registry count
+     * as fixed sizes while the metadata maps are measured, as they hold most of the variable data.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        return FIXED_BYTES
+                + (long) states.size() * STATE_BYTES
+                + MediaSessionMemory.estimate(mediaMetadata)
+                + MediaSessionMemory.estimate(adMetadata)
+                + MediaSessionMemory.estimate(chapterMetadata);
+    }
+
+    /**
+     * Returns true once metadata of this context was trimmed or dropped by {@link
+     * #trimMetadata(int)} or {@link #dropLargestMetadata(long)}.
+     */
+    boolean isMetadataTrimmed() {
+        return metadataTrimmed;
+    }
+
+    /**
+     * Truncates media, ad and chapter metadata values longer than {@code maxLength}. The maps are
+     * replaced rather than modified, as the caller may still hold the original ones.
+     *
+     * @param maxLength maximum length kept for a metadata value
+     * @return the number of values which were truncated
+     */
+    int trimMetadata(final int maxLength) {
+        int trimmed = countLongValues(mediaMetadata, maxLength);
+        if (trimmed > 0) {
+            mediaMetadata = trimValues(mediaMetadata, maxLength);
+        }
+
+        int adTrimmed = countLongValues(adMetadata, maxLength);
+        if (adTrimmed > 0) {
+            adMetadata = trimValues(adMetadata, maxLength);
+        }
+
+        int chapterTrimmed = countLongValues(chapterMetadata, maxLength);
+        if (chapterTrimmed > 0) {
+            chapterMetadata = trimValues(chapterMetadata, maxLength);
+        }
+
+        int total = trimmed + adTrimmed + chapterTrimmed;
+        if (total > 0) {
+            metadataTrimmed = true;
+        }
+
+        return total;
+    }
+
+    /**
+     * Removes media, ad and chapter metadata entries, largest first, until the estimated size of
+     * the removed entries reaches {@code bytes} or no metadata is left. Like {@link
+     * #trimMetadata(int)}, the maps are replaced rather than modified.
+     *
+     * @param bytes the estimated number of bytes to free
+     * @return the number and estimated size of the removed entries
+     */
+    MetadataDrop dropLargestMetadata(final long bytes) {
+        List<Map<String, String>> sections = new ArrayList<>();
+        sections.add(new HashMap<>(mediaMetadata));
+        sections.add(new HashMap<>(adMetadata));
+        sections.add(new HashMap<>(chapterMetadata));
+
+        List<MetadataEntry> entries = new ArrayList<>();
+        for (int i = 0; i < sections.size(); i++) {
+            for (Map.Entry<String, String> entry : sections.get(i).entrySet()) {
+                entries.add(
+                        new MetadataEntry(
+                                i,
+                                entry.getKey(),
+                                MediaSessionMemory.estimateEntry(
+                                        entry.getKey(), entry.getValue())));
+            }
+        }
+
+        Collections.sort(entries, MetadataEntry.LARGEST_FIRST);
+
+        int count = 0;
+        long freed = 0;
+        for (MetadataEntry entry : entries) {
+            if (freed >= bytes) {
+                break;
+            }
+
+            sections.get(entry.section).remove(entry.key);
+            freed += entry.bytes;
+            count++;
+        }
+
+        if (count > 0) {
+            mediaMetadata = sections.get(0);
+            adMetadata = sections.get(1);
+            chapterMetadata = sections.get(2);
+            metadataTrimmed = true;
+        }
+
+        return new MetadataDrop(count, freed);
+    }
+
+    private static int countLongValues(final Map<String, String> metadata, final int maxLength) {
+        int count = 0;
+
+        for (String value : metadata.values()) {
+            if (value != null && value.length() > maxLength) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static Map<String, String> trimValues(
+            final Map<String, String> metadata, final int maxLength) {
+        Map<String, String> trimmed = new HashMap<>();
+
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            String value = entry.getValue();
+            if (value != null && value.length() > maxLength) {
+                value = value.substring(0, maxLength);
+            }
+            trimmed.put(entry.getKey(), value);
+        }
+
+        return trimmed;
+    }
+
+    /** Result of {@link #dropLargestMetadata(long)}. */
+    static final class MetadataDrop {
+        final int count;
+        final long bytes;
+
+        MetadataDrop(final int count, final long bytes) {
+            this.count = count;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class MetadataEntry {
+        static final Comparator<MetadataEntry> LARGEST_FIRST =
+                new Comparator<MetadataEntry>() {
+                    @Override
+                    public int compare(final MetadataEntry a, final MetadataEntry b) {
+                        return Long.compare(b.bytes, a.bytes);
+                    }
+                };
+
+        final int section;
+        final String key;
+        final long bytes;
+
+        MetadataEntry(final int section, final String key, final long bytes) {
+            this.section = section;
+            this.key = key;
+            this.bytes = bytes;
+        }
+    }
 }
@@ -0,0 +1,35 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import com.adobe.marketing.mobile.Event;
+
+/**
+ * Receives the tracker events handled by {@link MediaExtension}, see {@link
+ * MediaExtension#setEventObserver(MediaEventObserver)}. Called on the extension thread before the
+ * event is processed, so implementations must return quickly and must not throw.
+ */
+interface MediaEventObserver {
+    /**
+     * Called for each tracker request event.
+     *
+     * @param event the tracker request {@link Event}
+     */
+    void onTrackerRequest(Event event);
+
+    /**
+     * Called for each track media event.
+     *
+     * @param event the track media {@link Event}
+     */
+    void onTrackEvent(Event event);
+}
@@ -0,0 +1,159 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding for event data, used by the tracker snapshots and the event traces of the
+ * benchmark tools.
+ *
+ * <p>Values are written with a one byte type tag so numbers keep their exact type when they are
+ * read back.
+ */
+final class MediaEventTrace {
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_STRING = 5;
+    private static final byte TYPE_MAP = 6;
+    private static final byte TYPE_LIST = 7;
+
+    private MediaEventTrace() {}
+
+    static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TYPE_INT);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TYPE_MAP);
+            out.writeInt(map.size());
+
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey() != null ? entry.getKey().toString() : null);
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    static Object readValue(final DataInputStream in) throws IOException {
+        byte type = in.readByte();
+
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_STRING:
+                return in.readUTF();
+            case TYPE_MAP:
+                int mapSize = in.readInt();
+                Map<String, Object> map = new HashMap<>();
+
+                for (int i = 0; i < mapSize; i++) {
+                    map.put((String) readValue(in), readValue(in));
+                }
+
+                return map;
+            case TYPE_LIST:
+                int listSize = in.readInt();
+                List<Object> list = new ArrayList<>(listSize);
+
+                for (int i = 0; i < listSize; i++) {
+                    list.add(readValue(in));
+                }
+
+                return list;
+            default:
+                throw new IOException("Unknown value type " + type + " in media event trace");
+        }
+    }
+
+    /** Reads a value written with {@link #writeValue} which must be a string or null. */
+    static String readString(final DataInputStream in) throws IOException {
+        Object value = readValue(in);
+
+        if (value != null && !(value instanceof String)) {
+            throw new IOException("Expected a string value in media event trace");
+        }
+
+        return (String) value;
+    }
+
+    /** Reads a value written with {@link #writeValue} which must be a map or null. */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> readMap(final DataInputStream in) throws IOException {
+        Object value = readValue(in);
+
+        if (value != null && !(value instanceof Map)) {
+            throw new IOException("Expected a map value in media event trace");
+        }
+
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Reads a map of strings, such as media metadata, written with {@link #writeValue}.
+     *
+     * @return the map, or an empty map if null was written
+     */
+    static Map<String, String> readStringMap(final DataInputStream in) throws IOException {
+        Map<String, Object> map = readMap(in);
+        Map<String, String> strings = new HashMap<>();
+
+        if (map != null) {
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                Object value = entry.getValue();
+                strings.put(entry.getKey(), value != null ? value.toString() : null);
+            }
+        }
+
+        return strings;
+    }
+}
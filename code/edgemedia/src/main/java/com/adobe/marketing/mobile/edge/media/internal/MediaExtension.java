@@ -30,6 +30,9 @@ public class MediaExtension extends Extension {
 
     private static final String SOURCE_TAG = "MediaExtension";
 
+    // off unless a tool such as the benchmark trace recorder sets it
+    private static volatile MediaEventObserver eventObserver;
+
     final Map<String, MediaTrackerInterface> trackers;
     MediaState mediaState;
 
@@ -69,9 +72,28 @@ public class MediaExtension extends Extension {
                         EventType.MEDIA,
                         MediaInternalConstants.Media.EVENT_SOURCE_TRACK_MEDIA,
                         this::handleMediaTrackEvent);
+        getApi().registerEventListener(
+                        EventType.MEDIA,
+                        MediaInternalConstants.Media.EVENT_SOURCE_METRICS_REQUEST,
+                        this::handleMetricsRequestEvent);
+    }
+
+    /**
+     * Sets the observer notified of the tracker events received by every {@link MediaExtension}.
+     * Set it before the extension is registered to observe all events of a session.
+     *
+     * @param observer the {@link MediaEventObserver} to notify, or null to stop observing
+     */
+    static void setEventObserver(@Nullable final MediaEventObserver observer) {
+        eventObserver = observer;
     }
 
     void handleMediaTrackerRequestEvent(@NonNull final Event event) {
+        MediaEventObserver observer = eventObserver;
+        if (observer != null) {
+            observer.onTrackerRequest(event);
+        }
+
         String trackerId =
                 DataReader.optString(
                         event.getEventData(),
@@ -105,6 +127,11 @@ public class MediaExtension extends Extension {
     }
 
     void handleMediaTrackEvent(@NonNull final Event event) {
+        MediaEventObserver observer = eventObserver;
+        if (observer != null) {
+            observer.onTrackEvent(event);
+        }
+
         String trackerId =
                 DataReader.optString(
                         event.getEventData(),
@@ -134,6 +161,39 @@ public class MediaExtension extends Extension {
         tracker.track(event);
     }
 
+    void handleMetricsRequestEvent(@NonNull final Event event) {
+        MediaMetrics metrics = MediaMetrics.getInstance();
+        Map<String, Object> eventData = event.getEventData();
+
+        if (eventData != null
+                && eventData.containsKey(MediaInternalConstants.EventDataKeys.Metrics.ENABLED)) {
+            boolean enabled =
+                    DataReader.optBoolean(
+                            eventData, MediaInternalConstants.EventDataKeys.Metrics.ENABLED, false);
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    SOURCE_TAG,
+                    "handleMetricsRequestEvent - %s metrics collection.",
+                    enabled ? "Enabling" : "Disabling");
+            metrics.setEnabled(enabled);
+        }
+
+        Event response =
+                new Event.Builder(
+                                "Media::MetricsResponse",
+                                EventType.MEDIA,
+                                MediaInternalConstants.Media.EVENT_SOURCE_METRICS_RESPONSE)
+                        .setEventData(metrics.toEventData())
+                        .inResponseToEvent(event)
+                        .build();
+        getApi().dispatch(response);
+
+        if (DataReader.optBoolean(
+                eventData, MediaInternalConstants.EventDataKeys.Metrics.RESET, false)) {
+            metrics.reset();
+        }
+    }
+
     void handleResetIdentities(@NonNull final Event event) {
         Log.debug(
                 MediaInternalConstants.LOG_TAG,
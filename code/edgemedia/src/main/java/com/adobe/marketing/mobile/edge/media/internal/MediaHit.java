@@ -11,16 +11,20 @@
 
 package com.adobe.marketing.mobile.edge.media.internal;
 
+import androidx.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Map;
 
 class MediaHit {
+    static final long NO_SEQUENCE = -1;
+
     private final String eventType;
     private final Map<String, Object> params;
     private final Map<String, String> customMetadata;
     private final Map<String, Object> qoeData;
     private final double playhead;
     private final long ts;
+    private final long sequence;
 
     MediaHit(
             final String eventType,
@@ -29,9 +33,21 @@ class MediaHit {
             final Map<String, Object> qoeData,
             final double playhead,
             final long ts) {
+        this(eventType, params, customMetadata, qoeData, playhead, ts, NO_SEQUENCE);
+    }
+
+    MediaHit(
+            final String eventType,
+            final Map<String, Object> params,
+            final Map<String, String> customMetadata,
+            final Map<String, Object> qoeData,
+            final double playhead,
+            final long ts,
+            final long sequence) {
         this.eventType = eventType;
         this.playhead = playhead;
         this.ts = ts;
+        this.sequence = sequence;
 
         if (params != null) {
             this.params = new HashMap<>(params);
@@ -76,6 +92,29 @@ class MediaHit {
         return ts;
     }
 
+    /** Returns the position of this hit in its session, or {@link #NO_SEQUENCE}. */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the key identifying this hit across resends, made of the session ID and the sequence
+     * number of the hit.
+     *
+     * @param sessionID the session ID the key is scoped to, such as the one from {@link
+     *     MediaHitProcessor#startSession()} or the backend session ID
+     * @return the key, or null if the hit has no sequence number
+     */
+    @Nullable
+    String getIdempotencyKey(final String sessionID) {
+        if (sequence == NO_SEQUENCE || sessionID == null) {
+            return null;
+        }
+
+        return sessionID + "-" + Long.toString(sequence, Character.MAX_RADIX);
+    }
+
+    // the sequence number only identifies resends, hits with equal content are equal
     @Override
     public boolean equals(final Object o) {
         if (o == this) {
@@ -11,10 +11,33 @@
 
 package com.adobe.marketing.mobile.edge.media.internal;
 
+import androidx.annotation.Nullable;
+
 interface MediaHitProcessor {
     String startSession();
 
     void processHit(String sessionID, final MediaHit hit);
 
     void endSession(String sessionID);
+
+    /**
+     * Returns the session ID the backend assigned to a session of this processor, which {@link
+     * #resumeSession(String)} accepts in another processor, for example after a process restart.
+     *
+     * @param sessionID the session ID from {@link #startSession()}
+     * @return the backend session ID, or null if the session is unknown or the backend did not
+     *     assign one yet
+     */
+    @Nullable String getBackendSessionID(String sessionID);
+
+    /**
+     * Starts a session which continues a session the backend already knows. Unlike {@link
+     * #startSession()}, the session does not expect a sessionStart hit, its hits are sent with
+     * {@code backendSessionID} right away.
+     *
+     * @param backendSessionID the session ID returned by {@link #getBackendSessionID(String)}
+     * @return the session ID to process the hits of the resumed session with, or null if the
+     *     session cannot be resumed
+     */
+    @Nullable String resumeSession(String backendSessionID);
 }
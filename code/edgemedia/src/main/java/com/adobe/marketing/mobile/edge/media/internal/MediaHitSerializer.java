@@ -0,0 +1,358 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes the Edge experience event payload for a {@link MediaHit} as UTF-8 JSON into a reusable
+ * byte buffer:
+ *
+ * <pre>
+ * {"xdm":{"eventType":"media.play","mediaCollection":{"sessionID":"...","eventType":"play",
+ *   "playerTime":{"playhead":0,"ts":1234},"params":{...},"customMetadata":{...},"qoeData":{...}},
+ *   "_id":"..."}}
+ * </pre>
+ *
+ * <p>Field names come from {@link MediaCollectionConstants} and are encoded once, and values are
+ * written straight from the hit maps, so no intermediate map tree is built. Empty params, metadata
+ * and QoE maps are omitted. One instance is meant to be reused by a single thread, {@link
+ * #write(String, MediaHit)} starts over from an empty buffer.
+ */
+class MediaHitSerializer {
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] XDM_START =
+            encode(
+                    "{"
+                            + key(MediaCollectionConstants.Xdm.XDM)
+                            + "{"
+                            + key(MediaCollectionConstants.Xdm.EVENT_TYPE)
+                            + "\""
+                            + MediaCollectionConstants.Xdm.EVENT_TYPE_PREFIX);
+    private static final byte[] MEDIA_COLLECTION_START =
+            encode("\"," + key(MediaCollectionConstants.Xdm.MEDIA_COLLECTION) + "{");
+    private static final byte[] SESSION_ID = encode(key(MediaCollectionConstants.Xdm.SESSION_ID));
+    private static final byte[] EVENT_TYPE = encode(key(MediaCollectionConstants.Report.EVENT_TYPE));
+    private static final byte[] PLAYER_TIME_START =
+            encode(
+                    ","
+                            + key(MediaCollectionConstants.Report.PLAYER_TIME)
+                            + "{"
+                            + key(MediaCollectionConstants.PlayerTime.PLAYHEAD));
+    private static final byte[] TS = encode("," + key(MediaCollectionConstants.PlayerTime.TS));
+    private static final byte[] PARAMS = encode("," + key(MediaCollectionConstants.Report.PARAMS));
+    private static final byte[] CUSTOM_METADATA =
+            encode("," + key(MediaCollectionConstants.Report.CUSTOM_METADATA));
+    private static final byte[] QOE_DATA = encode("," + key(MediaCollectionConstants.Report.QoE));
+    private static final byte[] EVENT_ID =
+            encode("}," + key(MediaCollectionConstants.Xdm.EVENT_ID));
+    private static final byte[] XDM_END = encode("}}");
+    private static final byte[] TRUE = encode("true");
+    private static final byte[] FALSE = encode("false");
+    private static final byte[] NULL = encode("null");
+    private static final byte[] HEX_DIGITS = encode("0123456789abcdef");
+
+    private static final int MAX_LONG_DIGITS = 20;
+    private static final int DECIMAL = 10;
+    private static final char FIRST_PRINTABLE = 0x20;
+    private static final int UTF8_ONE_BYTE_LIMIT = 0x80;
+    private static final int UTF8_TWO_BYTE_LIMIT = 0x800;
+    private static final int UTF8_TWO_BYTE_PREFIX = 0xC0;
+    private static final int UTF8_THREE_BYTE_PREFIX = 0xE0;
+    private static final int UTF8_FOUR_BYTE_PREFIX = 0xF0;
+    private static final int UTF8_CONTINUATION_PREFIX = 0x80;
+    private static final int UTF8_CONTINUATION_MASK = 0x3F;
+    private static final int UTF8_SHIFT = 6;
+    private static final int UTF8_SHIFT_TWO = 12;
+    private static final int UTF8_SHIFT_THREE = 18;
+    private static final int HEX_MASK = 0xF;
+    private static final int HEX_SHIFT = 4;
+    private static final int MAX_BYTES_PER_CHAR = 6; // escaped control character
+
+    private byte[] buffer;
+    private int size;
+    private final byte[] digits = new byte[MAX_LONG_DIGITS];
+
+    MediaHitSerializer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    MediaHitSerializer(final int initialCapacity) {
+        buffer = new byte[Math.max(MAX_LONG_DIGITS, initialCapacity)];
+    }
+
+    /**
+     * Replaces the buffer content with the payload of the given hit.
+     *
+     * @param sessionID the backend session ID, omitted when null
+     * @param hit the hit to write
+     */
+    void write(final String sessionID, final MediaHit hit) {
+        write(sessionID, hit, null);
+    }
+
+    /**
+     * Replaces the buffer content with the payload of the given hit.
+     *
+     * @param sessionID the backend session ID, omitted when null
+     * @param hit the hit to write
+     * @param eventID the XDM event ID, such as {@link MediaHit#getIdempotencyKey(String)}, omitted
+     *     when null
+     */
+    void write(final String sessionID, final MediaHit hit, final String eventID) {
+        size = 0;
+
+        writeRaw(XDM_START);
+        writeChars(hit.getEventType());
+        writeRaw(MEDIA_COLLECTION_START);
+
+        if (sessionID != null) {
+            writeRaw(SESSION_ID);
+            writeString(sessionID);
+            writeByte(',');
+        }
+
+        writeRaw(EVENT_TYPE);
+        writeString(hit.getEventType());
+        writeRaw(PLAYER_TIME_START);
+        writeDouble(hit.getPlayhead());
+        writeRaw(TS);
+        writeLong(hit.getTimeStamp());
+        writeByte('}');
+
+        if (!hit.getParams().isEmpty()) {
+            writeRaw(PARAMS);
+            writeMap(hit.getParams());
+        }
+
+        if (!hit.getCustomMetadata().isEmpty()) {
+            writeRaw(CUSTOM_METADATA);
+            writeMap(hit.getCustomMetadata());
+        }
+
+        if (!hit.getQoEData().isEmpty()) {
+            writeRaw(QOE_DATA);
+            writeMap(hit.getQoEData());
+        }
+
+        if (eventID != null) {
+            writeRaw(EVENT_ID);
+            writeString(eventID);
+        } else {
+            writeByte('}');
+        }
+
+        writeRaw(XDM_END);
+    }
+
+    /**
+     * Appends a JSON value. Maps and collections are written recursively, numbers and booleans as
+     * JSON literals and anything else as a string.
+     *
+     * @param value the value to append
+     */
+    void writeValue(final Object value) {
+        if (value == null) {
+            writeRaw(NULL);
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            writeRaw((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double || value instanceof Float) {
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            writeCollection((Collection<?>) value);
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, UTF_8);
+    }
+
+    private void writeMap(final Map<?, ?> map) {
+        writeByte('{');
+        boolean first = true;
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getKey() == null) {
+                continue;
+            }
+
+            if (!first) {
+                writeByte(',');
+            }
+            first = false;
+
+            writeString(entry.getKey().toString());
+            writeByte(':');
+            writeValue(entry.getValue());
+        }
+
+        writeByte('}');
+    }
+
+    private void writeCollection(final Collection<?> collection) {
+        writeByte('[');
+        boolean first = true;
+
+        for (Object item : collection) {
+            if (!first) {
+                writeByte(',');
+            }
+            first = false;
+
+            writeValue(item);
+        }
+
+        writeByte(']');
+    }
+
+    private void writeString(final String value) {
+        writeByte('"');
+        writeChars(value);
+        writeByte('"');
+    }
+
+    /** Writes the UTF-8 encoding of a string, escaped for use inside a JSON string. */
+    private void writeChars(final String value) {
+        int length = value.length();
+        ensureCapacity(length * MAX_BYTES_PER_CHAR);
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                buffer[size++] = '\\';
+                buffer[size++] = (byte) c;
+            } else if (c < FIRST_PRINTABLE) {
+                buffer[size++] = '\\';
+                buffer[size++] = 'u';
+                buffer[size++] = '0';
+                buffer[size++] = '0';
+                buffer[size++] = HEX_DIGITS[(c >> HEX_SHIFT) & HEX_MASK];
+                buffer[size++] = HEX_DIGITS[c & HEX_MASK];
+            } else if (c < UTF8_ONE_BYTE_LIMIT) {
+                buffer[size++] = (byte) c;
+            } else if (c < UTF8_TWO_BYTE_LIMIT) {
+                buffer[size++] = (byte) (UTF8_TWO_BYTE_PREFIX | (c >> UTF8_SHIFT));
+                buffer[size++] = continuation(c);
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[size++] = (byte) (UTF8_FOUR_BYTE_PREFIX | (codePoint >> UTF8_SHIFT_THREE));
+                buffer[size++] = continuation(codePoint >> UTF8_SHIFT_TWO);
+                buffer[size++] = continuation(codePoint >> UTF8_SHIFT);
+                buffer[size++] = continuation(codePoint);
+            } else {
+                // rest of the BMP, unpaired surrogates are encoded as is
+                buffer[size++] = (byte) (UTF8_THREE_BYTE_PREFIX | (c >> UTF8_SHIFT_TWO));
+                buffer[size++] = continuation(c >> UTF8_SHIFT);
+                buffer[size++] = continuation(c);
+            }
+        }
+    }
+
+    private void writeDouble(final double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeRaw(NULL);
+        } else if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            writeLong((long) value);
+        } else {
+            writeChars(Double.toString(value));
+        }
+    }
+
+    private void writeLong(final long value) {
+        if (value == Long.MIN_VALUE) {
+            writeChars(Long.toString(value));
+            return;
+        }
+
+        long remaining = Math.abs(value);
+        int count = 0;
+
+        do {
+            digits[count++] = (byte) ('0' + remaining % DECIMAL);
+            remaining /= DECIMAL;
+        } while (remaining > 0);
+
+        ensureCapacity(count + 1);
+        if (value < 0) {
+            buffer[size++] = '-';
+        }
+
+        while (count > 0) {
+            buffer[size++] = digits[--count];
+        }
+    }
+
+    private void writeByte(final char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+    }
+
+    private void writeRaw(final byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private static byte continuation(final int bits) {
+        return (byte) (UTF8_CONTINUATION_PREFIX | (bits & UTF8_CONTINUATION_MASK));
+    }
+
+    private static String key(final ParamTypeMapping mapping) {
+        return "\"" + mapping.key + "\":";
+    }
+
+    private static byte[] encode(final String value) {
+        return value.getBytes(UTF_8);
+    }
+}
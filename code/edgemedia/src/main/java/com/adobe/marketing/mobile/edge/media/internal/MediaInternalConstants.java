@@ -24,6 +24,10 @@ final class MediaInternalConstants {
         static final String EVENT_SOURCE_TRACK_MEDIA = "com.adobe.eventsource.media.trackmedia";
         static final String EVENT_NAME_SESSION_CREATED =
                 "com.adobe.eventsource.media.sessioncreated";
+        static final String EVENT_SOURCE_METRICS_REQUEST =
+                "com.adobe.eventsource.media.requestmetrics";
+        static final String EVENT_SOURCE_METRICS_RESPONSE =
+                "com.adobe.eventsource.media.responsemetrics";
 
         private Media() {}
     }
@@ -43,10 +47,40 @@ final class MediaInternalConstants {
         static final class Config {
             static final String CHANNEL = "config.channel";
             static final String DOWNLOADED_CONTENT = "config.downloadedcontent";
+            static final String AGGREGATE_PINGS = "config.aggregatepings";
+            static final String MEMORY_SOFT_CAP = "config.memorysoftcap";
+            static final String MEMORY_HARD_CAP = "config.memoryhardcap";
+            static final String DELTA_HITS = "config.deltahits";
+            static final String MAX_CLOCK_JUMP = "config.maxclockjump";
+            static final String HIBERNATE_IDLE = "config.hibernateidle";
+            static final String QOE_SOURCE = "config.qoesource";
 
             private Config() {}
         }
 
+        // Event Data Key Constants - Metrics request and response
+        static final class Metrics {
+            static final String ENABLED = "metrics.enabled";
+            static final String RESET = "metrics.reset";
+            static final String RULES = "metrics.rules";
+            static final String HITS = "metrics.hits";
+            static final String MEMORY_HIGH_WATER_MARK = "metrics.memory.highwatermark";
+            static final String METADATA_TRIMS = "metrics.memory.metadatatrims";
+            static final String DROPPED_METADATA = "metrics.memory.droppedmetadata";
+            static final String PREROLL_COMPACTIONS = "metrics.preroll.compactions";
+            static final String CALLS = "calls";
+            static final String PREDICATE_FAILURES = "predicatefailures";
+            static final String LATENCY = "latency";
+            static final String COUNT = "count";
+            static final String MEAN = "mean";
+            static final String P50 = "p50";
+            static final String P90 = "p90";
+            static final String P99 = "p99";
+            static final String MAX = "max";
+
+            private Metrics() {}
+        }
+
         static final class MediaInfo {
             static final String NAME = "media.name";
             static final String ID = "media.id";
@@ -114,6 +148,7 @@ final class MediaInternalConstants {
             static final String ID = "trackerid";
             static final String SESSION_ID = "sessionid";
             static final String EVENT_NAME = "event.name";
+            static final String EVENT_CODE = "event.code";
             static final String EVENT_PARAM = "event.param";
             static final String EVENT_METADATA = "event.metadata";
             static final String EVENT_TIMESTAMP = "event.timestamp";
@@ -153,6 +188,13 @@ final class MediaInternalConstants {
             private MediaEventName() {}
         }
 
+        // Event Data Key Constants - EventCode, matches the MediaRuleName ordinals
+        static final class MediaEventCode {
+            static final int INVALID = 0;
+
+            private MediaEventCode() {}
+        }
+
         static final class StandardMediaMetadata {
             static final String SHOW = "a.media.show";
             static final String SEASON = "a.media.season";
@@ -0,0 +1,440 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registry of hot path metrics: calls, predicate failures and latency per {@link MediaRuleName},
+ * and generated hits per hit type.
+ *
+ * <p>Recording never allocates. Counters are striped by thread and latencies go to fixed bucket
+ * histograms, so trackers running on several threads do not contend on a single value. Collection
+ * is off by default and can be switched on and off at runtime with {@link #setEnabled(boolean)}.
+ */
+class MediaMetrics {
+    static final int MAX_RULES = 32;
+
+    private static final String[] HIT_TYPES = {
+        MediaCollectionConstants.EventType.SESSION_START,
+        MediaCollectionConstants.EventType.SESSION_COMPLETE,
+        MediaCollectionConstants.EventType.SESSION_END,
+        MediaCollectionConstants.EventType.ADBREAK_START,
+        MediaCollectionConstants.EventType.ADBREAK_COMPLETE,
+        MediaCollectionConstants.EventType.AD_START,
+        MediaCollectionConstants.EventType.AD_COMPLETE,
+        MediaCollectionConstants.EventType.AD_SKIP,
+        MediaCollectionConstants.EventType.CHAPTER_START,
+        MediaCollectionConstants.EventType.CHAPTER_COMPLETE,
+        MediaCollectionConstants.EventType.CHAPTER_SKIP,
+        MediaCollectionConstants.EventType.PLAY,
+        MediaCollectionConstants.EventType.PING,
+        MediaCollectionConstants.EventType.BUFFER_START,
+        MediaCollectionConstants.EventType.PAUSE_START,
+        MediaCollectionConstants.EventType.BITRATE_CHANGE,
+        MediaCollectionConstants.EventType.ERROR,
+        MediaCollectionConstants.EventType.STATE_START,
+        MediaCollectionConstants.EventType.STATE_END
+    };
+    private static final String OTHER_HIT_TYPE = "other";
+
+    // declared after HIT_TYPES, which the constructor reads
+    private static final MediaMetrics INSTANCE = new MediaMetrics();
+
+    private volatile boolean enabled;
+    private final StripedCounter[] ruleCalls;
+    private final StripedCounter[] rulePredicateFailures;
+    private final MediaLatencyHistogram[] ruleLatencies;
+    private final StripedCounter[] hitCounts;
+    private final AtomicLong sessionMemoryHighWaterMark = new AtomicLong();
+    private final StripedCounter metadataTrims = new StripedCounter();
+    private final StripedCounter droppedMetadata = new StripedCounter();
+    private final StripedCounter prerollCompactions = new StripedCounter();
+
+    MediaMetrics() {
+        ruleCalls = new StripedCounter[MAX_RULES];
+        rulePredicateFailures = new StripedCounter[MAX_RULES];
+        ruleLatencies = new MediaLatencyHistogram[MAX_RULES];
+
+        for (int i = 0; i < MAX_RULES; i++) {
+            ruleCalls[i] = new StripedCounter();
+            rulePredicateFailures[i] = new StripedCounter();
+            ruleLatencies[i] = new MediaLatencyHistogram();
+        }
+
+        // last slot counts hit types which are not known
+        hitCounts = new StripedCounter[HIT_TYPES.length + 1];
+        for (int i = 0; i < hitCounts.length; i++) {
+            hitCounts[i] = new StripedCounter();
+        }
+    }
+
+    /** Returns the registry shared by all trackers. */
+    static MediaMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records one {@link MediaRuleEngine#processRule(int, Map)} call.
+     *
+     * @param rule the processed rule
+     * @param predicateFailed true if the rule predicates rejected the call
+     * @param latencyNanos time spent processing the rule
+     */
+    void recordRule(final int rule, final boolean predicateFailed, final long latencyNanos) {
+        if (!enabled || rule < 0 || rule >= MAX_RULES) {
+            return;
+        }
+
+        ruleCalls[rule].increment();
+        if (predicateFailed) {
+            rulePredicateFailures[rule].increment();
+        }
+        ruleLatencies[rule].record(latencyNanos);
+    }
+
+    /**
+     * Records one hit generated by {@link MediaCollectionHitGenerator}.
+     *
+     * @param eventType the hit event type
+     */
+    void recordHit(final String eventType) {
+        if (!enabled) {
+            return;
+        }
+
+        hitCounts[indexOfHitType(eventType)].increment();
+    }
+
+    /**
+     * Records the estimated size of a session, keeping the largest seen by any tracker.
+     *
+     * @param bytes estimated session size from {@link MediaSessionMemory}
+     */
+    void recordSessionMemory(final long bytes) {
+        if (!enabled) {
+            return;
+        }
+
+        long current = sessionMemoryHighWaterMark.get();
+        while (bytes > current && !sessionMemoryHighWaterMark.compareAndSet(current, bytes)) {
+            current = sessionMemoryHighWaterMark.get();
+        }
+    }
+
+    void recordMetadataTrim() {
+        if (enabled) {
+            metadataTrims.increment();
+        }
+    }
+
+    /**
+     * Records metadata values dropped because a session was above its hard memory cap.
+     *
+     * @param count number of dropped values
+     */
+    void recordDroppedMetadata(final int count) {
+        if (enabled) {
+            droppedMetadata.add(count);
+        }
+    }
+
+    /**
+     * Records rules removed from a preroll queue before it was replayed.
+     *
+     * @param count number of collapsed updates and dropped play rules
+     */
+    void recordPrerollCompaction(final int count) {
+        if (enabled) {
+            prerollCompactions.add(count);
+        }
+    }
+
+    long getSessionMemoryHighWaterMark() {
+        return sessionMemoryHighWaterMark.get();
+    }
+
+    long getMetadataTrimCount() {
+        return metadataTrims.sum();
+    }
+
+    long getDroppedMetadataCount() {
+        return droppedMetadata.sum();
+    }
+
+    long getPrerollCompactionCount() {
+        return prerollCompactions.sum();
+    }
+
+    long getRuleCallCount(final int rule) {
+        return ruleCalls[rule].sum();
+    }
+
+    long getRulePredicateFailureCount(final int rule) {
+        return rulePredicateFailures[rule].sum();
+    }
+
+    MediaLatencyHistogram getRuleLatency(final int rule) {
+        return ruleLatencies[rule];
+    }
+
+    long getHitCount(final String eventType) {
+        return hitCounts[indexOfHitType(eventType)].sum();
+    }
+
+    void reset() {
+        for (int i = 0; i < MAX_RULES; i++) {
+            ruleCalls[i].reset();
+            rulePredicateFailures[i].reset();
+            ruleLatencies[i].reset();
+        }
+
+        for (StripedCounter counter : hitCounts) {
+            counter.reset();
+        }
+
+        sessionMemoryHighWaterMark.set(0);
+        metadataTrims.reset();
+        droppedMetadata.reset();
+        prerollCompactions.reset();
+    }
+
+    /**
+     * Returns the current values as event data. Only rules which were processed and hit types
+     * which were generated are included.
+     *
+     * @return map with the enabled flag, per rule metrics, per hit type counts, session memory
+     *     and preroll counters
+     */
+    Map<String, Object> toEventData() {
+        Map<String, Object> rules = new HashMap<>();
+
+        for (int i = 0; i < MAX_RULES; i++) {
+            long calls = ruleCalls[i].sum();
+            if (calls == 0) {
+                continue;
+            }
+
+            Map<String, Object> rule = new HashMap<>();
+            rule.put(MediaInternalConstants.EventDataKeys.Metrics.CALLS, calls);
+            rule.put(
+                    MediaInternalConstants.EventDataKeys.Metrics.PREDICATE_FAILURES,
+                    rulePredicateFailures[i].sum());
+            rule.put(
+                    MediaInternalConstants.EventDataKeys.Metrics.LATENCY,
+                    ruleLatencies[i].toEventData());
+            rules.put(getRuleName(i), rule);
+        }
+
+        Map<String, Object> hits = new HashMap<>();
+
+        for (int i = 0; i < hitCounts.length; i++) {
+            long count = hitCounts[i].sum();
+            if (count > 0) {
+                hits.put(i < HIT_TYPES.length ? HIT_TYPES[i] : OTHER_HIT_TYPE, count);
+            }
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put(MediaInternalConstants.EventDataKeys.Metrics.ENABLED, enabled);
+        data.put(MediaInternalConstants.EventDataKeys.Metrics.RULES, rules);
+        data.put(MediaInternalConstants.EventDataKeys.Metrics.HITS, hits);
+        data.put(
+                MediaInternalConstants.EventDataKeys.Metrics.MEMORY_HIGH_WATER_MARK,
+                sessionMemoryHighWaterMark.get());
+        data.put(MediaInternalConstants.EventDataKeys.Metrics.METADATA_TRIMS, metadataTrims.sum());
+        data.put(
+                MediaInternalConstants.EventDataKeys.Metrics.DROPPED_METADATA,
+                droppedMetadata.sum());
+        data.put(
+                MediaInternalConstants.EventDataKeys.Metrics.PREROLL_COMPACTIONS,
+                prerollCompactions.sum());
+        return data;
+    }
+
+    private static String getRuleName(final int rule) {
+        MediaRuleName[] names = MediaRuleName.values();
+        return rule < names.length ? names[rule].name() : Integer.toString(rule);
+    }
+
+    private static int indexOfHitType(final String eventType) {
+        for (int i = 0; i < HIT_TYPES.length; i++) {
+            if (HIT_TYPES[i].equals(eventType)) {
+                return i;
+            }
+        }
+
+        return HIT_TYPES.length;
+    }
+}
+
+/**
+ * Counter spread over a few cells selected by thread, each on its own cache line, so concurrent
+ * increments from different threads rarely touch the same cell.
+ */
+class StripedCounter {
+    private static final int STRIPES = 4; // power of two
+    private static final int PADDING = 8; // longs per 64 byte cache line
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void increment() {
+        add(1);
+    }
+
+    void add(final long value) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        cells.addAndGet(stripe * PADDING, value);
+    }
+
+    long sum() {
+        long sum = 0;
+
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+}
+
+/**
+ * Latency histogram with fixed log-linear buckets, in the spirit of HdrHistogram: every power of
+ * two is split in {@link #SUB_BUCKETS} linear buckets, which bounds the relative error of a
+ * reported value to 1 / {@link #SUB_BUCKETS}. Values are in ns and anything above 2^{@link
+ * #MAX_EXPONENT} ns goes to the last bucket.
+ */
+class MediaLatencyHistogram {
+    static final int SUB_BUCKET_BITS = 2;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 40; // ~18 mins in ns
+    static final int BUCKET_COUNT = (MAX_EXPONENT + 1) * SUB_BUCKETS;
+
+    private static final double MAX_PERCENTILE = 100;
+    private static final double P50 = 50;
+    private static final double P90 = 90;
+    private static final double P99 = 99;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final StripedCounter total = new StripedCounter();
+
+    void record(final long value) {
+        counts.incrementAndGet(bucketOf(value));
+        total.add(Math.max(0, value));
+    }
+
+    long getCount() {
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+
+        return count;
+    }
+
+    long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile.
+     *
+     * @param percentile value between 0 and 100
+     * @return the latency in ns, or 0 if nothing was recorded
+     */
+    long getValueAtPercentile(final double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+
+        double clamped = Math.max(0, Math.min(MAX_PERCENTILE, percentile));
+        long rank = Math.max(1, (long) Math.ceil(clamped / MAX_PERCENTILE * count));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+
+        return upperBoundOf(BUCKET_COUNT - 1);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+    }
+
+    Map<String, Object> toEventData() {
+        Map<String, Object> data = new HashMap<>();
+        long count = getCount();
+        data.put(MediaInternalConstants.EventDataKeys.Metrics.COUNT, count);
+        data.put(
+                MediaInternalConstants.EventDataKeys.Metrics.MEAN,
+                count > 0 ? total.sum() / count : 0);
+        data.put(MediaInternalConstants.EventDataKeys.Metrics.P50, getValueAtPercentile(P50));
+        data.put(MediaInternalConstants.EventDataKeys.Metrics.P90, getValueAtPercentile(P90));
+        data.put(MediaInternalConstants.EventDataKeys.Metrics.P99, getValueAtPercentile(P99));
+        data.put(
+                MediaInternalConstants.EventDataKeys.Metrics.MAX,
+                getValueAtPercentile(MAX_PERCENTILE));
+        return data;
+    }
+
+    static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return exponent * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(final int bucket) {
+        int exponent = bucket / SUB_BUCKETS;
+        int subBucket = bucket % SUB_BUCKETS;
+
+        if (exponent < SUB_BUCKET_BITS) {
+            return bucket;
+        }
+
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
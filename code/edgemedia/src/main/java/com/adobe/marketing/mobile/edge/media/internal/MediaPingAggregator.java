@@ -0,0 +1,179 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link MediaHitProcessor} which folds consecutive plain pings of a session into a single ping
+ * hit carrying the number of folded pings and the time they span.
+ *
+ * <p>Only pings without params, metadata or QoE data are folded, so any playback state change, QoE
+ * change or other session event flushes the pending run first and is forwarded unchanged. The
+ * aggregated ping uses the playhead and timestamp of the last folded ping, which keeps the timeline
+ * seen by the backend identical, and its sequence number, so a folded run is identified by its last
+ * ping when resent. A run is also flushed once it spans the flush interval chosen by the {@link
+ * MediaPingPolicy} for {@code maxAggregationMillis}, so long steady playback still reports
+ * periodically.
+ *
+ * <p>The aggregated ping stands for {@code media.ping.count} pings spread evenly over {@code
+ * media.ping.duration} milliseconds, which end at its timestamp and start at the hit sent before
+ * the first folded ping, the same span the folded pings cover together. The backend expands it
+ * into that many pings, the k-th one at {@code ts - duration + k * duration / count}, and credits
+ * the span to the playback state in effect, as it does for pings which were not folded. A run
+ * without a hit before it, which a session starting with sessionStart never has, spans from its
+ * first ping.
+ */
+class MediaPingAggregator implements MediaHitProcessor {
+    static final long DEFAULT_MAX_AGGREGATION_MILLIS = 300000; // 5 mins
+
+    private final MediaHitProcessor hitProcessor;
+    private final long maxAggregationMillis;
+    private final MediaPingPolicy pingPolicy;
+    private final Map<String, PendingPings> pendingPings;
+    private final Map<String, Long> lastTimestamps;
+
+    MediaPingAggregator(final MediaHitProcessor hitProcessor) {
+        this(hitProcessor, DEFAULT_MAX_AGGREGATION_MILLIS);
+    }
+
+    MediaPingAggregator(final MediaHitProcessor hitProcessor, final long maxAggregationMillis) {
+        this(hitProcessor, maxAggregationMillis, MediaPingPolicy.DEFAULT);
+    }
+
+    MediaPingAggregator(
+            final MediaHitProcessor hitProcessor,
+            final long maxAggregationMillis,
+            final MediaPingPolicy pingPolicy) {
+        this.hitProcessor = hitProcessor;
+        this.maxAggregationMillis = maxAggregationMillis;
+        this.pingPolicy = pingPolicy;
+        this.pendingPings = new HashMap<>();
+        this.lastTimestamps = new HashMap<>();
+    }
+
+    @Override
+    public String startSession() {
+        return hitProcessor.startSession();
+    }
+
+    @Override
+    public void processHit(final String sessionID, final MediaHit hit) {
+        if (!isFoldable(hit)) {
+            flush(sessionID);
+            forward(sessionID, hit);
+            return;
+        }
+
+        PendingPings pending = pendingPings.get(sessionID);
+
+        if (pending == null) {
+            Long startTS = lastTimestamps.get(sessionID);
+            pendingPings.put(
+                    sessionID,
+                    new PendingPings(hit, startTS != null ? startTS : hit.getTimeStamp()));
+            return;
+        }
+
+        pending.add(hit);
+
+        if (pending.getDuration() >= pingPolicy.getFlushInterval(maxAggregationMillis)) {
+            flush(sessionID);
+        }
+    }
+
+    @Override
+    public void endSession(final String sessionID) {
+        flush(sessionID);
+        lastTimestamps.remove(sessionID);
+        hitProcessor.endSession(sessionID);
+    }
+
+    @Override
+    public String getBackendSessionID(final String sessionID) {
+        return hitProcessor.getBackendSessionID(sessionID);
+    }
+
+    @Override
+    public String resumeSession(final String backendSessionID) {
+        return hitProcessor.resumeSession(backendSessionID);
+    }
+
+    /**
+     * Sends the pending pings of a session, if any, to the wrapped {@link MediaHitProcessor}.
+     *
+     * @param sessionID the session to flush
+     */
+    void flush(final String sessionID) {
+        PendingPings pending = pendingPings.remove(sessionID);
+
+        if (pending != null) {
+            forward(sessionID, pending.toHit());
+        }
+    }
+
+    private void forward(final String sessionID, final MediaHit hit) {
+        lastTimestamps.put(sessionID, hit.getTimeStamp());
+        hitProcessor.processHit(sessionID, hit);
+    }
+
+    static boolean isFoldable(final MediaHit hit) {
+        return MediaCollectionConstants.EventType.PING.equals(hit.getEventType())
+                && hit.getParams().isEmpty()
+                && hit.getCustomMetadata().isEmpty()
+                && hit.getQoEData().isEmpty();
+    }
+
+    private static class PendingPings {
+        private final MediaHit first;
+        private final long startTS;
+        private MediaHit last;
+        private int count;
+
+        PendingPings(final MediaHit hit, final long startTS) {
+            first = hit;
+            this.startTS = startTS;
+            last = hit;
+            count = 1;
+        }
+
+        void add(final MediaHit hit) {
+            last = hit;
+            count++;
+        }
+
+        /** Returns the time from the hit before the first ping to the last ping. */
+        long getDuration() {
+            return last.getTimeStamp() - startTS;
+        }
+
+        MediaHit toHit() {
+            if (count == 1) {
+                return first;
+            }
+
+            Map<String, Object> params = new HashMap<>();
+            params.put(MediaCollectionConstants.Ping.COUNT.key, count);
+            params.put(MediaCollectionConstants.Ping.DURATION.key, getDuration());
+
+            return new MediaHit(
+                    MediaCollectionConstants.EventType.PING,
+                    params,
+                    null,
+                    null,
+                    last.getPlayhead(),
+                    last.getTimeStamp(),
+                    last.getSequence());
+        }
+    }
+}
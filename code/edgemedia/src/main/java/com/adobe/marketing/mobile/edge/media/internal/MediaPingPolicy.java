@@ -0,0 +1,143 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+/**
+ * Chooses the ping interval used by {@link MediaCollectionHitGenerator} and the flush cadence
+ * used by {@link MediaPingAggregator}. Both are queried every time they are needed, so an
+ * implementation may change its answer while a session is running.
+ */
+interface MediaPingPolicy {
+    /** Policy which always keeps the default interval and flush cadence. */
+    MediaPingPolicy DEFAULT =
+            new MediaPingPolicy() {
+                @Override
+                public long getPingInterval(
+                        final long defaultInterval, final boolean granularAdTracking) {
+                    return defaultInterval;
+                }
+
+                @Override
+                public long getFlushInterval(final long defaultFlushInterval) {
+                    return defaultFlushInterval;
+                }
+            };
+
+    /**
+     * Returns the ping interval to use.
+     *
+     * @param defaultInterval interval in ms for the content currently playing
+     * @param granularAdTracking true if an ad with granular ad tracking is playing
+     * @return the ping interval in ms
+     */
+    long getPingInterval(final long defaultInterval, final boolean granularAdTracking);
+
+    /**
+     * Returns how long pending pings may be held before they are flushed.
+     *
+     * @param defaultFlushInterval flush interval in ms configured for the session
+     * @return the flush interval in ms
+     */
+    long getFlushInterval(final long defaultFlushInterval);
+}
+
+/**
+ * Device and queue conditions supplied by the integration. Values may be updated from any thread
+ * and are read by {@link AdaptiveMediaPingPolicy} on the tracker thread.
+ */
+class MediaPlaybackConditions {
+    private volatile boolean meteredNetwork;
+    private volatile boolean batterySaver;
+    private volatile int backlogSize;
+
+    boolean isMeteredNetwork() {
+        return meteredNetwork;
+    }
+
+    void setMeteredNetwork(final boolean meteredNetwork) {
+        this.meteredNetwork = meteredNetwork;
+    }
+
+    boolean isBatterySaver() {
+        return batterySaver;
+    }
+
+    void setBatterySaver(final boolean batterySaver) {
+        this.batterySaver = batterySaver;
+    }
+
+    int getBacklogSize() {
+        return backlogSize;
+    }
+
+    void setBacklogSize(final int backlogSize) {
+        this.backlogSize = Math.max(0, backlogSize);
+    }
+}
+
+/**
+ * {@link MediaPingPolicy} which stretches main content pings under pressure. Each of metered
+ * network, battery saver and a backlog of at least {@link #BACKLOG_THRESHOLD} hits doubles the
+ * interval and the flush cadence, up to {@link #MAX_PING_INTERVAL} and {@link
+ * #MAX_FLUSH_INTERVAL}. Granular ad tracking always keeps its default interval.
+ *
+ * <p>No tracker configuration selects this policy yet, as {@link MediaExtension} does not create
+ * trackers. Until it does, the policy and its {@link MediaPlaybackConditions} are only used by
+ * passing them to the {@link MediaCollectionTracker} constructor taking a {@link MediaPingPolicy}.
+ */
+class AdaptiveMediaPingPolicy implements MediaPingPolicy {
+    static final int BACKLOG_THRESHOLD = 50;
+    static final long MAX_PING_INTERVAL = 60000; // 1 min
+    static final long MAX_FLUSH_INTERVAL = 900000; // 15 mins
+
+    private final MediaPlaybackConditions conditions;
+
+    AdaptiveMediaPingPolicy(final MediaPlaybackConditions conditions) {
+        this.conditions = conditions;
+    }
+
+    @Override
+    public long getPingInterval(final long defaultInterval, final boolean granularAdTracking) {
+        if (granularAdTracking) {
+            return defaultInterval;
+        }
+
+        return stretch(defaultInterval, MAX_PING_INTERVAL);
+    }
+
+    @Override
+    public long getFlushInterval(final long defaultFlushInterval) {
+        return stretch(defaultFlushInterval, MAX_FLUSH_INTERVAL);
+    }
+
+    private long stretch(final long value, final long max) {
+        int factor = 1;
+
+        if (conditions.isMeteredNetwork()) {
+            factor *= 2;
+        }
+
+        if (conditions.isBatterySaver()) {
+            factor *= 2;
+        }
+
+        if (conditions.getBacklogSize() >= BACKLOG_THRESHOLD) {
+            factor *= 2;
+        }
+
+        if (factor == 1 || value >= max) {
+            return value;
+        }
+
+        return Math.min(value * factor, max);
+    }
+}
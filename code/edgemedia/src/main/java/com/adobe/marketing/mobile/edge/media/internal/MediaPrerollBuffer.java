@@ -0,0 +1,147 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import androidx.annotation.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed capacity queue of the rules deferred during the preroll wait.
+ *
+ * <p>A PlayheadUpdate or QoEUpdate following a rule of the same kind replaces it in place, as only
+ * the latest value matters once the queue is replayed, so players reporting the playhead every
+ * few hundred ms do not grow the queue. {@link #reorder()} drops the Play rules preceding the first
+ * AdBreakStart by compacting the array, without allocating a second list.
+ */
+class MediaPrerollBuffer {
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final PrerollQueuedRule[] rules;
+    private int size;
+    private int collapsedCount;
+    private int droppedCount;
+
+    MediaPrerollBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    MediaPrerollBuffer(final int capacity) {
+        rules = new PrerollQueuedRule[Math.max(1, capacity)];
+    }
+
+    /**
+     * Queues a rule, collapsing it into the last queued rule when both are PlayheadUpdate or both
+     * are QoEUpdate. The caller should replay the queue once {@link #isFull()} returns true.
+     *
+     * @param rule the rule to queue
+     * @param context the rule context
+     * @return true if the rule took a new slot, false if it was collapsed or the queue is full
+     */
+    boolean add(final int rule, final Map<String, Object> context) {
+        if (size > 0 && isCollapsible(rule) && rules[size - 1].ruleName == rule) {
+            rules[size - 1].ruleContext = context;
+            collapsedCount++;
+            return false;
+        }
+
+        if (isFull()) {
+            return false;
+        }
+
+        rules[size++] = new PrerollQueuedRule(rule, context);
+        return true;
+    }
+
+    /** Drops any Play rule queued before the first AdBreakStart, preserving the order of the rest. */
+    void reorder() {
+        int adBreakStartPosition = -1;
+
+        for (int i = 0; i < size; i++) {
+            if (rules[i].ruleName == MediaRuleName.AdBreakStart.ordinal()) {
+                adBreakStartPosition = i;
+                break;
+            }
+        }
+
+        if (adBreakStartPosition < 0) {
+            return;
+        }
+
+        int kept = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (i < adBreakStartPosition && rules[i].ruleName == MediaRuleName.Play.ordinal()) {
+                droppedCount++;
+                continue;
+            }
+
+            rules[kept++] = rules[i];
+        }
+
+        for (int i = kept; i < size; i++) {
+            rules[i] = null;
+        }
+
+        size = kept;
+    }
+
+    PrerollQueuedRule get(final int index) {
+        return rules[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == rules.length;
+    }
+
+    /** Returns the number of rules collapsed into an already queued rule. */
+    int getCollapsedCount() {
+        return collapsedCount;
+    }
+
+    /** Returns the number of Play rules dropped by {@link #reorder()}. */
+    int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Empties the queue and resets the compaction counters. */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            rules[i] = null;
+        }
+
+        size = 0;
+        collapsedCount = 0;
+        droppedCount = 0;
+    }
+
+    @VisibleForTesting
+    List<PrerollQueuedRule> toList() {
+        List<PrerollQueuedRule> list = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            list.add(rules[i]);
+        }
+
+        return list;
+    }
+
+    private static boolean isCollapsible(final int rule) {
+        return rule == MediaRuleName.PlayheadUpdate.ordinal()
+                || rule == MediaRuleName.QoEUpdate.ordinal();
+    }
+}
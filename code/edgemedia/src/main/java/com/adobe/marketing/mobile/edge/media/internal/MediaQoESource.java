@@ -0,0 +1,142 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import com.adobe.marketing.mobile.services.Log;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * QoE samples shared by all trackers of a player, so a multi-view layout which reports the same
+ * decoder stats for every view publishes them once instead of sending a QoE update to each tracker.
+ *
+ * <p>Players publish primitive samples with {@link #publish(String, double, double, double,
+ * double)}. Trackers subscribe with {@link
+ * MediaInternalConstants.EventDataKeys.Config#QOE_SOURCE} and their {@link MediaContext} reads the
+ * latest sample when a hit is generated. The {@link QoEInfo} for a sample is only built on the
+ * first read after it was published and is then shared by all subscribed trackers.
+ *
+ * <p>A source lives until it is released with {@link #release(String)}. Trackers subscribed
+ * before the release keep the released source and no longer receive samples, so players release a
+ * source once all of its trackers completed.
+ */
+public final class MediaQoESource {
+    private static final String LOG_TAG = "MediaQoESource";
+    private static final Map<String, MediaQoESource> SOURCES = new HashMap<>();
+
+    private final String name;
+    private double bitrate;
+    private double droppedFrames;
+    private double fps;
+    private double startupTime;
+    private long version;
+    private long infoVersion;
+    private QoEInfo info;
+
+    private MediaQoESource(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the source with the given name, creating it on first use.
+     *
+     * @param name the name of the source
+     * @return the source, or null if {@code name} is null
+     */
+    static synchronized MediaQoESource get(final String name) {
+        if (name == null) {
+            return null;
+        }
+
+        MediaQoESource source = SOURCES.get(name);
+
+        if (source == null) {
+            source = new MediaQoESource(name);
+            SOURCES.put(name, source);
+        }
+
+        return source;
+    }
+
+    /**
+     * Releases a source, so its last sample is no longer kept. A later use of the name creates a
+     * new source.
+     *
+     * @param name the name of the source
+     */
+    public static synchronized void release(final String name) {
+        if (name != null) {
+            SOURCES.remove(name);
+        }
+    }
+
+    /**
+     * Publishes a QoE sample to the trackers subscribed to a source.
+     *
+     * @param name the name of the source
+     * @param bitrate the bitrate of media in bits per second
+     * @param droppedFrames the number of dropped frames so far
+     * @param fps the current frames per second information
+     * @param startupTime the start up time of media in seconds
+     */
+    public static void publish(
+            final String name,
+            final double bitrate,
+            final double droppedFrames,
+            final double fps,
+            final double startupTime) {
+        MediaQoESource source = get(name);
+
+        if (source != null) {
+            source.update(bitrate, droppedFrames, fps, startupTime);
+        }
+    }
+
+    synchronized void update(
+            final double bitrate,
+            final double droppedFrames,
+            final double fps,
+            final double startupTime) {
+        this.bitrate = bitrate;
+        this.droppedFrames = droppedFrames;
+        this.fps = fps;
+        this.startupTime = startupTime;
+        version++;
+    }
+
+    /**
+     * Returns the latest sample.
+     *
+     * @return the {@link QoEInfo} of the latest sample, the previously returned one if the latest
+     *     sample is invalid, or null if no valid sample was read yet
+     */
+    synchronized QoEInfo getQoEInfo() {
+        if (infoVersion == version) {
+            return info;
+        }
+
+        infoVersion = version;
+        QoEInfo sample = QoEInfo.create(bitrate, droppedFrames, fps, startupTime);
+
+        if (sample != null) {
+            info = sample;
+        } else {
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "getQoEInfo - Ignoring invalid sample published to source (%s).",
+                    name);
+        }
+
+        return info;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** Runs delayed work for the hit pipeline, tests run it on a simulated clock. */
+interface MediaScheduler {
+    /**
+     * Runs {@code task} once {@code delayMillis} elapsed.
+     *
+     * @param task the task to run
+     * @param delayMillis the delay in ms
+     */
+    void schedule(final Runnable task, final long delayMillis);
+}
+
+/** {@link MediaScheduler} running tasks on a single background thread. */
+class ExecutorMediaScheduler implements MediaScheduler {
+    private final ScheduledExecutorService executor;
+
+    ExecutorMediaScheduler() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @Override
+    public void schedule(final Runnable task, final long delayMillis) {
+        executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
+
+/**
+ * Decides when and whether {@link MediaBatchDispatcher} retries a failed request.
+ *
+ * <p>The delay before a retry grows exponentially with the attempt, from {@code baseDelayMillis}
+ * up to {@code maxDelayMillis}, and a uniformly random part of it is used ("full jitter"), so
+ * clients which failed together do not retry together once the backend recovers. A batch is
+ * retried at most {@code maxAttempts} times. Retries across all sessions also draw from a budget
+ * of {@code retryBudget} tokens which is refilled by one token per successful request, so a long
+ * outage costs a bounded number of retries until requests succeed again. Batches waiting behind a
+ * retry are bounded to {@code maxQueuedBytes} per session.
+ *
+ * <p>The dispatcher calls this class while holding its lock, so it is not synchronized itself.
+ */
+class MediaRetryScheduler {
+    static final long DEFAULT_BASE_DELAY_MILLIS = 1000; // 1 sec
+    static final long DEFAULT_MAX_DELAY_MILLIS = 60000; // 1 min
+    static final int DEFAULT_MAX_ATTEMPTS = 5;
+    static final int DEFAULT_RETRY_BUDGET = 10;
+    static final int DEFAULT_MAX_QUEUED_BYTES = 262144; // 256 KB
+
+    // keeps the exponent far from overflowing a long
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+    private final MediaScheduler scheduler;
+    private final Random random;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final int maxAttempts;
+    private final int retryBudget;
+    private final int maxQueuedBytes;
+    private int retryTokens;
+
+    MediaRetryScheduler(final MediaScheduler scheduler) {
+        this(
+                scheduler,
+                new Random(),
+                DEFAULT_BASE_DELAY_MILLIS,
+                DEFAULT_MAX_DELAY_MILLIS,
+                DEFAULT_MAX_ATTEMPTS,
+                DEFAULT_RETRY_BUDGET,
+                DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    MediaRetryScheduler(
+            final MediaScheduler scheduler,
+            final Random random,
+            final long baseDelayMillis,
+            final long maxDelayMillis,
+            final int maxAttempts,
+            final int retryBudget,
+            final int maxQueuedBytes) {
+        this.scheduler = scheduler;
+        this.random = random;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxAttempts = maxAttempts;
+        this.retryBudget = retryBudget;
+        this.maxQueuedBytes = maxQueuedBytes;
+        retryTokens = retryBudget;
+    }
+
+    /**
+     * Takes a retry token if a batch which already failed {@code attempt} times may be retried.
+     *
+     * @param attempt the number of retries of the batch so far
+     * @return true if the batch should be retried
+     */
+    boolean tryAcquire(final int attempt) {
+        if (attempt >= maxAttempts || retryTokens <= 0) {
+            return false;
+        }
+
+        retryTokens--;
+        return true;
+    }
+
+    /** Returns a token to the retry budget after a successful request. */
+    void onSuccess() {
+        retryTokens = Math.min(retryBudget, retryTokens + 1);
+    }
+
+    /**
+     * Returns the delay before retrying a batch which already failed {@code attempt} times.
+     *
+     * @param attempt the number of retries of the batch so far
+     * @return the delay in ms, between 0 and the backoff for the attempt
+     */
+    long getDelay(final int attempt) {
+        long backoff = baseDelayMillis << Math.min(attempt, MAX_BACKOFF_SHIFT);
+        long ceiling = Math.min(maxDelayMillis, backoff);
+
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+
+    void schedule(final Runnable task, final long delayMillis) {
+        scheduler.schedule(task, delayMillis);
+    }
+
+    int getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
+
+    int getRetryTokens() {
+        return retryTokens;
+    }
+}
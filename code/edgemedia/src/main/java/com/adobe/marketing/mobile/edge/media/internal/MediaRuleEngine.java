@@ -12,23 +12,42 @@
 package com.adobe.marketing.mobile.edge.media.internal;
 
 import com.adobe.marketing.mobile.services.Log;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-// MediaRuleEngine
-class MediaRuleEngine {
+// MediaRuleEngine, runs rules against a target holding the state they act on. Rules keep no
+// state of their own, so once sealed a single engine can serve any number of targets.
+class MediaRuleEngine<T> {
     private static final String LOG_TAG = "MediaRuleEngine";
-    private static final String RULE_NOT_FOUND = "Matching rule not found";
-    private final Map<Integer, MediaRule> rulesMap;
-    private IMediaRuleCallback enterFunction, exitFunction;
+    private static final MediaRuleResponse RULE_NOT_FOUND =
+            new MediaRuleResponse(false, "Matching rule not found");
+    // time spent in rules run by the actions of the rule running on this thread
+    private static final ThreadLocal<long[]> NESTED_NANOS =
+            new ThreadLocal<long[]>() {
+                @Override
+                protected long[] initialValue() {
+                    return new long[1];
+                }
+            };
+    private final Map<Integer, MediaRule<T>> rulesMap;
+    private IMediaRuleHook<T> enterFunction, exitFunction;
+    private final MediaMetrics metrics;
+    private boolean sealed;
 
     public MediaRuleEngine() {
+        this(MediaMetrics.getInstance());
+    }
+
+    MediaRuleEngine(final MediaMetrics metrics) {
         rulesMap = new HashMap<>();
+        this.metrics = metrics;
     }
 
-    public boolean addRule(final MediaRule rule) {
+    public boolean addRule(final MediaRule<T> rule) {
+        checkNotSealed();
+
         if (rulesMap.containsKey(rule.getName())) {
             return false;
         }
@@ -37,27 +56,86 @@ class MediaRuleEngine {
         return true;
     }
 
-    public void onEnterRule(final IMediaRuleCallback enterFunction) {
+    public void onEnterRule(final IMediaRuleHook<T> enterFunction) {
+        checkNotSealed();
         this.enterFunction = enterFunction;
     }
 
-    public void onExitRule(final IMediaRuleCallback exitFunction) {
+    public void onExitRule(final IMediaRuleHook<T> exitFunction) {
+        checkNotSealed();
         this.exitFunction = exitFunction;
     }
 
+    /**
+     * Makes this engine and its rules read only. A sealed engine published through a final field
+     * can be shared by all targets, on any thread, without further synchronization.
+     */
+    void seal() {
+        for (MediaRule<T> rule : rulesMap.values()) {
+            rule.seal();
+        }
+
+        sealed = true;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    private void checkNotSealed() {
+        if (sealed) {
+            throw new IllegalStateException("MediaRuleEngine is sealed");
+        }
+    }
+
     public MediaRuleResponse processRule(final int ruleName) {
         Map<String, Object> context = new HashMap<>();
         return processRule(ruleName, context);
     }
 
     public MediaRuleResponse processRule(final int ruleName, final Map<String, Object> context) {
+        return processRule(null, ruleName, context);
+    }
+
+    /**
+     * Runs the rule registered for {@code ruleName} against {@code target}.
+     *
+     * <p>The latency recorded for the rule is the time spent in the rule itself. Rules run by its
+     * actions record their own latency and are not counted again.
+     *
+     * @param target the state the rule callbacks act on
+     * @param ruleName the rule to run
+     * @param context the event data of the rule
+     * @return a {@link MediaRuleResponse} telling if the rule predicates passed
+     */
+    public MediaRuleResponse processRule(
+            final T target, final int ruleName, final Map<String, Object> context) {
+        if (!metrics.isEnabled()) {
+            return runRule(target, ruleName, context);
+        }
+
+        long[] nested = NESTED_NANOS.get();
+        long outerNested = nested[0];
+        nested[0] = 0;
 
+        long start = System.nanoTime();
+        MediaRuleResponse response = runRule(target, ruleName, context);
+        long elapsed = System.nanoTime() - start;
+        metrics.recordRule(ruleName, !response.isValid, elapsed - nested[0]);
+
+        nested[0] = outerNested + elapsed;
+
+        return response;
+    }
+
+    private MediaRuleResponse runRule(
+            final T target, final int ruleName, final Map<String, Object> context) {
         if (!rulesMap.containsKey(ruleName)) {
-            return new MediaRuleResponse(false, RULE_NOT_FOUND);
+            return RULE_NOT_FOUND;
         }
 
-        MediaRule rule = rulesMap.get(ruleName);
-        MediaRuleResponse response = rule.runPredicates(context);
+        MediaRule<T> rule = rulesMap.get(ruleName);
+        MediaRuleResponse response = rule.runPredicates(target, context);
 
         do {
             if (!response.isValid) {
@@ -68,7 +146,7 @@ class MediaRuleEngine {
                 break;
             }
 
-            if (enterFunction != null && !enterFunction.call(rule, context)) {
+            if (enterFunction != null && !enterFunction.call(target, rule, context)) {
                 Log.trace(
                         MediaInternalConstants.LOG_TAG,
                         LOG_TAG,
@@ -77,7 +155,7 @@ class MediaRuleEngine {
                 break;
             }
 
-            if (!rule.runActions(context)) {
+            if (!rule.runActions(target, context)) {
                 Log.trace(
                         MediaInternalConstants.LOG_TAG,
                         LOG_TAG,
@@ -87,7 +165,7 @@ class MediaRuleEngine {
             }
 
             if (exitFunction != null) {
-                exitFunction.call(rule, context);
+                exitFunction.call(target, rule, context);
             }
 
         } while (false);
@@ -97,19 +175,20 @@ class MediaRuleEngine {
 }
 
 // MediaRule
-class MediaRule {
+class MediaRule<T> {
 
     private final int name;
     private final String description;
-    private final List<MediaPredicate> predicateList;
-    private final List<IMediaRuleCallback> actionList;
+    private final List<MediaPredicate<T>> predicateList;
+    private final List<IMediaRuleCallback<T>> actionList;
+    private boolean sealed;
 
     MediaRule(final int name, final String description) {
 
         this.name = name;
         this.description = description;
-        this.actionList = new LinkedList<>();
-        this.predicateList = new LinkedList<>();
+        this.actionList = new ArrayList<>();
+        this.predicateList = new ArrayList<>();
     }
 
     int getName() {
@@ -120,36 +199,52 @@ class MediaRule {
         return this.description;
     }
 
-    MediaRule addPredicate(
-            final IMediaRuleCallback predicateFn,
+    MediaRule<T> addPredicate(
+            final IMediaRuleCallback<T> predicateFn,
             final boolean expectedVal,
             final String errorString) {
-        MediaPredicate predicate = new MediaPredicate(predicateFn, expectedVal, errorString);
+        checkNotSealed();
+        MediaPredicate<T> predicate = new MediaPredicate<>(predicateFn, expectedVal, errorString);
         predicateList.add(predicate);
         return this;
     }
 
-    MediaRule addAction(final IMediaRuleCallback actionFn) {
+    MediaRule<T> addAction(final IMediaRuleCallback<T> actionFn) {
+        checkNotSealed();
         actionList.add(actionFn);
         return this;
     }
 
-    MediaRuleResponse runPredicates(final Map<String, Object> context) {
-        for (MediaPredicate predicate : predicateList) {
-            IMediaRuleCallback predicateFn = predicate.fn;
+    void seal() {
+        sealed = true;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    private void checkNotSealed() {
+        if (sealed) {
+            throw new IllegalStateException("MediaRule " + description + " is sealed");
+        }
+    }
+
+    MediaRuleResponse runPredicates(final T target, final Map<String, Object> context) {
+        for (MediaPredicate<T> predicate : predicateList) {
+            IMediaRuleCallback<T> predicateFn = predicate.fn;
             boolean expectedVal = predicate.expectedValue;
 
-            if (predicateFn.call(null, context) != expectedVal) {
-                return new MediaRuleResponse(false, predicate.msg);
+            if (predicateFn.call(target, context) != expectedVal) {
+                return predicate.failure;
             }
         }
 
-        return new MediaRuleResponse(true, "");
+        return MediaRuleResponse.VALID;
     }
 
-    boolean runActions(final Map<String, Object> context) {
-        for (IMediaRuleCallback action : actionList) {
-            boolean retVal = action.call(null, context);
+    boolean runActions(final T target, final Map<String, Object> context) {
+        for (IMediaRuleCallback<T> action : actionList) {
+            boolean retVal = action.call(target, context);
 
             if (!retVal) {
                 return false;
@@ -160,13 +255,20 @@ class MediaRule {
     }
 }
 
-// IMediaRuleCallback
-interface IMediaRuleCallback {
-    boolean call(final MediaRule rule, final Map<String, Object> context);
+// IMediaRuleCallback, predicate or action of a rule
+interface IMediaRuleCallback<T> {
+    boolean call(final T target, final Map<String, Object> context);
+}
+
+// IMediaRuleHook, called by the engine before and after the actions of any rule
+interface IMediaRuleHook<T> {
+    boolean call(final T target, final MediaRule<T> rule, final Map<String, Object> context);
 }
 
 // MediaRuleResponse
 class MediaRuleResponse {
+    static final MediaRuleResponse VALID = new MediaRuleResponse(true, "");
+
     final boolean isValid;
     final String message;
 
@@ -177,15 +279,18 @@ class MediaRuleResponse {
 }
 
 // Predicate
-class MediaPredicate {
+class MediaPredicate<T> {
 
-    final IMediaRuleCallback fn;
+    final IMediaRuleCallback<T> fn;
     final boolean expectedValue;
     final String msg;
+    final MediaRuleResponse failure;
 
-    MediaPredicate(final IMediaRuleCallback fn, final boolean expectedValue, final String msg) {
+    MediaPredicate(
+            final IMediaRuleCallback<T> fn, final boolean expectedValue, final String msg) {
         this.fn = fn;
         this.expectedValue = expectedValue;
         this.msg = msg;
+        this.failure = new MediaRuleResponse(false, msg);
     }
 }
@@ -0,0 +1,66 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded map from the session IDs handed out by a {@link MediaHitProcessor} to the session IDs
+ * assigned by the media backend, see {@link
+ * MediaInternalConstants.EventDataKeys.Tracker#BACKEND_SESSION_ID}. The least recently used
+ * mapping is evicted once {@code capacity} sessions are cached.
+ */
+class MediaSessionIdCache {
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final Map<String, String> backendSessionIds;
+
+    MediaSessionIdCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    MediaSessionIdCache(final int capacity) {
+        final int maxEntries = Math.max(1, capacity);
+        backendSessionIds =
+                new LinkedHashMap<String, String>(maxEntries, 1, true) {
+                    @Override
+                    protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                        return size() > maxEntries;
+                    }
+                };
+    }
+
+    synchronized void put(final String sessionID, final String backendSessionID) {
+        if (sessionID != null && backendSessionID != null) {
+            backendSessionIds.put(sessionID, backendSessionID);
+        }
+    }
+
+    /**
+     * Returns the backend session ID for a session.
+     *
+     * @param sessionID the session ID from {@link MediaHitProcessor#startSession()}
+     * @return the backend session ID, or null if it is not known yet or was evicted
+     */
+    synchronized String get(final String sessionID) {
+        return backendSessionIds.get(sessionID);
+    }
+
+    synchronized void remove(final String sessionID) {
+        backendSessionIds.remove(sessionID);
+    }
+
+    synchronized int size() {
+        return backendSessionIds.size();
+    }
+}
@@ -0,0 +1,645 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.adobe.marketing.mobile.services.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-ahead log of the tracking state of the active session, used to close sessions which were
+ * left open when the app process died.
+ *
+ * <p>The log starts with {@link #MAGIC} and {@link #VERSION}, followed by one record per context
+ * transition: the record type, the event timestamp, the playhead and a payload written with {@link
+ * MediaEventTrace#writeValue}. Every record is flushed as soon as it is written, so a process death
+ * loses at most the record being written, which {@link #recover(File)} ignores. The backend
+ * session ID is logged once the hit processor knows it, as the next process can only close the
+ * session through it, see {@link MediaHitProcessor#resumeSession(String)}. The log is
+ * truncated when its session ends, playhead progress is only checkpointed every {@link
+ * #CHECKPOINT_INTERVAL} ms and the log is rewritten as a snapshot of the open state once it holds
+ * {@link #MAX_RECORDS} records, which keeps both the log and its replay bounded.
+ */
+class MediaSessionLog implements Closeable {
+    private static final String LOG_TAG = "MediaSessionLog";
+
+    static final int MAGIC = 0x4D534C47; // "MSLG"
+    static final int VERSION = 1;
+    static final int MAX_RECORDS = 256;
+    static final long CHECKPOINT_INTERVAL = 10000; // 10 secs in ms
+
+    static final byte RECORD_SESSION_START = 1;
+    static final byte RECORD_AD_BREAK_START = 2;
+    static final byte RECORD_AD_BREAK_COMPLETE = 3;
+    static final byte RECORD_AD_START = 4;
+    static final byte RECORD_AD_COMPLETE = 5;
+    static final byte RECORD_CHAPTER_START = 6;
+    static final byte RECORD_CHAPTER_COMPLETE = 7;
+    static final byte RECORD_STATE_START = 8;
+    static final byte RECORD_STATE_END = 9;
+    static final byte RECORD_CHECKPOINT = 10;
+    static final byte RECORD_BACKEND_SESSION = 11;
+
+    static final String KEY_SESSION_ID = "sessionid";
+    static final String KEY_INFO = "info";
+    static final String KEY_METADATA = "metadata";
+
+    // a snapshot holds at most a handful of records, so twice the compaction threshold is plenty
+    private static final int MAX_REPLAY_RECORDS = 2 * MAX_RECORDS;
+
+    private final File file;
+    private final MediaLoggedSession session;
+    private DataOutputStream out;
+    private int recordCount;
+
+    // context objects already logged, compared by identity as the context replaces them on change
+    private Object loggedAdBreak;
+    private Object loggedAd;
+    private Object loggedChapter;
+
+    /**
+     * Creates a log writing to {@code file}, discarding its previous content. Call {@link
+     * #recover(File)} first to close the session left in the file by a previous process.
+     *
+     * @param file the file to write the log to
+     * @throws IOException if the file cannot be created
+     */
+    MediaSessionLog(final File file) throws IOException {
+        this.file = file;
+        session = new MediaLoggedSession();
+        out = open(file, false);
+    }
+
+    /**
+     * Logs the transitions between the state last logged and the current state of {@code
+     * context}.
+     *
+     * @param sessionID the id of the active session, or null if there is no active session
+     * @param context the {@link MediaContext} of the active session, or null
+     * @param ts the timestamp of the event which caused the transitions
+     */
+    void sync(
+            @Nullable final String sessionID,
+            @Nullable final MediaContext context,
+            final long ts) {
+        if (out == null) {
+            return;
+        }
+
+        if (sessionID == null || context == null) {
+            if (session.getSessionID() != null) {
+                truncate();
+            }
+
+            return;
+        }
+
+        double playhead = context.getPlayhead();
+
+        if (!sessionID.equals(session.getSessionID())) {
+            if (session.getSessionID() != null) {
+                truncate();
+            }
+
+            Map<String, Object> payload = new HashMap<>();
+            payload.put(KEY_SESSION_ID, sessionID);
+            payload.put(KEY_INFO, context.getMediaInfo().toObjectMap());
+            payload.put(KEY_METADATA, context.getMediaMetadata());
+            write(RECORD_SESSION_START, ts, playhead, payload);
+        }
+
+        syncStateEnds(context, ts, playhead);
+
+        if (loggedAd != null && loggedAd != context.getAdInfo()) {
+            write(RECORD_AD_COMPLETE, ts, playhead, null);
+            loggedAd = null;
+        }
+
+        if (loggedAdBreak != null && loggedAdBreak != context.getAdBreakInfo()) {
+            write(RECORD_AD_BREAK_COMPLETE, ts, playhead, null);
+            loggedAdBreak = null;
+        }
+
+        if (loggedChapter != null && loggedChapter != context.getChapterInfo()) {
+            write(RECORD_CHAPTER_COMPLETE, ts, playhead, null);
+            loggedChapter = null;
+        }
+
+        ChapterInfo chapterInfo = context.getChapterInfo();
+        if (chapterInfo != null && loggedChapter == null) {
+            write(
+                    RECORD_CHAPTER_START,
+                    ts,
+                    playhead,
+                    infoPayload(chapterInfo.toObjectMap(), context.getChapterMetadata()));
+            loggedChapter = chapterInfo;
+        }
+
+        AdBreakInfo adBreakInfo = context.getAdBreakInfo();
+        if (adBreakInfo != null && loggedAdBreak == null) {
+            write(RECORD_AD_BREAK_START, ts, playhead, adBreakInfo.toObjectMap());
+            loggedAdBreak = adBreakInfo;
+        }
+
+        AdInfo adInfo = context.getAdInfo();
+        if (adInfo != null && loggedAd == null) {
+            write(
+                    RECORD_AD_START,
+                    ts,
+                    playhead,
+                    infoPayload(adInfo.toObjectMap(), context.getAdMetadata()));
+            loggedAd = adInfo;
+        }
+
+        for (int i = 0; i < context.getTrackedStateCount(); i++) {
+            String stateName = context.getTrackedState(i).getStateName();
+
+            if (context.isTrackedStateActive(i) && !session.isInState(stateName)) {
+                write(RECORD_STATE_START, ts, playhead, stateName);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the active session is logged without its backend session ID yet, see {@link
+     * #logBackendSessionID(String, long)}.
+     *
+     * @return true if the backend session ID of the active session should be logged
+     */
+    boolean needsBackendSessionID() {
+        return out != null
+                && session.getSessionID() != null
+                && session.getBackendSessionID() == null;
+    }
+
+    /**
+     * Logs the session ID the backend assigned to the active session.
+     *
+     * @param backendSessionID the backend session ID, ignored if null
+     * @param ts the timestamp of the event during which the backend session ID was known
+     */
+    void logBackendSessionID(@Nullable final String backendSessionID, final long ts) {
+        if (backendSessionID != null && needsBackendSessionID()) {
+            write(RECORD_BACKEND_SESSION, ts, session.getPlayhead(), backendSessionID);
+        }
+    }
+
+    /**
+     * Logs the playhead of the active session if the last record is older than {@link
+     * #CHECKPOINT_INTERVAL}.
+     *
+     * @param playhead the current playhead
+     * @param ts the timestamp of the playhead update
+     */
+    void checkpoint(final double playhead, final long ts) {
+        if (out != null
+                && session.getSessionID() != null
+                && ts - session.getTimeStamp() >= CHECKPOINT_INTERVAL) {
+            write(RECORD_CHECKPOINT, ts, playhead, null);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "close - Unable to close the session log: %s",
+                    e.getMessage());
+        }
+
+        out = null;
+    }
+
+    @VisibleForTesting
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Replays the log left in {@code file} by a previous process. Replay stops at the first
+     * truncated or corrupt record and after {@link #MAX_RECORDS} twice over, so a damaged log only
+     * loses its tail.
+     *
+     * @param file the file the previous {@link MediaSessionLog} wrote to
+     * @return the session which was still open when the log was last written, or null if there is
+     *     none
+     */
+    @Nullable
+    static MediaLoggedSession recover(final File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        MediaLoggedSession recovered = new MediaLoggedSession();
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            for (int i = 0; i < MAX_REPLAY_RECORDS; i++) {
+                int recordType = in.read();
+
+                if (recordType < 0) {
+                    break;
+                }
+
+                long ts = in.readLong();
+                double playhead = in.readDouble();
+                Object payload = MediaEventTrace.readValue(in);
+                recovered.apply((byte) recordType, ts, playhead, payload);
+            }
+        } catch (IOException e) {
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "recover - Ignoring the damaged tail of the session log: %s",
+                    e.getMessage());
+        } finally {
+            closeQuietly(in);
+        }
+
+        return recovered.getSessionID() != null ? recovered : null;
+    }
+
+    private void syncStateEnds(final MediaContext context, final long ts, final double playhead) {
+        List<String> activeStates = session.getActiveStates();
+
+        for (int i = activeStates.size() - 1; i >= 0; i--) {
+            String stateName = activeStates.get(i);
+
+            if (!context.isInTrackedState(stateName)) {
+                write(RECORD_STATE_END, ts, playhead, stateName);
+            }
+        }
+    }
+
+    private void write(
+            final byte recordType, final long ts, final double playhead, final Object payload) {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            writeRecord(out, recordType, ts, playhead, payload);
+            out.flush();
+            session.apply(recordType, ts, playhead, payload);
+            recordCount++;
+
+            if (recordCount >= MAX_RECORDS) {
+                compact();
+            }
+        } catch (IOException e) {
+            fail("write", e);
+        }
+    }
+
+    /** Rewrites the log as the records needed to restore the currently open state. */
+    private void compact() throws IOException {
+        File snapshot = new File(file.getPath() + ".tmp");
+        DataOutputStream snapshotOut = open(snapshot, false);
+        int snapshotCount;
+
+        try {
+            snapshotCount = session.writeSnapshot(snapshotOut);
+        } finally {
+            snapshotOut.close();
+        }
+
+        out.close();
+
+        if (!snapshot.renameTo(file)) {
+            out = null;
+            throw new IOException("Unable to replace " + file.getPath());
+        }
+
+        out = open(file, true);
+        recordCount = snapshotCount;
+    }
+
+    /** Discards the logged session, the session ended and has nothing left to recover. */
+    private void truncate() {
+        session.clear();
+        loggedAdBreak = null;
+        loggedAd = null;
+        loggedChapter = null;
+        recordCount = 0;
+
+        try {
+            out.close();
+            out = open(file, false);
+        } catch (IOException e) {
+            fail("truncate", e);
+        }
+    }
+
+    private void fail(final String operation, final IOException e) {
+        Log.warning(
+                MediaInternalConstants.LOG_TAG,
+                LOG_TAG,
+                "%s - Unable to write the session log, stopping session logging: %s",
+                operation,
+                e.getMessage());
+        closeQuietly(out);
+        out = null;
+    }
+
+    private static DataOutputStream open(final File file, final boolean append)
+            throws IOException {
+        DataOutputStream stream =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+
+        if (!append) {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+            stream.flush();
+        }
+
+        return stream;
+    }
+
+    static void writeRecord(
+            final DataOutputStream out,
+            final byte recordType,
+            final long ts,
+            final double playhead,
+            final Object payload)
+            throws IOException {
+        out.writeByte(recordType);
+        out.writeLong(ts);
+        out.writeDouble(playhead);
+        MediaEventTrace.writeValue(out, payload);
+    }
+
+    private static Map<String, Object> infoPayload(
+            final Map<String, Object> info, final Map<String, String> metadata) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put(KEY_INFO, info);
+        payload.put(KEY_METADATA, metadata);
+        return payload;
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing left to do with a stream which failed
+        }
+    }
+}
+
+/**
+ * Tracking state of a session as recorded in a {@link MediaSessionLog}. The writer keeps one to
+ * build snapshots and {@link MediaSessionLog#recover(File)} rebuilds one to close the session.
+ */
+class MediaLoggedSession {
+    private static final String LOG_TAG = "MediaLoggedSession";
+
+    private String sessionID;
+    private String backendSessionID;
+    private Object sessionPayload;
+    private Object adBreakPayload;
+    private Object adPayload;
+    private Object chapterPayload;
+    private final List<String> activeStates = new ArrayList<>();
+    private double playhead;
+    private long ts;
+
+    void apply(final byte recordType, final long ts, final double playhead, final Object payload) {
+        switch (recordType) {
+            case MediaSessionLog.RECORD_SESSION_START:
+                clear();
+                Object id =
+                        payload instanceof Map
+                                ? ((Map<?, ?>) payload).get(MediaSessionLog.KEY_SESSION_ID)
+                                : null;
+                sessionID = id instanceof String ? (String) id : null;
+                sessionPayload = payload;
+                break;
+            case MediaSessionLog.RECORD_BACKEND_SESSION:
+                backendSessionID = payload instanceof String ? (String) payload : null;
+                break;
+            case MediaSessionLog.RECORD_AD_BREAK_START:
+                adBreakPayload = payload;
+                break;
+            case MediaSessionLog.RECORD_AD_BREAK_COMPLETE:
+                adBreakPayload = null;
+                break;
+            case MediaSessionLog.RECORD_AD_START:
+                adPayload = payload;
+                break;
+            case MediaSessionLog.RECORD_AD_COMPLETE:
+                adPayload = null;
+                break;
+            case MediaSessionLog.RECORD_CHAPTER_START:
+                chapterPayload = payload;
+                break;
+            case MediaSessionLog.RECORD_CHAPTER_COMPLETE:
+                chapterPayload = null;
+                break;
+            case MediaSessionLog.RECORD_STATE_START:
+                if (payload instanceof String && !activeStates.contains(payload)) {
+                    activeStates.add((String) payload);
+                }
+                break;
+            case MediaSessionLog.RECORD_STATE_END:
+                activeStates.remove(payload);
+                break;
+            default:
+                // checkpoints and unknown records only move the playhead
+                break;
+        }
+
+        this.ts = ts;
+        this.playhead = playhead;
+    }
+
+    void clear() {
+        sessionID = null;
+        backendSessionID = null;
+        sessionPayload = null;
+        adBreakPayload = null;
+        adPayload = null;
+        chapterPayload = null;
+        activeStates.clear();
+        playhead = 0;
+        ts = 0;
+    }
+
+    int writeSnapshot(final DataOutputStream out) throws IOException {
+        int count = 0;
+
+        if (sessionID == null) {
+            return count;
+        }
+
+        MediaSessionLog.writeRecord(
+                out, MediaSessionLog.RECORD_SESSION_START, ts, playhead, sessionPayload);
+        count++;
+
+        if (backendSessionID != null) {
+            MediaSessionLog.writeRecord(
+                    out, MediaSessionLog.RECORD_BACKEND_SESSION, ts, playhead, backendSessionID);
+            count++;
+        }
+
+        if (chapterPayload != null) {
+            MediaSessionLog.writeRecord(
+                    out, MediaSessionLog.RECORD_CHAPTER_START, ts, playhead, chapterPayload);
+            count++;
+        }
+
+        if (adBreakPayload != null) {
+            MediaSessionLog.writeRecord(
+                    out, MediaSessionLog.RECORD_AD_BREAK_START, ts, playhead, adBreakPayload);
+            count++;
+        }
+
+        if (adPayload != null) {
+            MediaSessionLog.writeRecord(
+                    out, MediaSessionLog.RECORD_AD_START, ts, playhead, adPayload);
+            count++;
+        }
+
+        for (String stateName : activeStates) {
+            MediaSessionLog.writeRecord(
+                    out, MediaSessionLog.RECORD_STATE_START, ts, playhead, stateName);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Closes the session on {@code hitProcessor}: resumes it with its backend session ID, ends its
+     * active states, skips its ad and chapter, completes its ad break and sends the session end
+     * hit, all at the last logged playhead and timestamp. A session whose backend session ID was
+     * never logged is unknown to the backend and left as is.
+     *
+     * @param hitProcessor the {@link MediaHitProcessor} of the current process
+     * @return true if the session was closed
+     */
+    boolean closeSession(final MediaHitProcessor hitProcessor) {
+        String resumedID =
+                backendSessionID != null ? hitProcessor.resumeSession(backendSessionID) : null;
+
+        if (resumedID == null) {
+            Log.debug(
+                    MediaInternalConstants.LOG_TAG,
+                    LOG_TAG,
+                    "closeSession - Unable to resume session (%s) without its backend session ID.",
+                    sessionID);
+            return false;
+        }
+
+        for (String stateName : activeStates) {
+            Map<String, Object> params = new HashMap<>();
+            params.put(MediaCollectionConstants.State.STATE_NAME.key, stateName);
+            processHit(
+                    hitProcessor, resumedID, MediaCollectionConstants.EventType.STATE_END, params);
+        }
+
+        if (adPayload != null) {
+            processHit(hitProcessor, resumedID, MediaCollectionConstants.EventType.AD_SKIP, null);
+        }
+
+        if (adBreakPayload != null) {
+            processHit(
+                    hitProcessor,
+                    resumedID,
+                    MediaCollectionConstants.EventType.ADBREAK_COMPLETE,
+                    null);
+        }
+
+        if (chapterPayload != null) {
+            processHit(
+                    hitProcessor, resumedID, MediaCollectionConstants.EventType.CHAPTER_SKIP, null);
+        }
+
+        processHit(hitProcessor, resumedID, MediaCollectionConstants.EventType.SESSION_END, null);
+        hitProcessor.endSession(resumedID);
+        return true;
+    }
+
+    private void processHit(
+            final MediaHitProcessor hitProcessor,
+            final String resumedID,
+            final String eventType,
+            final Map<String, Object> params) {
+        MediaHit hit = new MediaHit(eventType, params, null, null, playhead, ts);
+        hitProcessor.processHit(resumedID, hit);
+    }
+
+    String getSessionID() {
+        return sessionID;
+    }
+
+    String getBackendSessionID() {
+        return backendSessionID;
+    }
+
+    boolean isInState(final String stateName) {
+        return activeStates.contains(stateName);
+    }
+
+    List<String> getActiveStates() {
+        return activeStates;
+    }
+
+    boolean isInAdBreak() {
+        return adBreakPayload != null;
+    }
+
+    boolean isInAd() {
+        return adPayload != null;
+    }
+
+    boolean isInChapter() {
+        return chapterPayload != null;
+    }
+
+    double getPlayhead() {
+        return playhead;
+    }
+
+    long getTimeStamp() {
+        return ts;
+    }
+}
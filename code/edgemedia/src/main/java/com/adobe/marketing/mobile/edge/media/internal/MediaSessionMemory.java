@@ -0,0 +1,198 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import com.adobe.marketing.mobile.util.DataReader;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Estimated heap held by one tracking session: the {@link MediaContext}, the rules queued during
+ * the preroll wait and the last QoE data sent.
+ *
+ * <p>The estimate uses typical object sizes of a 64 bit runtime and is meant to compare sessions
+ * and spot growth, not to match a heap dump. Crossing the soft cap makes the tracker trim long
+ * metadata values. Above the hard cap the tracker replays the rules queued during the preroll wait
+ * and drops the largest metadata values until the session fits again. The QoE data holds a fixed
+ * set of fields, so it never needs shedding. Hits are not affected, as the tracker does not hold
+ * them. A cap of {@link #NO_CAP} disables it.
+ */
+class MediaSessionMemory {
+    static final long NO_CAP = 0;
+
+    static final int OBJECT_OVERHEAD = 16;
+    static final int MAP_OVERHEAD = 48;
+    static final int MAP_ENTRY_OVERHEAD = 32;
+    static final int COLLECTION_ELEMENT_OVERHEAD = 8;
+    static final int STRING_OVERHEAD = 40;
+    static final int BOXED_VALUE_SIZE = 16;
+
+    private final long softCap;
+    private final long hardCap;
+    private long contextBytes;
+    private long prerollQueueBytes;
+    private long qoeBytes;
+    private long highWaterMark;
+    private int metadataTrimCount;
+    private long droppedMetadataCount;
+
+    MediaSessionMemory(final long softCap, final long hardCap) {
+        this.softCap = Math.max(NO_CAP, softCap);
+        this.hardCap = Math.max(NO_CAP, hardCap);
+    }
+
+    static MediaSessionMemory fromConfig(final Map<String, Object> config) {
+        return new MediaSessionMemory(
+                DataReader.optLong(
+                        config,
+                        MediaInternalConstants.EventDataKeys.Config.MEMORY_SOFT_CAP,
+                        NO_CAP),
+                DataReader.optLong(
+                        config,
+                        MediaInternalConstants.EventDataKeys.Config.MEMORY_HARD_CAP,
+                        NO_CAP));
+    }
+
+    /** Clears the accounting for a new session. */
+    void reset() {
+        contextBytes = 0;
+        prerollQueueBytes = 0;
+        qoeBytes = 0;
+        highWaterMark = 0;
+        metadataTrimCount = 0;
+        droppedMetadataCount = 0;
+    }
+
+    /**
+     * Returns whether the session is accounted: a cap is set or metrics are collected. Without
+     * either nothing reads the estimate, so the tracker skips it.
+     */
+    boolean isEnabled() {
+        return softCap != NO_CAP || hardCap != NO_CAP || MediaMetrics.getInstance().isEnabled();
+    }
+
+    void setContextBytes(final long bytes) {
+        contextBytes = bytes;
+        updateHighWaterMark();
+    }
+
+    void setQoEBytes(final long bytes) {
+        qoeBytes = bytes;
+        updateHighWaterMark();
+    }
+
+    void addPrerollQueueBytes(final long bytes) {
+        prerollQueueBytes += bytes;
+        updateHighWaterMark();
+    }
+
+    void clearPrerollQueueBytes() {
+        prerollQueueBytes = 0;
+    }
+
+    void onMetadataTrimmed() {
+        metadataTrimCount++;
+        MediaMetrics.getInstance().recordMetadataTrim();
+    }
+
+    void onMetadataDropped(final int count) {
+        droppedMetadataCount += count;
+        MediaMetrics.getInstance().recordDroppedMetadata(count);
+    }
+
+    long getTotalBytes() {
+        return contextBytes + prerollQueueBytes + qoeBytes;
+    }
+
+    long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    int getMetadataTrimCount() {
+        return metadataTrimCount;
+    }
+
+    long getDroppedMetadataCount() {
+        return droppedMetadataCount;
+    }
+
+    boolean isAboveSoftCap() {
+        return softCap != NO_CAP && getTotalBytes() > softCap;
+    }
+
+    boolean isAboveHardCap() {
+        return hardCap != NO_CAP && getTotalBytes() > hardCap;
+    }
+
+    /** Returns how many bytes have to be shed to fit the hard cap again, 0 if it fits. */
+    long getBytesAboveHardCap() {
+        return isAboveHardCap() ? getTotalBytes() - hardCap : 0;
+    }
+
+    private void updateHighWaterMark() {
+        long total = getTotalBytes();
+
+        if (total > highWaterMark) {
+            highWaterMark = total;
+            MediaMetrics.getInstance().recordSessionMemory(total);
+        }
+    }
+
+    /**
+     * Estimates the heap used by a value found in event data or metadata.
+     *
+     * @param value a string, boxed primitive, map or collection of those
+     * @return the estimated size in bytes
+     */
+    static long estimate(final Object value) {
+        if (value == null) {
+            return 0;
+        }
+
+        if (value instanceof String) {
+            return STRING_OVERHEAD + 2L * ((String) value).length();
+        }
+
+        if (value instanceof Map) {
+            long bytes = MAP_OVERHEAD;
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += estimateEntry(entry.getKey(), entry.getValue());
+            }
+
+            return bytes;
+        }
+
+        if (value instanceof Collection) {
+            long bytes = OBJECT_OVERHEAD;
+
+            for (Object item : (Collection<?>) value) {
+                bytes += COLLECTION_ELEMENT_OVERHEAD + estimate(item);
+            }
+
+            return bytes;
+        }
+
+        return BOXED_VALUE_SIZE;
+    }
+
+    /**
+     * Estimates the heap used by one map entry, as counted by {@link #estimate(Object)}.
+     *
+     * @param key the key of the entry
+     * @param value the value of the entry
+     * @return the estimated size in bytes
+     */
+    static long estimateEntry(final Object key, final Object value) {
+        return MAP_ENTRY_OVERHEAD + estimate(key) + estimate(value);
+    }
+}
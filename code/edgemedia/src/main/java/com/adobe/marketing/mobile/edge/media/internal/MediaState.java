@@ -11,6 +11,7 @@
 
 package com.adobe.marketing.mobile.edge.media.internal;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.adobe.marketing.mobile.services.Log;
 import com.adobe.marketing.mobile.util.DataReader;
@@ -18,32 +19,73 @@ import com.adobe.marketing.mobile.util.MapUtils;
 import com.adobe.marketing.mobile.util.StringUtils;
 import java.util.Map;
 
-/** Holds the Media configuration state variables. */
+/**
+ * Holds the Media configuration state variables. The variables are published as an immutable
+ * {@link Snapshot} through a volatile reference, so readers never block on configuration updates.
+ */
 class MediaState {
     private static final String SOURCE_TAG = "MediaState";
-    private final Object mutex = new Object();
 
-    // Media Config
-    private String mediaChannel;
-    private String mediaPlayerName;
-    private String mediaAppVersion;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
 
-    @Nullable public String getMediaChannel() {
-        synchronized (mutex) {
+    /** Immutable view of the Media configuration at a point in time. */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(null, null, null);
+
+        private final String mediaChannel;
+        private final String mediaPlayerName;
+        private final String mediaAppVersion;
+        private final boolean valid;
+
+        Snapshot(
+                final String mediaChannel,
+                final String mediaPlayerName,
+                final String mediaAppVersion) {
+            this.mediaChannel = mediaChannel;
+            this.mediaPlayerName = mediaPlayerName;
+            this.mediaAppVersion = mediaAppVersion;
+            this.valid =
+                    !(StringUtils.isNullOrEmpty(mediaChannel)
+                            || StringUtils.isNullOrEmpty(mediaPlayerName));
+        }
+
+        @Nullable String getMediaChannel() {
             return mediaChannel;
         }
-    }
 
-    @Nullable public String getMediaPlayerName() {
-        synchronized (mutex) {
+        @Nullable String getMediaPlayerName() {
             return mediaPlayerName;
         }
-    }
 
-    @Nullable public String getMediaAppVersion() {
-        synchronized (mutex) {
+        @Nullable String getMediaAppVersion() {
             return mediaAppVersion;
         }
+
+        boolean isValid() {
+            return valid;
+        }
+    }
+
+    /**
+     * Returns the current configuration snapshot. Use this when more than one variable is needed,
+     * so all of them come from the same configuration update.
+     *
+     * @return the current {@link Snapshot}, never null
+     */
+    @NonNull Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Nullable public String getMediaChannel() {
+        return snapshot.getMediaChannel();
+    }
+
+    @Nullable public String getMediaPlayerName() {
+        return snapshot.getMediaPlayerName();
+    }
+
+    @Nullable public String getMediaAppVersion() {
+        return snapshot.getMediaAppVersion();
     }
 
     /**
@@ -60,17 +102,16 @@ class MediaState {
             return;
         }
 
-        synchronized (mutex) {
-            mediaChannel =
-                    DataReader.optString(
-                            data, MediaInternalConstants.Configuration.MEDIA_CHANNEL, null);
-            mediaPlayerName =
-                    DataReader.optString(
-                            data, MediaInternalConstants.Configuration.MEDIA_PLAYER_NAME, null);
-            mediaAppVersion =
-                    DataReader.optString(
-                            data, MediaInternalConstants.Configuration.MEDIA_APP_VERSION, null);
-        }
+        snapshot =
+                new Snapshot(
+                        DataReader.optString(
+                                data, MediaInternalConstants.Configuration.MEDIA_CHANNEL, null),
+                        DataReader.optString(
+                                data, MediaInternalConstants.Configuration.MEDIA_PLAYER_NAME, null),
+                        DataReader.optString(
+                                data,
+                                MediaInternalConstants.Configuration.MEDIA_APP_VERSION,
+                                null));
     }
 
     /**
@@ -79,9 +120,6 @@ class MediaState {
      * @return true if this state has a valid configuration.
      */
     public boolean isValid() {
-        synchronized (mutex) {
-            return !(StringUtils.isNullOrEmpty(mediaChannel)
-                    || StringUtils.isNullOrEmpty(mediaPlayerName));
-        }
+        return snapshot.isValid();
     }
 }
@@ -13,6 +13,7 @@ package com.adobe.marketing.mobile;
 
 import com.adobe.marketing.mobile.edge.media.internal.MediaExtension;
 import com.adobe.marketing.mobile.edge.media.internal.MediaObject;
+import com.adobe.marketing.mobile.edge.media.internal.MediaQoESource;
 import java.util.HashMap;
 import java.util.Map;
 import org.jetbrains.annotations.NotNull;
@@ -176,6 +177,42 @@ public class Media {
         return MediaObject.createQoEInfo(bitrate, droppedFrames, fps, startupTime);
     }
 
+    /**
+     * Publishes QoE information to a shared QoE source. Trackers created with {@link
+     * MediaConstants.Config#QOE_SOURCE} set to the same source name read the latest information
+     * when they send a hit, so players with several trackers publish it once instead of calling
+     * {@link MediaTracker#updateQoEObject(Map)} on each tracker.
+     *
+     * <p>The source is created on first use and lives until {@link #releaseSharedQoE(String)} is
+     * called with its name, so players release it once all trackers using it completed.
+     *
+     * @param sourceName The name of the shared QoE source
+     * @param bitrate The bitrate of media in bits per second
+     * @param startupTime The start up time of media in seconds
+     * @param fps The current frames per second information
+     * @param droppedFrames The number of dropped frames so far
+     */
+    public static void updateSharedQoE(
+            @NotNull final String sourceName,
+            final long bitrate,
+            final double startupTime,
+            final double fps,
+            final long droppedFrames) {
+        MediaQoESource.publish(sourceName, bitrate, droppedFrames, fps, startupTime);
+    }
+
+    /**
+     * Releases a shared QoE source published with {@link #updateSharedQoE(String, long, double,
+     * double, long)}. Trackers which already use the source no longer receive its updates, a later
+     * call to {@link #updateSharedQoE(String, long, double, double, long)} with the same name
+     * creates a new source for new trackers.
+     *
+     * @param sourceName The name of the shared QoE source
+     */
+    public static void releaseSharedQoE(@NotNull final String sourceName) {
+        MediaQoESource.release(sourceName);
+    }
+
     /**
      * Creates an instance of the state info object
      *
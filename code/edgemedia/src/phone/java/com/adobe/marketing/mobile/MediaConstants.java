@@ -18,6 +18,13 @@ public class MediaConstants {
     public static final class Config {
         public static final String CHANNEL = "config.channel";
         public static final String DOWNLOADED_CONTENT = "config.downloadedcontent";
+        public static final String AGGREGATE_PINGS = "config.aggregatepings";
+        public static final String MEMORY_SOFT_CAP = "config.memorysoftcap";
+        public static final String MEMORY_HARD_CAP = "config.memoryhardcap";
+        public static final String DELTA_HITS = "config.deltahits";
+        public static final String MAX_CLOCK_JUMP = "config.maxclockjump";
+        public static final String HIBERNATE_IDLE = "config.hibernateidle";
+        public static final String QOE_SOURCE = "config.qoesource";
 
         private Config() {}
     }
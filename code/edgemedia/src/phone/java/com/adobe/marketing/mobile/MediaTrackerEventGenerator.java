@@ -38,6 +38,7 @@ class MediaTrackerEventGenerator implements MediaTracker {
             static final String ID = "trackerid";
             static final String SESSION_ID = "sessionid";
             static final String EVENT_NAME = "event.name";
+            static final String EVENT_CODE = "event.code";
             static final String EVENT_PARAM = "event.param";
             static final String EVENT_METADATA = "event.metadata";
             static final String EVENT_TIMESTAMP = "event.timestamp";
@@ -74,6 +75,35 @@ class MediaTrackerEventGenerator implements MediaTracker {
             static final String STATE_END = "stateend";
         }
 
+        // Event Data Key Constants - EventCode, must match the internal tracker event codes
+        static final class MediaEventCode {
+            private MediaEventCode() {}
+
+            static final int SESSION_START = 1;
+            static final int COMPLETE = 2;
+            static final int SESSION_END = 3;
+            static final int ADBREAK_START = 4;
+            static final int ADBREAK_COMPLETE = 5;
+            static final int AD_START = 6;
+            static final int AD_COMPLETE = 7;
+            static final int AD_SKIP = 8;
+            static final int CHAPTER_START = 9;
+            static final int CHAPTER_COMPLETE = 10;
+            static final int CHAPTER_SKIP = 11;
+            static final int PLAY = 12;
+            static final int PAUSE = 13;
+            static final int SEEK_START = 14;
+            static final int SEEK_COMPLETE = 15;
+            static final int BUFFER_START = 16;
+            static final int BUFFER_COMPLETE = 17;
+            static final int BITRATE_CHANGE = 18;
+            static final int ERROR = 19;
+            static final int QOE_UPDATE = 20;
+            static final int PLAYHEAD_UPDATE = 21;
+            static final int STATE_START = 22;
+            static final int STATE_END = 23;
+        }
+
         static final class ErrorInfo {
             private ErrorInfo() {}
 
@@ -81,6 +111,68 @@ class MediaTrackerEventGenerator implements MediaTracker {
         }
     }
 
+    /** Tracker events with their event name and compact event code. */
+    private enum TrackerEvent {
+        SESSION_START(
+                EventDataKeys.MediaEventName.SESSION_START,
+                EventDataKeys.MediaEventCode.SESSION_START),
+        COMPLETE(EventDataKeys.MediaEventName.COMPLETE, EventDataKeys.MediaEventCode.COMPLETE),
+        SESSION_END(
+                EventDataKeys.MediaEventName.SESSION_END, EventDataKeys.MediaEventCode.SESSION_END),
+        ADBREAK_START(
+                EventDataKeys.MediaEventName.ADBREAK_START,
+                EventDataKeys.MediaEventCode.ADBREAK_START),
+        ADBREAK_COMPLETE(
+                EventDataKeys.MediaEventName.ADBREAK_COMPLETE,
+                EventDataKeys.MediaEventCode.ADBREAK_COMPLETE),
+        AD_START(EventDataKeys.MediaEventName.AD_START, EventDataKeys.MediaEventCode.AD_START),
+        AD_COMPLETE(
+                EventDataKeys.MediaEventName.AD_COMPLETE, EventDataKeys.MediaEventCode.AD_COMPLETE),
+        AD_SKIP(EventDataKeys.MediaEventName.AD_SKIP, EventDataKeys.MediaEventCode.AD_SKIP),
+        CHAPTER_START(
+                EventDataKeys.MediaEventName.CHAPTER_START,
+                EventDataKeys.MediaEventCode.CHAPTER_START),
+        CHAPTER_COMPLETE(
+                EventDataKeys.MediaEventName.CHAPTER_COMPLETE,
+                EventDataKeys.MediaEventCode.CHAPTER_COMPLETE),
+        CHAPTER_SKIP(
+                EventDataKeys.MediaEventName.CHAPTER_SKIP,
+                EventDataKeys.MediaEventCode.CHAPTER_SKIP),
+        PLAY(EventDataKeys.MediaEventName.PLAY, EventDataKeys.MediaEventCode.PLAY),
+        PAUSE(EventDataKeys.MediaEventName.PAUSE, EventDataKeys.MediaEventCode.PAUSE),
+        SEEK_START(
+                EventDataKeys.MediaEventName.SEEK_START, EventDataKeys.MediaEventCode.SEEK_START),
+        SEEK_COMPLETE(
+                EventDataKeys.MediaEventName.SEEK_COMPLETE,
+                EventDataKeys.MediaEventCode.SEEK_COMPLETE),
+        BUFFER_START(
+                EventDataKeys.MediaEventName.BUFFER_START,
+                EventDataKeys.MediaEventCode.BUFFER_START),
+        BUFFER_COMPLETE(
+                EventDataKeys.MediaEventName.BUFFER_COMPLETE,
+                EventDataKeys.MediaEventCode.BUFFER_COMPLETE),
+        BITRATE_CHANGE(
+                EventDataKeys.MediaEventName.BITRATE_CHANGE,
+                EventDataKeys.MediaEventCode.BITRATE_CHANGE),
+        ERROR(EventDataKeys.MediaEventName.ERROR, EventDataKeys.MediaEventCode.ERROR),
+        QOE_UPDATE(
+                EventDataKeys.MediaEventName.QOE_UPDATE, EventDataKeys.MediaEventCode.QOE_UPDATE),
+        PLAYHEAD_UPDATE(
+                EventDataKeys.MediaEventName.PLAYHEAD_UPDATE,
+                EventDataKeys.MediaEventCode.PLAYHEAD_UPDATE),
+        STATE_START(
+                EventDataKeys.MediaEventName.STATE_START, EventDataKeys.MediaEventCode.STATE_START),
+        STATE_END(EventDataKeys.MediaEventName.STATE_END, EventDataKeys.MediaEventCode.STATE_END);
+
+        final String eventName;
+        final int eventCode;
+
+        TrackerEvent(final String eventName, final int eventCode) {
+            this.eventName = eventName;
+            this.eventCode = eventCode;
+        }
+    }
+
     private static final int TICK_INTERVAL_MS = 750;
     private static final int EVENT_TIMEOUT_MS = 500;
     private final AdobeCallback<Event> eventConsumer;
@@ -154,72 +246,72 @@ class MediaTrackerEventGenerator implements MediaTracker {
 
     public void trackSessionStart(
             final Map<String, Object> info, final Map<String, String> metadata) {
-        trackInternal(EventDataKeys.MediaEventName.SESSION_START, info, metadata);
+        trackInternal(TrackerEvent.SESSION_START, info, metadata);
     }
 
     public void trackPlay() {
-        trackInternal(EventDataKeys.MediaEventName.PLAY);
+        trackInternal(TrackerEvent.PLAY);
     }
 
     public void trackPause() {
-        trackInternal(EventDataKeys.MediaEventName.PAUSE);
+        trackInternal(TrackerEvent.PAUSE);
     }
 
     public void trackComplete() {
-        trackInternal(EventDataKeys.MediaEventName.COMPLETE);
+        trackInternal(TrackerEvent.COMPLETE);
     }
 
     public void trackSessionEnd() {
-        trackInternal(EventDataKeys.MediaEventName.SESSION_END);
+        trackInternal(TrackerEvent.SESSION_END);
     }
 
     public void trackError(final String errorId) {
         Map<String, Object> params = new HashMap<>();
         params.put(EventDataKeys.ErrorInfo.ID, errorId);
-        trackInternal(EventDataKeys.MediaEventName.ERROR, params, null);
+        trackInternal(TrackerEvent.ERROR, params, null);
     }
 
     public void trackEvent(
             final Media.Event event,
             final Map<String, Object> info,
             final Map<String, String> metadata) {
-        trackInternal(eventToString(event), info, metadata);
+        trackInternal(toTrackerEvent(event), info, metadata);
     }
 
     public void updateCurrentPlayhead(final double playheadValue) {
         Map<String, Object> params = new HashMap<>();
         params.put(EventDataKeys.Tracker.PLAYHEAD, playheadValue);
-        trackInternal(EventDataKeys.MediaEventName.PLAYHEAD_UPDATE, params, null);
+        trackInternal(TrackerEvent.PLAYHEAD_UPDATE, params, null);
     }
 
     public void updateQoEObject(final Map<String, Object> qoeInfo) {
-        trackInternal(EventDataKeys.MediaEventName.QOE_UPDATE, qoeInfo, null);
+        trackInternal(TrackerEvent.QOE_UPDATE, qoeInfo, null);
     }
 
-    void trackInternal(final String eventName) {
-        trackInternal(eventName, null, null, false);
+    private void trackInternal(final TrackerEvent trackerEvent) {
+        trackInternal(trackerEvent, null, null, false);
     }
 
-    void trackInternal(
-            final String eventName,
+    private void trackInternal(
+            final TrackerEvent trackerEvent,
             final Map<String, Object> params,
             final Map<String, String> metadata) {
-        trackInternal(eventName, params, metadata, false);
+        trackInternal(trackerEvent, params, metadata, false);
     }
 
-    synchronized void trackInternal(
-            final String eventName,
+    private synchronized void trackInternal(
+            final TrackerEvent trackerEvent,
             final Map<String, Object> params,
             final Map<String, String> metadata,
             final boolean internalEvent) {
 
-        if (eventName == null) {
+        if (trackerEvent == null) {
             return;
         }
 
         // Internal Tracker starts a new session only when we are not in an active session and we
         // follow the same.
-        if (eventName.equals(EventDataKeys.MediaEventName.SESSION_START) && params != null) {
+        if (trackerEvent == TrackerEvent.SESSION_START && params != null) {
             boolean isValidSessionStart = MediaObject.isValidMediaInfo(params);
 
             if (!inSession && isValidSessionStart) {
@@ -227,8 +319,8 @@ class MediaTrackerEventGenerator implements MediaTracker {
                 inSession = true;
                 startTimer();
             }
-        } else if (eventName.equals(EventDataKeys.MediaEventName.SESSION_END)
-                || eventName.equals(EventDataKeys.MediaEventName.COMPLETE)) {
+        } else if (trackerEvent == TrackerEvent.SESSION_END
+                || trackerEvent == TrackerEvent.COMPLETE) {
             inSession = false;
             stopTimer();
         }
@@ -236,7 +328,8 @@ class MediaTrackerEventGenerator implements MediaTracker {
         Map<String, Object> eventData = new HashMap<>();
         eventData.put(EventDataKeys.Tracker.ID, trackerId);
         eventData.put(EventDataKeys.Tracker.SESSION_ID, sessionId);
-        eventData.put(EventDataKeys.Tracker.EVENT_NAME, eventName);
+        eventData.put(EventDataKeys.Tracker.EVENT_NAME, trackerEvent.eventName);
+        eventData.put(EventDataKeys.Tracker.EVENT_CODE, trackerEvent.eventCode);
         eventData.put(EventDataKeys.Tracker.EVENT_INTERNAL, internalEvent);
 
         if (params != null) {
@@ -258,7 +351,7 @@ class MediaTrackerEventGenerator implements MediaTracker {
 
         lastEventTS = ts;
 
-        if (eventName.equals(EventDataKeys.MediaEventName.PLAYHEAD_UPDATE) && params != null) {
+        if (trackerEvent == TrackerEvent.PLAYHEAD_UPDATE && params != null) {
             lastPlayheadParams = new HashMap<>(params);
         }
     }
@@ -274,8 +367,7 @@ class MediaTrackerEventGenerator implements MediaTracker {
             // We have not got any public api call for 500 ms.
             // We manually send an event to keep our internal processing alive (idle tracking / ping
             // processing).
-            trackInternal(
-                    EventDataKeys.MediaEventName.PLAYHEAD_UPDATE, lastPlayheadParams, null, true);
+            trackInternal(TrackerEvent.PLAYHEAD_UPDATE, lastPlayheadParams, null, true);
         }
     }
 
@@ -303,55 +395,55 @@ class MediaTrackerEventGenerator implements MediaTracker {
         }
     }
 
-    private String eventToString(final Media.Event event) {
+    private TrackerEvent toTrackerEvent(final Media.Event event) {
         switch (event) {
             case AdBreakStart:
-                return EventDataKeys.MediaEventName.ADBREAK_START;
+                return TrackerEvent.ADBREAK_START;
 
             case AdBreakComplete:
-                return EventDataKeys.MediaEventName.ADBREAK_COMPLETE;
+                return TrackerEvent.ADBREAK_COMPLETE;
 
             case AdStart:
-                return EventDataKeys.MediaEventName.AD_START;
+                return TrackerEvent.AD_START;
 
             case AdComplete:
-                return EventDataKeys.MediaEventName.AD_COMPLETE;
+                return TrackerEvent.AD_COMPLETE;
 
             case AdSkip:
-                return EventDataKeys.MediaEventName.AD_SKIP;
+                return TrackerEvent.AD_SKIP;
 
             case ChapterStart:
-                return EventDataKeys.MediaEventName.CHAPTER_START;
+                return TrackerEvent.CHAPTER_START;
 
             case ChapterComplete:
-                return EventDataKeys.MediaEventName.CHAPTER_COMPLETE;
+                return TrackerEvent.CHAPTER_COMPLETE;
 
             case ChapterSkip:
-                return EventDataKeys.MediaEventName.CHAPTER_SKIP;
+                return TrackerEvent.CHAPTER_SKIP;
 
             case SeekStart:
-                return EventDataKeys.MediaEventName.SEEK_START;
+                return TrackerEvent.SEEK_START;
 
             case SeekComplete:
-                return EventDataKeys.MediaEventName.SEEK_COMPLETE;
+                return TrackerEvent.SEEK_COMPLETE;
 
             case BufferStart:
-                return EventDataKeys.MediaEventName.BUFFER_START;
+                return TrackerEvent.BUFFER_START;
 
             case BufferComplete:
-                return EventDataKeys.MediaEventName.BUFFER_COMPLETE;
+                return TrackerEvent.BUFFER_COMPLETE;
 
             case BitrateChange:
-                return EventDataKeys.MediaEventName.BITRATE_CHANGE;
+                return TrackerEvent.BITRATE_CHANGE;
 
             case StateStart:
-                return EventDataKeys.MediaEventName.STATE_START;
+                return TrackerEvent.STATE_START;
 
             case StateEnd:
-                return EventDataKeys.MediaEventName.STATE_END;
+                return TrackerEvent.STATE_END;
 
             default:
-                return "";
+                return null;
         }
     }
 }
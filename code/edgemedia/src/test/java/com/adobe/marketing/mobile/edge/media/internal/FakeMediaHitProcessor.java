@@ -20,6 +20,7 @@ import java.util.Map;
 class FakeMediaHitProcessor implements MediaHitProcessor {
     private Map<String, List<MediaHit>> hits;
     private Map<String, Boolean> sessionEnded;
+    private Map<String, String> resumedSessions;
     private int counter = -1;
     private String currentSessionID = "-1";
 
@@ -45,6 +46,22 @@ class FakeMediaHitProcessor implements MediaHitProcessor {
         sessionEnded.put(sessionID, true);
     }
 
+    @Override
+    public String getBackendSessionID(String sessionID) {
+        if (resumedSessions.containsKey(sessionID)) {
+            return resumedSessions.get(sessionID);
+        }
+
+        return hits.containsKey(sessionID) ? "backend" + sessionID : null;
+    }
+
+    @Override
+    public String resumeSession(String backendSessionID) {
+        String sessionID = startSession();
+        resumedSessions.put(sessionID, backendSessionID);
+        return sessionID;
+    }
+
     public String getActiveSession() {
         return currentSessionID;
     }
@@ -94,6 +111,7 @@ class FakeMediaHitProcessor implements MediaHitProcessor {
     public void clear() {
         hits = new HashMap<>();
         sessionEnded = new HashMap<>();
+        resumedSessions = new HashMap<>();
         counter = -1;
         currentSessionID = "-1";
         hits.clear();
@@ -0,0 +1,828 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import com.adobe.marketing.mobile.services.HttpConnecting;
+import com.adobe.marketing.mobile.services.MockNetworkService;
+import com.adobe.marketing.mobile.services.NetworkRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+public class MediaBatchDispatcherTests {
+    static final String URL = "https://edge.example.com/ee/v1/interact";
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final long PING_INTERVAL = 10000;
+    static final long HOUR = 3600000;
+
+    MockNetworkService networkService;
+
+    public MediaBatchDispatcherTests() {
+        networkService = new MockNetworkService();
+    }
+
+    static MediaHit createHit(final String eventType, final long ts) {
+        return new MediaHit(eventType, null, null, null, ts / 1000.0, ts);
+    }
+
+    static String getBody(final NetworkRequest request) throws IOException {
+        byte[] body = request.getBody();
+
+        if (MediaBatchDispatcher.CONTENT_ENCODING_GZIP.equals(
+                request.getHeaders().get(MediaBatchDispatcher.HEADER_CONTENT_ENCODING))) {
+            GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[1024];
+            int read;
+
+            while ((read = in.read(chunk)) > 0) {
+                out.write(chunk, 0, read);
+            }
+
+            body = out.toByteArray();
+        }
+
+        return new String(body, UTF_8);
+    }
+
+    static int count(final String text, final String value) {
+        int count = 0;
+
+        for (int i = text.indexOf(value); i >= 0; i = text.indexOf(value, i + 1)) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /** Plays one hour of content, pinging every 10 seconds, and returns the session ID. */
+    static String playOneHour(final MediaBatchDispatcher dispatcher) {
+        String sessionID = dispatcher.startSession();
+        dispatcher.processHit(
+                sessionID, createHit(MediaCollectionTestConstants.EventType.SESSION_START, 0));
+        dispatcher.processHit(sessionID, createHit(MediaCollectionTestConstants.EventType.PLAY, 0));
+
+        for (long ts = PING_INTERVAL; ts <= HOUR; ts += PING_INTERVAL) {
+            dispatcher.processHit(
+                    sessionID, createHit(MediaCollectionTestConstants.EventType.PING, ts));
+        }
+
+        dispatcher.processHit(
+                sessionID,
+                createHit(MediaCollectionTestConstants.EventType.SESSION_COMPLETE, HOUR));
+        dispatcher.endSession(sessionID);
+        return sessionID;
+    }
+
+    @Test
+    public void test_oneHourOfPlayback_savesRequestsAndBytes() throws IOException {
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        MediaBatchDispatcher dispatcher = new MediaBatchDispatcher(networkService, URL);
+
+        playOneHour(dispatcher);
+
+        // 360 pings plus start, play and complete
+        assertEquals(363, dispatcher.getHitCount());
+        // the session start on its own, one batch per minute of hit timestamps, plus the hits at
+        // the end of the hour
+        assertEquals(62, dispatcher.getRequestCount());
+        assertEquals(62, networkService.capturedRequests.size());
+        assertEquals(2, dispatcher.getPriorityRequestCount());
+        // batches compress to about a fifth of their size
+        assertTrue(dispatcher.getSentBytes() * 4 < dispatcher.getUncompressedBytes());
+        assertEquals(0, dispatcher.getFailedRequestCount());
+        assertEquals(0, dispatcher.getActiveSessionCount());
+
+        int events = 0;
+        for (NetworkRequest request : networkService.capturedRequests) {
+            assertEquals(URL, request.getUrl());
+            String body = getBody(request);
+            assertTrue(body.startsWith("{\"events\":[{\"xdm\":"));
+            assertTrue(body.endsWith("}]}"));
+            events += count(body, "\"xdm\":");
+        }
+        assertEquals(363, events);
+    }
+
+    @Test
+    public void test_batch_boundedBySize() throws IOException {
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        MediaBatchDispatcher dispatcher =
+                new MediaBatchDispatcher(networkService, URL, 500, HOUR, Integer.MAX_VALUE);
+
+        playOneHour(dispatcher);
+
+        assertTrue(dispatcher.getRequestCount() > 61);
+        for (NetworkRequest request : networkService.capturedRequests) {
+            // a batch is closed by the first hit which reaches the limit
+            assertTrue(request.getBody().length < 700);
+        }
+    }
+
+    @Test
+    public void test_gzip_onlyAboveThreshold() throws IOException {
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        MediaBatchDispatcher dispatcher =
+                new MediaBatchDispatcher(networkService, URL, 1000000, HOUR, 1000000);
+
+        String sessionID = dispatcher.startSession();
+        dispatcher.processHit(sessionID, createHit(MediaCollectionTestConstants.EventType.PLAY, 0));
+        dispatcher.endSession(sessionID);
+
+        NetworkRequest request = networkService.capturedRequest;
+        assertNull(request.getHeaders().get(MediaBatchDispatcher.HEADER_CONTENT_ENCODING));
+        assertEquals(
+                MediaBatchDispatcher.CONTENT_TYPE_JSON,
+                request.getHeaders().get(MediaBatchDispatcher.HEADER_CONTENT_TYPE));
+        assertEquals(dispatcher.getUncompressedBytes(), dispatcher.getSentBytes());
+
+        networkService.reset();
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        MediaBatchDispatcher gzipDispatcher =
+                new MediaBatchDispatcher(networkService, URL, 1000000, HOUR, 0);
+        String gzipSessionID = gzipDispatcher.startSession();
+        MediaHit hit = createHit(MediaCollectionTestConstants.EventType.PLAY, 0);
+        gzipDispatcher.processHit(gzipSessionID, hit);
+        gzipDispatcher.endSession(gzipSessionID);
+
+        request = networkService.capturedRequest;
+        assertEquals(
+                MediaBatchDispatcher.CONTENT_ENCODING_GZIP,
+                request.getHeaders().get(MediaBatchDispatcher.HEADER_CONTENT_ENCODING));
+
+        MediaHitSerializer serializer = new MediaHitSerializer();
+        serializer.write(gzipSessionID, hit);
+        assertEquals("{\"events\":[" + serializer + "]}", getBody(request));
+    }
+
+    @Test
+    public void test_session_keepsOneRequestInFlight() throws IOException {
+        MediaBatchDispatcher dispatcher =
+                new MediaBatchDispatcher(networkService, URL, 1000000, PING_INTERVAL, 1000000);
+
+        String sessionID = dispatcher.startSession();
+        for (long ts = 0; ts <= 2 * PING_INTERVAL; ts += PING_INTERVAL) {
+            dispatcher.processHit(
+                    sessionID, createHit(MediaCollectionTestConstants.EventType.PING, ts));
+        }
+        dispatcher.endSession(sessionID);
+
+        // three batches closed, only the first one sent
+        assertEquals(1, networkService.capturedRequests.size());
+        assertEquals(1, dispatcher.getActiveSessionCount());
+
+        for (int i = 0; i < 2; i++) {
+            networkService.capturedCallbacks.get(i).call(MockNetworkService.createResponse(200));
+            assertEquals(i + 2, networkService.capturedRequests.size());
+        }
+
+        networkService.capturedCallbacks.get(2).call(MockNetworkService.createResponse(200));
+        assertEquals(0, dispatcher.getActiveSessionCount());
+
+        assertTrue(getBody(networkService.capturedRequests.get(0)).contains("\"ts\":0}"));
+        assertTrue(getBody(networkService.capturedRequests.get(1)).contains("\"ts\":10000}"));
+        assertTrue(getBody(networkService.capturedRequests.get(2)).contains("\"ts\":20000}"));
+    }
+
+    @Test
+    public void test_priorityHit_closesBatch() throws IOException {
+        MediaBatchDispatcher dispatcher =
+                new MediaBatchDispatcher(networkService, URL, 1000000, HOUR, 1000000);
+        networkService.setResponse(MockNetworkService.createResponse(200));
+
+        String sessionID = dispatcher.startSession();
+        dispatcher.processHit(
+                sessionID, createHit(MediaCollectionTestConstants.EventType.SESSION_START, 0));
+        dispatcher.processHit(sessionID, createHit(MediaCollectionTestConstants.EventType.PLAY, 0));
+        for (long ts = PING_INTERVAL; ts <= 3 * PING_INTERVAL; ts += PING_INTERVAL) {
+            dispatcher.processHit(
+                    sessionID, createHit(MediaCollectionTestConstants.EventType.PING, ts));
+        }
+        assertEquals(1, networkService.capturedRequests.size());
+
+        dispatcher.processHit(
+                sessionID,
+                createHit(MediaCollectionTestConstants.EventType.AD_START, 3 * PING_INTERVAL));
+
+        // the bulk hits go out with the ad start, in order
+        assertEquals(2, networkService.capturedRequests.size());
+        String body = getBody(networkService.capturedRequests.get(1));
+        assertEquals(5, count(body, "\"xdm\":"));
+        assertTrue(body.indexOf("\"eventType\":\"ping\"") < body.indexOf("\"adStart\""));
+        assertEquals(2, dispatcher.getPriorityRequestCount());
+    }
+
+    @Test
+    public void test_priorityBatch_mergedWithQueuedBatches() throws IOException {
+        MediaBatchDispatcher dispatcher =
+                new MediaBatchDispatcher(networkService, URL, 1000000, PING_INTERVAL, 1000000);
+
+        String sessionID = dispatcher.startSession();
+        for (long ts = 0; ts <= 2 * PING_INTERVAL; ts += PING_INTERVAL) {
+            dispatcher.processHit(
+                    sessionID, createHit(MediaCollectionTestConstants.EventType.PING, ts));
+        }
+        dispatcher.processHit(
+                sessionID,
+                createHit(MediaCollectionTestConstants.EventType.AD_START, 2 * PING_INTERVAL));
+
+        // the first ping is in flight, the second one waits in its own batch
+        assertEquals(1, networkService.capturedRequests.size());
+
+        networkService.capturedCallbacks.get(0).call(MockNetworkService.createResponse(200));
+
+        assertEquals(2, networkService.capturedRequests.size());
+        String body = getBody(networkService.capturedRequests.get(1));
+        assertTrue(body.startsWith("{\"events\":[{\"xdm\":"));
+        assertTrue(body.endsWith("}]}"));
+        assertEquals(3, count(body, "\"xdm\":"));
+        assertTrue(body.indexOf("\"ts\":10000}") < body.indexOf("\"ts\":20000}"));
+        assertTrue(body.indexOf("\"ts\":20000}") < body.indexOf("\"adStart\""));
+        assertEquals(1, dispatcher.getPriorityRequestCount());
+
+        dispatcher.endSession(sessionID);
+        networkService.capturedCallbacks.get(1).call(MockNetworkService.createResponse(200));
+        assertEquals(0, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_isPriorityHit() {
+        assertTrue(
+                MediaBatchDispatcher.isPriorityHit(
+                        createHit(MediaCollectionTestConstants.EventType.SESSION_START, 0)));
+        assertTrue(
+                MediaBatchDispatcher.isPriorityHit(
+                        createHit(MediaCollectionTestConstants.EventType.AD_COMPLETE, 0)));
+        assertTrue(
+                MediaBatchDispatcher.isPriorityHit(
+                        createHit(MediaCollectionTestConstants.EventType.ERROR, 0)));
+        assertFalse(
+                MediaBatchDispatcher.isPriorityHit(
+                        createHit(MediaCollectionTestConstants.EventType.PING, 0)));
+        assertFalse(
+                MediaBatchDispatcher.isPriorityHit(
+                        createHit(MediaCollectionTestConstants.EventType.PAUSE_START, 0)));
+    }
+
+    @Test
+    public void test_sessions_areSentIndependently() {
+        MediaBatchDispatcher dispatcher =
+                new MediaBatchDispatcher(networkService, URL, 1000000, HOUR, 1000000);
+
+        String session1 = dispatcher.startSession();
+        String session2 = dispatcher.startSession();
+        assertNotEquals(session1, session2);
+
+        dispatcher.processHit(session1, createHit(MediaCollectionTestConstants.EventType.PLAY, 0));
+        dispatcher.processHit(session2, createHit(MediaCollectionTestConstants.EventType.PLAY, 0));
+        dispatcher.endSession(session1);
+        dispatcher.endSession(session2);
+
+        assertEquals(2, networkService.capturedRequests.size());
+    }
+
+    @Test
+    public void test_failedRequest_isCountedAndNextBatchSent() {
+        networkService.setResponse(MockNetworkService.createResponse(500));
+        MediaBatchDispatcher dispatcher =
+                new MediaBatchDispatcher(networkService, URL, 1000000, PING_INTERVAL, 1000000);
+
+        String sessionID = dispatcher.startSession();
+        for (long ts = 0; ts <= 2 * PING_INTERVAL; ts += PING_INTERVAL) {
+            dispatcher.processHit(
+                    sessionID, createHit(MediaCollectionTestConstants.EventType.PING, ts));
+        }
+        dispatcher.endSession(sessionID);
+
+        assertEquals(3, dispatcher.getRequestCount());
+        assertEquals(3, dispatcher.getFailedRequestCount());
+        assertEquals(0, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_hitForUnknownSession_isDropped() {
+        MediaBatchDispatcher dispatcher = new MediaBatchDispatcher(networkService, URL);
+        dispatcher.processHit("unknown", createHit(MediaCollectionTestConstants.EventType.PLAY, 0));
+        dispatcher.endSession("unknown");
+
+        assertEquals(0, dispatcher.getHitCount());
+        assertFalse(networkService.connectAsyncCalled);
+    }
+
+    @Test
+    public void test_withoutSessionIdCache_sessionStartHasNoSessionID() throws IOException {
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        MediaBatchDispatcher dispatcher = new MediaBatchDispatcher(networkService, URL);
+
+        String sessionID = dispatcher.startSession();
+        dispatcher.processHit(
+                sessionID, createHit(MediaCollectionTestConstants.EventType.SESSION_START, 0));
+        dispatcher.processHit(sessionID, createHit(MediaCollectionTestConstants.EventType.PLAY, 0));
+        dispatcher.endSession(sessionID);
+
+        assertEquals(2, networkService.capturedRequests.size());
+        assertFalse(getBody(networkService.capturedRequests.get(0)).contains("\"sessionID\""));
+        assertTrue(
+                getBody(networkService.capturedRequests.get(1))
+                        .contains("\"sessionID\":\"" + sessionID + "\""));
+    }
+
+    MediaBatchDispatcher createReconcilingDispatcher(final MediaSessionIdCache cache) {
+        return new MediaBatchDispatcher(networkService, URL, 1000000, 30000, 1000000, cache);
+    }
+
+    void playMinute(final MediaBatchDispatcher dispatcher, final String sessionID) {
+        dispatcher.processHit(
+                sessionID, createHit(MediaCollectionTestConstants.EventType.SESSION_START, 0));
+        dispatcher.processHit(sessionID, createHit(MediaCollectionTestConstants.EventType.PLAY, 0));
+
+        for (long ts = PING_INTERVAL; ts <= 60000; ts += PING_INTERVAL) {
+            dispatcher.processHit(
+                    sessionID, createHit(MediaCollectionTestConstants.EventType.PING, ts));
+        }
+    }
+
+    static HttpConnecting createNewSessionResponse(final String backendSessionID) {
+        return MockNetworkService.createResponse(
+                200,
+                "{\"requestId\":\"request1\",\"handle\":[{\"payload\":[{\"sessionId\":\""
+                        + backendSessionID
+                        + "\"}],\"type\":\"media-analytics:new-session\",\"eventIndex\":0}]}");
+    }
+
+    @Test
+    public void test_reconcile_holdsHitsUntilBackendSessionResolves() throws IOException {
+        MediaSessionIdCache cache = new MediaSessionIdCache();
+        MediaBatchDispatcher dispatcher = createReconcilingDispatcher(cache);
+
+        String sessionID = dispatcher.startSession();
+        playMinute(dispatcher, sessionID);
+
+        // only sessionStart is sent, without a session ID
+        assertEquals(1, networkService.capturedRequests.size());
+        String startBody = getBody(networkService.capturedRequests.get(0));
+        assertEquals(1, count(startBody, "\"xdm\":"));
+        assertFalse(startBody.contains("sessionID"));
+
+        // the sessionStart response carries the backend session ID
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        networkService.capturedCallbacks.get(0).call(createNewSessionResponse("backend1"));
+        assertEquals("backend1", cache.get(sessionID));
+
+        // play and pings up to 20s, then pings from 30s to 50s; 60s stays in the open batch
+        assertEquals(3, networkService.capturedRequests.size());
+        dispatcher.endSession(sessionID);
+        assertEquals(4, networkService.capturedRequests.size());
+
+        int events = 0;
+        for (int i = 1; i < 4; i++) {
+            String body = getBody(networkService.capturedRequests.get(i));
+            events += count(body, "\"xdm\":");
+            assertEquals(count(body, "\"xdm\":"), count(body, "\"sessionID\":\"backend1\""));
+        }
+        assertEquals(7, events);
+
+        assertEquals(0, dispatcher.getActiveSessionCount());
+        assertNull(cache.get(sessionID));
+    }
+
+    @Test
+    public void test_reconcile_sessionStartResponseWithoutID_abandonsSession() {
+        networkService.setResponse(MockNetworkService.createResponse(200, "{\"handle\":[]}"));
+        MediaBatchDispatcher dispatcher = createReconcilingDispatcher(new MediaSessionIdCache());
+
+        String sessionID = dispatcher.startSession();
+        playMinute(dispatcher, sessionID);
+
+        assertEquals(1, networkService.capturedRequests.size());
+        assertEquals(1, dispatcher.getAbandonedSessionCount());
+    }
+
+    @Test
+    public void test_readBackendSessionID() {
+        assertEquals(
+                "backend1",
+                MediaBatchDispatcher.readBackendSessionID(createNewSessionResponse("backend1")));
+        assertNull(
+                MediaBatchDispatcher.readBackendSessionID(
+                        MockNetworkService.createResponse(
+                                200, "{\"handle\":[{\"type\":\"other\",\"payload\":[{}]}]}")));
+        assertNull(
+                MediaBatchDispatcher.readBackendSessionID(
+                        MockNetworkService.createResponse(200, "not json")));
+        assertNull(MediaBatchDispatcher.readBackendSessionID(null));
+    }
+
+    @Test
+    public void test_reconcile_slowSessionStartResponse_keepsOrder() throws IOException {
+        MediaBatchDispatcher dispatcher = createReconcilingDispatcher(new MediaSessionIdCache());
+
+        String sessionID = dispatcher.startSession();
+        playMinute(dispatcher, sessionID);
+        dispatcher.resolveSession(sessionID, "backend1");
+        dispatcher.endSession(sessionID);
+
+        // all batches are ready, but wait for the sessionStart request to complete
+        assertEquals(1, networkService.capturedRequests.size());
+
+        for (int i = 0; i < 4; i++) {
+            networkService.capturedCallbacks.get(i).call(MockNetworkService.createResponse(200));
+        }
+
+        assertEquals(4, networkService.capturedRequests.size());
+        assertTrue(getBody(networkService.capturedRequests.get(0)).contains("sessionStart"));
+        assertTrue(getBody(networkService.capturedRequests.get(1)).contains("\"ts\":0}"));
+        assertTrue(getBody(networkService.capturedRequests.get(3)).contains("\"ts\":60000}"));
+        assertEquals(0, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_reconcile_sessionEndedBeforeResolve() {
+        MediaBatchDispatcher dispatcher = createReconcilingDispatcher(new MediaSessionIdCache());
+
+        String sessionID = dispatcher.startSession();
+        playMinute(dispatcher, sessionID);
+        dispatcher.endSession(sessionID);
+
+        assertEquals(1, networkService.capturedRequests.size());
+        assertEquals(1, dispatcher.getActiveSessionCount());
+
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        networkService.capturedCallbacks.get(0).call(createNewSessionResponse("backend1"));
+
+        assertEquals(4, networkService.capturedRequests.size());
+        assertEquals(8, dispatcher.getHitCount());
+        assertEquals(0, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_reconcile_heldHitsAreBounded() throws IOException {
+        MediaBatchDispatcher dispatcher =
+                new MediaBatchDispatcher(
+                        networkService, URL, 1000000, HOUR, 1000000, new MediaSessionIdCache());
+
+        String sessionID = dispatcher.startSession();
+        dispatcher.processHit(
+                sessionID, createHit(MediaCollectionTestConstants.EventType.SESSION_START, 0));
+        dispatcher.processHit(sessionID, createHit(MediaCollectionTestConstants.EventType.PLAY, 0));
+
+        for (int i = 1; i <= MediaBatchDispatcher.MAX_HELD_HITS + 10; i++) {
+            dispatcher.processHit(
+                    sessionID, createHit(MediaCollectionTestConstants.EventType.PING, i * 1000));
+        }
+
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        networkService.capturedCallbacks.get(0).call(createNewSessionResponse("backend1"));
+        dispatcher.endSession(sessionID);
+
+        String body = getBody(networkService.capturedRequests.get(1));
+        assertEquals(MediaBatchDispatcher.MAX_HELD_HITS, count(body, "\"xdm\":"));
+        // play is kept, the oldest pings are dropped
+        assertTrue(body.contains("\"eventType\":\"play\""));
+        assertFalse(body.contains("\"ts\":11000}"));
+        assertTrue(body.contains("\"ts\":12000}"));
+    }
+
+    @Test
+    public void test_reconcile_evictedFromCache_keepsBackendSessionID() throws IOException {
+        MediaSessionIdCache cache = new MediaSessionIdCache(1);
+        MediaBatchDispatcher dispatcher = createReconcilingDispatcher(cache);
+
+        networkService.setResponse(createNewSessionResponse("backend1"));
+        String first = dispatcher.startSession();
+        playMinute(dispatcher, first);
+
+        networkService.setResponse(createNewSessionResponse("backend2"));
+        String second = dispatcher.startSession();
+        playMinute(dispatcher, second);
+        assertEquals("backend2", cache.get(second));
+        assertNull(cache.get(first));
+
+        int requests = networkService.capturedRequests.size();
+        dispatcher.processHit(
+                first, createHit(MediaCollectionTestConstants.EventType.SESSION_COMPLETE, 70000));
+        dispatcher.endSession(first);
+
+        assertEquals(requests + 1, networkService.capturedRequests.size());
+        String body = getBody(networkService.capturedRequests.get(requests));
+        assertEquals(count(body, "\"xdm\":"), count(body, "\"sessionID\":\"backend1\""));
+        assertEquals(1, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_reconcile_failedSessionStart_abandonsSession() {
+        networkService.setResponse(MockNetworkService.createResponse(400));
+        MediaBatchDispatcher dispatcher = createReconcilingDispatcher(new MediaSessionIdCache());
+
+        String sessionID = dispatcher.startSession();
+        playMinute(dispatcher, sessionID);
+        dispatcher.processHit(
+                sessionID, createHit(MediaCollectionTestConstants.EventType.SESSION_COMPLETE, 0));
+        dispatcher.endSession(sessionID);
+
+        assertEquals(1, networkService.capturedRequests.size());
+        assertEquals(1, dispatcher.getAbandonedSessionCount());
+        assertEquals(0, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_reconcile_unresolvedEndedSessions_areBounded() {
+        MediaBatchDispatcher dispatcher = createReconcilingDispatcher(new MediaSessionIdCache());
+
+        String first = null;
+        for (int i = 0; i <= MediaBatchDispatcher.MAX_UNRESOLVED_SESSIONS; i++) {
+            String sessionID = dispatcher.startSession();
+            if (first == null) {
+                first = sessionID;
+            }
+
+            playMinute(dispatcher, sessionID);
+            dispatcher.endSession(sessionID);
+        }
+
+        assertEquals(1, dispatcher.getAbandonedSessionCount());
+
+        // a late backend ID of the abandoned session sends nothing and removes it
+        int requests = networkService.capturedRequests.size();
+        networkService.capturedCallbacks.get(0).call(createNewSessionResponse("backend1"));
+        assertEquals(requests, networkService.capturedRequests.size());
+        assertEquals(
+                MediaBatchDispatcher.MAX_UNRESOLVED_SESSIONS, dispatcher.getActiveSessionCount());
+    }
+
+    MediaBatchDispatcher createRetryingDispatcher(
+            final SimulatedScheduler scheduler, final int retryBudget, final int maxQueuedBytes) {
+        MediaRetryScheduler retryScheduler =
+                new MediaRetryScheduler(
+                        scheduler, new Random(1), 1000, 8000, 3, retryBudget, maxQueuedBytes);
+        return new MediaBatchDispatcher(
+                networkService, URL, 1000000, PING_INTERVAL, 1000000, null, retryScheduler);
+    }
+
+    void playPings(final MediaBatchDispatcher dispatcher, final String sessionID, final int count) {
+        for (long ts = 0; ts < count * PING_INTERVAL; ts += PING_INTERVAL) {
+            dispatcher.processHit(
+                    sessionID, createHit(MediaCollectionTestConstants.EventType.PING, ts));
+        }
+    }
+
+    @Test
+    public void test_retry_failedBatchSentBeforeLaterBatches() throws IOException {
+        SimulatedScheduler scheduler = new SimulatedScheduler(new SimulatedClock());
+        MediaBatchDispatcher dispatcher = createRetryingDispatcher(scheduler, 10, 1000000);
+
+        String sessionID = dispatcher.startSession();
+        playPings(dispatcher, sessionID, 3);
+        dispatcher.endSession(sessionID);
+
+        networkService.capturedCallbacks.get(0).call(MockNetworkService.createResponse(503));
+
+        // the later batches wait for the retry
+        assertEquals(1, networkService.capturedRequests.size());
+        assertEquals(1, scheduler.getPendingCount());
+        assertTrue(scheduler.delays.get(0) <= 1000);
+
+        scheduler.advance(1000);
+        assertEquals(2, networkService.capturedRequests.size());
+        assertSame(networkService.capturedRequests.get(0), networkService.capturedRequests.get(1));
+
+        for (int i = 1; i < 4; i++) {
+            networkService.capturedCallbacks.get(i).call(MockNetworkService.createResponse(200));
+        }
+
+        assertEquals(4, networkService.capturedRequests.size());
+        assertTrue(getBody(networkService.capturedRequests.get(1)).contains("\"ts\":0}"));
+        assertTrue(getBody(networkService.capturedRequests.get(2)).contains("\"ts\":10000}"));
+        assertTrue(getBody(networkService.capturedRequests.get(3)).contains("\"ts\":20000}"));
+        assertEquals(1, dispatcher.getRetryCount());
+        assertEquals(1, dispatcher.getFailedRequestCount());
+        assertEquals(0, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_retry_noConnectionAndThrottlingAreRetried() {
+        SimulatedScheduler scheduler = new SimulatedScheduler(new SimulatedClock());
+        MediaBatchDispatcher dispatcher = createRetryingDispatcher(scheduler, 10, 1000000);
+
+        String sessionID = dispatcher.startSession();
+        playPings(dispatcher, sessionID, 1);
+        dispatcher.endSession(sessionID);
+
+        networkService.capturedCallbacks.get(0).call(null);
+        scheduler.advance(1000);
+        networkService.capturedCallbacks.get(1).call(MockNetworkService.createResponse(429));
+        scheduler.advance(2000);
+        networkService.capturedCallbacks.get(2).call(MockNetworkService.createResponse(200));
+
+        assertEquals(3, networkService.capturedRequests.size());
+        assertEquals(2, dispatcher.getRetryCount());
+        assertEquals(0, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_retry_clientErrorNotRetried() {
+        SimulatedScheduler scheduler = new SimulatedScheduler(new SimulatedClock());
+        MediaBatchDispatcher dispatcher = createRetryingDispatcher(scheduler, 10, 1000000);
+
+        String sessionID = dispatcher.startSession();
+        playPings(dispatcher, sessionID, 2);
+        dispatcher.endSession(sessionID);
+
+        networkService.capturedCallbacks.get(0).call(MockNetworkService.createResponse(400));
+
+        assertEquals(0, scheduler.getPendingCount());
+        assertEquals(2, networkService.capturedRequests.size());
+        assertEquals(0, dispatcher.getRetryCount());
+    }
+
+    @Test
+    public void test_retry_stopsWhenAttemptsOrBudgetRunOut() throws IOException {
+        SimulatedScheduler scheduler = new SimulatedScheduler(new SimulatedClock());
+        MediaBatchDispatcher dispatcher = createRetryingDispatcher(scheduler, 4, 1000000);
+
+        String sessionID = dispatcher.startSession();
+        playPings(dispatcher, sessionID, 2);
+        dispatcher.endSession(sessionID);
+
+        // the first batch gives up after 3 retries
+        for (int i = 0; i < 4; i++) {
+            networkService.capturedCallbacks.get(i).call(MockNetworkService.createResponse(503));
+            scheduler.advance(8000);
+        }
+
+        assertEquals(3, dispatcher.getRetryCount());
+        assertEquals(5, networkService.capturedRequests.size());
+        assertTrue(getBody(networkService.capturedRequests.get(4)).contains("\"ts\":10000}"));
+
+        // one token left for the second batch
+        networkService.capturedCallbacks.get(4).call(MockNetworkService.createResponse(503));
+        scheduler.advance(8000);
+        networkService.capturedCallbacks.get(5).call(MockNetworkService.createResponse(503));
+
+        assertEquals(0, scheduler.getPendingCount());
+        assertEquals(4, dispatcher.getRetryCount());
+        assertEquals(6, dispatcher.getFailedRequestCount());
+        assertEquals(0, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_retry_queuedBatchesAreBounded() throws IOException {
+        SimulatedScheduler scheduler = new SimulatedScheduler(new SimulatedClock());
+        MediaBatchDispatcher dispatcher = createRetryingDispatcher(scheduler, 10, 400);
+
+        String sessionID = dispatcher.startSession();
+        playPings(dispatcher, sessionID, 10);
+        dispatcher.processHit(
+                sessionID,
+                createHit(MediaCollectionTestConstants.EventType.SESSION_COMPLETE, 100000));
+        dispatcher.endSession(sessionID);
+
+        assertTrue(dispatcher.getDroppedBatchCount() > 0);
+
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        networkService.capturedCallbacks.get(0).call(MockNetworkService.createResponse(200));
+
+        // the oldest pings are dropped, the newest ones and the priority batch are kept
+        String body = getBody(networkService.capturedRequests.get(1));
+        assertFalse(body.contains("\"ts\":10000}"));
+        assertTrue(body.contains("\"ts\":90000}"));
+        assertTrue(body.contains("sessionComplete"));
+        assertEquals(0, dispatcher.getActiveSessionCount());
+    }
+
+    @Test
+    public void test_dedup_replayedHitsAreDropped() throws IOException {
+        MediaBatchDispatcher dispatcher =
+                new MediaBatchDispatcher(networkService, URL, 1000000, PING_INTERVAL, 1000000);
+
+        String sessionID = dispatcher.startSession();
+        for (int i = 0; i < 3; i++) {
+            dispatcher.processHit(sessionID, createSequencedPing(i));
+        }
+
+        // the second and third hit are replayed
+        for (int i = 1; i < 3; i++) {
+            dispatcher.processHit(sessionID, createSequencedPing(i));
+        }
+        // hits without a sequence number are never deduplicated
+        dispatcher.processHit(sessionID, createHit(MediaCollectionTestConstants.EventType.PING, 0));
+        dispatcher.processHit(sessionID, createHit(MediaCollectionTestConstants.EventType.PING, 0));
+        dispatcher.endSession(sessionID);
+
+        assertEquals(2, dispatcher.getDuplicateCount());
+        assertEquals(5, dispatcher.getHitCount());
+
+        String body = getBody(networkService.capturedRequests.get(0));
+        assertEquals(5, count(body, "\"xdm\":"));
+        assertEquals(1, count(body, "\"_id\":\"" + sessionID + "-1\""));
+        assertEquals(3, count(body, "\"_id\":"));
+    }
+
+    @Test
+    public void test_dedup_windowIsBounded() {
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        MediaBatchDispatcher dispatcher = new MediaBatchDispatcher(networkService, URL);
+
+        String sessionID = dispatcher.startSession();
+        for (int i = 0; i <= MediaBatchDispatcher.DEDUP_WINDOW; i++) {
+            dispatcher.processHit(sessionID, createSequencedPing(i));
+        }
+        dispatcher.flush();
+
+        // the key of the second hit is still in the window, the key of the first one left it
+        for (int i = 1; i >= 0; i--) {
+            dispatcher.processHit(sessionID, createSequencedPing(i));
+        }
+
+        assertEquals(1, dispatcher.getDuplicateCount());
+        assertEquals(MediaBatchDispatcher.DEDUP_WINDOW + 2, dispatcher.getHitCount());
+    }
+
+    @Test
+    public void test_dedup_replayAfterCrash_keepsEventID() throws IOException {
+        networkService.setResponse(MockNetworkService.createResponse(200));
+
+        // two processes send the same hit of a resumed session
+        for (int i = 0; i < 2; i++) {
+            MediaBatchDispatcher dispatcher =
+                    createReconcilingDispatcher(new MediaSessionIdCache());
+            String sessionID = dispatcher.resumeSession("backend1");
+            dispatcher.processHit(sessionID, createSequencedPing(1));
+            dispatcher.endSession(sessionID);
+        }
+
+        assertEquals(2, networkService.capturedRequests.size());
+        for (NetworkRequest request : networkService.capturedRequests) {
+            assertEquals(1, count(getBody(request), "\"_id\":\"backend1-1\""));
+        }
+    }
+
+    @Test
+    public void test_dedup_failedBatch_isSentAgainOnReplay() throws IOException {
+        networkService.setResponse(MockNetworkService.createResponse(400));
+        MediaBatchDispatcher dispatcher = new MediaBatchDispatcher(networkService, URL);
+
+        String sessionID = dispatcher.startSession();
+        for (int i = 0; i < 2; i++) {
+            dispatcher.processHit(sessionID, createSequencedPing(i));
+        }
+        dispatcher.flush();
+
+        // the server never acknowledged the hits, their replay is sent
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        for (int i = 0; i < 2; i++) {
+            dispatcher.processHit(sessionID, createSequencedPing(i));
+        }
+        dispatcher.flush();
+
+        assertEquals(0, dispatcher.getDuplicateCount());
+        assertEquals(2, networkService.capturedRequests.size());
+        String body = getBody(networkService.capturedRequests.get(1));
+        assertEquals(1, count(body, "\"_id\":\"" + sessionID + "-0\""));
+        assertEquals(1, count(body, "\"_id\":\"" + sessionID + "-1\""));
+
+        // once acknowledged, a replay is dropped
+        dispatcher.processHit(sessionID, createSequencedPing(1));
+
+        assertEquals(1, dispatcher.getDuplicateCount());
+    }
+
+    @Test
+    public void test_dedup_batchDroppedWithoutNetworkService_isAcceptedOnReplay() {
+        MediaBatchDispatcher dispatcher = new MediaBatchDispatcher(null, URL);
+
+        String sessionID = dispatcher.startSession();
+        dispatcher.processHit(sessionID, createSequencedPing(0));
+        dispatcher.flush();
+        dispatcher.processHit(sessionID, createSequencedPing(0));
+
+        assertEquals(0, dispatcher.getDuplicateCount());
+        assertEquals(2, dispatcher.getHitCount());
+    }
+
+    private static MediaHit createSequencedPing(final int sequenceNumber) {
+        return new MediaHit(
+                MediaCollectionTestConstants.EventType.PING,
+                null,
+                null,
+                null,
+                0,
+                sequenceNumber,
+                sequenceNumber);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+public class MediaClockNormalizerTests {
+    MediaClockNormalizer normalizer;
+
+    public MediaClockNormalizerTests() {
+        normalizer = new MediaClockNormalizer(5000);
+    }
+
+    @Test
+    public void test_steadyClock_isUnchanged() {
+        for (long ts = 1000; ts <= 10000; ts += 1000) {
+            assertEquals(ts, normalizer.normalize(ts));
+        }
+
+        assertEquals(0, normalizer.getCorrectionCount());
+    }
+
+    @Test
+    public void test_backwardJump_noTimeElapses() {
+        assertEquals(10000, normalizer.normalize(10000));
+        assertEquals(10000, normalizer.normalize(4000));
+        // the offset is kept for the following events
+        assertEquals(11000, normalizer.normalize(5000));
+
+        assertEquals(1, normalizer.getCorrectionCount());
+    }
+
+    @Test
+    public void test_forwardJump_limitedToMaxJump() {
+        assertEquals(10000, normalizer.normalize(10000));
+        assertEquals(15000, normalizer.normalize(15000));
+        assertEquals(20000, normalizer.normalize(3600000));
+        assertEquals(21000, normalizer.normalize(3601000));
+
+        assertEquals(1, normalizer.getCorrectionCount());
+    }
+
+    @Test
+    public void test_reanchor_dropsOffset() {
+        assertEquals(10000, normalizer.normalize(10000));
+        assertEquals(10000, normalizer.normalize(4000));
+
+        normalizer.reanchor(6000);
+
+        assertEquals(7000, normalizer.normalize(7000));
+        assertEquals(1, normalizer.getCorrectionCount());
+    }
+
+    @Test
+    public void test_writeTo_readFrom_continuesTimeline() throws IOException {
+        normalizer.normalize(10000);
+        normalizer.normalize(0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        normalizer.writeTo(new DataOutputStream(bytes));
+
+        MediaClockNormalizer restored = new MediaClockNormalizer(5000);
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(1, restored.getCorrectionCount());
+        assertEquals(11000, restored.normalize(1000));
+    }
+}
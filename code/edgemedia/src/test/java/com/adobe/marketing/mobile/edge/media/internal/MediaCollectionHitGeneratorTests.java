@@ -1515,4 +1515,146 @@ public class MediaCollectionHitGeneratorTests {
             assertEquals(expected, actual);
         }
     }
+
+    MediaCollectionHitGenerator createDeltaHitGenerator() {
+        config.put(MediaTestConstants.EventDataKeys.Config.DELTA_HITS, true);
+        return new MediaCollectionHitGenerator(mediaContext, hitProcessor, config, 0, refSessionId);
+    }
+
+    @Test
+    public void test_deltaHits_sessionRestart_sendsFullSectionStarts() {
+        hitGenerator = createDeltaHitGenerator();
+        hitGenerator.processMediaStart();
+
+        ChapterInfo chapterInfo = ChapterInfo.create("chaptername", 1, 10, 30);
+        Map<String, String> chapterMetadata = new HashMap<>();
+        chapterMetadata.put("k1", "v1");
+        mediaContext.setChapterInfo(chapterInfo, chapterMetadata);
+        hitGenerator.processChapterStart();
+
+        MediaHit fullChapterStart = hitProcessor.getHitFromActiveSession(1);
+        assertEquals(
+                MediaCollectionHelper.extractChapterParams(mediaContext),
+                fullChapterStart.getParams());
+        assertEquals(chapterMetadata, fullChapterStart.getCustomMetadata());
+
+        hitGenerator.processSessionAbort();
+        mediaContext.getMediaMetadata().put("k1", "v2");
+        hitGenerator.processSessionRestart();
+
+        // the restarted session is a new backend session, its starts do not reference the
+        // revisions of the previous one
+        // MediaStart
+        {
+            Map<String, Object> params = MediaCollectionHelper.extractMediaParams(mediaContext);
+            params.put(MediaCollectionTestConstants.Media.DOWNLOADED.key, true);
+            params.put(MediaCollectionTestConstants.Media.RESUME.key, true);
+            params.put(MediaInternalConstants.EventDataKeys.Tracker.SESSION_ID, refSessionId);
+
+            Map<String, String> metadata = new HashMap<>();
+            metadata.put("k1", "v2");
+
+            MediaHit hit = hitProcessor.getHitFromActiveSession(0);
+            assertEquals(MediaCollectionTestConstants.EventType.SESSION_START, hit.getEventType());
+            assertEquals(params, hit.getParams());
+            assertEquals(metadata, hit.getCustomMetadata());
+        }
+
+        // ChapterStart
+        {
+            MediaHit hit = hitProcessor.getHitFromActiveSession(1);
+            assertEquals(MediaCollectionTestConstants.EventType.CHAPTER_START, hit.getEventType());
+            assertEquals(MediaCollectionHelper.extractChapterParams(mediaContext), hit.getParams());
+            assertEquals(chapterMetadata, hit.getCustomMetadata());
+        }
+
+        // within the restarted session, starts are reduced again
+        hitGenerator.processChapterStart();
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(MediaCollectionTestConstants.Delta.CHAPTER.key, 1);
+
+        MediaHit hit =
+                hitProcessor.getHitFromActiveSession(hitProcessor.hitCountfromActiveSession() - 1);
+        assertEquals(MediaCollectionTestConstants.EventType.CHAPTER_START, hit.getEventType());
+        assertEquals(params, hit.getParams());
+        assertEquals(emptyMetadata, hit.getCustomMetadata());
+    }
+
+    @Test
+    public void test_deltaHits_adStart_sendsRemovedMetadataAsNull() {
+        hitGenerator = createDeltaHitGenerator();
+        hitGenerator.processMediaStart();
+
+        Map<String, String> adMetadata = new HashMap<>();
+        adMetadata.put("k1", "v1");
+        adMetadata.put("k2", "v2");
+        mediaContext.setAdInfo(AdInfo.create("ad1", "adname", 1, 15.0), adMetadata);
+        hitGenerator.processAdStart();
+        hitGenerator.processAdComplete();
+
+        adMetadata = new HashMap<>();
+        adMetadata.put("k1", "v1");
+        mediaContext.setAdInfo(AdInfo.create("ad2", "adname", 2, 15.0), adMetadata);
+        hitGenerator.processAdStart();
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(MediaCollectionTestConstants.Ad.ID.key, "ad2");
+        params.put(MediaCollectionTestConstants.Ad.POD_POSITION.key, 2L);
+        params.put(MediaCollectionTestConstants.Delta.AD.key, 1);
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("k2", null);
+
+        MediaHit hit = hitProcessor.getHitFromActiveSession(3);
+        assertEquals(MediaCollectionTestConstants.EventType.AD_START, hit.getEventType());
+        assertEquals(params, hit.getParams());
+        assertEquals(metadata, hit.getCustomMetadata());
+    }
+
+    @Test
+    public void test_deltaHits_qoeData() {
+        hitGenerator = createDeltaHitGenerator();
+        hitGenerator.processMediaStart();
+
+        mediaContext.setQoEInfo(QoEInfo.create(100, 1, 30, 2));
+        hitGenerator.generateHit(MediaCollectionTestConstants.EventType.PING);
+        assertEquals(
+                MediaCollectionHelper.extractQoEData(mediaContext),
+                hitProcessor.getHitFromActiveSession(1).getQoEData());
+
+        mediaContext.setQoEInfo(QoEInfo.create(200, 1, 30, 2));
+        hitGenerator.generateHit(MediaCollectionTestConstants.EventType.PING);
+
+        MediaHit hit = hitProcessor.getHitFromActiveSession(2);
+        Map<String, Object> qoeData = new HashMap<>();
+        qoeData.put(MediaCollectionTestConstants.QoE.BITRATE.key, 200L);
+        assertEquals(qoeData, hit.getQoEData());
+        assertEquals(1, hit.getParams().get(MediaCollectionTestConstants.Delta.QOE.key));
+
+        // unchanged QoE data is neither sent nor referenced
+        hitGenerator.processBitrateChange();
+
+        hit = hitProcessor.getHitFromActiveSession(3);
+        assertTrue(hit.getQoEData().isEmpty());
+        assertTrue(hit.getParams().isEmpty());
+    }
+
+    @Test
+    public void test_hitsCarrySessionSequence() {
+        hitGenerator.processMediaStart();
+        hitGenerator.generateHit(MediaCollectionTestConstants.EventType.PLAY);
+        hitGenerator.generateHit(MediaCollectionTestConstants.EventType.PING);
+
+        String firstSession = hitProcessor.getActiveSession();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, hitProcessor.getHitFromActiveSession(i).getSequence());
+        }
+
+        // a restarted session counts from zero again, its keys differ by session ID
+        hitGenerator.processSessionRestart();
+
+        assertNotEquals(firstSession, hitProcessor.getActiveSession());
+        assertEquals(0, hitProcessor.getHitFromActiveSession(0).getSequence());
+    }
 }
@@ -272,4 +272,33 @@ class MediaCollectionTestConstants {
         static final ParamTypeMapping STATE_NAME =
                 new ParamTypeMapping("media.state.name", ParamTypeMapping.Type.STRING);
     }
+
+    static final class Ping {
+        private Ping() {}
+
+        static final ParamTypeMapping COUNT =
+                new ParamTypeMapping("media.ping.count", ParamTypeMapping.Type.INTEGER);
+        static final ParamTypeMapping DURATION =
+                new ParamTypeMapping("media.ping.duration", ParamTypeMapping.Type.LONG);
+    }
+
+    static final class Delta {
+        private Delta() {}
+
+        static final ParamTypeMapping MEDIA =
+                new ParamTypeMapping("media.delta.media", ParamTypeMapping.Type.INTEGER);
+        static final ParamTypeMapping AD =
+                new ParamTypeMapping("media.delta.ad", ParamTypeMapping.Type.INTEGER);
+        static final ParamTypeMapping CHAPTER =
+                new ParamTypeMapping("media.delta.chapter", ParamTypeMapping.Type.INTEGER);
+        static final ParamTypeMapping QOE =
+                new ParamTypeMapping("media.delta.qoe", ParamTypeMapping.Type.INTEGER);
+    }
+
+    static final class Memory {
+        private Memory() {}
+
+        static final ParamTypeMapping METADATA_TRIMMED =
+                new ParamTypeMapping("media.memory.metadataTrimmed", ParamTypeMapping.Type.BOOLEAN);
+    }
 }
@@ -16,6 +16,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -230,6 +231,111 @@ public class MediaCollectionTrackerTests {
         assertFalse(tracker.track(modifiedEvent));
     }
 
+    @Test
+    public void test_trackEvent_eventCodeMustMatchEventName() {
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        Event event = mediaTrackerAPIEventGenertor.getEvent();
+
+        assertEquals(
+                MediaRuleName.MediaStart.ordinal(),
+                DataReader.optInt(
+                        event.getEventData(),
+                        MediaTestConstants.EventDataKeys.Tracker.EVENT_CODE,
+                        -1));
+
+        // A mismatched code is ignored and the event name is resolved instead
+        Event modifiedEvent =
+                createEventWithModifiedData(
+                        event,
+                        map ->
+                                map.put(
+                                        MediaTestConstants.EventDataKeys.Tracker.EVENT_CODE,
+                                        MediaRuleName.Play.ordinal()));
+        assertTrue(tracker.track(modifiedEvent));
+
+        // Events without a code are resolved by name
+        mediaTrackerAPIEventGenertor.trackPlay();
+        modifiedEvent =
+                createEventWithModifiedData(
+                        mediaTrackerAPIEventGenertor.getEvent(),
+                        map -> map.remove(MediaTestConstants.EventDataKeys.Tracker.EVENT_CODE));
+        assertTrue(tracker.track(modifiedEvent));
+    }
+
+    @Test
+    public void test_publicTrackerEventCodes_matchRuleOrdinals() {
+        List<Event> events = new ArrayList<>();
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.trackPlay();
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.trackPause();
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.trackError("error");
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.updateQoEObject(qoeInfo.toObjectMap());
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.updateCurrentPlayhead(1);
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+
+        for (Media.Event event : Media.Event.values()) {
+            mediaTrackerAPIEventGenertor.trackEvent(event, emptyParams, emptyMetadata);
+            events.add(mediaTrackerAPIEventGenertor.getEvent());
+        }
+
+        mediaTrackerAPIEventGenertor.trackComplete();
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.trackSessionEnd();
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+
+        List<MediaRuleName> covered = new ArrayList<>();
+
+        for (Event event : events) {
+            Map<String, Object> data = event.getEventData();
+            MediaRuleName rule =
+                    MediaRuleName.eventCodeToRule(
+                            DataReader.optInt(
+                                    data, MediaTestConstants.EventDataKeys.Tracker.EVENT_CODE, 0));
+
+            assertEquals(
+                    rule.getEventName(),
+                    data.get(MediaTestConstants.EventDataKeys.Tracker.EVENT_NAME));
+            covered.add(rule);
+        }
+
+        // every rule except Invalid has a public tracker event
+        for (MediaRuleName rule : MediaRuleName.values()) {
+            assertEquals(rule != MediaRuleName.Invalid, covered.contains(rule));
+        }
+    }
+
+    @Test
+    public void test_mediaRuleName_resolve() {
+        for (MediaRuleName rule : MediaRuleName.values()) {
+            if (rule == MediaRuleName.Invalid) {
+                continue;
+            }
+
+            assertEquals(rule, MediaRuleName.eventCodeToRule(rule.ordinal()));
+            assertEquals(rule, MediaRuleName.eventNameToRule(rule.getEventName()));
+            assertEquals(rule, MediaRuleName.resolve(rule.ordinal(), rule.getEventName()));
+            assertEquals(rule, MediaRuleName.resolve(-1, rule.getEventName()));
+        }
+
+        assertEquals(MediaRuleName.Invalid, MediaRuleName.eventCodeToRule(0));
+        assertEquals(MediaRuleName.Invalid, MediaRuleName.eventCodeToRule(100));
+        assertEquals(MediaRuleName.Invalid, MediaRuleName.eventNameToRule(null));
+        assertEquals(MediaRuleName.Invalid, MediaRuleName.eventNameToRule("incorrectEventName"));
+        assertEquals(
+                MediaRuleName.Invalid,
+                MediaRuleName.resolve(MediaRuleName.Play.ordinal(), "incorrectEventName"));
+        assertEquals(
+                MediaRuleName.Pause,
+                MediaRuleName.resolve(
+                        MediaRuleName.Play.ordinal(),
+                        MediaTestConstants.EventDataKeys.MediaEventName.PAUSE));
+    }
+
     @Test
     public void test_trackEvent_handleAbsentTimeStamp() {
         mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
@@ -1438,7 +1544,7 @@ public class MediaCollectionTrackerTests {
 
         Map<String, Object> context = new HashMap<>();
         context.put(KEY_INFO, state1.toObjectMap());
-        assertTrue(tracker.isInTrackedState.call(null, context));
+        assertTrue(tracker.isInTrackedState(context));
     }
 
     // Preroll tests
@@ -1563,8 +1669,13 @@ public class MediaCollectionTrackerTests {
         queuedRules.add(queuedRule2);
         queuedRules.add(queuedRule3);
 
-        List<PrerollQueuedRule> actualReorderedPrerollRules =
-                tracker.reorderPrerollRules(queuedRules);
+        MediaPrerollBuffer prerollBuffer = new MediaPrerollBuffer();
+        for (PrerollQueuedRule queuedRule : queuedRules) {
+            prerollBuffer.add(queuedRule.ruleName, queuedRule.ruleContext);
+        }
+
+        prerollBuffer.reorder();
+        List<PrerollQueuedRule> actualReorderedPrerollRules = prerollBuffer.toList();
 
         assertEquals(queuedRules, actualReorderedPrerollRules);
     }
@@ -1583,8 +1694,13 @@ public class MediaCollectionTrackerTests {
         queuedRules.add(queuedRule2);
         queuedRules.add(queuedRule3);
 
-        List<PrerollQueuedRule> actualReorderedPrerollRules =
-                tracker.reorderPrerollRules(queuedRules);
+        MediaPrerollBuffer prerollBuffer = new MediaPrerollBuffer();
+        for (PrerollQueuedRule queuedRule : queuedRules) {
+            prerollBuffer.add(queuedRule.ruleName, queuedRule.ruleContext);
+        }
+
+        prerollBuffer.reorder();
+        List<PrerollQueuedRule> actualReorderedPrerollRules = prerollBuffer.toList();
 
         assertEquals(queuedRules, actualReorderedPrerollRules);
     }
@@ -1603,6 +1719,11 @@ public class MediaCollectionTrackerTests {
         queuedRules.add(queuedRule2);
         queuedRules.add(queuedRule3);
 
+        MediaPrerollBuffer prerollBuffer = new MediaPrerollBuffer();
+        for (PrerollQueuedRule queuedRule : queuedRules) {
+            prerollBuffer.add(queuedRule.ruleName, queuedRule.ruleContext);
+        }
+
         PrerollQueuedRule expectedQueuedRule1 =
                 new PrerollQueuedRule(MediaRuleName.AdBreakStart.ordinal(), new HashMap<>());
         PrerollQueuedRule expectedQueuedRule2 =
@@ -1612,8 +1733,8 @@ public class MediaCollectionTrackerTests {
         expectedQueuedRules.add(expectedQueuedRule1);
         expectedQueuedRules.add(expectedQueuedRule2);
 
-        List<PrerollQueuedRule> actualReorderedPrerollRules =
-                tracker.reorderPrerollRules(queuedRules);
+        prerollBuffer.reorder();
+        List<PrerollQueuedRule> actualReorderedPrerollRules = prerollBuffer.toList();
 
         assertEquals(expectedQueuedRules, actualReorderedPrerollRules);
     }
@@ -1896,4 +2017,327 @@ public class MediaCollectionTrackerTests {
 
         assertEquals(2, hitProcessor.sessionCount());
     }
+
+    MediaCollectionTracker createClockNormalizingTracker() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(
+                MediaTestConstants.EventDataKeys.Config.MAX_CLOCK_JUMP,
+                TimeUnit.MINUTES.toMillis(1));
+        return new MediaCollectionTracker(hitProcessor, config);
+    }
+
+    @Test
+    public void test_clockNormalization_forwardJump_doesNotRestartSession() {
+        tracker = createClockNormalizingTracker();
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(System.currentTimeMillis());
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.trackPlay();
+        trackerHandleAPI();
+
+        String session1 = hitProcessor.getActiveSession();
+
+        mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.DAYS.toMillis(1));
+        mediaTrackerAPIEventGenertor.updateCurrentPlayhead(0);
+        trackerHandleAPI();
+
+        assertEquals(1, hitProcessor.sessionCount());
+        assertFalse(hitProcessor.sessionEnded(session1));
+        assertEquals(1, tracker.getClockCorrectionCount());
+    }
+
+    @Test
+    public void test_clockNormalization_backwardJump_keepsHitTimestampsMonotonic() {
+        tracker = createClockNormalizingTracker();
+        long startTS = System.currentTimeMillis();
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(startTS);
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.trackPlay();
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(startTS - TimeUnit.HOURS.toMillis(1));
+        mediaTrackerAPIEventGenertor.trackPause();
+        trackerHandleAPI();
+
+        // sessionStart, play, pause
+        assertEquals(3, hitProcessor.hitCountfromActiveSession());
+        assertEquals(startTS, hitProcessor.getHitFromActiveSession(2).getTimeStamp());
+        assertEquals(1, tracker.getClockCorrectionCount());
+    }
+
+    @Test
+    public void test_clockNormalization_newSession_usesEventTimestamp() {
+        tracker = createClockNormalizingTracker();
+        long startTS = System.currentTimeMillis();
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(startTS);
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        trackerHandleAPI();
+
+        long backTS = startTS - TimeUnit.HOURS.toMillis(1);
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(backTS);
+        mediaTrackerAPIEventGenertor.trackPause();
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.trackSessionEnd();
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(backTS + 1000);
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(backTS + 2000);
+        mediaTrackerAPIEventGenertor.trackPlay();
+        trackerHandleAPI();
+
+        // the offset of the correction in the first session does not carry over
+        assertEquals(2, hitProcessor.sessionCount());
+        assertEquals(backTS + 1000, hitProcessor.getHitFromActiveSession(0).getTimeStamp());
+        assertEquals(backTS + 2000, hitProcessor.getHitFromActiveSession(1).getTimeStamp());
+        assertEquals(1, tracker.getClockCorrectionCount());
+    }
+
+    @Test
+    public void test_clockNormalization_idleResume_usesEventTimestamp() {
+        tracker = createClockNormalizingTracker();
+        long startTS = System.currentTimeMillis();
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(startTS);
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.trackPause();
+        trackerHandleAPI();
+
+        long ts = startTS - TimeUnit.HOURS.toMillis(1);
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(ts);
+        mediaTrackerAPIEventGenertor.updateCurrentPlayhead(0);
+        trackerHandleAPI();
+
+        // paused for more than the idle timeout, in steps the normalizer does not correct
+        for (int i = 0; i <= 30; i++) {
+            ts += TimeUnit.MINUTES.toMillis(1);
+            mediaTrackerAPIEventGenertor.setCurrentTimeStamp(ts);
+            mediaTrackerAPIEventGenertor.updateCurrentPlayhead(0);
+            trackerHandleAPI();
+        }
+
+        ts += 1000;
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(ts);
+        mediaTrackerAPIEventGenertor.trackPlay();
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(ts + 1000);
+        mediaTrackerAPIEventGenertor.trackPause();
+        trackerHandleAPI();
+
+        assertEquals(2, hitProcessor.sessionCount());
+        assertEquals(ts, hitProcessor.getHitFromActiveSession(0).getTimeStamp());
+        int last = hitProcessor.hitCountfromActiveSession() - 1;
+        assertEquals(ts + 1000, hitProcessor.getHitFromActiveSession(last).getTimeStamp());
+        assertEquals(1, tracker.getClockCorrectionCount());
+    }
+
+    @Test
+    public void test_clockNormalization_disabledByDefault() {
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(System.currentTimeMillis());
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(-TimeUnit.HOURS.toMillis(1));
+        mediaTrackerAPIEventGenertor.trackPlay();
+        trackerHandleAPI();
+
+        assertEquals(0, tracker.getClockCorrectionCount());
+    }
+
+    @Test
+    public void test_hibernation_idleSessionReleasesContext() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MediaTestConstants.EventDataKeys.Config.HIBERNATE_IDLE, true);
+        tracker = new MediaCollectionTracker(hitProcessor, config);
+
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(System.currentTimeMillis());
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        trackerHandleAPI();
+
+        mediaTrackerAPIEventGenertor.trackPause();
+        trackerHandleAPI();
+        assertFalse(tracker.isHibernated());
+
+        String session1 = hitProcessor.getActiveSession();
+
+        mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.MINUTES.toMillis(30));
+        mediaTrackerAPIEventGenertor.updateCurrentPlayhead(10);
+        trackerHandleAPI();
+
+        assertTrue(tracker.isHibernated());
+        assertTrue(hitProcessor.sessionEnded(session1));
+
+        // playhead updates keep the session hibernated
+        for (int i = 1; i <= 5; i++) {
+            mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.MINUTES.toMillis(10));
+            mediaTrackerAPIEventGenertor.updateCurrentPlayhead(10 + i);
+            trackerHandleAPI();
+        }
+
+        assertTrue(tracker.isHibernated());
+        assertEquals(1, hitProcessor.sessionCount());
+
+        mediaTrackerAPIEventGenertor.trackPlay();
+        trackerHandleAPI();
+
+        assertFalse(tracker.isHibernated());
+        assertEquals(2, hitProcessor.sessionCount());
+        assertEquals(15, hitProcessor.getHitFromActiveSession(0).getPlayhead(), 0.0);
+    }
+
+    @Test
+    public void test_hibernation_onceUntilTrackerLeavesIdle() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MediaTestConstants.EventDataKeys.Config.HIBERNATE_IDLE, true);
+        tracker = new MediaCollectionTracker(hitProcessor, config);
+
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(System.currentTimeMillis());
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        trackerHandleAPI();
+        mediaTrackerAPIEventGenertor.trackPause();
+        trackerHandleAPI();
+        mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.MINUTES.toMillis(30));
+        mediaTrackerAPIEventGenertor.updateCurrentPlayhead(10);
+        trackerHandleAPI();
+        assertTrue(tracker.isHibernated());
+
+        // an event of the idle session restores it, and it stays restored while idle
+        mediaTrackerAPIEventGenertor.trackPause();
+        trackerHandleAPI();
+        assertFalse(tracker.isHibernated());
+
+        for (int i = 1; i <= 3; i++) {
+            mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.MINUTES.toMillis(10));
+            mediaTrackerAPIEventGenertor.updateCurrentPlayhead(10 + i);
+            trackerHandleAPI();
+            mediaTrackerAPIEventGenertor.trackPause();
+            trackerHandleAPI();
+        }
+        assertFalse(tracker.isHibernated());
+
+        // once the session is resumed, the next idle period hibernates again
+        mediaTrackerAPIEventGenertor.trackPlay();
+        trackerHandleAPI();
+        assertEquals(2, hitProcessor.sessionCount());
+        mediaTrackerAPIEventGenertor.trackPause();
+        trackerHandleAPI();
+        mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.MINUTES.toMillis(30));
+        mediaTrackerAPIEventGenertor.updateCurrentPlayhead(20);
+        trackerHandleAPI();
+        assertTrue(tracker.isHibernated());
+    }
+
+    @Test
+    public void test_hibernation_sendsSameHits() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MediaTestConstants.EventDataKeys.Config.HIBERNATE_IDLE, true);
+        FakeMediaHitProcessor hibernatingHitProcessor = new FakeMediaHitProcessor();
+        MediaCollectionTracker hibernatingTracker =
+                new MediaCollectionTracker(hibernatingHitProcessor, config);
+        List<Event> events = new ArrayList<>();
+
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(System.currentTimeMillis());
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.trackPlay();
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.SECONDS.toMillis(5));
+        mediaTrackerAPIEventGenertor.trackPause();
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.MINUTES.toMillis(31));
+        mediaTrackerAPIEventGenertor.updateCurrentPlayhead(5);
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.HOURS.toMillis(2));
+        mediaTrackerAPIEventGenertor.updateCurrentPlayhead(6);
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.trackPlay();
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.incrementCurrentTimeStamp(TimeUnit.SECONDS.toMillis(20));
+        mediaTrackerAPIEventGenertor.updateCurrentPlayhead(26);
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+        mediaTrackerAPIEventGenertor.trackComplete();
+        events.add(mediaTrackerAPIEventGenertor.getEvent());
+
+        for (Event event : events) {
+            trackerHandleAPI(event);
+            hibernatingTracker.track(event);
+        }
+
+        assertEquals(2, hitProcessor.sessionCount());
+        assertEquals(hitProcessor.sessionCount(), hibernatingHitProcessor.sessionCount());
+
+        for (String sessionID : new String[] {"0", "1"}) {
+            assertEquals(
+                    hitProcessor.hitCount(sessionID), hibernatingHitProcessor.hitCount(sessionID));
+
+            for (int i = 0; i < hitProcessor.hitCount(sessionID); i++) {
+                assertEquals(
+                        hitProcessor.getHit(sessionID, i),
+                        hibernatingHitProcessor.getHit(sessionID, i));
+            }
+        }
+    }
+
+    @Test
+    public void test_sharedQoESource_readByAllSubscribedTrackers() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MediaTestConstants.EventDataKeys.Config.QOE_SOURCE, "multiview");
+        FakeMediaHitProcessor[] hitProcessors = {
+            new FakeMediaHitProcessor(), new FakeMediaHitProcessor()
+        };
+        MediaCollectionTracker[] trackers = {
+            new MediaCollectionTracker(hitProcessors[0], config),
+            new MediaCollectionTracker(hitProcessors[1], config)
+        };
+
+        mediaTrackerAPIEventGenertor.setCurrentTimeStamp(System.currentTimeMillis());
+        mediaTrackerAPIEventGenertor.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        Event sessionStart = mediaTrackerAPIEventGenertor.getEvent();
+        mediaTrackerAPIEventGenertor.trackPlay();
+        Event play = mediaTrackerAPIEventGenertor.getEvent();
+
+        for (MediaCollectionTracker sharedTracker : trackers) {
+            sharedTracker.track(sessionStart);
+        }
+
+        MediaQoESource.publish("multiview", 1000000, 2, 30, 1.5);
+
+        for (MediaCollectionTracker sharedTracker : trackers) {
+            sharedTracker.track(play);
+        }
+
+        for (FakeMediaHitProcessor processor : hitProcessors) {
+            // sessionStart, play
+            assertEquals(2, processor.hitCountfromActiveSession());
+            assertTrue(processor.getHitFromActiveSession(0).getQoEData().isEmpty());
+            assertEquals(
+                    1000000L,
+                    processor
+                            .getHitFromActiveSession(1)
+                            .getQoEData()
+                            .get(MediaCollectionTestConstants.QoE.BITRATE.key));
+        }
+    }
+
+    @Test
+    public void test_ruleEngine_sharedAndSealed() {
+        MediaRuleEngine<MediaCollectionTracker> ruleEngine = MediaCollectionTracker.getRuleEngine();
+        assertSame(ruleEngine, MediaCollectionTracker.getRuleEngine());
+        assertTrue(ruleEngine.isSealed());
+
+        try {
+            ruleEngine.addRule(new MediaRule<>(0, "test"));
+            fail("sealed rule engine accepted a rule");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
 }
@@ -353,4 +353,39 @@ public class MediaContextTests {
         ArrayList<StateInfo> active_states = mediaContext.getActiveTrackedStates();
         assertEquals(2, active_states.size());
     }
+
+    @Test
+    public void test_stateInfo_trackedStatesKeepFirstSeenOrder() {
+        StateInfo stateInfo = StateInfo.create("myCustomState");
+        StateInfo stateInfo1 = StateInfo.create("myCustomState1");
+        StateInfo stateInfo2 = StateInfo.create("myCustomState2");
+
+        assertTrue(mediaContext.startState(stateInfo2));
+        assertTrue(mediaContext.startState(stateInfo));
+        assertTrue(mediaContext.startState(stateInfo1));
+        assertTrue(mediaContext.endState(stateInfo));
+
+        assertEquals(3, mediaContext.getTrackedStateCount());
+        assertEquals(stateInfo2, mediaContext.getTrackedState(0));
+        assertEquals(stateInfo, mediaContext.getTrackedState(1));
+        assertEquals(stateInfo1, mediaContext.getTrackedState(2));
+
+        assertTrue(mediaContext.isTrackedStateActive(0));
+        assertFalse(mediaContext.isTrackedStateActive(1));
+        assertTrue(mediaContext.isTrackedStateActive(2));
+
+        ArrayList<StateInfo> activeStates = mediaContext.getActiveTrackedStates();
+        assertEquals(2, activeStates.size());
+        assertEquals(stateInfo2, activeStates.get(0));
+        assertEquals(stateInfo1, activeStates.get(1));
+
+        // Restarting a state reuses its slot
+        assertTrue(mediaContext.startState(stateInfo));
+        assertEquals(3, mediaContext.getTrackedStateCount());
+        assertTrue(mediaContext.isTrackedStateActive(1));
+
+        mediaContext.clearState();
+        assertEquals(0, mediaContext.getTrackedStateCount());
+        assertFalse(mediaContext.hasTrackedState(stateInfo));
+    }
 }
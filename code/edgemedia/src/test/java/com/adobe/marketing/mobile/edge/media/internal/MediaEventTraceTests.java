@@ -0,0 +1,58 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class MediaEventTraceTests {
+    @Test
+    public void test_writeValue_readValue_roundTrip() throws IOException {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("double", 1.5);
+        nested.put("string", "value");
+
+        List<Object> list = new ArrayList<>();
+        list.add(1);
+        list.add("two");
+        list.add(null);
+
+        Map<String, Object> value = new HashMap<>();
+        value.put("boolean", true);
+        value.put("int", 7);
+        value.put("long", 1700000000000L);
+        value.put("null", null);
+        value.put("nested", nested);
+        value.put("list", list);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MediaEventTrace.writeValue(new DataOutputStream(bytes), value);
+
+        Object read =
+                MediaEventTrace.readValue(
+                        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(value, read);
+        assertTrue(((Map<?, ?>) read).get("long") instanceof Long);
+        assertTrue(((Map<?, ?>) read).get("int") instanceof Integer);
+    }
+}
@@ -11,6 +11,9 @@
 
 package com.adobe.marketing.mobile.edge.media.internal;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -24,7 +27,9 @@ import com.adobe.marketing.mobile.EventSource;
 import com.adobe.marketing.mobile.EventType;
 import com.adobe.marketing.mobile.ExtensionApi;
 import com.adobe.marketing.mobile.ExtensionEventListener;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -103,6 +108,48 @@ public class MediaExtensionTests {
         verify(tracker, times(1)).track(event);
     }
 
+    @Test
+    public void testMediaTrackNotifiesEventObserver() {
+        List<Event> observed = new ArrayList<>();
+        MediaExtension.setEventObserver(
+                new MediaEventObserver() {
+                    @Override
+                    public void onTrackerRequest(final Event event) {
+                        fail("Unexpected tracker request");
+                    }
+
+                    @Override
+                    public void onTrackEvent(final Event event) {
+                        observed.add(event);
+                    }
+                });
+
+        Event event =
+                new Event.Builder(
+                                "",
+                                EventType.MEDIA,
+                                MediaTestConstants.Media.EVENT_SOURCE_TRACK_MEDIA)
+                        .setEventData(
+                                new HashMap<String, Object>() {
+                                    {
+                                        put(MediaTestConstants.EventDataKeys.Tracker.ID, "key");
+                                    }
+                                })
+                        .build();
+
+        ExtensionEventListener trackListener =
+                getListener(EventType.MEDIA, MediaTestConstants.Media.EVENT_SOURCE_TRACK_MEDIA);
+        try {
+            trackListener.hear(event);
+        } finally {
+            MediaExtension.setEventObserver(null);
+        }
+        trackListener.hear(event);
+
+        assertEquals(1, observed.size());
+        assertSame(event, observed.get(0));
+    }
+
     @Test
     public void testMediaTrackWithTrackerAbsent() {
         Event event =
@@ -141,4 +188,38 @@ public class MediaExtensionTests {
 
         assertTrue(mediaExtension.trackers.isEmpty());
     }
+
+    @Test
+    public void testMetricsRequestEnablesMetricsAndDispatchesResponse() {
+        Map<String, Object> data = new HashMap<>();
+        data.put(MediaTestConstants.EventDataKeys.Metrics.ENABLED, true);
+
+        Event event =
+                new Event.Builder(
+                                "",
+                                EventType.MEDIA,
+                                MediaTestConstants.Media.EVENT_SOURCE_METRICS_REQUEST)
+                        .setEventData(data)
+                        .build();
+
+        ExtensionEventListener metricsListener =
+                getListener(EventType.MEDIA, MediaTestConstants.Media.EVENT_SOURCE_METRICS_REQUEST);
+        metricsListener.hear(event);
+
+        assertTrue(MediaMetrics.getInstance().isEnabled());
+        verify(mockExtensionAPI, times(1)).dispatch(any(Event.class));
+
+        data.put(MediaTestConstants.EventDataKeys.Metrics.ENABLED, false);
+        data.put(MediaTestConstants.EventDataKeys.Metrics.RESET, true);
+        metricsListener.hear(
+                new Event.Builder(
+                                "",
+                                EventType.MEDIA,
+                                MediaTestConstants.Media.EVENT_SOURCE_METRICS_REQUEST)
+                        .setEventData(data)
+                        .build());
+
+        assertFalse(MediaMetrics.getInstance().isEnabled());
+        verify(mockExtensionAPI, times(2)).dispatch(any(Event.class));
+    }
 }
@@ -0,0 +1,153 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class MediaHitSerializerTests {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    MediaHitSerializer serializer;
+
+    public MediaHitSerializerTests() {
+        serializer = new MediaHitSerializer();
+    }
+
+    static MediaHit createHit(
+            final String eventType,
+            final Map<String, Object> params,
+            final Map<String, String> metadata,
+            final Map<String, Object> qoeData) {
+        return new MediaHit(eventType, params, metadata, qoeData, 12.5, 1234567890123L);
+    }
+
+    @Test
+    public void test_write_minimalHit() {
+        serializer.write(null, createHit(MediaCollectionTestConstants.EventType.PLAY, null, null, null));
+
+        assertEquals(
+                "{\"xdm\":{\"eventType\":\"media.play\",\"mediaCollection\":{"
+                        + "\"eventType\":\"play\","
+                        + "\"playerTime\":{\"playhead\":12.5,\"ts\":1234567890123}}}}",
+                serializer.toString());
+    }
+
+    @Test
+    public void test_write_fullHit() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(MediaCollectionTestConstants.Media.ID.key, "id");
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("key", "value");
+        Map<String, Object> qoeData = new HashMap<>();
+        qoeData.put(MediaCollectionTestConstants.QoE.BITRATE.key, 1000000.0);
+
+        serializer.write(
+                "session1",
+                createHit(MediaCollectionTestConstants.EventType.PING, params, metadata, qoeData));
+
+        assertEquals(
+                "{\"xdm\":{\"eventType\":\"media.ping\",\"mediaCollection\":{"
+                        + "\"sessionID\":\"session1\",\"eventType\":\"ping\","
+                        + "\"playerTime\":{\"playhead\":12.5,\"ts\":1234567890123},"
+                        + "\"params\":{\"media.id\":\"id\"},"
+                        + "\"customMetadata\":{\"key\":\"value\"},"
+                        + "\"qoeData\":{\"media.qoe.bitrate\":1000000}}}}",
+                serializer.toString());
+    }
+
+    @Test
+    public void test_writeValue_literals() {
+        serializer.writeValue(true);
+        serializer.writeValue(false);
+        serializer.writeValue(null);
+        serializer.writeValue(-42);
+        serializer.writeValue(Long.MIN_VALUE);
+        serializer.writeValue(0.25);
+        serializer.writeValue(-3.0);
+        serializer.writeValue(Double.NaN);
+        serializer.writeValue(Double.POSITIVE_INFINITY);
+
+        assertEquals(
+                "truefalsenull-42" + Long.MIN_VALUE + "0.25-3nullnull", serializer.toString());
+    }
+
+    @Test
+    public void test_writeValue_nestedMapsAndLists() {
+        List<Object> ids = new ArrayList<>();
+        Map<String, Object> id = new HashMap<>();
+        id.put("id", "abc");
+        ids.add(id);
+        ids.add(2);
+
+        serializer.writeValue(ids);
+
+        assertEquals("[{\"id\":\"abc\"},2]", serializer.toString());
+    }
+
+    @Test
+    public void test_writeValue_escapesAndEncodesStrings() {
+        String value = "quote\" slash\\ tab\t nl\n ctl\u0001 \u00e9 \u20ac \ud83c\udfac";
+        serializer.writeValue(value);
+
+        String expected =
+                "\"quote\\\" slash\\\\ tab\\u0009 nl\\u000a ctl\\u0001"
+                        + " \u00e9 \u20ac \ud83c\udfac\"";
+        assertEquals(expected, serializer.toString());
+        assertArrayEquals(expected.getBytes(UTF_8), serializer.toByteArray());
+    }
+
+    @Test
+    public void test_buffer_growsAndIsReused() throws IOException {
+        MediaHitSerializer small = new MediaHitSerializer(1);
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("long", MediaSessionMemoryTests.repeat('x', 5000));
+        MediaHit hit = createHit(MediaCollectionTestConstants.EventType.PLAY, null, metadata, null);
+
+        small.write("session1", hit);
+        int size = small.size();
+        assertTrue(size > 5000);
+
+        small.write("session1", hit);
+        assertEquals(size, small.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        small.writeTo(out);
+        assertEquals(small.toString(), new String(out.toByteArray(), UTF_8));
+
+        small.reset();
+        assertEquals(0, small.size());
+    }
+
+    @Test
+    public void test_write_withEventID() {
+        serializer.write(
+                "session1",
+                createHit(MediaCollectionTestConstants.EventType.PLAY, null, null, null),
+                "local1-2");
+
+        assertEquals(
+                "{\"xdm\":{\"eventType\":\"media.play\",\"mediaCollection\":{"
+                        + "\"sessionID\":\"session1\",\"eventType\":\"play\","
+                        + "\"playerTime\":{\"playhead\":12.5,\"ts\":1234567890123}},"
+                        + "\"_id\":\"local1-2\"}}",
+                serializer.toString());
+    }
+}
@@ -182,4 +182,25 @@ public class MediaHitTests {
 
         assertEquals(mediaHit, mediaHit2);
     }
+
+    @Test
+    public void test_getIdempotencyKey() {
+        mediaHit = new MediaHit("hit", params, metadata, qoe, playhead, ts, 35);
+
+        assertEquals(35, mediaHit.getSequence());
+        assertEquals("session1-z", mediaHit.getIdempotencyKey("session1"));
+        assertNotEquals(
+                mediaHit.getIdempotencyKey("session1"), mediaHit.getIdempotencyKey("session2"));
+        assertNull(mediaHit.getIdempotencyKey(null));
+        // the sequence number does not take part in equality
+        assertEquals(new MediaHit("hit", params, metadata, qoe, playhead, ts), mediaHit);
+    }
+
+    @Test
+    public void test_getIdempotencyKey_withoutSequence() {
+        mediaHit = new MediaHit("hit", params, metadata, qoe, playhead, ts);
+
+        assertEquals(MediaHit.NO_SEQUENCE, mediaHit.getSequence());
+        assertNull(mediaHit.getIdempotencyKey("session1"));
+    }
 }
@@ -0,0 +1,254 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+
+public class MediaMetricsTests {
+    MediaMetrics metrics;
+
+    public MediaMetricsTests() {
+        metrics = new MediaMetrics();
+        metrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        MediaMetrics.getInstance().setEnabled(false);
+        MediaMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void test_stripedCounter_sumsAcrossThreads() throws InterruptedException {
+        StripedCounter counter = new StripedCounter();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            Thread thread =
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < 10000; i++) {
+                                    counter.increment();
+                                }
+                            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80000, counter.sum());
+
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    @Test
+    public void test_histogram_bucketsBoundRelativeError() {
+        long[] values = {0, 1, 3, 4, 7, 100, 999, 123456, 987654321L};
+
+        for (long value : values) {
+            int bucket = MediaLatencyHistogram.bucketOf(value);
+            long upperBound = MediaLatencyHistogram.upperBoundOf(bucket);
+
+            assertTrue(upperBound >= value);
+            assertTrue(upperBound - value <= value / MediaLatencyHistogram.SUB_BUCKETS);
+        }
+
+        assertEquals(
+                MediaLatencyHistogram.BUCKET_COUNT - 1,
+                MediaLatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(0, MediaLatencyHistogram.bucketOf(-5));
+    }
+
+    @Test
+    public void test_histogram_percentiles() {
+        MediaLatencyHistogram histogram = new MediaLatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050000, histogram.getTotal());
+
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+        long max = histogram.getValueAtPercentile(100);
+
+        assertTrue(p50 >= 50000 && p50 <= 50000 * 5 / 4);
+        assertTrue(p99 >= 99000 && p99 <= 99000 * 5 / 4);
+        assertTrue(max >= 100000 && max <= 100000 * 5 / 4);
+        assertTrue(p50 <= p99 && p99 <= max);
+    }
+
+    @Test
+    public void test_recordRule_disabled_recordsNothing() {
+        metrics.setEnabled(false);
+        metrics.recordRule(1, true, 100);
+        metrics.recordHit(MediaCollectionTestConstants.EventType.PING);
+
+        assertEquals(0, metrics.getRuleCallCount(1));
+        assertEquals(0, metrics.getRulePredicateFailureCount(1));
+        assertEquals(0, metrics.getRuleLatency(1).getCount());
+        assertEquals(0, metrics.getHitCount(MediaCollectionTestConstants.EventType.PING));
+    }
+
+    @Test
+    public void test_recordRule_outOfRange_isIgnored() {
+        metrics.recordRule(-1, false, 100);
+        metrics.recordRule(MediaMetrics.MAX_RULES, false, 100);
+
+        Map<String, Object> rules =
+                (Map<String, Object>)
+                        metrics.toEventData().get(MediaTestConstants.EventDataKeys.Metrics.RULES);
+        assertTrue(rules.isEmpty());
+    }
+
+    @Test
+    public void test_ruleEngine_feedsMetrics() {
+        MediaRuleEngine ruleEngine = new MediaRuleEngine(metrics);
+        MediaRule rule = new MediaRule(3, "rule");
+        rule.addPredicate((r, context) -> context.containsKey("valid"), true, "invalid");
+        ruleEngine.addRule(rule);
+
+        Map<String, Object> valid = new HashMap<>();
+        valid.put("valid", true);
+
+        assertTrue(ruleEngine.processRule(3, valid).isValid);
+        assertTrue(ruleEngine.processRule(3, valid).isValid);
+        assertFalse(ruleEngine.processRule(3, new HashMap<>()).isValid);
+
+        assertEquals(3, metrics.getRuleCallCount(3));
+        assertEquals(1, metrics.getRulePredicateFailureCount(3));
+        assertEquals(3, metrics.getRuleLatency(3).getCount());
+
+        metrics.setEnabled(false);
+        ruleEngine.processRule(3, valid);
+        assertEquals(3, metrics.getRuleCallCount(3));
+    }
+
+    @Test
+    public void test_ruleEngine_nestedRuleLatencyIsExclusive() {
+        MediaRuleEngine ruleEngine = new MediaRuleEngine(metrics);
+        MediaRule inner = new MediaRule(2, "inner");
+        inner.addAction(
+                (r, context) -> {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return true;
+                });
+        MediaRule outer = new MediaRule(1, "outer");
+        outer.addAction((r, context) -> ruleEngine.processRule(2, context).isValid);
+        ruleEngine.addRule(inner);
+        ruleEngine.addRule(outer);
+
+        assertTrue(ruleEngine.processRule(1, new HashMap<>()).isValid);
+
+        // the outer rule does not count the time of the inner rule again
+        assertEquals(1, metrics.getRuleLatency(2).getCount());
+        assertTrue(metrics.getRuleLatency(1).getTotal() < metrics.getRuleLatency(2).getTotal());
+    }
+
+    @Test
+    public void test_hitGenerator_feedsSharedMetrics() {
+        MediaMetrics shared = MediaMetrics.getInstance();
+        shared.reset();
+        shared.setEnabled(true);
+
+        MediaInfo mediaInfo = MediaInfo.create("id", "name", "vod", MediaType.Video, 60);
+        MediaContext mediaContext = new MediaContext(mediaInfo, new HashMap<>());
+        MediaCollectionHitGenerator hitGenerator =
+                new MediaCollectionHitGenerator(
+                        mediaContext, new FakeMediaHitProcessor(), new HashMap<>(), 0, "id");
+
+        hitGenerator.processMediaStart();
+        mediaContext.enterState(MediaPlayBackState.Play);
+        hitGenerator.processPlayback(false);
+
+        for (int ts = 10000; ts <= 30000; ts += 10000) {
+            hitGenerator.setRefTS(ts);
+            hitGenerator.processPlayback(false);
+        }
+
+        assertEquals(1, shared.getHitCount(MediaCollectionTestConstants.EventType.SESSION_START));
+        assertEquals(1, shared.getHitCount(MediaCollectionTestConstants.EventType.PLAY));
+        assertEquals(3, shared.getHitCount(MediaCollectionTestConstants.EventType.PING));
+    }
+
+    @Test
+    public void test_toEventData() {
+        metrics.recordRule(MediaRuleName.Play.ordinal(), false, 2000);
+        metrics.recordRule(MediaRuleName.Play.ordinal(), true, 4000);
+        metrics.recordHit(MediaCollectionTestConstants.EventType.PLAY);
+        metrics.recordHit("unknownType");
+
+        Map<String, Object> data = metrics.toEventData();
+        assertEquals(true, data.get(MediaTestConstants.EventDataKeys.Metrics.ENABLED));
+
+        Map<String, Object> rules =
+                (Map<String, Object>) data.get(MediaTestConstants.EventDataKeys.Metrics.RULES);
+        Map<String, Object> play = (Map<String, Object>) rules.get("Play");
+        assertEquals(1, rules.size());
+        assertEquals(2L, play.get(MediaTestConstants.EventDataKeys.Metrics.CALLS));
+        assertEquals(1L, play.get(MediaTestConstants.EventDataKeys.Metrics.PREDICATE_FAILURES));
+
+        Map<String, Object> latency =
+                (Map<String, Object>) play.get(MediaTestConstants.EventDataKeys.Metrics.LATENCY);
+        assertEquals(2L, latency.get(MediaTestConstants.EventDataKeys.Metrics.COUNT));
+        assertEquals(3000L, latency.get(MediaTestConstants.EventDataKeys.Metrics.MEAN));
+
+        Map<String, Object> hits =
+                (Map<String, Object>) data.get(MediaTestConstants.EventDataKeys.Metrics.HITS);
+        assertEquals(1L, hits.get(MediaCollectionTestConstants.EventType.PLAY));
+        assertEquals(1L, hits.get("other"));
+    }
+
+    @Test
+    public void test_recording_doesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // warm up so class loading and compilation are not measured
+        for (int i = 0; i < 20000; i++) {
+            metrics.recordRule(i % MediaMetrics.MAX_RULES, i % 2 == 0, i);
+            metrics.recordHit(MediaCollectionTestConstants.EventType.PING);
+        }
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < 20000; i++) {
+            metrics.recordRule(i % MediaMetrics.MAX_RULES, i % 2 == 0, i);
+            metrics.recordHit(MediaCollectionTestConstants.EventType.PING);
+        }
+
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // a single allocation per call would be well above this
+        assertTrue("allocated " + allocated + " bytes", allocated < 20000);
+    }
+}
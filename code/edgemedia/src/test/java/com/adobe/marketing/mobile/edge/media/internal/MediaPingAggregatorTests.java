@@ -0,0 +1,230 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class MediaPingAggregatorTests {
+    Map<String, Object> emptyParams;
+    Map<String, String> emptyMetadata;
+    FakeMediaHitProcessor hitProcessor;
+    MediaPingAggregator aggregator;
+    String sessionId;
+
+    public MediaPingAggregatorTests() {
+        emptyParams = new HashMap<>();
+        emptyMetadata = new HashMap<>();
+        hitProcessor = new FakeMediaHitProcessor();
+        aggregator = new MediaPingAggregator(hitProcessor, 60000);
+        sessionId = aggregator.startSession();
+    }
+
+    MediaHit createHit(final String eventType, final double playhead, final long ts) {
+        return new MediaHit(eventType, emptyParams, emptyMetadata, emptyParams, playhead, ts);
+    }
+
+    MediaHit createAggregatedPing(
+            final int count, final long duration, final double playhead, final long ts) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(MediaCollectionTestConstants.Ping.COUNT.key, count);
+        params.put(MediaCollectionTestConstants.Ping.DURATION.key, duration);
+
+        return new MediaHit(
+                MediaCollectionTestConstants.EventType.PING,
+                params,
+                emptyMetadata,
+                emptyParams,
+                playhead,
+                ts);
+    }
+
+    @Test
+    public void test_nonPingHitsAreForwarded() {
+        MediaHit play = createHit(MediaCollectionTestConstants.EventType.PLAY, 0, 0);
+        aggregator.processHit(sessionId, play);
+
+        assertEquals(1, hitProcessor.hitCountfromActiveSession());
+        assertEquals(play, hitProcessor.getHitFromActiveSession(0));
+    }
+
+    @Test
+    public void test_consecutivePingsAreFoldedUntilStateChange() {
+        aggregator.processHit(
+                sessionId, createHit(MediaCollectionTestConstants.EventType.PLAY, 0, 0));
+
+        for (int i = 1; i <= 5; i++) {
+            aggregator.processHit(
+                    sessionId,
+                    createHit(MediaCollectionTestConstants.EventType.PING, i * 10, i * 10000));
+        }
+
+        assertEquals(1, hitProcessor.hitCountfromActiveSession());
+
+        MediaHit pause = createHit(MediaCollectionTestConstants.EventType.PAUSE_START, 55, 55000);
+        aggregator.processHit(sessionId, pause);
+
+        assertEquals(3, hitProcessor.hitCountfromActiveSession());
+        assertEquals(
+                createAggregatedPing(5, 50000, 50, 50000), hitProcessor.getHitFromActiveSession(1));
+        assertEquals(pause, hitProcessor.getHitFromActiveSession(2));
+    }
+
+    @Test
+    public void test_aggregatedPing_expandsToFoldedPings() {
+        aggregator.processHit(
+                sessionId, createHit(MediaCollectionTestConstants.EventType.PLAY, 0, 5000));
+
+        for (int i = 1; i <= 4; i++) {
+            aggregator.processHit(
+                    sessionId,
+                    createHit(
+                            MediaCollectionTestConstants.EventType.PING, i * 10, 5000 + i * 10000));
+        }
+        aggregator.flush(sessionId);
+
+        // the backend expansion gives back the timestamps of the folded pings
+        MediaHit aggregated = hitProcessor.getHitFromActiveSession(1);
+        int count = (int) aggregated.getParams().get(MediaCollectionTestConstants.Ping.COUNT.key);
+        long duration =
+                (long) aggregated.getParams().get(MediaCollectionTestConstants.Ping.DURATION.key);
+
+        assertEquals(4, count);
+        for (int k = 1; k <= count; k++) {
+            assertEquals(
+                    5000 + k * 10000,
+                    aggregated.getTimeStamp() - duration + k * duration / count);
+        }
+    }
+
+    @Test
+    public void test_runAfterFlush_spansFromFlushedPing() {
+        for (int i = 1; i <= 8; i++) {
+            aggregator.processHit(
+                    sessionId,
+                    createHit(MediaCollectionTestConstants.EventType.PING, i * 10, i * 10000));
+        }
+        aggregator.processHit(
+                sessionId, createHit(MediaCollectionTestConstants.EventType.PING, 90, 90000));
+        aggregator.flush(sessionId);
+
+        assertEquals(
+                createAggregatedPing(2, 20000, 90, 90000), hitProcessor.getHitFromActiveSession(1));
+    }
+
+    @Test
+    public void test_singlePingIsForwardedUnchanged() {
+        MediaHit ping = createHit(MediaCollectionTestConstants.EventType.PING, 10, 10000);
+        aggregator.processHit(sessionId, ping);
+        aggregator.processHit(
+                sessionId,
+                createHit(MediaCollectionTestConstants.EventType.PAUSE_START, 15, 15000));
+
+        assertEquals(2, hitProcessor.hitCountfromActiveSession());
+        assertEquals(ping, hitProcessor.getHitFromActiveSession(0));
+    }
+
+    @Test
+    public void test_qoeChangeFlushesPendingPings() {
+        aggregator.processHit(
+                sessionId, createHit(MediaCollectionTestConstants.EventType.PING, 10, 10000));
+        aggregator.processHit(
+                sessionId, createHit(MediaCollectionTestConstants.EventType.PING, 20, 20000));
+
+        Map<String, Object> qoeData = new HashMap<>();
+        qoeData.put(MediaCollectionTestConstants.QoE.BITRATE.key, 100L);
+        MediaHit qoePing =
+                new MediaHit(
+                        MediaCollectionTestConstants.EventType.PING,
+                        emptyParams,
+                        emptyMetadata,
+                        qoeData,
+                        30,
+                        30000);
+        aggregator.processHit(sessionId, qoePing);
+
+        assertEquals(2, hitProcessor.hitCountfromActiveSession());
+        assertEquals(
+                createAggregatedPing(2, 10000, 20, 20000), hitProcessor.getHitFromActiveSession(0));
+        assertEquals(qoePing, hitProcessor.getHitFromActiveSession(1));
+    }
+
+    @Test
+    public void test_endSessionFlushesPendingPings() {
+        aggregator.processHit(
+                sessionId, createHit(MediaCollectionTestConstants.EventType.PING, 10, 10000));
+        aggregator.processHit(
+                sessionId, createHit(MediaCollectionTestConstants.EventType.PING, 20, 20000));
+        aggregator.endSession(sessionId);
+
+        assertEquals(1, hitProcessor.hitCountfromActiveSession());
+        assertEquals(
+                createAggregatedPing(2, 10000, 20, 20000), hitProcessor.getHitFromActiveSession(0));
+        assertTrue(hitProcessor.sessionEnded(sessionId));
+    }
+
+    @Test
+    public void test_runIsFlushedAfterMaxAggregationTime() {
+        for (int i = 1; i <= 8; i++) {
+            aggregator.processHit(
+                    sessionId,
+                    createHit(MediaCollectionTestConstants.EventType.PING, i * 10, i * 10000));
+        }
+
+        // Pings 1-7 span 60 secs and are flushed, ping 8 is pending
+        assertEquals(1, hitProcessor.hitCountfromActiveSession());
+        assertEquals(
+                createAggregatedPing(7, 60000, 70, 70000), hitProcessor.getHitFromActiveSession(0));
+
+        aggregator.flush(sessionId);
+        assertEquals(2, hitProcessor.hitCountfromActiveSession());
+        assertEquals(
+                createHit(MediaCollectionTestConstants.EventType.PING, 80, 80000),
+                hitProcessor.getHitFromActiveSession(1));
+    }
+
+    @Test
+    public void test_tracker_aggregatesPingsWhenEnabled() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MediaTestConstants.EventDataKeys.Config.AGGREGATE_PINGS, true);
+
+        FakeMediaHitProcessor trackerHitProcessor = new FakeMediaHitProcessor();
+        MediaCollectionTracker tracker = new MediaCollectionTracker(trackerHitProcessor, config);
+        assertTrue(tracker.getHitProcessor() instanceof MediaPingAggregator);
+
+        config.put(MediaTestConstants.EventDataKeys.Config.AGGREGATE_PINGS, false);
+        tracker = new MediaCollectionTracker(trackerHitProcessor, config);
+        assertSame(trackerHitProcessor, tracker.getHitProcessor());
+    }
+
+    @Test
+    public void test_aggregatedPingKeepsLastSequence() {
+        for (int i = 0; i < 3; i++) {
+            aggregator.processHit(
+                    sessionId,
+                    new MediaHit(
+                            MediaCollectionTestConstants.EventType.PING,
+                            null,
+                            null,
+                            null,
+                            i * 10,
+                            i * 10000,
+                            i + 4));
+        }
+        aggregator.flush(sessionId);
+
+        assertEquals(6, hitProcessor.getHitFromActiveSession(0).getSequence());
+    }
+}
@@ -0,0 +1,268 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class MediaPingPolicyTests {
+    static final long TICK = 1000;
+
+    Map<String, Object> config;
+    MediaContext mediaContext;
+    FakeMediaHitProcessor hitProcessor;
+    MediaPlaybackConditions conditions;
+    MediaCollectionHitGenerator hitGenerator;
+    SimulatedClock clock;
+
+    public MediaPingPolicyTests() {
+        MediaInfo mediaInfo =
+                MediaInfo.create("id", "name", "vod", MediaType.Video, 60.0, false, 0, true);
+
+        config = new HashMap<>();
+        config.put(MediaTestConstants.EventDataKeys.Config.DOWNLOADED_CONTENT, false);
+
+        mediaContext = new MediaContext(mediaInfo, new HashMap<>());
+        hitProcessor = new FakeMediaHitProcessor();
+        conditions = new MediaPlaybackConditions();
+        clock = new SimulatedClock();
+
+        hitGenerator =
+                new MediaCollectionHitGenerator(
+                        mediaContext,
+                        hitProcessor,
+                        config,
+                        clock.now(),
+                        "sessionID123",
+                        new AdaptiveMediaPingPolicy(conditions));
+
+        mediaContext.enterState(MediaPlayBackState.Play);
+        hitGenerator.processPlayback(false);
+        hitProcessor.clearHitsFromActionSession();
+    }
+
+    void play(final long duration) {
+        clock.run(
+                duration,
+                TICK,
+                ts -> {
+                    hitGenerator.setRefTS(ts);
+                    hitGenerator.processPlayback(false);
+                });
+    }
+
+    List<Long> getPingTimestamps() {
+        List<Long> timestamps = new ArrayList<>();
+
+        for (int i = 0; i < hitProcessor.hitCountfromActiveSession(); i++) {
+            MediaHit hit = hitProcessor.getHitFromActiveSession(i);
+
+            if (MediaCollectionTestConstants.EventType.PING.equals(hit.getEventType())) {
+                timestamps.add(hit.getTimeStamp());
+            }
+        }
+
+        return timestamps;
+    }
+
+    void startAd() {
+        mediaContext.setAdBreakInfo(AdBreakInfo.create("adbreakname", 1, 0.0));
+        mediaContext.setAdInfo(AdInfo.create("adid", "adname", 1, 15.0), new HashMap<>());
+        hitGenerator.setRefTS(clock.now());
+        hitGenerator.processAdStart();
+        hitProcessor.clearHitsFromActionSession();
+    }
+
+    @Test
+    public void test_defaultPolicy_keepsDefaultValues() {
+        assertEquals(10000, MediaPingPolicy.DEFAULT.getPingInterval(10000, false));
+        assertEquals(1000, MediaPingPolicy.DEFAULT.getPingInterval(1000, true));
+        assertEquals(300000, MediaPingPolicy.DEFAULT.getFlushInterval(300000));
+    }
+
+    @Test
+    public void test_adaptivePolicy_noPressure_keepsDefaultValues() {
+        AdaptiveMediaPingPolicy policy = new AdaptiveMediaPingPolicy(conditions);
+
+        assertEquals(10000, policy.getPingInterval(10000, false));
+        assertEquals(50000, policy.getPingInterval(50000, false));
+        assertEquals(300000, policy.getFlushInterval(300000));
+    }
+
+    @Test
+    public void test_adaptivePolicy_stretchesUnderPressure() {
+        AdaptiveMediaPingPolicy policy = new AdaptiveMediaPingPolicy(conditions);
+
+        conditions.setMeteredNetwork(true);
+        assertEquals(20000, policy.getPingInterval(10000, false));
+        assertEquals(600000, policy.getFlushInterval(300000));
+
+        conditions.setBatterySaver(true);
+        assertEquals(40000, policy.getPingInterval(10000, false));
+        assertEquals(AdaptiveMediaPingPolicy.MAX_FLUSH_INTERVAL, policy.getFlushInterval(300000));
+
+        conditions.setBacklogSize(AdaptiveMediaPingPolicy.BACKLOG_THRESHOLD);
+        assertEquals(
+                AdaptiveMediaPingPolicy.MAX_PING_INTERVAL, policy.getPingInterval(10000, false));
+
+        // never shrinks an interval which is already above the cap
+        assertEquals(90000, policy.getPingInterval(90000, false));
+    }
+
+    @Test
+    public void test_adaptivePolicy_backlogBelowThreshold_keepsDefaultValues() {
+        AdaptiveMediaPingPolicy policy = new AdaptiveMediaPingPolicy(conditions);
+
+        conditions.setBacklogSize(AdaptiveMediaPingPolicy.BACKLOG_THRESHOLD - 1);
+        assertEquals(10000, policy.getPingInterval(10000, false));
+
+        conditions.setBacklogSize(-5);
+        assertEquals(0, conditions.getBacklogSize());
+    }
+
+    @Test
+    public void test_adaptivePolicy_granularAdTracking_isNeverStretched() {
+        AdaptiveMediaPingPolicy policy = new AdaptiveMediaPingPolicy(conditions);
+
+        conditions.setMeteredNetwork(true);
+        conditions.setBatterySaver(true);
+        conditions.setBacklogSize(1000);
+
+        assertEquals(1000, policy.getPingInterval(1000, true));
+    }
+
+    @Test
+    public void test_simulatedPlayback_noPressure_pingsEvery10Seconds() {
+        play(60000);
+
+        List<Long> expected = new ArrayList<>();
+        for (long ts = 10000; ts <= 60000; ts += 10000) {
+            expected.add(ts);
+        }
+
+        assertEquals(expected, getPingTimestamps());
+    }
+
+    @Test
+    public void test_simulatedPlayback_meteredNetwork_stretchesContentPings() {
+        conditions.setMeteredNetwork(true);
+        play(60000);
+
+        List<Long> expected = new ArrayList<>();
+        expected.add(20000L);
+        expected.add(40000L);
+        expected.add(60000L);
+
+        assertEquals(expected, getPingTimestamps());
+    }
+
+    @Test
+    public void test_simulatedPlayback_conditionsChangeMidSession() {
+        play(20000);
+        conditions.setBatterySaver(true);
+        play(40000);
+        conditions.setBatterySaver(false);
+        play(20000);
+
+        List<Long> expected = new ArrayList<>();
+        expected.add(10000L);
+        expected.add(20000L);
+        expected.add(40000L);
+        expected.add(60000L);
+        expected.add(70000L);
+        expected.add(80000L);
+
+        assertEquals(expected, getPingTimestamps());
+    }
+
+    @Test
+    public void test_simulatedPlayback_granularAd_keepsOneSecondPings() {
+        conditions.setMeteredNetwork(true);
+        conditions.setBatterySaver(true);
+
+        startAd();
+        play(5000);
+
+        assertEquals(1000, hitGenerator.getPingInterval());
+        assertEquals(5, getPingTimestamps().size());
+
+        hitGenerator.processAdComplete();
+        hitProcessor.clearHitsFromActionSession();
+        play(40000);
+
+        assertEquals(40000, hitGenerator.getPingInterval());
+        assertEquals(1, getPingTimestamps().size());
+    }
+
+    @Test
+    public void test_aggregator_flushCadenceFollowsPolicy() {
+        FakeMediaHitProcessor processor = new FakeMediaHitProcessor();
+        MediaPingAggregator aggregator =
+                new MediaPingAggregator(processor, 30000, new AdaptiveMediaPingPolicy(conditions));
+        String sessionId = aggregator.startSession();
+        conditions.setMeteredNetwork(true);
+
+        clock.run(
+                50000,
+                10000,
+                ts ->
+                        aggregator.processHit(
+                                sessionId,
+                                new MediaHit(
+                                        MediaCollectionTestConstants.EventType.PING,
+                                        new HashMap<>(),
+                                        new HashMap<>(),
+                                        new HashMap<>(),
+                                        ts / 1000.0,
+                                        ts)));
+
+        // 30s window stretched to 60s, nothing flushed yet
+        assertEquals(0, processor.hitCountfromActiveSession());
+
+        conditions.setMeteredNetwork(false);
+        clock.run(
+                10000,
+                10000,
+                ts ->
+                        aggregator.processHit(
+                                sessionId,
+                                new MediaHit(
+                                        MediaCollectionTestConstants.EventType.PING,
+                                        new HashMap<>(),
+                                        new HashMap<>(),
+                                        new HashMap<>(),
+                                        ts / 1000.0,
+                                        ts)));
+
+        assertEquals(1, processor.hitCountfromActiveSession());
+
+        Map<String, Object> params = processor.getHitFromActiveSession(0).getParams();
+        assertEquals(6, params.get(MediaCollectionTestConstants.Ping.COUNT.key));
+    }
+
+    @Test
+    public void test_simulatedClock_runIsDeterministic() {
+        List<Long> ticks = new ArrayList<>();
+        clock.run(2500, 1000, ticks::add);
+
+        assertEquals(3, ticks.size());
+        assertEquals(Long.valueOf(1000), ticks.get(0));
+        assertEquals(Long.valueOf(2000), ticks.get(1));
+        assertEquals(Long.valueOf(2500), ticks.get(2));
+        assertEquals(2500, clock.now());
+    }
+}
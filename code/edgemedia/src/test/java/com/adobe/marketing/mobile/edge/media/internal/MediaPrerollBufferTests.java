@@ -0,0 +1,164 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import com.adobe.marketing.mobile.Media;
+import com.adobe.marketing.mobile.TestMediaTrackerEventGenerator;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+
+public class MediaPrerollBufferTests {
+    static final int PLAYHEAD_UPDATE = MediaRuleName.PlayheadUpdate.ordinal();
+    static final int QOE_UPDATE = MediaRuleName.QoEUpdate.ordinal();
+    static final int PLAY = MediaRuleName.Play.ordinal();
+    static final int ADBREAK_START = MediaRuleName.AdBreakStart.ordinal();
+
+    MediaPrerollBuffer buffer;
+
+    public MediaPrerollBufferTests() {
+        buffer = new MediaPrerollBuffer(4);
+    }
+
+    @After
+    public void tearDown() {
+        MediaMetrics.getInstance().setEnabled(false);
+        MediaMetrics.getInstance().reset();
+    }
+
+    static Map<String, Object> context(final double playhead) {
+        Map<String, Object> context = new HashMap<>();
+        context.put("playhead", playhead);
+        return context;
+    }
+
+    @Test
+    public void test_add_collapsesConsecutiveUpdates() {
+        assertTrue(buffer.add(PLAY, context(0)));
+        assertTrue(buffer.add(PLAYHEAD_UPDATE, context(1)));
+        assertFalse(buffer.add(PLAYHEAD_UPDATE, context(2)));
+        assertFalse(buffer.add(PLAYHEAD_UPDATE, context(3)));
+        assertTrue(buffer.add(QOE_UPDATE, context(4)));
+        assertFalse(buffer.add(QOE_UPDATE, context(5)));
+
+        assertEquals(3, buffer.size());
+        assertEquals(3, buffer.getCollapsedCount());
+        assertEquals(context(3), buffer.get(1).ruleContext);
+        assertEquals(context(5), buffer.get(2).ruleContext);
+    }
+
+    @Test
+    public void test_add_keepsInterleavedUpdates() {
+        buffer.add(PLAYHEAD_UPDATE, context(1));
+        buffer.add(QOE_UPDATE, context(2));
+        buffer.add(PLAYHEAD_UPDATE, context(3));
+
+        assertEquals(3, buffer.size());
+        assertEquals(0, buffer.getCollapsedCount());
+    }
+
+    @Test
+    public void test_add_neverCollapsesOtherRules() {
+        buffer.add(PLAY, context(1));
+        buffer.add(PLAY, context(2));
+
+        assertEquals(2, buffer.size());
+    }
+
+    @Test
+    public void test_add_isBounded() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.add(i % 2 == 0 ? PLAY : PLAYHEAD_UPDATE, context(i)));
+        }
+
+        assertTrue(buffer.isFull());
+        assertFalse(buffer.add(PLAY, context(5)));
+        assertEquals(4, buffer.size());
+
+        // an update matching the last rule is still collapsed
+        assertFalse(buffer.add(PLAYHEAD_UPDATE, context(6)));
+        assertEquals(context(6), buffer.get(3).ruleContext);
+    }
+
+    @Test
+    public void test_reorder_dropsPlayBeforeAdBreakInPlace() {
+        buffer.add(PLAY, context(0));
+        buffer.add(PLAYHEAD_UPDATE, context(1));
+        buffer.add(ADBREAK_START, context(2));
+        buffer.add(PLAY, context(3));
+
+        buffer.reorder();
+
+        assertEquals(3, buffer.size());
+        assertEquals(1, buffer.getDroppedCount());
+        assertEquals(PLAYHEAD_UPDATE, buffer.get(0).ruleName);
+        assertEquals(ADBREAK_START, buffer.get(1).ruleName);
+        assertEquals(PLAY, buffer.get(2).ruleName);
+        assertFalse(buffer.isFull());
+    }
+
+    @Test
+    public void test_clear_resetsQueueAndCounters() {
+        buffer.add(PLAYHEAD_UPDATE, context(1));
+        buffer.add(PLAYHEAD_UPDATE, context(2));
+        buffer.clear();
+
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getCollapsedCount());
+        assertEquals(0, buffer.getDroppedCount());
+        assertTrue(buffer.toList().isEmpty());
+    }
+
+    @Test
+    public void test_tracker_collapsesPlayheadUpdatesDuringPreroll() {
+        MediaMetrics.getInstance().setEnabled(true);
+
+        FakeMediaHitProcessor hitProcessor = new FakeMediaHitProcessor();
+        MediaCollectionTracker tracker = new MediaCollectionTracker(hitProcessor, new HashMap<>());
+        TestMediaTrackerEventGenerator eventGenerator =
+                TestMediaTrackerEventGenerator.create(new HashMap<>(), "tracker0", true);
+        MediaInfo mediaInfo =
+                MediaInfo.create("id", "name", "vod", MediaType.Video, 60.0, false, 5000, false);
+
+        eventGenerator.trackSessionStart(mediaInfo.toObjectMap(), new HashMap<>());
+        tracker.track(eventGenerator.getEvent());
+        eventGenerator.trackPlay();
+        tracker.track(eventGenerator.getEvent());
+
+        // a player reporting the playhead every 100ms
+        for (int i = 1; i <= 40; i++) {
+            eventGenerator.incrementCurrentTimeStamp(100);
+            eventGenerator.updateCurrentPlayhead(i / 10.0);
+            tracker.track(eventGenerator.getEvent());
+        }
+
+        assertTrue(tracker.isInPrerollInterval());
+
+        AdBreakInfo adBreakInfo = AdBreakInfo.create("adbreak", 1, 0.0);
+        eventGenerator.trackEvent(
+                Media.Event.AdBreakStart, adBreakInfo.toObjectMap(), new HashMap<>());
+        tracker.track(eventGenerator.getEvent());
+
+        assertFalse(tracker.isInPrerollInterval());
+        // 39 playhead updates collapsed and the play before the ad break dropped
+        assertEquals(40, MediaMetrics.getInstance().getPrerollCompactionCount());
+        assertEquals(
+                MediaCollectionTestConstants.EventType.SESSION_START,
+                hitProcessor.getHitFromActiveSession(0).getEventType());
+        assertEquals(
+                MediaCollectionTestConstants.EventType.ADBREAK_START,
+                hitProcessor.getHitFromActiveSession(1).getEventType());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import org.junit.Test;
+
+public class MediaQoESourceTests {
+    @Test
+    public void test_get_sameSourceForName() {
+        assertSame(MediaQoESource.get("get"), MediaQoESource.get("get"));
+        assertNotSame(MediaQoESource.get("get"), MediaQoESource.get("get2"));
+        assertNull(MediaQoESource.get(null));
+    }
+
+    @Test
+    public void test_release_removesSource() {
+        MediaQoESource released = MediaQoESource.get("release");
+        MediaQoESource.publish("release", 1000000, 2, 30, 1.5);
+
+        MediaQoESource.release("release");
+        MediaQoESource.release(null);
+
+        MediaQoESource source = MediaQoESource.get("release");
+        assertNotSame(released, source);
+        assertNull(source.getQoEInfo());
+
+        // a subscriber of the released source no longer receives samples
+        MediaQoESource.publish("release", 2000000, 3, 30, 1.5);
+        assertEquals(1000000, released.getQoEInfo().getBitrate(), 0.0);
+        assertEquals(2000000, source.getQoEInfo().getBitrate(), 0.0);
+    }
+
+    @Test
+    public void test_getQoEInfo_latestSampleSharedUntilNextPublish() {
+        MediaQoESource source = MediaQoESource.get("latest");
+        assertNull(source.getQoEInfo());
+
+        MediaQoESource.publish("latest", 1000000, 2, 30, 1.5);
+        QoEInfo info = source.getQoEInfo();
+
+        assertEquals(QoEInfo.create(1000000, 2, 30, 1.5), info);
+        assertSame(info, source.getQoEInfo());
+
+        MediaQoESource.publish("latest", 2000000, 3, 30, 1.5);
+        assertEquals(2000000, source.getQoEInfo().getBitrate(), 0.0);
+    }
+
+    @Test
+    public void test_getQoEInfo_invalidSampleIgnored() {
+        MediaQoESource source = MediaQoESource.get("invalid");
+        MediaQoESource.publish("invalid", 1000000, 2, 30, 1.5);
+        source.getQoEInfo();
+        MediaQoESource.publish("invalid", -1, 2, 30, 1.5);
+
+        assertEquals(1000000, source.getQoEInfo().getBitrate(), 0.0);
+    }
+
+    @Test
+    public void test_mediaContext_sampleTakesPrecedence() {
+        MediaContext context =
+                new MediaContext(
+                        MediaInfo.create("id", "name", "vod", MediaType.Video, 60),
+                        new HashMap<>());
+        QoEInfo own = QoEInfo.create(1, 2, 3, 4);
+        context.setQoEInfo(own);
+        context.setQoESource(MediaQoESource.get("context"));
+
+        // no sample yet
+        assertEquals(own, context.getQoEInfo());
+
+        MediaQoESource.publish("context", 5, 6, 7, 8);
+        assertEquals(QoEInfo.create(5, 6, 7, 8), context.getQoEInfo());
+
+        context.setQoESource(null);
+        assertEquals(own, context.getQoEInfo());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class MediaRetrySchedulerTests {
+    SimulatedScheduler scheduler;
+
+    public MediaRetrySchedulerTests() {
+        scheduler = new SimulatedScheduler(new SimulatedClock());
+    }
+
+    MediaRetryScheduler createRetryScheduler(long seed, int maxAttempts, int retryBudget) {
+        return new MediaRetryScheduler(
+                scheduler, new Random(seed), 1000, 8000, maxAttempts, retryBudget, 1024);
+    }
+
+    @Test
+    public void test_getDelay_withinExponentialBackoff() {
+        MediaRetryScheduler retryScheduler = createRetryScheduler(1, 10, 10);
+
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long ceiling = Math.min(8000, 1000L << Math.min(attempt, 20));
+
+            for (int i = 0; i < 100; i++) {
+                long delay = retryScheduler.getDelay(attempt);
+                assertTrue(delay >= 0);
+                assertTrue(delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void test_getDelay_jitterIsSpread() {
+        MediaRetryScheduler retryScheduler = createRetryScheduler(7, 10, 10);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            long delay = retryScheduler.getDelay(3);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+
+        // full jitter uses the whole range instead of clustering at the backoff
+        assertTrue(min < 800);
+        assertTrue(max > 7200);
+    }
+
+    @Test
+    public void test_getDelay_sameSeedSameDelays() {
+        MediaRetryScheduler first = createRetryScheduler(42, 10, 10);
+        MediaRetryScheduler second = createRetryScheduler(42, 10, 10);
+
+        for (int attempt = 0; attempt < 10; attempt++) {
+            assertEquals(first.getDelay(attempt), second.getDelay(attempt));
+        }
+    }
+
+    @Test
+    public void test_tryAcquire_limitsAttempts() {
+        MediaRetryScheduler retryScheduler = createRetryScheduler(1, 3, 10);
+
+        assertTrue(retryScheduler.tryAcquire(0));
+        assertTrue(retryScheduler.tryAcquire(2));
+        assertFalse(retryScheduler.tryAcquire(3));
+        assertEquals(8, retryScheduler.getRetryTokens());
+    }
+
+    @Test
+    public void test_tryAcquire_budgetRefilledBySuccess() {
+        MediaRetryScheduler retryScheduler = createRetryScheduler(1, 3, 2);
+
+        assertTrue(retryScheduler.tryAcquire(0));
+        assertTrue(retryScheduler.tryAcquire(0));
+        assertFalse(retryScheduler.tryAcquire(0));
+
+        retryScheduler.onSuccess();
+        assertTrue(retryScheduler.tryAcquire(0));
+
+        // the budget never grows past its size
+        for (int i = 0; i < 5; i++) {
+            retryScheduler.onSuccess();
+        }
+        assertEquals(2, retryScheduler.getRetryTokens());
+    }
+
+    @Test
+    public void test_schedule_runsOnSimulatedClock() {
+        MediaRetryScheduler retryScheduler = createRetryScheduler(1, 3, 2);
+        final int[] runs = new int[1];
+
+        retryScheduler.schedule(() -> runs[0]++, 500);
+        scheduler.advance(499);
+        assertEquals(0, runs[0]);
+        scheduler.advance(1);
+        assertEquals(1, runs[0]);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MediaSessionIdCacheTests {
+    @Test
+    public void test_putAndGet() {
+        MediaSessionIdCache cache = new MediaSessionIdCache();
+
+        assertNull(cache.get("client1"));
+        cache.put("client1", "backend1");
+        assertEquals("backend1", cache.get("client1"));
+
+        cache.put("client1", "backend2");
+        assertEquals("backend2", cache.get("client1"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void test_put_ignoresNull() {
+        MediaSessionIdCache cache = new MediaSessionIdCache();
+        cache.put(null, "backend1");
+        cache.put("client1", null);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void test_evictsLeastRecentlyUsed() {
+        MediaSessionIdCache cache = new MediaSessionIdCache(2);
+        cache.put("client1", "backend1");
+        cache.put("client2", "backend2");
+
+        // client1 becomes the most recently used entry
+        assertEquals("backend1", cache.get("client1"));
+        cache.put("client3", "backend3");
+
+        assertEquals(2, cache.size());
+        assertEquals("backend1", cache.get("client1"));
+        assertNull(cache.get("client2"));
+        assertEquals("backend3", cache.get("client3"));
+    }
+
+    @Test
+    public void test_remove() {
+        MediaSessionIdCache cache = new MediaSessionIdCache();
+        cache.put("client1", "backend1");
+        cache.remove("client1");
+
+        assertNull(cache.get("client1"));
+        assertEquals(0, cache.size());
+    }
+}
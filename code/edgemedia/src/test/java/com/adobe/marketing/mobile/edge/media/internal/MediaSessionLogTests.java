@@ -0,0 +1,312 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import com.adobe.marketing.mobile.Media;
+import com.adobe.marketing.mobile.TestMediaTrackerEventGenerator;
+import com.adobe.marketing.mobile.services.MockNetworkService;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+
+public class MediaSessionLogTests {
+    File file;
+    FakeMediaHitProcessor hitProcessor;
+    TestMediaTrackerEventGenerator eventGenerator;
+    MediaCollectionTracker tracker;
+    MediaSessionLog sessionLog;
+    double playhead;
+
+    public MediaSessionLogTests() throws IOException {
+        file = File.createTempFile("medialog", ".bin");
+        hitProcessor = new FakeMediaHitProcessor();
+        eventGenerator = TestMediaTrackerEventGenerator.create(new HashMap<>(), "tracker0", true);
+        tracker = new MediaCollectionTracker(hitProcessor, new HashMap<>());
+        sessionLog = new MediaSessionLog(file);
+        tracker.setSessionLog(sessionLog);
+    }
+
+    @After
+    public void tearDown() {
+        sessionLog.close();
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    void startSession() {
+        MediaInfo mediaInfo =
+                MediaInfo.create("id", "name", "vod", MediaType.Video, 600.0, false, 0, false);
+        eventGenerator.trackSessionStart(mediaInfo.toObjectMap(), new HashMap<>());
+        assertTrue(tracker.track(eventGenerator.getEvent()));
+        eventGenerator.trackPlay();
+        assertTrue(tracker.track(eventGenerator.getEvent()));
+    }
+
+    void play(final int seconds) {
+        for (int i = 0; i < seconds; i++) {
+            eventGenerator.incrementCurrentTimeStamp(1000);
+            eventGenerator.updateCurrentPlayhead(++playhead);
+            tracker.track(eventGenerator.getEvent());
+        }
+    }
+
+    void trackEvent(final Media.Event event, final Map<String, Object> info) {
+        eventGenerator.trackEvent(event, info, new HashMap<>());
+        assertTrue(tracker.track(eventGenerator.getEvent()));
+    }
+
+    void startChapterAdAndState() {
+        trackEvent(Media.Event.ChapterStart, ChapterInfo.create("c1", 1, 60.0, 0.0).toObjectMap());
+        play(2);
+        trackEvent(Media.Event.AdBreakStart, AdBreakInfo.create("b1", 1, 5.0).toObjectMap());
+        trackEvent(Media.Event.AdStart, AdInfo.create("a1", "ad", 1, 15.0).toObjectMap());
+        play(2);
+        trackEvent(Media.Event.StateStart, StateInfo.create("mute").toObjectMap());
+        play(1);
+    }
+
+    List<String> getHitTypes(final FakeMediaHitProcessor processor, final String sessionID) {
+        List<String> types = new ArrayList<>();
+
+        for (int i = 0; i < processor.hitCount(sessionID); i++) {
+            types.add(processor.getHit(sessionID, i).getEventType());
+        }
+
+        return types;
+    }
+
+    @Test
+    public void test_recover_closesOrphanedSession() {
+        startSession();
+        play(5);
+        startChapterAdAndState();
+
+        // the process dies, nothing else is written
+        sessionLog.close();
+
+        String sessionID = hitProcessor.getActiveSession();
+        MediaLoggedSession recovered = MediaSessionLog.recover(file);
+        assertNotNull(recovered);
+        assertEquals(sessionID, recovered.getSessionID());
+        assertEquals(hitProcessor.getBackendSessionID(sessionID), recovered.getBackendSessionID());
+        assertTrue(recovered.isInChapter());
+        assertTrue(recovered.isInAdBreak());
+        assertTrue(recovered.isInAd());
+        assertEquals(Arrays.asList("mute"), recovered.getActiveStates());
+        assertEquals(9.0, recovered.getPlayhead(), 0.0);
+
+        // the next launch already started a session of its own, which takes the same client ID
+        FakeMediaHitProcessor nextLaunch = new FakeMediaHitProcessor();
+        assertEquals(sessionID, nextLaunch.startSession());
+        assertTrue(recovered.closeSession(nextLaunch));
+
+        String resumedID = nextLaunch.getActiveSession();
+        assertNotEquals(sessionID, resumedID);
+        assertEquals(recovered.getBackendSessionID(), nextLaunch.getBackendSessionID(resumedID));
+        assertEquals(0, nextLaunch.hitCount(sessionID));
+        assertFalse(nextLaunch.sessionEnded(sessionID));
+        sessionID = resumedID;
+
+        assertEquals(
+                Arrays.asList(
+                        MediaCollectionConstants.EventType.STATE_END,
+                        MediaCollectionConstants.EventType.AD_SKIP,
+                        MediaCollectionConstants.EventType.ADBREAK_COMPLETE,
+                        MediaCollectionConstants.EventType.CHAPTER_SKIP,
+                        MediaCollectionConstants.EventType.SESSION_END),
+                getHitTypes(nextLaunch, sessionID));
+        assertEquals(
+                "mute",
+                nextLaunch
+                        .getHit(sessionID, 0)
+                        .getParams()
+                        .get(MediaCollectionConstants.State.STATE_NAME.key));
+        assertEquals(9.0, nextLaunch.getHit(sessionID, 4).getPlayhead(), 0.0);
+        assertEquals(recovered.getTimeStamp(), nextLaunch.getHit(sessionID, 4).getTimeStamp());
+        assertTrue(nextLaunch.sessionEnded(sessionID));
+    }
+
+    @Test
+    public void test_recover_closesSessionThroughFreshDispatcher() throws IOException {
+        MockNetworkService networkService = new MockNetworkService();
+        networkService.setResponse(MediaBatchDispatcherTests.createNewSessionResponse("backend1"));
+        tracker =
+                new MediaCollectionTracker(
+                        new MediaBatchDispatcher(
+                                networkService,
+                                MediaBatchDispatcherTests.URL,
+                                1000000,
+                                60000,
+                                1000000,
+                                new MediaSessionIdCache()),
+                        new HashMap<>());
+        tracker.setSessionLog(sessionLog);
+        startSession();
+        play(5);
+        sessionLog.close();
+
+        MediaLoggedSession recovered = MediaSessionLog.recover(file);
+        assertNotNull(recovered);
+        assertEquals("backend1", recovered.getBackendSessionID());
+
+        networkService.reset();
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        MediaBatchDispatcher nextLaunch =
+                new MediaBatchDispatcher(
+                        networkService,
+                        MediaBatchDispatcherTests.URL,
+                        1000000,
+                        60000,
+                        1000000,
+                        new MediaSessionIdCache());
+        assertTrue(recovered.closeSession(nextLaunch));
+
+        assertEquals(1, networkService.capturedRequests.size());
+        String body = MediaBatchDispatcherTests.getBody(networkService.capturedRequests.get(0));
+        assertTrue(body.contains("\"sessionID\":\"backend1\""));
+        assertTrue(body.contains(MediaCollectionTestConstants.EventType.SESSION_END));
+        assertEquals(0, nextLaunch.getActiveSessionCount());
+        assertEquals(0, nextLaunch.getAbandonedSessionCount());
+    }
+
+    @Test
+    public void test_recover_withoutBackendSessionID_leavesSession() {
+        // the sessionStart response never arrived
+        MockNetworkService networkService = new MockNetworkService();
+        tracker =
+                new MediaCollectionTracker(
+                        new MediaBatchDispatcher(
+                                networkService,
+                                MediaBatchDispatcherTests.URL,
+                                1000000,
+                                60000,
+                                1000000,
+                                new MediaSessionIdCache()),
+                        new HashMap<>());
+        tracker.setSessionLog(sessionLog);
+        startSession();
+        play(5);
+        sessionLog.close();
+
+        MediaLoggedSession recovered = MediaSessionLog.recover(file);
+        assertNotNull(recovered);
+        assertNull(recovered.getBackendSessionID());
+
+        FakeMediaHitProcessor nextLaunch = new FakeMediaHitProcessor();
+        assertFalse(recovered.closeSession(nextLaunch));
+        assertEquals(0, nextLaunch.sessionCount());
+    }
+
+    @Test
+    public void test_recover_tracksCompletedTransitions() {
+        startSession();
+        play(5);
+        startChapterAdAndState();
+        trackEvent(Media.Event.StateEnd, StateInfo.create("mute").toObjectMap());
+        trackEvent(Media.Event.AdComplete, null);
+        trackEvent(Media.Event.AdBreakComplete, null);
+
+        MediaLoggedSession recovered = MediaSessionLog.recover(file);
+        assertNotNull(recovered);
+        assertTrue(recovered.isInChapter());
+        assertFalse(recovered.isInAdBreak());
+        assertFalse(recovered.isInAd());
+        assertTrue(recovered.getActiveStates().isEmpty());
+    }
+
+    @Test
+    public void test_recover_nothingAfterSessionEnds() {
+        startSession();
+        play(5);
+        startChapterAdAndState();
+        eventGenerator.trackComplete();
+        assertTrue(tracker.track(eventGenerator.getEvent()));
+
+        assertNull(MediaSessionLog.recover(file));
+        assertEquals(0, sessionLog.getRecordCount());
+    }
+
+    @Test
+    public void test_recover_ignoresTruncatedTail() throws IOException {
+        startSession();
+        play(5);
+        startChapterAdAndState();
+        sessionLog.close();
+
+        // cut the last record, the state start, in half
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        MediaLoggedSession recovered = MediaSessionLog.recover(file);
+        assertNotNull(recovered);
+        assertTrue(recovered.isInAd());
+        assertTrue(recovered.getActiveStates().isEmpty());
+    }
+
+    @Test
+    public void test_recover_missingOrForeignFile() throws IOException {
+        assertNull(MediaSessionLog.recover(new File(file.getPath() + ".missing")));
+
+        sessionLog.close();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        out.close();
+
+        assertNull(MediaSessionLog.recover(file));
+    }
+
+    @Test
+    public void test_checkpoint_logsPlayheadEveryInterval() {
+        startSession();
+        play(25);
+
+        MediaLoggedSession recovered = MediaSessionLog.recover(file);
+        assertNotNull(recovered);
+        assertEquals(20.0, recovered.getPlayhead(), 0.0);
+        // session start, backend session ID and two checkpoints
+        assertEquals(4, sessionLog.getRecordCount());
+    }
+
+    @Test
+    public void test_compaction_boundsLog() {
+        startSession();
+        trackEvent(Media.Event.ChapterStart, ChapterInfo.create("c1", 1, 60.0, 0.0).toObjectMap());
+        long initialLength = file.length();
+
+        for (int i = 0; i < MediaSessionLog.MAX_RECORDS; i++) {
+            trackEvent(Media.Event.StateStart, StateInfo.create("mute").toObjectMap());
+            trackEvent(Media.Event.StateEnd, StateInfo.create("mute").toObjectMap());
+        }
+
+        trackEvent(Media.Event.StateStart, StateInfo.create("fullscreen").toObjectMap());
+
+        assertTrue(sessionLog.getRecordCount() < MediaSessionLog.MAX_RECORDS);
+        assertTrue(file.length() < initialLength * 2 + 1024);
+
+        MediaLoggedSession recovered = MediaSessionLog.recover(file);
+        assertNotNull(recovered);
+        assertEquals(hitProcessor.getActiveSession(), recovered.getSessionID());
+        assertTrue(recovered.isInChapter());
+        assertEquals(Arrays.asList("fullscreen"), recovered.getActiveStates());
+    }
+}
@@ -0,0 +1,373 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import com.adobe.marketing.mobile.Media;
+import com.adobe.marketing.mobile.TestMediaTrackerEventGenerator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+
+public class MediaSessionMemoryTests {
+    MediaInfo mediaInfo;
+    FakeMediaHitProcessor hitProcessor;
+    TestMediaTrackerEventGenerator eventGenerator;
+    MediaCollectionTracker tracker;
+
+    public MediaSessionMemoryTests() {
+        mediaInfo = MediaInfo.create("id", "name", "vod", MediaType.Video, 60.0, false, 0, false);
+        hitProcessor = new FakeMediaHitProcessor();
+        eventGenerator = TestMediaTrackerEventGenerator.create(new HashMap<>(), "tracker0", true);
+    }
+
+    @After
+    public void tearDown() {
+        MediaMetrics.getInstance().setEnabled(false);
+        MediaMetrics.getInstance().reset();
+    }
+
+    void createTracker(final long softCap, final long hardCap) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MediaTestConstants.EventDataKeys.Config.MEMORY_SOFT_CAP, softCap);
+        config.put(MediaTestConstants.EventDataKeys.Config.MEMORY_HARD_CAP, hardCap);
+        tracker = new MediaCollectionTracker(hitProcessor, config);
+    }
+
+    void startSession(final Map<String, String> metadata) {
+        eventGenerator.trackSessionStart(mediaInfo.toObjectMap(), metadata);
+        assertTrue(tracker.track(eventGenerator.getEvent()));
+        eventGenerator.trackPlay();
+        assertTrue(tracker.track(eventGenerator.getEvent()));
+    }
+
+    void play(final int seconds) {
+        for (int i = 1; i <= seconds; i++) {
+            eventGenerator.incrementCurrentTimeStamp(1000);
+            eventGenerator.updateCurrentPlayhead(i);
+            tracker.track(eventGenerator.getEvent());
+        }
+    }
+
+    List<String> getHitTypes() {
+        List<String> types = new ArrayList<>();
+
+        for (int i = 0; i < hitProcessor.hitCountfromActiveSession(); i++) {
+            types.add(hitProcessor.getHitFromActiveSession(i).getEventType());
+        }
+
+        return types;
+    }
+
+    int countPings() {
+        int pings = 0;
+
+        for (String type : getHitTypes()) {
+            if (MediaCollectionTestConstants.EventType.PING.equals(type)) {
+                pings++;
+            }
+        }
+
+        return pings;
+    }
+
+    static String repeat(final char c, final int count) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+
+        return sb.toString();
+    }
+
+    @Test
+    public void test_estimate() {
+        assertEquals(0, MediaSessionMemory.estimate(null));
+        assertEquals(MediaSessionMemory.STRING_OVERHEAD + 6, MediaSessionMemory.estimate("abc"));
+        assertEquals(MediaSessionMemory.BOXED_VALUE_SIZE, MediaSessionMemory.estimate(10L));
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("k", "v");
+        assertEquals(
+                MediaSessionMemory.MAP_OVERHEAD
+                        + MediaSessionMemory.MAP_ENTRY_OVERHEAD
+                        + 2 * (MediaSessionMemory.STRING_OVERHEAD + 2),
+                MediaSessionMemory.estimate(map));
+
+        List<Object> list = new ArrayList<>();
+        list.add(1);
+        assertEquals(
+                MediaSessionMemory.OBJECT_OVERHEAD
+                        + MediaSessionMemory.COLLECTION_ELEMENT_OVERHEAD
+                        + MediaSessionMemory.BOXED_VALUE_SIZE,
+                MediaSessionMemory.estimate(list));
+    }
+
+    @Test
+    public void test_caps_disabledByDefault() {
+        MediaSessionMemory memory = MediaSessionMemory.fromConfig(new HashMap<>());
+        memory.setContextBytes(Long.MAX_VALUE / 2);
+
+        assertFalse(memory.isAboveSoftCap());
+        assertFalse(memory.isAboveHardCap());
+    }
+
+    @Test
+    public void test_caps_andHighWaterMark() {
+        MediaSessionMemory memory = new MediaSessionMemory(100, 200);
+
+        memory.setContextBytes(80);
+        memory.addPrerollQueueBytes(40);
+        assertTrue(memory.isAboveSoftCap());
+        assertFalse(memory.isAboveHardCap());
+
+        memory.setQoEBytes(100);
+        assertTrue(memory.isAboveHardCap());
+        assertEquals(220, memory.getTotalBytes());
+
+        memory.clearPrerollQueueBytes();
+        memory.setQoEBytes(0);
+        assertEquals(80, memory.getTotalBytes());
+        assertEquals(220, memory.getHighWaterMark());
+
+        memory.reset();
+        assertEquals(0, memory.getTotalBytes());
+        assertEquals(0, memory.getHighWaterMark());
+    }
+
+    @Test
+    public void test_mediaContext_trimMetadata() {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("short", "value");
+        metadata.put("long", repeat('a', 200));
+        MediaContext context = new MediaContext(mediaInfo, metadata);
+
+        Map<String, String> chapterMetadata = new HashMap<>();
+        chapterMetadata.put("long", repeat('b', 100));
+        context.setChapterInfo(ChapterInfo.create("chapter", 1, 0, 30), chapterMetadata);
+
+        long before = context.estimateBytes();
+        assertEquals(2, context.trimMetadata(64));
+        assertTrue(context.estimateBytes() < before);
+
+        assertEquals("value", context.getMediaMetadata().get("short"));
+        assertEquals(64, context.getMediaMetadata().get("long").length());
+        assertEquals(64, context.getChapterMetadata().get("long").length());
+
+        // map passed by the caller is left untouched
+        assertEquals(100, chapterMetadata.get("long").length());
+        assertEquals(0, context.trimMetadata(64));
+    }
+
+    @Test
+    public void test_mediaContext_dropLargestMetadata() {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("short", "value");
+        metadata.put("long", repeat('a', 200));
+        MediaContext context = new MediaContext(mediaInfo, metadata);
+
+        Map<String, String> chapterMetadata = new HashMap<>();
+        chapterMetadata.put("longer", repeat('b', 300));
+        context.setChapterInfo(ChapterInfo.create("chapter", 1, 0, 30), chapterMetadata);
+        assertFalse(context.isMetadataTrimmed());
+        long contextBytes = context.estimateBytes();
+
+        MediaContext.MetadataDrop drop = context.dropLargestMetadata(1);
+        assertEquals(1, drop.count);
+        assertEquals(MediaSessionMemory.estimateEntry("longer", repeat('b', 300)), drop.bytes);
+        assertEquals(contextBytes - drop.bytes, context.estimateBytes());
+        assertTrue(context.isMetadataTrimmed());
+        assertTrue(context.getChapterMetadata().isEmpty());
+        assertEquals(2, context.getMediaMetadata().size());
+
+        assertEquals(1, context.dropLargestMetadata(1).count);
+        assertEquals("value", context.getMediaMetadata().get("short"));
+        assertEquals(1, context.getMediaMetadata().size());
+
+        // map passed by the caller is left untouched
+        assertEquals(1, chapterMetadata.size());
+
+        assertEquals(1, context.dropLargestMetadata(Long.MAX_VALUE).count);
+        assertEquals(0, context.dropLargestMetadata(1).count);
+    }
+
+    @Test
+    public void test_mediaContext_dropLargestMetadata_dropsUntilBytesFreed() {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("a", repeat('a', 100));
+        metadata.put("b", repeat('b', 200));
+        metadata.put("c", repeat('c', 300));
+        MediaContext context = new MediaContext(mediaInfo, metadata);
+
+        long largest = MediaSessionMemory.estimateEntry("c", repeat('c', 300));
+        MediaContext.MetadataDrop drop = context.dropLargestMetadata(largest + 1);
+
+        assertEquals(2, drop.count);
+        assertEquals(1, context.getMediaMetadata().size());
+        assertTrue(context.getMediaMetadata().containsKey("a"));
+    }
+
+    @Test
+    public void test_tracker_accountingDisabled_skipsEstimate() {
+        createTracker(MediaSessionMemory.NO_CAP, MediaSessionMemory.NO_CAP);
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("description", repeat('x', 1000));
+        startSession(metadata);
+
+        assertFalse(tracker.getSessionMemory().isEnabled());
+        assertEquals(0, tracker.getSessionMemory().getTotalBytes());
+    }
+
+    @Test
+    public void test_tracker_aboveSoftCap_trimsMetadata() {
+        createTracker(1000, MediaSessionMemory.NO_CAP);
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("description", repeat('x', 1000));
+        startSession(metadata);
+
+        MediaSessionMemory memory = tracker.getSessionMemory();
+        assertEquals(1, memory.getMetadataTrimCount());
+        assertFalse(memory.isAboveSoftCap());
+        assertTrue(memory.getHighWaterMark() > 1000);
+    }
+
+    @Test
+    public void test_tracker_belowSoftCap_keepsMetadata() {
+        createTracker(100000, MediaSessionMemory.NO_CAP);
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("description", repeat('x', 1000));
+        startSession(metadata);
+
+        assertEquals(0, tracker.getSessionMemory().getMetadataTrimCount());
+        assertTrue(tracker.getSessionMemory().getTotalBytes() > 2000);
+    }
+
+    @Test
+    public void test_tracker_aboveHardCap_dropsLargestMetadataAndRecovers() {
+        createTracker(MediaSessionMemory.NO_CAP, 3000);
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("description", repeat('x', 1000));
+        metadata.put("title", repeat('y', 500));
+        metadata.put("genre", "drama");
+        startSession(metadata);
+
+        // the session start is sent with the metadata given by the app
+        MediaHit sessionStart = hitProcessor.getHitFromActiveSession(0);
+        assertEquals(3, sessionStart.getCustomMetadata().size());
+
+        MediaSessionMemory memory = tracker.getSessionMemory();
+        assertFalse(memory.isAboveHardCap());
+        assertTrue(memory.getHighWaterMark() > 3000);
+        assertEquals(1, memory.getDroppedMetadataCount());
+
+        // pings are sent as usual once the session fits in its cap again
+        play(31);
+        assertEquals(3, countPings());
+        assertFalse(memory.isAboveHardCap());
+        assertEquals(1, memory.getDroppedMetadataCount());
+    }
+
+    @Test
+    public void test_tracker_aboveHardCap_sendsPings() {
+        createTracker(MediaSessionMemory.NO_CAP, 1);
+        startSession(new HashMap<>());
+        // play is reported after the first second of content, pings are due 10s after that
+        play(31);
+
+        assertEquals(3, countPings());
+        assertTrue(tracker.getSessionMemory().isAboveHardCap());
+    }
+
+    @Test
+    public void test_tracker_trimmedMetadata_isFlaggedInSectionStarts() {
+        createTracker(1000, MediaSessionMemory.NO_CAP);
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("description", repeat('x', 1000));
+        startSession(metadata);
+
+        String flag = MediaCollectionTestConstants.Memory.METADATA_TRIMMED.key;
+        assertFalse(hitProcessor.getHitFromActiveSession(0).getParams().containsKey(flag));
+
+        eventGenerator.trackEvent(
+                Media.Event.ChapterStart,
+                ChapterInfo.create("chapter", 1, 0, 30).toObjectMap(),
+                new HashMap<>());
+        tracker.track(eventGenerator.getEvent());
+
+        MediaHit chapterStart =
+                hitProcessor.getHitFromActiveSession(hitProcessor.hitCountfromActiveSession() - 1);
+        assertEquals(
+                MediaCollectionTestConstants.EventType.CHAPTER_START, chapterStart.getEventType());
+        assertEquals(true, chapterStart.getParams().get(flag));
+    }
+
+    @Test
+    public void test_tracker_noCaps_sendsPings() {
+        createTracker(MediaSessionMemory.NO_CAP, MediaSessionMemory.NO_CAP);
+        startSession(new HashMap<>());
+        play(30);
+
+        List<String> types = getHitTypes();
+        assertTrue(types.contains(MediaCollectionTestConstants.EventType.PING));
+        assertEquals(0, tracker.getSessionMemory().getDroppedMetadataCount());
+    }
+
+    @Test
+    public void test_tracker_reportsThroughMetrics() {
+        MediaMetrics metrics = MediaMetrics.getInstance();
+        metrics.setEnabled(true);
+
+        createTracker(1000, 1200);
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("description", repeat('x', 1000));
+        metadata.put("title", repeat('y', 200));
+        startSession(metadata);
+
+        assertTrue(metrics.getSessionMemoryHighWaterMark() > 1000);
+        assertEquals(1, metrics.getMetadataTrimCount());
+        assertEquals(1, metrics.getDroppedMetadataCount());
+
+        Map<String, Object> data = metrics.toEventData();
+        assertEquals(
+                metrics.getSessionMemoryHighWaterMark(),
+                data.get(MediaTestConstants.EventDataKeys.Metrics.MEMORY_HIGH_WATER_MARK));
+        assertEquals(1L, data.get(MediaTestConstants.EventDataKeys.Metrics.METADATA_TRIMS));
+        assertEquals(1L, data.get(MediaTestConstants.EventDataKeys.Metrics.DROPPED_METADATA));
+    }
+
+    @Test
+    public void test_tracker_newSession_resetsAccounting() {
+        createTracker(1000, MediaSessionMemory.NO_CAP);
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("description", repeat('x', 1000));
+        startSession(metadata);
+
+        eventGenerator.trackComplete();
+        tracker.track(eventGenerator.getEvent());
+        assertEquals(0, tracker.getSessionMemory().getTotalBytes());
+
+        startSession(new HashMap<>());
+        assertEquals(0, tracker.getSessionMemory().getMetadataTrimCount());
+        assertTrue(tracker.getSessionMemory().getHighWaterMark() < 1000);
+    }
+}
@@ -111,4 +111,47 @@ public class MediaStateTests {
                 },
                 null);
     }
+
+    @Test
+    public void test_isValid() {
+        assertFalse(mediaState.isValid());
+
+        Map<String, Object> config = new HashMap<>();
+        config.put(MediaTestConstants.Configuration.MEDIA_CHANNEL, "channel");
+        mediaState.updateState(config);
+        assertFalse(mediaState.isValid());
+
+        config.put(MediaTestConstants.Configuration.MEDIA_PLAYER_NAME, "player");
+        mediaState.updateState(config);
+        assertTrue(mediaState.isValid());
+
+        config.put(MediaTestConstants.Configuration.MEDIA_CHANNEL, "");
+        mediaState.updateState(config);
+        assertFalse(mediaState.isValid());
+    }
+
+    @Test
+    public void test_getSnapshot_isNotAffectedByLaterUpdates() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MediaTestConstants.Configuration.MEDIA_CHANNEL, "channel");
+        config.put(MediaTestConstants.Configuration.MEDIA_PLAYER_NAME, "player");
+        config.put(MediaTestConstants.Configuration.MEDIA_APP_VERSION, "1.0");
+        mediaState.updateState(config);
+
+        MediaState.Snapshot snapshot = mediaState.getSnapshot();
+
+        config.put(MediaTestConstants.Configuration.MEDIA_CHANNEL, "channel2");
+        config.remove(MediaTestConstants.Configuration.MEDIA_PLAYER_NAME);
+        mediaState.updateState(config);
+
+        assertEquals("channel", snapshot.getMediaChannel());
+        assertEquals("player", snapshot.getMediaPlayerName());
+        assertEquals("1.0", snapshot.getMediaAppVersion());
+        assertTrue(snapshot.isValid());
+
+        assertEquals("channel2", mediaState.getMediaChannel());
+        assertNull(mediaState.getMediaPlayerName());
+        assertFalse(mediaState.isValid());
+        assertNotSame(snapshot, mediaState.getSnapshot());
+    }
 }
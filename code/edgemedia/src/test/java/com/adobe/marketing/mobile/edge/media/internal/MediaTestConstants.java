@@ -27,6 +27,10 @@ public final class MediaTestConstants {
         static final String EVENT_SOURCE_TRACKER_RESPONSE =
                 "com.adobe.eventsource.media.responsetracker";
         static final String EVENT_SOURCE_TRACK_MEDIA = "com.adobe.eventsource.media.trackmedia";
+        static final String EVENT_SOURCE_METRICS_REQUEST =
+                "com.adobe.eventsource.media.requestmetrics";
+        static final String EVENT_SOURCE_METRICS_RESPONSE =
+                "com.adobe.eventsource.media.responsemetrics";
 
         static final String MEDIA_TYPE_VIDEO = "video";
         static final String MEDIA_TYPE_AUDIO = "audio";
@@ -49,10 +53,35 @@ public final class MediaTestConstants {
         static final class Config {
             static final String CHANNEL = "config.channel";
             static final String DOWNLOADED_CONTENT = "config.downloadedcontent";
+            static final String AGGREGATE_PINGS = "config.aggregatepings";
+            static final String MEMORY_SOFT_CAP = "config.memorysoftcap";
+            static final String MEMORY_HARD_CAP = "config.memoryhardcap";
+            static final String DELTA_HITS = "config.deltahits";
+            static final String MAX_CLOCK_JUMP = "config.maxclockjump";
+            static final String HIBERNATE_IDLE = "config.hibernateidle";
+            static final String QOE_SOURCE = "config.qoesource";
 
             private Config() {}
         }
 
+        static final class Metrics {
+            static final String ENABLED = "metrics.enabled";
+            static final String RESET = "metrics.reset";
+            static final String RULES = "metrics.rules";
+            static final String HITS = "metrics.hits";
+            static final String MEMORY_HIGH_WATER_MARK = "metrics.memory.highwatermark";
+            static final String METADATA_TRIMS = "metrics.memory.metadatatrims";
+            static final String DROPPED_METADATA = "metrics.memory.droppedmetadata";
+            static final String PREROLL_COMPACTIONS = "metrics.preroll.compactions";
+            static final String CALLS = "calls";
+            static final String PREDICATE_FAILURES = "predicatefailures";
+            static final String LATENCY = "latency";
+            static final String COUNT = "count";
+            static final String MEAN = "mean";
+
+            private Metrics() {}
+        }
+
         static final class MediaInfo {
             static final String NAME = "media.name";
             static final String ID = "media.id";
@@ -121,6 +150,7 @@ public final class MediaTestConstants {
             static final String CREATED = "trackercreated";
             static final String SESSION_ID = "sessionid";
             static final String EVENT_NAME = "event.name";
+            static final String EVENT_CODE = "event.code";
             static final String EVENT_PARAM = "event.param";
             static final String EVENT_METADATA = "event.metadata";
             static final String EVENT_TIMESTAMP = "event.timestamp";
@@ -0,0 +1,231 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import static org.junit.Assert.*;
+
+import com.adobe.marketing.mobile.Media;
+import com.adobe.marketing.mobile.TestMediaTrackerEventGenerator;
+import com.adobe.marketing.mobile.services.MockNetworkService;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class MediaTrackerSnapshotTests {
+    FakeMediaHitProcessor hitProcessor;
+    TestMediaTrackerEventGenerator eventGenerator;
+    MediaCollectionTracker tracker;
+    double playhead;
+
+    public MediaTrackerSnapshotTests() {
+        hitProcessor = new FakeMediaHitProcessor();
+        eventGenerator = TestMediaTrackerEventGenerator.create(new HashMap<>(), "tracker0", true);
+        tracker = new MediaCollectionTracker(hitProcessor, new HashMap<>());
+    }
+
+    void startSession(final long prerollWaitTime) {
+        MediaInfo mediaInfo =
+                MediaInfo.create(
+                        "id", "name", "vod", MediaType.Video, 600.0, false, prerollWaitTime, false);
+        eventGenerator.trackSessionStart(mediaInfo.toObjectMap(), new HashMap<>());
+        assertTrue(tracker.track(eventGenerator.getEvent()));
+        eventGenerator.trackPlay();
+        tracker.track(eventGenerator.getEvent());
+    }
+
+    void play(final MediaCollectionTracker target, final int seconds) {
+        for (int i = 0; i < seconds; i++) {
+            eventGenerator.incrementCurrentTimeStamp(1000);
+            eventGenerator.updateCurrentPlayhead(++playhead);
+            target.track(eventGenerator.getEvent());
+        }
+    }
+
+    void trackEvent(
+            final MediaCollectionTracker target,
+            final Media.Event event,
+            final Map<String, Object> info) {
+        eventGenerator.trackEvent(event, info, new HashMap<>());
+        assertTrue(target.track(eventGenerator.getEvent()));
+    }
+
+    List<String> getHitTypes(final String sessionID, final int from) {
+        List<String> types = new ArrayList<>();
+
+        for (int i = from; i < hitProcessor.hitCount(sessionID); i++) {
+            types.add(hitProcessor.getHit(sessionID, i).getEventType());
+        }
+
+        return types;
+    }
+
+    static MediaBatchDispatcher createDispatcher(
+            final MockNetworkService networkService, final MediaSessionIdCache cache) {
+        return new MediaBatchDispatcher(
+                networkService, MediaBatchDispatcherTests.URL, 1000000, 60000, 1000000, cache);
+    }
+
+    @Test
+    public void test_restore_continuesSession() {
+        startSession(0);
+        play(tracker, 5);
+        trackEvent(
+                tracker,
+                Media.Event.ChapterStart,
+                ChapterInfo.create("c1", 1, 60.0, 0.0).toObjectMap());
+        trackEvent(
+                tracker, Media.Event.AdBreakStart, AdBreakInfo.create("b1", 1, 5.0).toObjectMap());
+        trackEvent(tracker, Media.Event.AdStart, AdInfo.create("a1", "ad", 1, 15.0).toObjectMap());
+        trackEvent(tracker, Media.Event.StateStart, StateInfo.create("mute").toObjectMap());
+        eventGenerator.updateQoEObject(QoEInfo.create(1000, 1, 30, 2).toObjectMap());
+        tracker.track(eventGenerator.getEvent());
+        trackEvent(tracker, Media.Event.BitrateChange, new HashMap<>());
+        play(tracker, 2);
+
+        String sessionID = hitProcessor.getActiveSession();
+        int hitCount = hitProcessor.hitCount(sessionID);
+
+        byte[] snapshot = tracker.snapshot();
+        assertNotNull(snapshot);
+
+        MediaCollectionTracker restored = new MediaCollectionTracker(hitProcessor, new HashMap<>());
+        assertTrue(restored.restore(snapshot));
+
+        // no session restart and no hits on restore
+        assertEquals(1, hitProcessor.sessionCount());
+        assertEquals(hitCount, hitProcessor.hitCount(sessionID));
+
+        play(restored, 1);
+        double adCompletePlayhead = playhead;
+        trackEvent(restored, Media.Event.AdComplete, new HashMap<>());
+        trackEvent(restored, Media.Event.AdBreakComplete, new HashMap<>());
+        trackEvent(restored, Media.Event.StateEnd, StateInfo.create("mute").toObjectMap());
+        trackEvent(restored, Media.Event.ChapterComplete, new HashMap<>());
+        play(restored, 1);
+
+        assertEquals(1, hitProcessor.sessionCount());
+        assertEquals(
+                Arrays.asList(
+                        MediaCollectionTestConstants.EventType.AD_COMPLETE,
+                        MediaCollectionTestConstants.EventType.ADBREAK_COMPLETE,
+                        MediaCollectionTestConstants.EventType.PLAY,
+                        MediaCollectionTestConstants.EventType.STATE_END,
+                        MediaCollectionTestConstants.EventType.CHAPTER_COMPLETE),
+                getHitTypes(sessionID, hitCount));
+
+        // the QoE data was already reported before the snapshot
+        for (int i = hitCount; i < hitProcessor.hitCount(sessionID); i++) {
+            assertTrue(hitProcessor.getHit(sessionID, i).getQoEData().isEmpty());
+        }
+        assertEquals(
+                adCompletePlayhead, hitProcessor.getHit(sessionID, hitCount).getPlayhead(), 0);
+    }
+
+    @Test
+    public void test_restore_keepsPrerollQueue() {
+        startSession(5000);
+        play(tracker, 2);
+        assertTrue(tracker.isInPrerollInterval());
+
+        String sessionID = hitProcessor.getActiveSession();
+        MediaCollectionTracker restored = new MediaCollectionTracker(hitProcessor, new HashMap<>());
+        assertTrue(restored.restore(tracker.snapshot()));
+        assertTrue(restored.isInPrerollInterval());
+
+        play(restored, 4);
+
+        // same hits as a session tracked by a single tracker
+        assertFalse(restored.isInPrerollInterval());
+        assertEquals(
+                Arrays.asList(
+                        MediaCollectionTestConstants.EventType.SESSION_START,
+                        MediaCollectionTestConstants.EventType.PLAY,
+                        MediaCollectionTestConstants.EventType.PLAY),
+                getHitTypes(sessionID, 0));
+    }
+
+    @Test
+    public void test_restore_throughFreshDispatcher() throws IOException {
+        MockNetworkService networkService = new MockNetworkService();
+        networkService.setResponse(MediaBatchDispatcherTests.createNewSessionResponse("backend1"));
+        tracker =
+                new MediaCollectionTracker(
+                        createDispatcher(networkService, new MediaSessionIdCache()),
+                        new HashMap<>());
+        startSession(0);
+        play(tracker, 5);
+        byte[] snapshot = tracker.snapshot();
+
+        // another process continues the session with a dispatcher which never saw it
+        networkService.reset();
+        networkService.setResponse(MockNetworkService.createResponse(200));
+        MediaBatchDispatcher nextDispatcher =
+                createDispatcher(networkService, new MediaSessionIdCache());
+        MediaCollectionTracker restored =
+                new MediaCollectionTracker(nextDispatcher, new HashMap<>());
+        assertTrue(restored.restore(snapshot));
+        assertEquals(1, nextDispatcher.getActiveSessionCount());
+
+        trackEvent(restored, Media.Event.StateStart, StateInfo.create("mute").toObjectMap());
+        eventGenerator.trackComplete();
+        assertTrue(restored.track(eventGenerator.getEvent()));
+
+        assertEquals(1, networkService.capturedRequests.size());
+        String body = MediaBatchDispatcherTests.getBody(networkService.capturedRequests.get(0));
+        assertEquals(
+                MediaBatchDispatcherTests.count(body, "\"xdm\":"),
+                MediaBatchDispatcherTests.count(body, "\"sessionID\":\"backend1\""));
+        assertFalse(body.contains(MediaCollectionTestConstants.EventType.SESSION_START));
+        assertTrue(body.contains(MediaCollectionTestConstants.EventType.STATE_START));
+        assertTrue(body.contains(MediaCollectionTestConstants.EventType.SESSION_COMPLETE));
+        assertEquals(0, nextDispatcher.getActiveSessionCount());
+        assertEquals(0, nextDispatcher.getAbandonedSessionCount());
+    }
+
+    @Test
+    public void test_restore_withoutSession() {
+        byte[] snapshot = tracker.snapshot();
+        assertNotNull(snapshot);
+
+        MediaCollectionTracker restored = new MediaCollectionTracker(hitProcessor, new HashMap<>());
+        assertTrue(restored.restore(snapshot));
+
+        eventGenerator.trackPlay();
+        assertFalse(restored.track(eventGenerator.getEvent()));
+        assertEquals(0, hitProcessor.sessionCount());
+    }
+
+    @Test
+    public void test_restore_rejectsInvalidSnapshot() {
+        startSession(0);
+        byte[] snapshot = tracker.snapshot();
+
+        assertFalse(tracker.restore(null));
+        assertFalse(tracker.restore(new byte[] {1, 2, 3}));
+
+        byte[] newerVersion = snapshot.clone();
+        newerVersion[7] = (byte) (MediaCollectionTracker.SNAPSHOT_VERSION + 1);
+        assertFalse(tracker.restore(newerVersion));
+
+        byte[] truncated = Arrays.copyOf(snapshot, snapshot.length / 2);
+        assertFalse(tracker.restore(truncated));
+
+        // the session is still tracked
+        eventGenerator.trackPause();
+        assertTrue(tracker.track(eventGenerator.getEvent()));
+        assertEquals(1, hitProcessor.sessionCount());
+    }
+}
@@ -19,7 +19,10 @@ import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
@@ -183,13 +186,13 @@ public class RuleEngineTests {
         rule.addAction((rule12, context) -> true);
 
         ruleEngine.onEnterRule(
-                (rule13, context) -> {
+                (target, rule13, context) -> {
                     mockActionCallback.call(rule13, context);
                     return true;
                 });
 
         ruleEngine.onExitRule(
-                (rule14, context) -> {
+                (target, rule14, context) -> {
                     mockActionCallback2.call(rule14, context);
                     return true;
                 });
@@ -212,13 +215,13 @@ public class RuleEngineTests {
         rule.addAction((rule12, context) -> true);
 
         ruleEngine.onEnterRule(
-                (rule14, context) -> {
+                (target, rule14, context) -> {
                     mockActionCallback.call(rule14, context);
                     return false;
                 });
 
         ruleEngine.onExitRule(
-                (rule13, context) -> {
+                (target, rule13, context) -> {
                     mockActionCallback2.call(rule13, context);
                     return true;
                 });
@@ -269,4 +272,27 @@ public class RuleEngineTests {
         MediaRuleResponse res = ruleEngine.processRule(1, context);
         assertTrue(res.isValid);
     }
+
+    @Test
+    public void test_processRule_passTarget() {
+        MediaRuleEngine<List<String>> ruleEngine = new MediaRuleEngine<>();
+        MediaRule<List<String>> rule = new MediaRule<>(1, "Rule 1");
+
+        rule.addPredicate((target, context) -> target.isEmpty(), true, "");
+        rule.addAction((target, context) -> target.add("action"));
+        ruleEngine.onEnterRule((target, rule1, context) -> target.add("enter"));
+        ruleEngine.onExitRule((target, rule1, context) -> target.add("exit"));
+        ruleEngine.addRule(rule);
+
+        // the same engine runs against each target independently
+        List<String> target1 = new ArrayList<>();
+        List<String> target2 = new ArrayList<>();
+
+        assertTrue(ruleEngine.processRule(target1, 1, new HashMap<>()).isValid);
+        assertTrue(ruleEngine.processRule(target2, 1, new HashMap<>()).isValid);
+        assertFalse(ruleEngine.processRule(target1, 1, new HashMap<>()).isValid);
+
+        assertEquals(Arrays.asList("enter", "action", "exit"), target1);
+        assertEquals(Arrays.asList("enter", "action", "exit"), target2);
+    }
 }
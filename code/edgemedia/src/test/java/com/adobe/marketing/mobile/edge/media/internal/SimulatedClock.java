@@ -0,0 +1,47 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+/** Deterministic clock for tests which drive components with explicit timestamps. */
+class SimulatedClock {
+    interface Listener {
+        void onTick(long ts);
+    }
+
+    private long now;
+
+    SimulatedClock() {
+        this(0);
+    }
+
+    SimulatedClock(long startTS) {
+        now = startTS;
+    }
+
+    long now() {
+        return now;
+    }
+
+    long advance(long millis) {
+        now += millis;
+        return now;
+    }
+
+    /** Advances the clock by {@code step} until {@code duration} elapsed, notifying each tick. */
+    void run(long duration, long step, Listener listener) {
+        long end = now + duration;
+
+        while (now < end) {
+            listener.onTick(advance(Math.min(step, end - now)));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+  Copyright 2023 Adobe. All rights reserved.
+  This file is licensed to you under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software distributed under
+  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS
+  OF ANY KIND, either express or implied. See the License for the specific language
+  governing permissions and limitations under the License.
+*/
+
+package com.adobe.marketing.mobile.edge.media.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** {@link MediaScheduler} which runs tasks when a {@link SimulatedClock} passes their due time. */
+class SimulatedScheduler implements MediaScheduler {
+    private final SimulatedClock clock;
+    private final List<Task> tasks = new ArrayList<>();
+    final List<Long> delays = new ArrayList<>();
+
+    SimulatedScheduler(SimulatedClock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        delays.add(delayMillis);
+        tasks.add(new Task(task, clock.now() + delayMillis));
+    }
+
+    int getPendingCount() {
+        return tasks.size();
+    }
+
+    /** Advances the clock by {@code millis}, running due tasks in due time order. */
+    void advance(long millis) {
+        long end = clock.now() + millis;
+
+        while (true) {
+            Task next = null;
+
+            for (Task task : tasks) {
+                if (task.dueTS <= end && (next == null || task.dueTS < next.dueTS)) {
+                    next = task;
+                }
+            }
+
+            if (next == null) {
+                break;
+            }
+
+            tasks.remove(next);
+            clock.advance(Math.max(0, next.dueTS - clock.now()));
+            next.runnable.run();
+        }
+
+        clock.advance(end - clock.now());
+    }
+
+    private static class Task {
+        final Runnable runnable;
+        final long dueTS;
+
+        Task(Runnable runnable, long dueTS) {
+            this.runnable = runnable;
+            this.dueTS = dueTS;
+        }
+    }
+}
@@ -11,6 +11,11 @@
 
 package com.adobe.marketing.mobile.services;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Predicate;
 import junit.framework.AssertionFailedError;
 
@@ -26,11 +31,17 @@ public class MockNetworkService implements Networking {
     public NetworkRequest capturedRequest;
     public NetworkCallback capturedCallback;
 
+    // every request and callback since the last reset, in call order
+    public final List<NetworkRequest> capturedRequests = new ArrayList<>();
+    public final List<NetworkCallback> capturedCallbacks = new ArrayList<>();
+
     @Override
     public void connectAsync(NetworkRequest networkRequest, NetworkCallback networkCallback) {
         connectAsyncCalled = true;
         capturedRequest = networkRequest;
-        networkCallback = networkCallback;
+        capturedCallback = networkCallback;
+        capturedRequests.add(networkRequest);
+        capturedCallbacks.add(networkCallback);
 
         if (shouldVerifyRequest && !verifyPredicate.test(networkRequest)) {
             throw new AssertionFailedError("Unexpected network request");
@@ -46,6 +57,55 @@ public class MockNetworkService implements Networking {
         this.httpResponse = httpResponse;
     }
 
+    /**
+     * Builds a response which only carries a status code.
+     *
+     * @param responseCode the HTTP status code
+     * @return the response
+     */
+    public static HttpConnecting createResponse(final int responseCode) {
+        return createResponse(responseCode, "");
+    }
+
+    /**
+     * Builds a response which carries a status code and a body.
+     *
+     * @param responseCode the HTTP status code
+     * @param body the response body
+     * @return the response
+     */
+    public static HttpConnecting createResponse(final int responseCode, final String body) {
+        return new HttpConnecting() {
+            @Override
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public InputStream getErrorStream() {
+                return null;
+            }
+
+            @Override
+            public int getResponseCode() {
+                return responseCode;
+            }
+
+            @Override
+            public String getResponseMessage() {
+                return "";
+            }
+
+            @Override
+            public String getResponsePropertyValue(final String responsePropertyKey) {
+                return null;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
     public void setVerificationPredicate(Predicate<NetworkRequest> predicate) {
         shouldVerifyRequest = true;
         verifyPredicate = predicate;
@@ -59,5 +119,7 @@ public class MockNetworkService implements Networking {
         httpResponse = null;
         capturedCallback = null;
         capturedRequest = null;
+        capturedRequests.clear();
+        capturedCallbacks.clear();
     }
 }